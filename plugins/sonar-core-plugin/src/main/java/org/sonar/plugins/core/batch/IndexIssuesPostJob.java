@@ -0,0 +1,61 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.core.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.Phase;
+import org.sonar.api.batch.PostJob;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.resources.Project;
+import org.sonar.batch.bootstrap.ServerClient;
+import org.sonar.core.DryRunIncompatible;
+
+/**
+ * Requests the server to reindex the issues of the project. Executed at the end of the analysis,
+ * once issues are persisted and purged. A failure of the server request does not fail the analysis : the issues
+ * are reindexed by the next analysis or when the server restarts.
+ *
+ * @since 4.4
+ */
+@DryRunIncompatible
+@Phase(name = Phase.Name.POST)
+public class IndexIssuesPostJob implements PostJob {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IndexIssuesPostJob.class);
+
+  private final ServerClient server;
+
+  public IndexIssuesPostJob(ServerClient server) {
+    this.server = server;
+  }
+
+  public void executeOn(Project project, SensorContext context) {
+    if (project.isRoot() && project.getId() != null) {
+      String url = "/batch_bootstrap/index_issues?project=" + project.getId();
+      try {
+        LOG.debug("Index issues");
+        server.request(url);
+      } catch (Exception e) {
+        LOG.warn("Unable to index issues: " + url, e);
+      }
+    }
+  }
+}
@@ -19,26 +19,53 @@
  */
 package org.sonar.plugins.core.batch;
 
-import org.sonar.core.DryRunIncompatible;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.Phase;
 import org.sonar.api.batch.PostJob;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.resources.Project;
+import org.sonar.batch.bootstrap.ServerClient;
+import org.sonar.core.DryRunIncompatible;
 import org.sonar.core.resource.ResourceIndexerDao;
 
 /**
+ * Indexes the components of the project, then requests the server to reload them in its in-memory index.
+ * Executed after purge, so that the server drops the components that have been removed from the project.
+ * A failure of the server request does not fail the analysis : the in-memory index is reloaded
+ * by the next analysis or when the server restarts.
+ *
  * @since 2.13
  */
 @DryRunIncompatible
+@Phase(name = Phase.Name.POST)
 public class IndexProjectPostJob implements PostJob {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IndexProjectPostJob.class);
+
   private ResourceIndexerDao indexer;
+  private ServerClient server;
 
-  public IndexProjectPostJob(ResourceIndexerDao indexer) {
+  public IndexProjectPostJob(ResourceIndexerDao indexer, ServerClient server) {
     this.indexer = indexer;
+    this.server = server;
   }
 
   public void executeOn(Project project, SensorContext context) {
     if (project.getId() != null) {
       indexer.indexProject(project.getId());
+      if (project.isRoot()) {
+        reloadServerIndex(project);
+      }
+    }
+  }
+
+  private void reloadServerIndex(Project project) {
+    String url = "/batch_bootstrap/index_components?project=" + project.getId();
+    try {
+      server.request(url);
+    } catch (Exception e) {
+      LOG.warn("Unable to reload the server index of components: " + url, e);
     }
   }
 }
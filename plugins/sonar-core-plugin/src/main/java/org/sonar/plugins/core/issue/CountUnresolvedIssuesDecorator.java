@@ -19,15 +19,11 @@
  */
 package org.sonar.plugins.core.issue;
 
-import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
-import org.apache.commons.lang.time.DateUtils;
 import org.sonar.api.batch.Decorator;
 import org.sonar.api.batch.DecoratorBarriers;
 import org.sonar.api.batch.DecoratorContext;
@@ -52,11 +48,7 @@ import org.sonar.api.rules.RulePriority;
 import org.sonar.batch.components.Period;
 import org.sonar.batch.components.TimeMachineConfiguration;
 
-import javax.annotation.Nullable;
-
-import java.util.Calendar;
 import java.util.Collection;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -109,143 +101,105 @@ public class CountUnresolvedIssuesDecorator implements Decorator {
     if (issuable != null) {
       Collection<Issue> issues = issuable.issues();
       boolean shouldSaveNewMetrics = shouldSaveNewMetrics(context);
+      List<Period> periods = timeMachineConfiguration.periods();
+      IssueCounters counters = new IssueCounters(periods).add(issues);
 
-      Multiset<RulePriority> severityBag = HashMultiset.create();
-      Map<RulePriority, Multiset<RuleKey>> rulesPerSeverity = Maps.newHashMap();
-      ListMultimap<RulePriority, Issue> issuesPerSeverity = ArrayListMultimap.create();
-      int countOpen = 0;
-      int countReopened = 0;
-      int countConfirmed = 0;
-
-      for (Issue issue : issues) {
-        severityBag.add(RulePriority.valueOf(issue.severity()));
-        Multiset<RuleKey> rulesBag = initRules(rulesPerSeverity, RulePriority.valueOf(issue.severity()));
-        rulesBag.add(issue.ruleKey());
-        issuesPerSeverity.put(RulePriority.valueOf(issue.severity()), issue);
-
-        if (Issue.STATUS_OPEN.equals(issue.status())) {
-          countOpen++;
-        } else if (Issue.STATUS_REOPENED.equals(issue.status())) {
-          countReopened++;
-        } else if (Issue.STATUS_CONFIRMED.equals(issue.status())) {
-          countConfirmed++;
+      for (RulePriority ruleSeverity : RulePriority.values()) {
+        saveIssuesForSeverity(context, ruleSeverity, counters);
+        saveIssuesPerRules(context, ruleSeverity, counters);
+        if (shouldSaveNewMetrics) {
+          saveNewIssues(context, new Measure(SeverityUtils.severityToNewMetricIssue(ruleSeverity)), periods, counters.severity(ruleSeverity));
+          saveNewIssuesPerRule(context, ruleSeverity, periods, counters);
         }
       }
 
-      for (RulePriority ruleSeverity : RulePriority.values()) {
-        saveIssuesForSeverity(context, ruleSeverity, severityBag);
-        saveIssuesPerRules(context, ruleSeverity, rulesPerSeverity);
-        saveNewIssuesForSeverity(context, ruleSeverity, issuesPerSeverity, shouldSaveNewMetrics);
-        saveNewIssuesPerRule(context, ruleSeverity, issues, shouldSaveNewMetrics);
+      saveTotalIssues(context, counters);
+      if (shouldSaveNewMetrics) {
+        saveNewIssues(context, new Measure(CoreMetrics.NEW_VIOLATIONS), periods, counters.total());
       }
 
-      saveTotalIssues(context, issues);
-      saveNewIssues(context, issues, shouldSaveNewMetrics);
-
-      saveMeasure(context, CoreMetrics.OPEN_ISSUES, countOpen);
-      saveMeasure(context, CoreMetrics.REOPENED_ISSUES, countReopened);
-      saveMeasure(context, CoreMetrics.CONFIRMED_ISSUES, countConfirmed);
+      saveMeasure(context, CoreMetrics.OPEN_ISSUES, counters.open());
+      saveMeasure(context, CoreMetrics.REOPENED_ISSUES, counters.reopened());
+      saveMeasure(context, CoreMetrics.CONFIRMED_ISSUES, counters.confirmed());
     }
   }
 
-  private void saveTotalIssues(DecoratorContext context, Collection<Issue> issues) {
+  private void saveTotalIssues(DecoratorContext context, IssueCounters counters) {
     if (context.getMeasure(CoreMetrics.VIOLATIONS) == null) {
       Collection<Measure> childrenIssues = context.getChildrenMeasures(CoreMetrics.VIOLATIONS);
       Double sum = MeasureUtils.sum(true, childrenIssues);
-      context.saveMeasure(CoreMetrics.VIOLATIONS, sum + issues.size());
-    }
-  }
-
-  private void saveNewIssues(DecoratorContext context, Collection<Issue> issues, boolean shouldSaveNewMetrics) {
-    if (shouldSaveNewMetrics) {
-      Measure measure = new Measure(CoreMetrics.NEW_VIOLATIONS);
-      saveNewIssues(context, measure, issues);
+      context.saveMeasure(CoreMetrics.VIOLATIONS, sum + counters.total().count());
     }
   }
 
-  private void saveIssuesForSeverity(DecoratorContext context, RulePriority ruleSeverity, Multiset<RulePriority> severitiesBag) {
+  private void saveIssuesForSeverity(DecoratorContext context, RulePriority ruleSeverity, IssueCounters counters) {
     Metric metric = SeverityUtils.severityToIssueMetric(ruleSeverity);
     if (context.getMeasure(metric) == null) {
       Collection<Measure> children = context.getChildrenMeasures(MeasuresFilters.metric(metric));
-      int sum = MeasureUtils.sum(true, children).intValue() + severitiesBag.count(ruleSeverity);
+      int sum = MeasureUtils.sum(true, children).intValue() + counters.severity(ruleSeverity).count();
       context.saveMeasure(metric, (double) sum);
     }
   }
 
-  private void saveNewIssuesForSeverity(DecoratorContext context, RulePriority severity, ListMultimap<RulePriority, Issue> issuesPerSeverities, boolean shouldSaveNewMetrics) {
-    if (shouldSaveNewMetrics) {
-      Metric metric = SeverityUtils.severityToNewMetricIssue(severity);
-      Measure measure = new Measure(metric);
-      saveNewIssues(context, measure, issuesPerSeverities.get(severity));
-    }
-  }
-
-  private void saveIssuesPerRules(DecoratorContext context, RulePriority severity, Map<RulePriority, Multiset<RuleKey>> rulesPerSeverity) {
+  private void saveIssuesPerRules(DecoratorContext context, RulePriority severity, IssueCounters counters) {
     Metric metric = SeverityUtils.severityToIssueMetric(severity);
 
+    Map<RuleKey, Integer> countByRule = Maps.newHashMap();
+    for (Map.Entry<RuleKey, IssueCounters.Counter> entry : counters.rules(severity).entrySet()) {
+      countByRule.put(entry.getKey(), entry.getValue().count());
+    }
     Collection<Measure> children = context.getChildrenMeasures(MeasuresFilters.rules(metric));
     for (Measure child : children) {
       RuleMeasure childRuleMeasure = (RuleMeasure) child;
       RuleKey ruleKey = childRuleMeasure.ruleKey();
       if (ruleKey != null && MeasureUtils.hasValue(childRuleMeasure)) {
-        Multiset<RuleKey> rulesBag = initRules(rulesPerSeverity, severity);
-        rulesBag.add(ruleKey, childRuleMeasure.getIntValue());
+        Integer count = countByRule.get(ruleKey);
+        countByRule.put(ruleKey, (count == null ? 0 : count) + childRuleMeasure.getIntValue());
       }
     }
 
-    Multiset<RuleKey> rulesBag = rulesPerSeverity.get(severity);
-    if (rulesBag != null) {
-      for (Multiset.Entry<RuleKey> entry : rulesBag.entrySet()) {
-        RuleMeasure measure = RuleMeasure.createForRule(metric, entry.getElement(), (double) entry.getCount());
-        measure.setSeverity(severity);
-        context.saveMeasure(measure);
-      }
+    for (Map.Entry<RuleKey, Integer> entry : countByRule.entrySet()) {
+      RuleMeasure measure = RuleMeasure.createForRule(metric, entry.getKey(), (double) entry.getValue());
+      measure.setSeverity(severity);
+      context.saveMeasure(measure);
     }
   }
 
-  private void saveNewIssuesPerRule(DecoratorContext context, RulePriority severity, Collection<Issue> issues, boolean shouldSaveNewMetrics) {
-    if (shouldSaveNewMetrics) {
-      Metric metric = SeverityUtils.severityToNewMetricIssue(severity);
-      ListMultimap<RuleKey, Measure> childMeasuresPerRuleKeys = ArrayListMultimap.create();
-      ListMultimap<RuleKey, Issue> issuesPerRuleKeys = ArrayListMultimap.create();
-      Set<RuleKey> ruleKeys = Sets.newHashSet();
+  private void saveNewIssuesPerRule(DecoratorContext context, RulePriority severity, List<Period> periods, IssueCounters counters) {
+    Metric metric = SeverityUtils.severityToNewMetricIssue(severity);
+    ListMultimap<RuleKey, Measure> childMeasuresPerRuleKeys = ArrayListMultimap.create();
+    Set<RuleKey> ruleKeys = Sets.newHashSet(counters.rules(severity).keySet());
 
-      Collection<Measure> children = context.getChildrenMeasures(MeasuresFilters.rules(metric));
-      for (Measure child : children) {
-        RuleMeasure childRuleMeasure = (RuleMeasure) child;
-        RuleKey ruleKey = childRuleMeasure.ruleKey();
-        if (ruleKey != null) {
-          childMeasuresPerRuleKeys.put(ruleKey, childRuleMeasure);
-          ruleKeys.add(ruleKey);
-        }
-      }
-
-      for (Issue issue : issues) {
-        if (RulePriority.valueOf(issue.severity()).equals(severity)) {
-          ruleKeys.add(issue.ruleKey());
-          issuesPerRuleKeys.put(issue.ruleKey(), issue);
-        }
+    Collection<Measure> children = context.getChildrenMeasures(MeasuresFilters.rules(metric));
+    for (Measure child : children) {
+      RuleMeasure childRuleMeasure = (RuleMeasure) child;
+      RuleKey ruleKey = childRuleMeasure.ruleKey();
+      if (ruleKey != null) {
+        childMeasuresPerRuleKeys.put(ruleKey, childRuleMeasure);
+        ruleKeys.add(ruleKey);
       }
+    }
 
-      for (RuleKey ruleKey : ruleKeys) {
-        Rule rule = rulefinder.findByKey(ruleKey);
-        RuleMeasure measure = RuleMeasure.createForRule(metric, rule, null);
-        measure.setSeverity(severity);
-        for (Period period : timeMachineConfiguration.periods()) {
-          int variationIndex = period.getIndex();
-          double sum = MeasureUtils.sumOnVariation(true, variationIndex, childMeasuresPerRuleKeys.get(rule.ruleKey())) + countIssues(issuesPerRuleKeys.get(rule.ruleKey()), period);
-          measure.setVariation(variationIndex, sum);
-        }
-        context.saveMeasure(measure);
+    for (RuleKey ruleKey : ruleKeys) {
+      Rule rule = rulefinder.findByKey(ruleKey);
+      RuleMeasure measure = RuleMeasure.createForRule(metric, rule, null);
+      measure.setSeverity(severity);
+      IssueCounters.Counter counter = counters.rule(severity, rule.ruleKey());
+      for (int i = 0; i < periods.size(); i++) {
+        int variationIndex = periods.get(i).getIndex();
+        double sum = MeasureUtils.sumOnVariation(true, variationIndex, childMeasuresPerRuleKeys.get(rule.ruleKey()))
+          + (counter == null ? 0 : counter.newCount(i));
+        measure.setVariation(variationIndex, sum);
       }
+      context.saveMeasure(measure);
     }
   }
 
-  private void saveNewIssues(DecoratorContext context, Measure measure, Collection<Issue> issues) {
-    for (Period period : timeMachineConfiguration.periods()) {
-      int variationIndex = period.getIndex();
-      Collection<Measure> children = context.getChildrenMeasures(measure.getMetric());
-      double sum = MeasureUtils.sumOnVariation(true, variationIndex, children) + countIssues(issues, period);
+  private void saveNewIssues(DecoratorContext context, Measure measure, List<Period> periods, IssueCounters.Counter counter) {
+    Collection<Measure> children = context.getChildrenMeasures(measure.getMetric());
+    for (int i = 0; i < periods.size(); i++) {
+      int variationIndex = periods.get(i).getIndex();
+      double sum = MeasureUtils.sumOnVariation(true, variationIndex, children) + counter.newCount(i);
       measure.setVariation(variationIndex, sum);
     }
     context.saveMeasure(measure);
@@ -263,39 +217,6 @@ public class CountUnresolvedIssuesDecorator implements Decorator {
     return sum;
   }
 
-  private Multiset<RuleKey> initRules(Map<RulePriority, Multiset<RuleKey>> rulesPerSeverity, RulePriority severity) {
-    Multiset<RuleKey> rulesBag = rulesPerSeverity.get(severity);
-    if (rulesBag == null) {
-      rulesBag = HashMultiset.create();
-      rulesPerSeverity.put(severity, rulesBag);
-    }
-    return rulesBag;
-  }
-
-  private int countIssues(Collection<Issue> issues, Period period) {
-    // SONAR-3647 Use real snapshot date and not target date in order to stay consistent with other measure variations
-    Date datePlusOneSecond = period.getDate() != null ? DateUtils.addSeconds(period.getDate(), 1) : null;
-    return countIssuesAfterDate(issues, datePlusOneSecond);
-  }
-
-  @VisibleForTesting
-  int countIssuesAfterDate(Collection<Issue> issues, @Nullable Date date) {
-    if (issues == null) {
-      return 0;
-    }
-    int count = 0;
-    for (Issue issue : issues) {
-      if (isAfter(issue, date)) {
-        count++;
-      }
-    }
-    return count;
-  }
-
-  private boolean isAfter(Issue issue, @Nullable Date date) {
-    return date == null || (issue.creationDate() != null && DateUtils.truncatedCompareTo(issue.creationDate(), date, Calendar.SECOND) > 0);
-  }
-
   private boolean shouldSaveNewMetrics(DecoratorContext context) {
     return context.getMeasure(CoreMetrics.NEW_VIOLATIONS) == null;
   }
@@ -0,0 +1,161 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.core.issue;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.time.DateUtils;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rules.RulePriority;
+import org.sonar.batch.components.Period;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counters of issues by severity, rule, status and period, computed in a single pass on issues.
+ * Counters of new issues are indexed by the position of the period in the list given to the constructor.
+ *
+ * @since 4.4
+ */
+class IssueCounters {
+
+  private final Date[] periodDates;
+
+  private final Counter total;
+  private final Counter[] bySeverity;
+  private final List<Map<RuleKey, Counter>> byRuleAndSeverity;
+  private int open = 0;
+  private int reopened = 0;
+  private int confirmed = 0;
+
+  IssueCounters(List<Period> periods) {
+    periodDates = new Date[periods.size()];
+    for (int i = 0; i < periodDates.length; i++) {
+      Date date = periods.get(i).getDate();
+      // SONAR-3647 Use real snapshot date and not target date in order to stay consistent with other measure variations
+      periodDates[i] = date != null ? DateUtils.addSeconds(date, 1) : null;
+    }
+    total = new Counter(periodDates.length);
+    bySeverity = new Counter[RulePriority.values().length];
+    byRuleAndSeverity = Lists.newArrayListWithCapacity(bySeverity.length);
+    for (int i = 0; i < bySeverity.length; i++) {
+      bySeverity[i] = new Counter(periodDates.length);
+      byRuleAndSeverity.add(Maps.<RuleKey, Counter>newHashMap());
+    }
+  }
+
+  IssueCounters add(Iterable<Issue> issues) {
+    for (Issue issue : issues) {
+      add(issue);
+    }
+    return this;
+  }
+
+  IssueCounters add(Issue issue) {
+    int severity = RulePriority.valueOf(issue.severity()).ordinal();
+    Counter ruleCounter = byRuleAndSeverity.get(severity).get(issue.ruleKey());
+    if (ruleCounter == null) {
+      ruleCounter = new Counter(periodDates.length);
+      byRuleAndSeverity.get(severity).put(issue.ruleKey(), ruleCounter);
+    }
+    total.count++;
+    bySeverity[severity].count++;
+    ruleCounter.count++;
+    for (int i = 0; i < periodDates.length; i++) {
+      if (isAfter(issue, periodDates[i])) {
+        total.newCounts[i]++;
+        bySeverity[severity].newCounts[i]++;
+        ruleCounter.newCounts[i]++;
+      }
+    }
+
+    if (Issue.STATUS_OPEN.equals(issue.status())) {
+      open++;
+    } else if (Issue.STATUS_REOPENED.equals(issue.status())) {
+      reopened++;
+    } else if (Issue.STATUS_CONFIRMED.equals(issue.status())) {
+      confirmed++;
+    }
+    return this;
+  }
+
+  Counter total() {
+    return total;
+  }
+
+  Counter severity(RulePriority severity) {
+    return bySeverity[severity.ordinal()];
+  }
+
+  /**
+   * Counters of the rules that have at least one issue with the given severity
+   */
+  Map<RuleKey, Counter> rules(RulePriority severity) {
+    return byRuleAndSeverity.get(severity.ordinal());
+  }
+
+  @CheckForNull
+  Counter rule(RulePriority severity, RuleKey ruleKey) {
+    return byRuleAndSeverity.get(severity.ordinal()).get(ruleKey);
+  }
+
+  int open() {
+    return open;
+  }
+
+  int reopened() {
+    return reopened;
+  }
+
+  int confirmed() {
+    return confirmed;
+  }
+
+  static boolean isAfter(Issue issue, @Nullable Date date) {
+    return date == null || (issue.creationDate() != null && DateUtils.truncatedCompareTo(issue.creationDate(), date, Calendar.SECOND) > 0);
+  }
+
+  static class Counter {
+    private int count = 0;
+    private final int[] newCounts;
+
+    private Counter(int periods) {
+      newCounts = new int[periods];
+    }
+
+    int count() {
+      return count;
+    }
+
+    /**
+     * Number of issues created after the date of the period at the given position
+     */
+    int newCount(int periodPosition) {
+      return newCounts[periodPosition];
+    }
+  }
+}
@@ -20,14 +20,13 @@
 
 package org.sonar.plugins.core.issue;
 
-import org.sonar.plugins.core.issue.tracking.SourceChecksum;
-
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.issue.internal.DefaultIssue;
 import org.sonar.api.rule.RuleKey;
@@ -37,16 +36,21 @@ import org.sonar.plugins.core.issue.tracking.HashedSequenceComparator;
 import org.sonar.plugins.core.issue.tracking.IssueTrackingBlocksRecognizer;
 import org.sonar.plugins.core.issue.tracking.RollingHashSequence;
 import org.sonar.plugins.core.issue.tracking.RollingHashSequenceComparator;
+import org.sonar.plugins.core.issue.tracking.SourceChecksum;
 import org.sonar.plugins.core.issue.tracking.StringText;
 import org.sonar.plugins.core.issue.tracking.StringTextComparator;
 
 import javax.annotation.Nullable;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class IssueTracking implements BatchExtension {
 
@@ -61,7 +65,7 @@ public class IssueTracking implements BatchExtension {
   }
 
   private void setChecksumOnNewIssues(Collection<DefaultIssue> issues, SourceHashHolder sourceHashHolder) {
-    List<String> checksums = SourceChecksum.lineChecksumsOfFile(sourceHashHolder.getSource());
+    List<String> checksums = sourceHashHolder.getLineChecksums();
     for (DefaultIssue issue : issues) {
       issue.setChecksum(SourceChecksum.getChecksumForLine(checksums, issue.line()));
     }
@@ -92,19 +96,10 @@ public class IssueTracking implements BatchExtension {
     }
 
     // Match the key of the issue. (For manual issues)
-    for (DefaultIssue newIssue : newIssues) {
-      mapIssue(newIssue, findLastIssueWithSameKey(newIssue, result.unmatchedForRule(newIssue.ruleKey())), result);
-    }
+    mapIssuesOnSameRule(newIssues, MatchingCriterion.KEY, false, result);
 
     // Try first to match issues on same rule with same line and with same checksum (but not necessarily with same message)
-    for (DefaultIssue newIssue : newIssues) {
-      if (isNotAlreadyMapped(newIssue, result)) {
-        mapIssue(
-          newIssue,
-          findLastIssueWithSameLineAndChecksum(newIssue, result.unmatchedForRule(newIssue.ruleKey())),
-          result);
-      }
-    }
+    mapIssuesOnSameRule(newIssues, MatchingCriterion.LINE_AND_CHECKSUM, true, result);
   }
 
   private void mapNewissues(SourceHashHolder sourceHashHolder, Collection<DefaultIssue> newIssues, IssueTrackingResult result) {
@@ -155,50 +150,111 @@ public class IssueTracking implements BatchExtension {
 
     // Check if remaining number of lines exceeds threshold
     if (lastIssuesByLines.keySet().size() * newIssuesByLines.keySet().size() < 250000) {
-      List<LinePair> possibleLinePairs = Lists.newArrayList();
-      for (Integer oldLine : lastIssuesByLines.keySet()) {
-        for (Integer newLine : newIssuesByLines.keySet()) {
+      mapLinePairs(sourceHashHolder, rec, newIssues.size(), newIssuesByLines, lastIssuesByLines, result);
+    }
+  }
+
+  /**
+   * Maps issues of all pairs of old and new lines, ordered by decreasing length of the block of equal lines around the pair,
+   * then by increasing distance between lines, then in the order in which lines were first found with issues.
+   * Only pairs of lines with the same hash can have a positive length, so other pairs are not compared and are kept
+   * as primitive values.
+   */
+  private void mapLinePairs(SourceHashHolder sourceHashHolder, IssueTrackingBlocksRecognizer rec, int newIssuesCount,
+    Multimap<Integer, DefaultIssue> newIssuesByLines, Multimap<Integer, IssueDto> lastIssuesByLines, IssueTrackingResult result) {
+    List<Integer> oldLines = Lists.newArrayList(lastIssuesByLines.keySet());
+    List<Integer> newLines = Lists.newArrayList(newIssuesByLines.keySet());
+    Map<Integer, Integer> newLineIndexes = Maps.newHashMap();
+    for (int j = 0; j < newLines.size(); j++) {
+      newLineIndexes.put(newLines.get(j), j);
+    }
+
+    List<LinePair> weightedLinePairs = Lists.newArrayList();
+    Set<Integer> weightedPairIndexes = Sets.newHashSet();
+    for (int i = 0; i < oldLines.size(); i++) {
+      Integer oldLine = oldLines.get(i);
+      for (Integer newLine : sourceHashHolder.getNewLinesMatching(oldLine)) {
+        Integer j = newLineIndexes.get(newLine);
+        if (j != null) {
           int weight = rec.computeLengthOfMaximalBlock(oldLine - 1, newLine - 1);
-          possibleLinePairs.add(new LinePair(oldLine, newLine, weight));
+          if (weight > 0) {
+            int pairIndex = i * newLines.size() + j;
+            weightedLinePairs.add(new LinePair(oldLine, newLine, weight, pairIndex));
+            weightedPairIndexes.add(pairIndex);
+          }
         }
       }
-      Collections.sort(possibleLinePairs, LINE_PAIR_COMPARATOR);
-      for (LinePair linePair : possibleLinePairs) {
-        // High probability that lineA has been moved to lineB, so we can map all Issues on lineA to all Issues on lineB
-        map(newIssuesByLines.get(linePair.lineB), lastIssuesByLines.get(linePair.lineA), result);
+    }
+    Collections.sort(weightedLinePairs, LINE_PAIR_COMPARATOR);
+    for (LinePair linePair : weightedLinePairs) {
+      // High probability that lineA has been moved to lineB, so we can map all Issues on lineA to all Issues on lineB
+      map(newIssuesByLines.get(linePair.lineB), lastIssuesByLines.get(linePair.lineA), result);
+    }
+
+    // Remaining pairs have a null weight: distance in the highest bits, index of pair in the lowest bits
+    long[] otherLinePairs = new long[oldLines.size() * newLines.size() - weightedPairIndexes.size()];
+    int count = 0;
+    for (int i = 0; i < oldLines.size(); i++) {
+      for (int j = 0; j < newLines.size(); j++) {
+        int pairIndex = i * newLines.size() + j;
+        if (!weightedPairIndexes.contains(pairIndex)) {
+          long distance = Math.abs(oldLines.get(i) - newLines.get(j));
+          otherLinePairs[count] = (distance << 32) | pairIndex;
+          count++;
+        }
+      }
+    }
+    Arrays.sort(otherLinePairs);
+    for (long linePair : otherLinePairs) {
+      if (result.matched().size() == newIssuesCount || result.unmatched().isEmpty()) {
+        // nothing left to map
+        break;
       }
+      int pairIndex = (int) linePair;
+      Integer oldLine = oldLines.get(pairIndex / newLines.size());
+      Integer newLine = newLines.get(pairIndex % newLines.size());
+      map(newIssuesByLines.get(newLine), lastIssuesByLines.get(oldLine), result);
     }
   }
 
   private void mapIssuesOnSameRule(Collection<DefaultIssue> newIssues, IssueTrackingResult result) {
     // Try then to match issues on same rule with same message and with same checksum
-    for (DefaultIssue newIssue : newIssues) {
-      if (isNotAlreadyMapped(newIssue, result)) {
-        mapIssue(
-          newIssue,
-          findLastIssueWithSameChecksumAndMessage(newIssue, result.unmatchedForRule(newIssue.ruleKey())),
-          result);
-      }
-    }
+    mapIssuesOnSameRule(newIssues, MatchingCriterion.CHECKSUM_AND_MESSAGE, true, result);
 
     // Try then to match issues on same rule with same line and with same message
-    for (DefaultIssue newIssue : newIssues) {
-      if (isNotAlreadyMapped(newIssue, result)) {
-        mapIssue(
-          newIssue,
-          findLastIssueWithSameLineAndMessage(newIssue, result.unmatchedForRule(newIssue.ruleKey())),
-          result);
-      }
-    }
+    mapIssuesOnSameRule(newIssues, MatchingCriterion.LINE_AND_MESSAGE, true, result);
 
     // Last check: match issue if same rule and same checksum but different line and different message
     // See SONAR-2812
+    mapIssuesOnSameRule(newIssues, MatchingCriterion.CHECKSUM, true, result);
+  }
+
+  /**
+   * Maps each new issue to the first unmatched issue, in the order of last issues, that has the same rule and the same
+   * value of the criterion. Unmatched issues are indexed by rule and value instead of being scanned for each new issue.
+   */
+  private void mapIssuesOnSameRule(Collection<DefaultIssue> newIssues, MatchingCriterion criterion, boolean onlyNotMapped, IssueTrackingResult result) {
+    Map<List<Object>, Deque<IssueDto>> lastIssuesByValue = Maps.newHashMap();
+    for (Map.Entry<RuleKey, IssueDto> entry : result.unmatchedByRule().entries()) {
+      List<Object> value = Arrays.<Object>asList(entry.getKey(), criterion.valueOf(entry.getValue()));
+      Deque<IssueDto> lastIssues = lastIssuesByValue.get(value);
+      if (lastIssues == null) {
+        lastIssues = new ArrayDeque<IssueDto>();
+        lastIssuesByValue.put(value, lastIssues);
+      }
+      lastIssues.addLast(entry.getValue());
+    }
+
     for (DefaultIssue newIssue : newIssues) {
-      if (isNotAlreadyMapped(newIssue, result)) {
-        mapIssue(
-          newIssue,
-          findLastIssueWithSameChecksum(newIssue, result.unmatchedForRule(newIssue.ruleKey())),
-          result);
+      if (!onlyNotMapped || isNotAlreadyMapped(newIssue, result)) {
+        Deque<IssueDto> lastIssues = lastIssuesByValue.get(Arrays.<Object>asList(newIssue.ruleKey(), criterion.valueOf(newIssue)));
+        if (lastIssues != null) {
+          // issues matched since the index was built are discarded
+          while (!lastIssues.isEmpty() && !isNotAlreadyMapped(lastIssues.peekFirst(), result)) {
+            lastIssues.removeFirst();
+          }
+          mapIssue(newIssue, lastIssues.pollFirst(), result);
+        }
       }
     }
   }
@@ -236,51 +292,6 @@ public class IssueTracking implements BatchExtension {
     return lastIssuesByLines;
   }
 
-  private IssueDto findLastIssueWithSameChecksum(DefaultIssue newIssue, Collection<IssueDto> lastIssues) {
-    for (IssueDto pastIssue : lastIssues) {
-      if (isSameChecksum(newIssue, pastIssue)) {
-        return pastIssue;
-      }
-    }
-    return null;
-  }
-
-  private IssueDto findLastIssueWithSameLineAndMessage(DefaultIssue newIssue, Collection<IssueDto> lastIssues) {
-    for (IssueDto pastIssue : lastIssues) {
-      if (isSameLine(newIssue, pastIssue) && isSameMessage(newIssue, pastIssue)) {
-        return pastIssue;
-      }
-    }
-    return null;
-  }
-
-  private IssueDto findLastIssueWithSameChecksumAndMessage(DefaultIssue newIssue, Collection<IssueDto> lastIssues) {
-    for (IssueDto pastIssue : lastIssues) {
-      if (isSameChecksum(newIssue, pastIssue) && isSameMessage(newIssue, pastIssue)) {
-        return pastIssue;
-      }
-    }
-    return null;
-  }
-
-  private IssueDto findLastIssueWithSameLineAndChecksum(DefaultIssue newIssue, Collection<IssueDto> lastIssues) {
-    for (IssueDto pastIssue : lastIssues) {
-      if (isSameLine(newIssue, pastIssue) && isSameChecksum(newIssue, pastIssue)) {
-        return pastIssue;
-      }
-    }
-    return null;
-  }
-
-  private IssueDto findLastIssueWithSameKey(DefaultIssue newIssue, Collection<IssueDto> lastIssues) {
-    for (IssueDto pastIssue : lastIssues) {
-      if (isSameKey(newIssue, pastIssue)) {
-        return pastIssue;
-      }
-    }
-    return null;
-  }
-
   private boolean isNotAlreadyMapped(IssueDto pastIssue, IssueTrackingResult result) {
     return result.unmatched().contains(pastIssue);
   }
@@ -289,22 +300,6 @@ public class IssueTracking implements BatchExtension {
     return !result.isMatched(newIssue);
   }
 
-  private boolean isSameChecksum(DefaultIssue newIssue, IssueDto pastIssue) {
-    return Objects.equal(pastIssue.getChecksum(), newIssue.checksum());
-  }
-
-  private boolean isSameLine(DefaultIssue newIssue, IssueDto pastIssue) {
-    return Objects.equal(pastIssue.getLine(), newIssue.line());
-  }
-
-  private boolean isSameMessage(DefaultIssue newIssue, IssueDto pastIssue) {
-    return Objects.equal(newIssue.message(), pastIssue.getMessage());
-  }
-
-  private boolean isSameKey(DefaultIssue newIssue, IssueDto pastIssue) {
-    return Objects.equal(newIssue.key(), pastIssue.getKee());
-  }
-
   private void mapIssue(DefaultIssue issue, @Nullable IssueDto ref, IssueTrackingResult result) {
     if (ref != null) {
       result.setMatch(issue, ref);
@@ -320,11 +315,13 @@ public class IssueTracking implements BatchExtension {
     int lineA;
     int lineB;
     int weight;
+    int index;
 
-    public LinePair(int lineA, int lineB, int weight) {
+    public LinePair(int lineA, int lineB, int weight, int index) {
       this.lineA = lineA;
       this.lineB = lineB;
       this.weight = weight;
+      this.index = index;
     }
   }
 
@@ -340,10 +337,75 @@ public class IssueTracking implements BatchExtension {
       int weightDiff = o2.weight - o1.weight;
       if (weightDiff != 0) {
         return weightDiff;
-      } else {
-        return Math.abs(o1.lineA - o1.lineB) - Math.abs(o2.lineA - o2.lineB);
       }
+      int distanceDiff = Math.abs(o1.lineA - o1.lineB) - Math.abs(o2.lineA - o2.lineB);
+      if (distanceDiff != 0) {
+        return distanceDiff;
+      }
+      return o1.index - o2.index;
     }
   };
 
+  private enum MatchingCriterion {
+    KEY {
+      @Override
+      Object valueOf(IssueDto lastIssue) {
+        return lastIssue.getKee();
+      }
+
+      @Override
+      Object valueOf(DefaultIssue newIssue) {
+        return newIssue.key();
+      }
+    },
+    LINE_AND_CHECKSUM {
+      @Override
+      Object valueOf(IssueDto lastIssue) {
+        return Arrays.<Object>asList(lastIssue.getLine(), lastIssue.getChecksum());
+      }
+
+      @Override
+      Object valueOf(DefaultIssue newIssue) {
+        return Arrays.<Object>asList(newIssue.line(), newIssue.checksum());
+      }
+    },
+    CHECKSUM_AND_MESSAGE {
+      @Override
+      Object valueOf(IssueDto lastIssue) {
+        return Arrays.<Object>asList(lastIssue.getChecksum(), lastIssue.getMessage());
+      }
+
+      @Override
+      Object valueOf(DefaultIssue newIssue) {
+        return Arrays.<Object>asList(newIssue.checksum(), newIssue.message());
+      }
+    },
+    LINE_AND_MESSAGE {
+      @Override
+      Object valueOf(IssueDto lastIssue) {
+        return Arrays.<Object>asList(lastIssue.getLine(), lastIssue.getMessage());
+      }
+
+      @Override
+      Object valueOf(DefaultIssue newIssue) {
+        return Arrays.<Object>asList(newIssue.line(), newIssue.message());
+      }
+    },
+    CHECKSUM {
+      @Override
+      Object valueOf(IssueDto lastIssue) {
+        return lastIssue.getChecksum();
+      }
+
+      @Override
+      Object valueOf(DefaultIssue newIssue) {
+        return newIssue.checksum();
+      }
+    };
+
+    abstract Object valueOf(IssueDto lastIssue);
+
+    abstract Object valueOf(DefaultIssue newIssue);
+  }
+
 }
@@ -44,6 +44,13 @@ class IssueTrackingResult {
     return unmatchedByRule.get(ruleKey);
   }
 
+  /**
+   * Unmatched issues grouped by rule, each group being in the order of insertion
+   */
+  Multimap<RuleKey, IssueDto> unmatchedByRule() {
+    return unmatchedByRule;
+  }
+
   Collection<DefaultIssue> matched() {
     return matched.keySet();
   }
@@ -20,11 +20,13 @@
 package org.sonar.plugins.core.issue;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.sonar.api.batch.SonarIndex;
 import org.sonar.api.resources.Resource;
 import org.sonar.batch.scan.LastSnapshots;
 import org.sonar.plugins.core.issue.tracking.HashedSequence;
+import org.sonar.plugins.core.issue.tracking.SourceChecksum;
 import org.sonar.plugins.core.issue.tracking.StringText;
 import org.sonar.plugins.core.issue.tracking.StringTextComparator;
 
@@ -43,6 +45,7 @@ public class SourceHashHolder {
 
   private HashedSequence<StringText> hashedReference;
   private HashedSequence<StringText> hashedSource;
+  private List<String> lineChecksums;
 
   public SourceHashHolder(SonarIndex index, LastSnapshots lastSnapshots, Resource resource) {
     this.index = index;
@@ -83,6 +86,16 @@ public class SourceHashHolder {
     return referenceSource;
   }
 
+  /**
+   * Checksums of the lines of the current source, computed once
+   */
+  public List<String> getLineChecksums() {
+    if (lineChecksums == null) {
+      lineChecksums = SourceChecksum.lineChecksumsOfFile(getSource());
+    }
+    return lineChecksums;
+  }
+
   public boolean hasBothReferenceAndCurrentSource() {
     return getSource() != null && getReferenceSource() != null;
   }
@@ -37,6 +37,7 @@ import org.sonar.api.resources.Resource;
 import org.sonar.api.resources.Scopes;
 import org.sonar.api.rules.RuleFinder;
 import org.sonar.api.technicaldebt.batch.Characteristic;
+import org.sonar.batch.components.PastMeasures;
 import org.sonar.batch.components.PastMeasuresLoader;
 import org.sonar.batch.components.PastSnapshot;
 import org.sonar.batch.components.TimeMachineConfiguration;
@@ -52,6 +53,7 @@ public class VariationDecorator implements Decorator {
   private MetricFinder metricFinder;
   private PastMeasuresLoader pastMeasuresLoader;
   private RuleFinder ruleFinder;
+  private final Map<Integer, PastMeasures> pastMeasuresByPeriodIndex = Maps.newHashMap();
 
   public VariationDecorator(PastMeasuresLoader pastMeasuresLoader, MetricFinder metricFinder, TimeMachineConfiguration timeMachineConfiguration, RuleFinder ruleFinder) {
     this(pastMeasuresLoader, metricFinder, timeMachineConfiguration.getProjectPastSnapshots(), ruleFinder);
@@ -91,10 +93,22 @@ public class VariationDecorator implements Decorator {
   }
 
   private void computeVariation(Resource resource, DecoratorContext context, PastSnapshot pastSnapshot) {
-    List<Object[]> pastMeasures = pastMeasuresLoader.getPastMeasures(resource, pastSnapshot);
+    List<Object[]> pastMeasures = getModulePastMeasures(pastSnapshot).get(resource.getEffectiveKey());
     compareWithPastMeasures(resource, context, pastSnapshot.getIndex(), pastMeasures);
   }
 
+  /**
+   * Past measures of all the resources of the module are loaded at once for each period, when the first resource is decorated
+   */
+  private PastMeasures getModulePastMeasures(PastSnapshot pastSnapshot) {
+    PastMeasures pastMeasures = pastMeasuresByPeriodIndex.get(pastSnapshot.getIndex());
+    if (pastMeasures == null) {
+      pastMeasures = pastMeasuresLoader.getModulePastMeasures(pastSnapshot);
+      pastMeasuresByPeriodIndex.put(pastSnapshot.getIndex(), pastMeasures);
+    }
+    return pastMeasures;
+  }
+
   void compareWithPastMeasures(Resource resource, DecoratorContext context, int index, List<Object[]> pastMeasures) {
     Map<MeasureKey, Object[]> pastMeasuresByKey = Maps.newHashMap();
     for (Object[] pastMeasure : pastMeasures) {
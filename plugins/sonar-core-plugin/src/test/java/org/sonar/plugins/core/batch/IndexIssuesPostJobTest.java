@@ -0,0 +1,69 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.core.batch;
+
+import org.junit.Test;
+import org.sonar.api.resources.Project;
+import org.sonar.batch.bootstrap.ServerClient;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class IndexIssuesPostJobTest {
+
+  ServerClient server = mock(ServerClient.class);
+  IndexIssuesPostJob job = new IndexIssuesPostJob(server);
+
+  @Test
+  public void should_request_indexing_of_project_issues() {
+    Project project = new Project("foo");
+    project.setId(123);
+
+    job.executeOn(project, null);
+
+    verify(server).request("/batch_bootstrap/index_issues?project=123");
+  }
+
+  @Test
+  public void should_not_index_modules() {
+    Project project = new Project("foo");
+    project.setId(123);
+    Project module = new Project("foo:bar");
+    module.setId(124);
+    module.setParent(project);
+
+    job.executeOn(module, null);
+
+    verifyZeroInteractions(server);
+  }
+
+  @Test
+  public void should_not_fail_if_server_request_fails() {
+    Project project = new Project("foo");
+    project.setId(123);
+    doThrow(new IllegalStateException()).when(server).request("/batch_bootstrap/index_issues?project=123");
+
+    job.executeOn(project, null);
+
+    verify(server).request("/batch_bootstrap/index_issues?project=123");
+  }
+}
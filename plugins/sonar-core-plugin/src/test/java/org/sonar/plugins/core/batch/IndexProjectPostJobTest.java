@@ -21,33 +21,60 @@ package org.sonar.plugins.core.batch;
 
 import org.junit.Test;
 import org.sonar.api.resources.Project;
+import org.sonar.batch.bootstrap.ServerClient;
 import org.sonar.core.resource.ResourceIndexerDao;
 
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
 public class IndexProjectPostJobTest {
+
+  ResourceIndexerDao indexer = mock(ResourceIndexerDao.class);
+  ServerClient server = mock(ServerClient.class);
+  IndexProjectPostJob job = new IndexProjectPostJob(indexer, server);
+
   @Test
   public void shouldIndexProject() {
-    ResourceIndexerDao indexer = mock(ResourceIndexerDao.class);
-    IndexProjectPostJob job = new IndexProjectPostJob(indexer);
     Project project = new Project("foo");
     project.setId(123);
 
     job.executeOn(project, null);
 
     verify(indexer).indexProject(123);
+    verify(server).request("/batch_bootstrap/index_components?project=123");
   }
 
   @Test
-  public void shouldNotIndexProjectIfMissingId() {
-    ResourceIndexerDao indexer = mock(ResourceIndexerDao.class);
-    IndexProjectPostJob job = new IndexProjectPostJob(indexer);
+  public void shouldNotFailIfServerRequestFails() {
+    Project project = new Project("foo");
+    project.setId(123);
+    doThrow(new IllegalStateException()).when(server).request("/batch_bootstrap/index_components?project=123");
+
+    job.executeOn(project, null);
+
+    verify(indexer).indexProject(123);
+  }
+
+  @Test
+  public void shouldNotReloadServerIndexOnModules() {
+    Project project = new Project("foo");
+    Project module = new Project("foo:bar");
+    module.setId(124);
+    module.setParent(project);
+
+    job.executeOn(module, null);
 
+    verify(indexer).indexProject(124);
+    verifyZeroInteractions(server);
+  }
+
+  @Test
+  public void shouldNotIndexProjectIfMissingId() {
     job.executeOn(new Project("foo"), null);
 
-    verifyZeroInteractions(indexer);
+    verifyZeroInteractions(indexer, server);
   }
 
 }
@@ -48,7 +48,6 @@ import org.sonar.api.test.IsRuleMeasure;
 import org.sonar.batch.components.Period;
 import org.sonar.batch.components.TimeMachineConfiguration;
 
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -83,7 +82,6 @@ public class CountUnresolvedIssuesDecoratorTest {
   Date afterTenDaysAgo;
   Date fiveDaysAgo;
   Date afterFiveDaysAgo;
-  Date sameSecond;
 
   @Before
   public void before() {
@@ -101,7 +99,6 @@ public class CountUnresolvedIssuesDecoratorTest {
     afterTenDaysAgo = DateUtils.addDays(tenDaysAgo, 1);
     fiveDaysAgo = DateUtils.addDays(rightNow, -5);
     afterFiveDaysAgo = DateUtils.addDays(fiveDaysAgo, 1);
-    sameSecond = DateUtils.truncate(rightNow, Calendar.SECOND);
 
     timeMachineConfiguration = mock(TimeMachineConfiguration.class);
     when(timeMachineConfiguration.periods()).thenReturn(newArrayList(new Period(1, afterFiveDaysAgo), new Period(2, afterTenDaysAgo)));
@@ -230,16 +227,6 @@ public class CountUnresolvedIssuesDecoratorTest {
     verify(context).saveMeasure(argThat(new IsRuleMeasure(CoreMetrics.MINOR_VIOLATIONS, ruleA1, 1.0)));
   }
 
-  @Test
-  public void should_count_issues_after_date() {
-    List<Issue> issues = createIssuesForNewMetrics();
-
-    assertThat(decorator.countIssuesAfterDate(null, fiveDaysAgo)).isEqualTo(0);
-    assertThat(decorator.countIssuesAfterDate(issues, fiveDaysAgo)).isEqualTo(1); // 1 rightNow
-    assertThat(decorator.countIssuesAfterDate(issues, tenDaysAgo)).isEqualTo(3); // 1 rightNow + 2 fiveDaysAgo
-    assertThat(decorator.countIssuesAfterDate(issues, sameSecond)).isEqualTo(0); // 0
-  }
-
   @Test
   public void should_clear_cache_after_execution() {
     Issue issue1 = new DefaultIssue().setRuleKey(RuleKey.of(ruleA1.getRepositoryKey(), ruleA1.getKey())).setSeverity(RulePriority.CRITICAL.name()).setCreationDate(rightNow);
@@ -0,0 +1,99 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.core.issue;
+
+import org.apache.commons.lang.time.DateUtils;
+import org.junit.Test;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.issue.internal.DefaultIssue;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rules.RulePriority;
+import org.sonar.batch.components.Period;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class IssueCountersTest {
+
+  static final RuleKey RULE_1 = RuleKey.of("squid", "S1");
+  static final RuleKey RULE_2 = RuleKey.of("squid", "S2");
+
+  Date now = new Date();
+  Date fiveDaysAgo = DateUtils.addDays(now, -5);
+  Date tenDaysAgo = DateUtils.addDays(now, -10);
+
+  @Test
+  public void count_issues_in_a_single_pass() {
+    IssueCounters counters = new IssueCounters(Arrays.asList(new Period(1, fiveDaysAgo), new Period(3, tenDaysAgo)));
+    counters.add(Arrays.<Issue>asList(
+      issue(RULE_1, RulePriority.CRITICAL, Issue.STATUS_OPEN, now),
+      issue(RULE_1, RulePriority.CRITICAL, Issue.STATUS_REOPENED, DateUtils.addDays(now, -7)),
+      issue(RULE_1, RulePriority.MINOR, Issue.STATUS_CONFIRMED, DateUtils.addDays(now, -20)),
+      issue(RULE_2, RulePriority.MINOR, Issue.STATUS_OPEN, now)));
+
+    assertThat(counters.total().count()).isEqualTo(4);
+    assertThat(counters.total().newCount(0)).isEqualTo(2);
+    assertThat(counters.total().newCount(1)).isEqualTo(3);
+
+    assertThat(counters.severity(RulePriority.CRITICAL).count()).isEqualTo(2);
+    assertThat(counters.severity(RulePriority.CRITICAL).newCount(0)).isEqualTo(1);
+    assertThat(counters.severity(RulePriority.BLOCKER).count()).isEqualTo(0);
+
+    assertThat(counters.rules(RulePriority.MINOR).keySet()).containsOnly(RULE_1, RULE_2);
+    assertThat(counters.rule(RulePriority.MINOR, RULE_1).count()).isEqualTo(1);
+    assertThat(counters.rule(RulePriority.MINOR, RULE_1).newCount(1)).isEqualTo(0);
+    assertThat(counters.rule(RulePriority.CRITICAL, RULE_1).newCount(1)).isEqualTo(2);
+    assertThat(counters.rule(RulePriority.CRITICAL, RULE_2)).isNull();
+
+    assertThat(counters.open()).isEqualTo(2);
+    assertThat(counters.reopened()).isEqualTo(1);
+    assertThat(counters.confirmed()).isEqualTo(1);
+  }
+
+  @Test
+  public void all_issues_are_new_if_period_has_no_date() {
+    IssueCounters counters = new IssueCounters(Arrays.asList(new Period(1, null)));
+    counters.add(issue(RULE_1, RulePriority.MAJOR, Issue.STATUS_OPEN, tenDaysAgo));
+
+    assertThat(counters.total().newCount(0)).isEqualTo(1);
+  }
+
+  @Test
+  public void issue_is_new_if_created_after_date() {
+    Issue createdNow = issue(RULE_1, RulePriority.MAJOR, Issue.STATUS_OPEN, now);
+    Issue createdFiveDaysAgo = issue(RULE_1, RulePriority.MAJOR, Issue.STATUS_OPEN, fiveDaysAgo);
+    Date sameSecond = DateUtils.truncate(now, Calendar.SECOND);
+
+    assertThat(IssueCounters.isAfter(createdNow, fiveDaysAgo)).isTrue();
+    assertThat(IssueCounters.isAfter(createdFiveDaysAgo, fiveDaysAgo)).isFalse();
+    assertThat(IssueCounters.isAfter(createdFiveDaysAgo, tenDaysAgo)).isTrue();
+    // dates are compared at the second
+    assertThat(IssueCounters.isAfter(createdNow, sameSecond)).isFalse();
+    assertThat(IssueCounters.isAfter(createdNow, null)).isTrue();
+    assertThat(IssueCounters.isAfter(new DefaultIssue(), fiveDaysAgo)).isFalse();
+  }
+
+  private static Issue issue(RuleKey ruleKey, RulePriority severity, String status, Date creationDate) {
+    return new DefaultIssue().setRuleKey(ruleKey).setSeverity(severity.name()).setStatus(status).setCreationDate(creationDate);
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.core.issue;
+
+import com.google.common.base.Joiner;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.issue.internal.DefaultIssue;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.batch.scan.LastSnapshots;
+import org.sonar.core.issue.db.IssueDto;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Verifies on random files and issues that {@link IssueTracking} maps issues exactly like {@link ReferenceIssueTracking}.
+ */
+public class IssueTrackingRegressionTest {
+
+  static final String[] STATEMENTS = {"}", "return null;", "i++;", "  foo();", "bar(i);", "if (i > 0) {", "", "// comment"};
+  static final String[] MESSAGES = {"Avoid cycle", "Remove this line", "Fix me", null};
+  static final String[] CHECKSUMS = {"checksum1", "checksum2", "checksum3", null};
+
+  Random random;
+  Resource project;
+  SonarIndex index;
+  LastSnapshots lastSnapshots;
+  long issueId;
+
+  @Before
+  public void before() {
+    index = mock(SonarIndex.class);
+    lastSnapshots = mock(LastSnapshots.class);
+    project = mock(Project.class);
+  }
+
+  @Test
+  public void should_map_issues_like_reference_implementation() {
+    for (long seed = 0; seed < 300; seed++) {
+      random = new Random(seed);
+      verifySameMapping(20 + random.nextInt(60), 1 + random.nextInt(80), 1 + random.nextInt(80));
+    }
+  }
+
+  @Test
+  public void should_map_many_issues_like_reference_implementation() {
+    random = new Random(42L);
+    verifySameMapping(400, 3000, 3000);
+  }
+
+  private void verifySameMapping(int lines, int lastIssuesCount, int newIssuesCount) {
+    List<String> reference = randomSource(lines);
+    List<String> source = modify(reference);
+    when(lastSnapshots.getSource(project)).thenReturn(Joiner.on('\n').join(reference));
+    when(index.getSource(project)).thenReturn(Joiner.on('\n').join(source));
+
+    List<IssueDto> lastIssues = newArrayList();
+    for (int i = 0; i < lastIssuesCount; i++) {
+      lastIssues.add(randomLastIssue(reference.size()));
+    }
+    List<DefaultIssue> newIssues = newArrayList();
+    for (int i = 0; i < newIssuesCount; i++) {
+      newIssues.add(randomNewIssue(source.size(), lastIssues));
+    }
+
+    IssueTrackingResult expected = new IssueTrackingResult();
+    new ReferenceIssueTracking().mapIssues(newIssues, lastIssues, new SourceHashHolder(index, lastSnapshots, project), expected);
+    IssueTrackingResult result = new IssueTrackingResult();
+    new IssueTracking().mapIssues(newIssues, lastIssues, new SourceHashHolder(index, lastSnapshots, project), result);
+
+    for (DefaultIssue newIssue : newIssues) {
+      assertThat(result.matching(newIssue)).isSameAs(expected.matching(newIssue));
+    }
+    assertThat(result.unmatched()).isEqualTo(expected.unmatched());
+  }
+
+  private List<String> randomSource(int lines) {
+    List<String> source = newArrayList();
+    for (int i = 0; i < lines; i++) {
+      source.add(STATEMENTS[random.nextInt(STATEMENTS.length)]);
+    }
+    return source;
+  }
+
+  private List<String> modify(List<String> reference) {
+    List<String> source = newArrayList(reference);
+    int changes = random.nextInt(1 + reference.size() / 5);
+    for (int i = 0; i < changes; i++) {
+      int index = random.nextInt(source.size());
+      if (random.nextBoolean()) {
+        source.add(index, STATEMENTS[random.nextInt(STATEMENTS.length)]);
+      } else if (source.size() > 1) {
+        source.remove(index);
+      }
+    }
+    return source;
+  }
+
+  private IssueDto randomLastIssue(int lines) {
+    IssueDto issue = new IssueDto();
+    Long id = issueId++;
+    issue.setId(id);
+    issue.setKee(Long.toString(id));
+    issue.setLine(randomLine(lines));
+    issue.setMessage(MESSAGES[random.nextInt(MESSAGES.length)]);
+    issue.setRuleKey_unit_test_only("squid", "Rule" + random.nextInt(3));
+    issue.setChecksum(CHECKSUMS[random.nextInt(CHECKSUMS.length)]);
+    issue.setStatus(Issue.STATUS_OPEN);
+    return issue;
+  }
+
+  private DefaultIssue randomNewIssue(int lines, List<IssueDto> lastIssues) {
+    DefaultIssue issue = new DefaultIssue()
+      .setMessage(MESSAGES[random.nextInt(MESSAGES.length)])
+      .setLine(randomLine(lines))
+      .setRuleKey(RuleKey.of("squid", "Rule" + random.nextInt(3)))
+      .setChecksum(CHECKSUMS[random.nextInt(CHECKSUMS.length)])
+      .setStatus(Issue.STATUS_OPEN);
+    if (random.nextInt(10) == 0) {
+      // same key as an existing issue, for example a manual issue
+      issue.setKey(lastIssues.get(random.nextInt(lastIssues.size())).getKee());
+    }
+    return issue;
+  }
+
+  private Integer randomLine(int lines) {
+    int line = random.nextInt(lines + 2);
+    return line == 0 ? null : line;
+  }
+}
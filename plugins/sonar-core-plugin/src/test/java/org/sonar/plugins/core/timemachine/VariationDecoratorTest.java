@@ -33,16 +33,19 @@ import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.api.rules.Rule;
 import org.sonar.api.rules.RuleFinder;
+import org.sonar.batch.components.PastMeasures;
 import org.sonar.batch.components.PastMeasuresLoader;
 import org.sonar.batch.components.PastSnapshot;
 import org.sonar.batch.components.TimeMachineConfiguration;
 import org.sonar.jpa.test.AbstractDbUnitTestCase;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -76,13 +79,17 @@ public class VariationDecoratorTest extends AbstractDbUnitTestCase {
     PastSnapshot pastSnapshot3 = new PastSnapshot("days", new Date()).setIndex(3);
 
     // first past analysis
-    when(pastMeasuresLoader.getPastMeasures(dir, pastSnapshot1)).thenReturn(Arrays.asList(
+    PastMeasures pastMeasures1 = mock(PastMeasures.class);
+    when(pastMeasures1.get(dir.getEffectiveKey())).thenReturn(Arrays.asList(
       new Object[] {NCLOC_ID, null, null, null, 180.0},
       new Object[] {COVERAGE_ID, null, null, null, 75.0}));
+    when(pastMeasuresLoader.getModulePastMeasures(pastSnapshot1)).thenReturn(pastMeasures1);
 
     // second past analysis
-    when(pastMeasuresLoader.getPastMeasures(dir, pastSnapshot3)).thenReturn(Arrays.<Object[]>asList(
+    PastMeasures pastMeasures3 = mock(PastMeasures.class);
+    when(pastMeasures3.get(dir.getEffectiveKey())).thenReturn(Arrays.<Object[]>asList(
       new Object[] {NCLOC_ID, null, null, null, 240.0}));
+    when(pastMeasuresLoader.getModulePastMeasures(pastSnapshot3)).thenReturn(pastMeasures3);
 
     // current analysis
     DecoratorContext context = mock(DecoratorContext.class);
@@ -123,10 +130,12 @@ public class VariationDecoratorTest extends AbstractDbUnitTestCase {
     PastSnapshot pastSnapshot1 = new PastSnapshot("days", new Date()).setIndex(1);
 
     // first past analysis
-    when(pastMeasuresLoader.getPastMeasures(dir, pastSnapshot1)).thenReturn(Arrays.asList(
+    PastMeasures pastMeasures1 = mock(PastMeasures.class);
+    when(pastMeasures1.get(dir.getEffectiveKey())).thenReturn(Arrays.asList(
       new Object[] {VIOLATIONS_ID, null, null, null, 180.0},// total
       new Object[] {VIOLATIONS_ID, null, null, rule1.getId(), 100.0},// rule 1
       new Object[] {VIOLATIONS_ID, null, null, rule2.getId(), 80.0})); // rule 2
+    when(pastMeasuresLoader.getModulePastMeasures(pastSnapshot1)).thenReturn(pastMeasures1);
 
     // current analysis
     DecoratorContext context = mock(DecoratorContext.class);
@@ -144,6 +153,28 @@ public class VariationDecoratorTest extends AbstractDbUnitTestCase {
     assertThat(violations.getVariation1()).isEqualTo(20.0);
   }
 
+  @Test
+  public void shouldLoadPastMeasuresOnceByPeriod() {
+    Resource dir1 = new Directory("org/foo");
+    Resource dir2 = new Directory("org/bar");
+
+    PastMeasuresLoader pastMeasuresLoader = mock(PastMeasuresLoader.class);
+    PastSnapshot pastSnapshot1 = new PastSnapshot("days", new Date()).setIndex(1);
+    PastSnapshot pastSnapshot2 = new PastSnapshot("days", new Date()).setIndex(2);
+    when(pastMeasuresLoader.getModulePastMeasures(pastSnapshot1)).thenReturn(mock(PastMeasures.class));
+    when(pastMeasuresLoader.getModulePastMeasures(pastSnapshot2)).thenReturn(mock(PastMeasures.class));
+
+    DecoratorContext context = mock(DecoratorContext.class);
+    when(context.getMeasures(Matchers.<MeasuresFilter>anyObject())).thenReturn(Collections.emptyList());
+    VariationDecorator decorator = new VariationDecorator(pastMeasuresLoader, mock(MetricFinder.class), Arrays.asList(pastSnapshot1, pastSnapshot2), mock(RuleFinder.class));
+    decorator.decorate(dir1, context);
+    decorator.decorate(dir2, context);
+
+    verify(pastMeasuresLoader).getModulePastMeasures(pastSnapshot1);
+    verify(pastMeasuresLoader).getModulePastMeasures(pastSnapshot2);
+    verify(pastMeasuresLoader, never()).getPastMeasures(Matchers.any(Resource.class), Matchers.any(PastSnapshot.class));
+  }
+
   private Measure newMeasure(Metric metric, double value) {
     return new Measure(metric, value);
   }
@@ -20,8 +20,10 @@
 
 package org.sonar.plugins.cpd;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.slf4j.Logger;
@@ -57,8 +59,10 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.*;
@@ -74,6 +78,12 @@ public class SonarEngine extends CpdEngine {
    */
   private static final int TIMEOUT = 5 * 60;
 
+  /**
+   * Number of files for which duplications are detected concurrently. Default is 1.
+   * @since 4.4
+   */
+  public static final String THREADS_PROPERTY = "sonar.cpd.threads";
+
   private final IndexFactory indexFactory;
   private final FileSystem fs;
   private final Settings settings;
@@ -102,65 +112,154 @@ public class SonarEngine extends CpdEngine {
     if (sourceFiles.isEmpty()) {
       return;
     }
-    SonarDuplicationsIndex index = createIndex(project, languageKey, sourceFiles);
-    detect(index, context, sourceFiles);
+    int threads = threads(settings);
+    ExecutorService executorService = Executors.newFixedThreadPool(threads,
+      new ThreadFactoryBuilder().setNameFormat("cpd-%d").setDaemon(true).build());
+    try {
+      SonarDuplicationsIndex index = createIndex(project, languageKey, sourceFiles, executorService, threads);
+      detect(index, context, sourceFiles, executorService, threads);
+    } finally {
+      executorService.shutdownNow();
+    }
   }
 
-  private SonarDuplicationsIndex createIndex(Project project, String language, Iterable<InputFile> sourceFiles) {
+  private SonarDuplicationsIndex createIndex(Project project, String language, List<InputFile> sourceFiles, ExecutorService executorService, int threads) {
     final SonarDuplicationsIndex index = indexFactory.create(project, language);
 
-    TokenChunker tokenChunker = JavaTokenProducer.build();
-    StatementChunker statementChunker = JavaStatementBuilder.build();
-    BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
+    // Chunkers are not thread-safe
+    ThreadLocal<Chunkers> chunkers = new ThreadLocal<Chunkers>() {
+      @Override
+      protected Chunkers initialValue() {
+        return new Chunkers();
+      }
+    };
+
+    // Files are read and chunked concurrently, but blocks are inserted on this thread, in the order of files,
+    // so that the content of the index does not depend on scheduling
+    LinkedList<Chunking> pending = new LinkedList<Chunking>();
+    for (InputFile inputFile : sourceFiles) {
+      if (pending.size() >= threads) {
+        pending.removeFirst().insertInto(index);
+      }
+      pending.addLast(new Chunking(inputFile, fs.encoding(), chunkers).submit(executorService));
+    }
+    while (!pending.isEmpty()) {
+      pending.removeFirst().insertInto(index);
+    }
+
+    return index;
+  }
 
+  private void detect(SonarDuplicationsIndex index, SensorContext context, List<InputFile> sourceFiles, ExecutorService executorService, int threads) {
+    // At most one detection per thread is pending, so that each one starts as soon as submitted and
+    // the per-file timeout keeps its meaning. Results are saved on this thread, in the order of files.
+    LinkedList<Detection> pending = new LinkedList<Detection>();
     for (InputFile inputFile : sourceFiles) {
+      if (pending.size() >= threads) {
+        pending.removeFirst().save(context);
+      }
+      LOG.debug("Detection of duplications for {}", inputFile);
+      String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
+
+      CloneIndex view = index.readOnlyView(inputFile);
+      Collection<Block> fileBlocks = view.getByResourceId(resourceEffectiveKey);
+      pending.addLast(new Detection(inputFile, executorService.submit(new Task(view, fileBlocks))));
+    }
+    while (!pending.isEmpty()) {
+      pending.removeFirst().save(context);
+    }
+  }
+
+  @VisibleForTesting
+  static int threads(Settings settings) {
+    if (settings.hasKey(THREADS_PROPERTY)) {
+      return Math.max(1, settings.getInt(THREADS_PROPERTY));
+    }
+    return 1;
+  }
+
+  private static class Chunkers {
+    private final TokenChunker tokenChunker = JavaTokenProducer.build();
+    private final StatementChunker statementChunker = JavaStatementBuilder.build();
+    private final BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
+  }
+
+  private static class Chunking implements Callable<List<Block>> {
+    private final InputFile inputFile;
+    private final Charset encoding;
+    private final ThreadLocal<Chunkers> chunkers;
+    private Future<List<Block>> blocks;
+
+    Chunking(InputFile inputFile, Charset encoding, ThreadLocal<Chunkers> chunkers) {
+      this.inputFile = inputFile;
+      this.encoding = encoding;
+      this.chunkers = chunkers;
+    }
+
+    Chunking submit(ExecutorService executorService) {
+      blocks = executorService.submit(this);
+      return this;
+    }
+
+    public List<Block> call() {
       LOG.debug("Populating index from {}", inputFile);
       String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
+      Chunkers c = chunkers.get();
 
       List<Statement> statements;
 
       Reader reader = null;
       try {
-        reader = new InputStreamReader(new FileInputStream(inputFile.file()), fs.encoding());
-        statements = statementChunker.chunk(tokenChunker.chunk(reader));
+        reader = new InputStreamReader(new FileInputStream(inputFile.file()), encoding);
+        statements = c.statementChunker.chunk(c.tokenChunker.chunk(reader));
       } catch (FileNotFoundException e) {
         throw new SonarException("Cannot find file " + inputFile.file(), e);
       } finally {
         IOUtils.closeQuietly(reader);
       }
 
-      List<Block> blocks = blockChunker.chunk(resourceEffectiveKey, statements);
-      index.insert(inputFile, blocks);
+      return c.blockChunker.chunk(resourceEffectiveKey, statements);
     }
 
-    return index;
+    void insertInto(SonarDuplicationsIndex index) {
+      try {
+        index.insert(inputFile, blocks.get());
+      } catch (InterruptedException e) {
+        throw new SonarException("Fail to populate index from " + inputFile, e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new SonarException("Fail to populate index from " + inputFile, e);
+      }
+    }
   }
 
-  private void detect(SonarDuplicationsIndex index, SensorContext context, List<InputFile> sourceFiles) {
-    ExecutorService executorService = Executors.newSingleThreadExecutor();
-    try {
-      for (InputFile inputFile : sourceFiles) {
-        LOG.debug("Detection of duplications for {}", inputFile);
-        String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
-
-        Collection<Block> fileBlocks = index.getByInputFile(inputFile, resourceEffectiveKey);
-
-        List<CloneGroup> clones;
-        try {
-          clones = executorService.submit(new Task(index, fileBlocks)).get(TIMEOUT, TimeUnit.SECONDS);
-        } catch (TimeoutException e) {
-          clones = null;
-          LOG.warn("Timeout during detection of duplications for " + inputFile, e);
-        } catch (InterruptedException e) {
-          throw new SonarException("Fail during detection of duplication for " + inputFile, e);
-        } catch (ExecutionException e) {
-          throw new SonarException("Fail during detection of duplication for " + inputFile, e);
-        }
+  private static class Detection {
+    private final InputFile inputFile;
+    private final Future<List<CloneGroup>> clones;
+    private final long deadline;
+
+    Detection(InputFile inputFile, Future<List<CloneGroup>> clones) {
+      this.inputFile = inputFile;
+      this.clones = clones;
+      this.deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+    }
 
-        save(context, inputFile, clones);
+    void save(SensorContext context) {
+      List<CloneGroup> result;
+      try {
+        result = clones.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        result = null;
+        clones.cancel(true);
+        LOG.warn("Timeout during detection of duplications for " + inputFile, e);
+      } catch (InterruptedException e) {
+        throw new SonarException("Fail during detection of duplication for " + inputFile, e);
+      } catch (ExecutionException e) {
+        throw new SonarException("Fail during detection of duplication for " + inputFile, e);
       }
-    } finally {
-      executorService.shutdown();
+      SonarEngine.save(context, inputFile, result);
     }
   }
 
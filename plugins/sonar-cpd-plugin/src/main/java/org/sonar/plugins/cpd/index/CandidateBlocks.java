@@ -0,0 +1,152 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.cpd.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.sonar.core.duplication.DuplicationUnitDto;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.DataUtils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blocks of other projects, stored in flat arrays sorted by hash. Resources are referenced by their ids,
+ * each resource key being kept only once.
+ * <p/>
+ * Not thread-safe while blocks are added. Once {@link #seal()} is called, queries can be executed concurrently.
+ */
+class CandidateBlocks {
+
+  private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+  private static final int HASH_LENGTH = 16;
+  private static final int BLOCK_INTS = 4;
+
+  private final Map<Integer, String> resourceKeys = Maps.newHashMap();
+  private long[] hashes = new long[DEFAULT_INITIAL_CAPACITY];
+  private int[] blockData = new int[DEFAULT_INITIAL_CAPACITY * BLOCK_INTS];
+  private int size = 0;
+  private boolean sealed = false;
+
+  void add(DuplicationUnitDto unit) {
+    if (sealed) {
+      throw new IllegalStateException("Blocks can not be added once sealed");
+    }
+    String hash = unit.getHash();
+    if (hash == null || hash.length() != HASH_LENGTH) {
+      // blocks of current analysis are 8-byte hashes, so such a block can not be a candidate
+      return;
+    }
+    ensureCapacity();
+    int resourceId = unit.getResourceId();
+    if (!resourceKeys.containsKey(resourceId)) {
+      resourceKeys.put(resourceId, unit.getResourceKey());
+    }
+    hashes[size] = (Long.parseLong(hash.substring(0, 8), 16) << 32) | Long.parseLong(hash.substring(8), 16);
+    int offset = size * BLOCK_INTS;
+    blockData[offset++] = resourceId;
+    blockData[offset++] = unit.getIndexInFile();
+    blockData[offset++] = unit.getStartLine();
+    blockData[offset] = unit.getEndLine();
+    size++;
+  }
+
+  CandidateBlocks seal() {
+    DataUtils.sort(byHash);
+    sealed = true;
+    return this;
+  }
+
+  int size() {
+    return size;
+  }
+
+  Collection<Block> getByHash(ByteArray hash) {
+    int[] ints = hash.toIntArray();
+    if (ints.length != 2 || size == 0) {
+      return Collections.emptyList();
+    }
+    long value = ((long) ints[0] << 32) | (ints[1] & 0xFFFFFFFFL);
+
+    int lower = 0;
+    int upper = size;
+    while (lower < upper) {
+      int mid = (lower + upper) >>> 1;
+      if (hashes[mid] < value) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
+      }
+    }
+
+    List<Block> result = Lists.newArrayList();
+    Block.Builder builder = Block.builder();
+    for (int index = lower; index < size && hashes[index] == value; index++) {
+      int offset = index * BLOCK_INTS;
+      result.add(builder
+        .setResourceId(resourceKeys.get(blockData[offset]))
+        .setBlockHash(hash)
+        .setIndexInFile(blockData[offset + 1])
+        .setLines(blockData[offset + 2], blockData[offset + 3])
+        .build());
+    }
+    return result;
+  }
+
+  private void ensureCapacity() {
+    if (size < hashes.length) {
+      return;
+    }
+    int newCapacity = (hashes.length * 3) / 2 + 1;
+    long[] oldHashes = hashes;
+    hashes = new long[newCapacity];
+    System.arraycopy(oldHashes, 0, hashes, 0, size);
+    int[] oldBlockData = blockData;
+    blockData = new int[newCapacity * BLOCK_INTS];
+    System.arraycopy(oldBlockData, 0, blockData, 0, size * BLOCK_INTS);
+  }
+
+  private final DataUtils.Sortable byHash = new DataUtils.Sortable() {
+    public int size() {
+      return size;
+    }
+
+    public void swap(int i, int j) {
+      long hash = hashes[i];
+      hashes[i] = hashes[j];
+      hashes[j] = hash;
+      int offsetI = i * BLOCK_INTS;
+      int offsetJ = j * BLOCK_INTS;
+      for (int k = 0; k < BLOCK_INTS; k++, offsetI++, offsetJ++) {
+        int x = blockData[offsetI];
+        blockData[offsetI] = blockData[offsetJ];
+        blockData[offsetJ] = x;
+      }
+    }
+
+    public boolean isLess(int i, int j) {
+      return hashes[i] < hashes[j];
+    }
+  };
+}
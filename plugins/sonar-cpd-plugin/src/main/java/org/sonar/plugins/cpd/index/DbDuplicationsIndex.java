@@ -20,7 +20,10 @@
 package org.sonar.plugins.cpd.index;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.resources.Project;
@@ -31,23 +34,38 @@ import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 public class DbDuplicationsIndex {
 
-  private final Map<ByteArray, Collection<Block>> cache = Maps.newHashMap();
+  private static final Logger LOG = LoggerFactory.getLogger(DbDuplicationsIndex.class);
+
+  private CandidateBlocks cache = new CandidateBlocks().seal();
 
   private final ResourcePersister resourcePersister;
   private final int currentProjectSnapshotId;
   private final Integer lastSnapshotId;
   private final String languageKey;
+  private final boolean bulkLoad;
+
+  /**
+   * Candidates of all the files of the project, when {@link #bulkLoad} is enabled
+   */
+  private CandidateBlocks projectCandidates;
 
   private DuplicationDao dao;
 
   public DbDuplicationsIndex(ResourcePersister resourcePersister, Project currentProject, DuplicationDao dao,
                              String language) {
+    this(resourcePersister, currentProject, dao, language, false);
+  }
+
+  /**
+   * @param bulkLoad if true, then candidates of all files are loaded at once, when the first file is prepared. So all the
+   *                 files of the project must be inserted before.
+   */
+  public DbDuplicationsIndex(ResourcePersister resourcePersister, Project currentProject, DuplicationDao dao,
+                             String language, boolean bulkLoad) {
     this.dao = dao;
     this.resourcePersister = resourcePersister;
     Snapshot currentSnapshot = resourcePersister.getSnapshotOrFail(currentProject);
@@ -55,6 +73,7 @@ public class DbDuplicationsIndex {
     this.currentProjectSnapshotId = currentSnapshot.getId();
     this.lastSnapshotId = lastSnapshot == null ? null : lastSnapshot.getId();
     this.languageKey = language;
+    this.bulkLoad = bulkLoad;
   }
 
   int getSnapshotIdFor(InputFile inputFile) {
@@ -62,42 +81,42 @@ public class DbDuplicationsIndex {
   }
 
   public void prepareCache(InputFile inputFile) {
+    cache = loadCandidates(inputFile);
+  }
+
+  /**
+   * Blocks of other projects that may be duplicated by given file. Unlike {@link #prepareCache(InputFile)},
+   * this method does not change the state of the index and the returned blocks can be queried concurrently.
+   */
+  CandidateBlocks loadCandidates(InputFile inputFile) {
+    if (bulkLoad) {
+      return loadProjectCandidates();
+    }
     int resourceSnapshotId = getSnapshotIdFor(inputFile);
     List<DuplicationUnitDto> units = dao.selectCandidates(resourceSnapshotId, lastSnapshotId, languageKey);
-    cache.clear();
-    // TODO Godin: maybe remove conversion of units to blocks?
+    CandidateBlocks candidates = new CandidateBlocks();
     for (DuplicationUnitDto unit : units) {
-      String hash = unit.getHash();
-      String resourceKey = unit.getResourceKey();
-      int indexInFile = unit.getIndexInFile();
-      int startLine = unit.getStartLine();
-      int endLine = unit.getEndLine();
-
-      // TODO Godin: in fact we could work directly with id instead of key - this will allow to decrease memory consumption
-      Block block = Block.builder()
-        .setResourceId(resourceKey)
-        .setBlockHash(new ByteArray(hash))
-        .setIndexInFile(indexInFile)
-        .setLines(startLine, endLine)
-        .build();
-
-      // Group blocks by hash
-      Collection<Block> sameHash = cache.get(block.getBlockHash());
-      if (sameHash == null) {
-        sameHash = Lists.newArrayList();
-        cache.put(block.getBlockHash(), sameHash);
-      }
-      sameHash.add(block);
+      candidates.add(unit);
     }
+    return candidates.seal();
   }
 
-  public Collection<Block> getByHash(ByteArray hash) {
-    Collection<Block> result = cache.get(hash);
-    if (result != null) {
-      return result;
-    } else {
-      return Collections.emptyList();
+  private synchronized CandidateBlocks loadProjectCandidates() {
+    if (projectCandidates == null) {
+      final CandidateBlocks candidates = new CandidateBlocks();
+      dao.selectCandidatesOfProjectSnapshot(currentProjectSnapshotId, lastSnapshotId, languageKey, new ResultHandler() {
+        public void handleResult(ResultContext context) {
+          candidates.add((DuplicationUnitDto) context.getResultObject());
+        }
+      });
+      projectCandidates = candidates.seal();
+      LOG.debug("{} blocks of other projects loaded for cross-project detection", projectCandidates.size());
     }
+    return projectCandidates;
+  }
+
+  public Collection<Block> getByHash(ByteArray hash) {
+    return cache.getByHash(hash);
   }
 
   public void insert(InputFile inputFile, Collection<Block> blocks) {
@@ -34,6 +34,13 @@ public class IndexFactory implements BatchExtension {
 
   private static final Logger LOG = LoggerFactory.getLogger(IndexFactory.class);
 
+  /**
+   * When cross-project detection is enabled, load the candidate blocks of all the files of a module with a single
+   * query instead of one query per file. Default is false.
+   * @since 4.4
+   */
+  public static final String BULK_LOAD_PROPERTY = "sonar.cpd.cross_project.bulkLoad";
+
   private final Settings settings;
   private final ResourcePersister resourcePersister;
   private final DuplicationDao dao;
@@ -46,7 +53,8 @@ public class IndexFactory implements BatchExtension {
 
   public SonarDuplicationsIndex create(Project project, String languageKey) {
     if (verifyCrossProject(project, LOG)) {
-      return new SonarDuplicationsIndex(new DbDuplicationsIndex(resourcePersister, project, dao, languageKey));
+      boolean bulkLoad = settings.getBoolean(BULK_LOAD_PROPERTY);
+      return new SonarDuplicationsIndex(new DbDuplicationsIndex(resourcePersister, project, dao, languageKey, bulkLoad));
     }
     return new SonarDuplicationsIndex();
   }
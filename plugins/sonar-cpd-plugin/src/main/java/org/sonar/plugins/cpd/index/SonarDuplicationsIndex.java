@@ -27,6 +27,8 @@ import org.sonar.duplications.index.AbstractCloneIndex;
 import org.sonar.duplications.index.CloneIndex;
 import org.sonar.duplications.index.PackedMemoryCloneIndex;
 
+import javax.annotation.Nullable;
+
 import java.util.Collection;
 import java.util.List;
 
@@ -43,7 +45,10 @@ public class SonarDuplicationsIndex extends AbstractCloneIndex {
     this.db = db;
   }
 
-  public void insert(InputFile inputFile, Collection<Block> blocks) {
+  /**
+   * Thread-safe. Blocks of a file are inserted atomically.
+   */
+  public synchronized void insert(InputFile inputFile, Collection<Block> blocks) {
     for (Block block : blocks) {
       mem.insert(block);
     }
@@ -59,6 +64,15 @@ public class SonarDuplicationsIndex extends AbstractCloneIndex {
     return mem.getByResourceId(resourceKey);
   }
 
+  /**
+   * Read-only index used to detect duplications of given file. Contrary to this index, the returned view
+   * can be queried concurrently with the views of other files. It must be called once all files are inserted.
+   */
+  public CloneIndex readOnlyView(InputFile inputFile) {
+    CandidateBlocks candidates = db == null ? null : db.loadCandidates(inputFile);
+    return new ReadOnlyView(mem, candidates);
+  }
+
   public Collection<Block> getBySequenceHash(ByteArray hash) {
     if (db == null) {
       return mem.getBySequenceHash(hash);
@@ -77,4 +91,32 @@ public class SonarDuplicationsIndex extends AbstractCloneIndex {
     throw new UnsupportedOperationException();
   }
 
+  private static class ReadOnlyView extends AbstractCloneIndex {
+    private final CloneIndex mem;
+    private final CandidateBlocks candidates;
+
+    ReadOnlyView(CloneIndex mem, @Nullable CandidateBlocks candidates) {
+      this.mem = mem;
+      this.candidates = candidates;
+    }
+
+    public Collection<Block> getByResourceId(String resourceId) {
+      return mem.getByResourceId(resourceId);
+    }
+
+    public Collection<Block> getBySequenceHash(ByteArray hash) {
+      Collection<Block> fromDb = candidates == null ? null : candidates.getByHash(hash);
+      if (fromDb == null || fromDb.isEmpty()) {
+        return mem.getBySequenceHash(hash);
+      }
+      List<Block> result = Lists.newArrayList(mem.getBySequenceHash(hash));
+      result.addAll(fromDb);
+      return result;
+    }
+
+    public void insert(Block block) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
 }
@@ -19,23 +19,34 @@
  */
 package org.sonar.plugins.cpd;
 
+import com.google.common.collect.Lists;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.sonar.api.batch.SensorContext;
 import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.resources.Project;
 import org.sonar.api.test.IsMeasure;
 import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.ClonePart;
+import org.sonar.plugins.cpd.index.IndexFactory;
+import org.sonar.plugins.cpd.index.SonarDuplicationsIndex;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyDouble;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -153,6 +164,48 @@ public class SonarEngineTest {
         + "</g></duplications>")));
   }
 
+  @Test
+  public void detect_duplications_concurrently() throws Exception {
+    String duplicated = "public class Foo {\n" + StringUtils.repeat("  void m() { int i = 0; i++; System.out.println(i); }\n", 20) + "}\n";
+    DefaultFileSystem fs = new DefaultFileSystem();
+    List<DefaultInputFile> files = Lists.newArrayList();
+    for (int i = 0; i < 6; i++) {
+      File file = temp.newFile("Foo" + i + ".java");
+      // odd files are duplicated, even files are unique
+      FileUtils.write(file, i % 2 == 1 ? duplicated : "public class Foo" + i + " {\n}\n");
+      DefaultInputFile javaFile = new DefaultInputFile("src/Foo" + i + ".java")
+        .setFile(file).setKey("foo:src/Foo" + i + ".java").setLanguage("java").setType(InputFile.Type.MAIN);
+      fs.add(javaFile);
+      files.add(javaFile);
+    }
+    Project project = new Project("foo");
+    IndexFactory indexFactory = mock(IndexFactory.class);
+    when(indexFactory.create(project, "java")).thenReturn(new SonarDuplicationsIndex());
+    Settings settings = new Settings().setProperty(SonarEngine.THREADS_PROPERTY, 3);
+
+    new SonarEngine(indexFactory, fs, settings).analyse(project, "java", context);
+
+    for (DefaultInputFile javaFile : files) {
+      if (javaFile.relativePath().matches(".*[135]\\.java")) {
+        verify(context).saveMeasure(javaFile, CoreMetrics.DUPLICATED_FILES, 1d);
+      } else {
+        verify(context, never()).saveMeasure(eq(javaFile), eq(CoreMetrics.DUPLICATED_FILES), anyDouble());
+      }
+    }
+  }
+
+  @Test
+  public void number_of_threads() {
+    Settings settings = new Settings();
+    assertThat(SonarEngine.threads(settings)).isEqualTo(1);
+
+    settings.setProperty(SonarEngine.THREADS_PROPERTY, 8);
+    assertThat(SonarEngine.threads(settings)).isEqualTo(8);
+
+    settings.setProperty(SonarEngine.THREADS_PROPERTY, -1);
+    assertThat(SonarEngine.threads(settings)).isEqualTo(1);
+  }
+
   private CloneGroup newCloneGroup(ClonePart... parts) {
     return CloneGroup.builder().setLength(0).setOrigin(parts[0]).setParts(Arrays.asList(parts)).build();
   }
@@ -0,0 +1,138 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.cpd.index;
+
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.database.model.Snapshot;
+import org.sonar.api.resources.Project;
+import org.sonar.batch.index.ResourcePersister;
+import org.sonar.core.duplication.DuplicationDao;
+import org.sonar.core.duplication.DuplicationUnitDto;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DbDuplicationsIndexTest {
+
+  Project project = new Project("foo");
+  InputFile file1 = new DefaultInputFile("src/Foo1.java");
+  InputFile file2 = new DefaultInputFile("src/Foo2.java");
+  ResourcePersister resourcePersister = mock(ResourcePersister.class);
+  DuplicationDao dao = mock(DuplicationDao.class);
+
+  @Before
+  public void setUp() {
+    when(resourcePersister.getSnapshotOrFail(project)).thenReturn(snapshot(10));
+    when(resourcePersister.getLastSnapshot(any(Snapshot.class), eq(false))).thenReturn(snapshot(7));
+    when(resourcePersister.getSnapshotOrFail(file1)).thenReturn(snapshot(11));
+    when(resourcePersister.getSnapshotOrFail(file2)).thenReturn(snapshot(12));
+  }
+
+  @Test
+  public void load_candidates_of_each_file() {
+    when(dao.selectCandidates(11, 7, "java")).thenReturn(Arrays.asList(unit(2, "bar", "00000000000000aa", 3)));
+    when(dao.selectCandidates(12, 7, "java")).thenReturn(Arrays.<DuplicationUnitDto>asList());
+    DbDuplicationsIndex index = new DbDuplicationsIndex(resourcePersister, project, dao, "java");
+
+    index.prepareCache(file1);
+    Collection<Block> blocks = index.getByHash(new ByteArray(0xaaL));
+    assertThat(blocks).hasSize(1);
+    Block block = blocks.iterator().next();
+    assertThat(block.getResourceId()).isEqualTo("bar");
+    assertThat(block.getIndexInFile()).isEqualTo(3);
+    assertThat(block.getStartLine()).isEqualTo(30);
+    assertThat(block.getEndLine()).isEqualTo(40);
+
+    index.prepareCache(file2);
+    assertThat(index.getByHash(new ByteArray(0xaaL))).isEmpty();
+    verify(dao, never()).selectCandidatesOfProjectSnapshot(anyInt(), any(Integer.class), anyString(), any(ResultHandler.class));
+  }
+
+  @Test
+  public void bulk_load_candidates_of_all_files() {
+    doAnswer(new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) {
+        ResultHandler handler = (ResultHandler) invocation.getArguments()[3];
+        handler.handleResult(result(unit(2, "bar", "00000000000000aa", 3)));
+        handler.handleResult(result(unit(3, "baz", "00000000000000bb", 5)));
+        handler.handleResult(result(unit(2, "bar", "ffffffffffffffff", 1)));
+        handler.handleResult(result(unit(3, "baz", "00000000000000aa", 8)));
+        return null;
+      }
+    }).when(dao).selectCandidatesOfProjectSnapshot(eq(10), eq(7), eq("java"), any(ResultHandler.class));
+    DbDuplicationsIndex index = new DbDuplicationsIndex(resourcePersister, project, dao, "java", true);
+
+    index.prepareCache(file1);
+    assertThat(index.getByHash(new ByteArray(0xaaL))).hasSize(2);
+    assertThat(index.getByHash(new ByteArray(0xbbL)).iterator().next().getResourceId()).isEqualTo("baz");
+    assertThat(index.getByHash(new ByteArray(-1L)).iterator().next().getIndexInFile()).isEqualTo(1);
+    assertThat(index.getByHash(new ByteArray(0xccL))).isEmpty();
+
+    index.prepareCache(file2);
+    assertThat(index.getByHash(new ByteArray(0xaaL))).hasSize(2);
+
+    verify(dao, times(1)).selectCandidatesOfProjectSnapshot(eq(10), eq(7), eq("java"), any(ResultHandler.class));
+    verify(dao, never()).selectCandidates(anyInt(), any(Integer.class), anyString());
+  }
+
+  private static Snapshot snapshot(int id) {
+    Snapshot snapshot = new Snapshot();
+    snapshot.setId(id);
+    return snapshot;
+  }
+
+  private static DuplicationUnitDto unit(int resourceId, String resourceKey, String hash, int indexInFile) {
+    DuplicationUnitDto unit = new DuplicationUnitDto();
+    unit.setResourceId(resourceId);
+    unit.setResourceKey(resourceKey);
+    unit.setHash(hash);
+    unit.setIndexInFile(indexInFile);
+    unit.setStartLine(indexInFile * 10);
+    unit.setEndLine(indexInFile * 10 + 10);
+    return unit;
+  }
+
+  private static ResultContext result(final DuplicationUnitDto unit) {
+    ResultContext context = mock(ResultContext.class);
+    when(context.getResultObject()).thenReturn(unit);
+    return context;
+  }
+}
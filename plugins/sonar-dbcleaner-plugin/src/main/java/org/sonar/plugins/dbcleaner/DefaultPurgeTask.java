@@ -60,8 +60,9 @@ public class DefaultPurgeTask implements PurgeTask {
     profiler.reset();
     cleanHistoricalData(resourceId);
     doPurge(resourceId);
+    long duration = System.currentTimeMillis() - start;
+    LOG.debug("Purge of resource [id={}] done in {} ms, durations by step: {}", new Object[] {resourceId, duration, profiler.getDurations()});
     if (settings.getBoolean(CoreProperties.PROFILING_LOG_PROPERTY)) {
-      long duration = System.currentTimeMillis() - start;
       LOG.info("\n -------- Profiling for purge: " + TimeUtils.formatDuration(duration) + " --------\n");
       profiler.dump(duration, LOG);
       LOG.info("\n -------- End of profiling for purge --------\n");
@@ -36,6 +36,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -104,4 +105,17 @@ public class DefaultPurgeTaskTest {
 
     verify(profiler).dump(anyLong(), any(Logger.class));
   }
+
+  @Test
+  public void shouldLogDurationsOfPurgeSteps() {
+    Settings settings = new Settings(new PropertyDefinitions(DbCleanerPlugin.propertyDefinitions()));
+    PurgeProfiler profiler = mock(PurgeProfiler.class);
+
+    DefaultPurgeTask task = new DefaultPurgeTask(mock(PurgeDao.class), settings, mock(DefaultPeriodCleaner.class), profiler);
+    task.purge(1L);
+
+    verify(profiler).reset();
+    verify(profiler).getDurations();
+    verify(profiler, never()).dump(anyLong(), any(Logger.class));
+  }
 }
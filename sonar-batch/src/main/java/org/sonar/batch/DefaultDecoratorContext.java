@@ -19,9 +19,12 @@
  */
 package org.sonar.batch;
 
+import com.google.common.base.Objects;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Table;
 import org.sonar.api.batch.DecoratorContext;
 import org.sonar.api.batch.Event;
 import org.sonar.api.batch.SonarIndex;
@@ -32,14 +35,19 @@ import org.sonar.api.measures.MeasuresFilter;
 import org.sonar.api.measures.MeasuresFilters;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.measures.MetricFinder;
+import org.sonar.api.measures.RuleMeasure;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rules.Violation;
+import org.sonar.api.technicaldebt.batch.Characteristic;
 import org.sonar.api.utils.SonarException;
 import org.sonar.api.violations.ViolationQuery;
 import org.sonar.batch.scan.measure.MeasureCache;
 import org.sonar.core.measure.MeasurementFilters;
 
+import javax.annotation.Nullable;
+
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -56,6 +64,9 @@ public class DefaultDecoratorContext implements DecoratorContext {
   private List<DecoratorContext> childrenContexts;
 
   private ListMultimap<String, Measure> measuresByMetric = ArrayListMultimap.create();
+  private ListMultimap<MeasureKey, Measure> measuresByKey = ArrayListMultimap.create();
+  // [filter class | measure key] -> measures of children. Children are read-only, so they are aggregated once.
+  private Table<Class, MeasureKey, List<Measure>> childrenMeasuresByFilter = HashBasedTable.create();
   private MeasureCache measureCache;
   private MetricFinder metricFinder;
 
@@ -74,13 +85,14 @@ public class DefaultDecoratorContext implements DecoratorContext {
   public void init() {
     Iterable<Measure> unfiltered = measureCache.byResource(resource);
     for (Measure measure : unfiltered) {
-      measuresByMetric.put(measure.getMetricKey(), measure);
+      index(measure);
     }
   }
 
   public DefaultDecoratorContext end() {
     readOnly = true;
     childrenContexts = null;
+    childrenMeasuresByFilter.clear();
     for (Measure measure : measuresByMetric.values()) {
       measureCache.put(resource, measure);
     }
@@ -104,7 +116,10 @@ public class DefaultDecoratorContext implements DecoratorContext {
 
   public <M> M getMeasures(MeasuresFilter<M> filter) {
     Collection<Measure> unfiltered;
-    if (filter instanceof MeasuresFilters.MetricFilter) {
+    if (filter instanceof MeasuresFilters.MeasureKeyFilter) {
+      // optimization
+      unfiltered = measuresByKey.get(MeasureKey.of((MeasuresFilters.MeasureKeyFilter<M>) filter));
+    } else if (filter instanceof MeasuresFilters.MetricFilter) {
       // optimization
       unfiltered = measuresByMetric.get(((MeasuresFilters.MetricFilter<M>) filter).filterOnMetricKey());
     } else {
@@ -118,6 +133,20 @@ public class DefaultDecoratorContext implements DecoratorContext {
   }
 
   public Collection<Measure> getChildrenMeasures(MeasuresFilter filter) {
+    if (filter instanceof MeasuresFilters.MeasureKeyFilter) {
+      MeasureKey key = MeasureKey.of((MeasuresFilters.MeasureKeyFilter) filter);
+      List<Measure> childrenMeasures = childrenMeasuresByFilter.get(filter.getClass(), key);
+      if (childrenMeasures == null) {
+        childrenMeasures = aggregateChildrenMeasures(filter);
+        childrenMeasuresByFilter.put(filter.getClass(), key, childrenMeasures);
+      }
+      // callers are allowed to modify the returned collection
+      return Lists.newArrayList(childrenMeasures);
+    }
+    return aggregateChildrenMeasures(filter);
+  }
+
+  private List<Measure> aggregateChildrenMeasures(MeasuresFilter filter) {
     List<Measure> result = Lists.newArrayList();
     for (DecoratorContext childContext : childrenContexts) {
       Object childResult = childContext.getMeasures(filter);
@@ -148,29 +177,35 @@ public class DefaultDecoratorContext implements DecoratorContext {
     }
     measure.setMetric(metric);
     if (measurementFilters.accept(resource, measure)) {
-      List<Measure> metricMeasures = measuresByMetric.get(measure.getMetricKey());
+      // equal measures have the same key
+      List<Measure> sameKeyMeasures = measuresByKey.get(MeasureKey.of(measure));
 
       boolean add = true;
-      if (metricMeasures != null) {
-        int index = metricMeasures.indexOf(measure);
-        if (index > -1) {
-          if (metricMeasures.get(index) == measure) {
-            add = false;
-          } else if (measure.getMetric().equals(CoreMetrics.TESTS)) {
-            // Hack for SONAR-5212
-            measuresByMetric.remove(measure.getMetric().getKey(), metricMeasures.get(index));
-          } else {
-            throw new SonarException("Can not add twice the same measure on " + resource + ": " + measure);
-          }
+      int index = sameKeyMeasures.indexOf(measure);
+      if (index > -1) {
+        Measure existing = sameKeyMeasures.get(index);
+        if (existing == measure) {
+          add = false;
+        } else if (measure.getMetric().equals(CoreMetrics.TESTS)) {
+          // Hack for SONAR-5212
+          measuresByMetric.remove(measure.getMetric().getKey(), existing);
+          sameKeyMeasures.remove(index);
+        } else {
+          throw new SonarException("Can not add twice the same measure on " + resource + ": " + measure);
         }
       }
       if (add) {
-        measuresByMetric.put(measure.getMetricKey(), measure);
+        index(measure);
       }
     }
     return this;
   }
 
+  private void index(Measure measure) {
+    measuresByMetric.put(measure.getMetricKey(), measure);
+    measuresByKey.put(MeasureKey.of(measure), measure);
+  }
+
   public DecoratorContext saveMeasure(Metric metric, Double value) {
     checkReadOnly(SAVE_MEASURE_METHOD);
     saveMeasure(new Measure(metric, value));
@@ -231,4 +266,51 @@ public class DefaultDecoratorContext implements DecoratorContext {
   public DefaultDecoratorContext saveViolation(Violation violation) {
     return saveViolation(violation, false);
   }
+
+  /**
+   * Composite key [metric | rule | characteristic | person] of measures. Equal measures have the same key.
+   */
+  private static final class MeasureKey {
+    private final String metricKey;
+    private final RuleKey ruleKey;
+    private final Characteristic characteristic;
+    private final Integer personId;
+
+    private MeasureKey(String metricKey, @Nullable RuleKey ruleKey, @Nullable Characteristic characteristic, @Nullable Integer personId) {
+      this.metricKey = metricKey;
+      this.ruleKey = ruleKey;
+      this.characteristic = characteristic;
+      this.personId = personId;
+    }
+
+    static MeasureKey of(Measure measure) {
+      if (measure instanceof RuleMeasure) {
+        // characteristic is not part of the identity of rule measures
+        return new MeasureKey(measure.getMetricKey(), ((RuleMeasure) measure).ruleKey(), null, measure.getPersonId());
+      }
+      return new MeasureKey(measure.getMetricKey(), null, measure.getCharacteristic(), measure.getPersonId());
+    }
+
+    static MeasureKey of(MeasuresFilters.MeasureKeyFilter filter) {
+      return new MeasureKey(filter.filterOnMetricKey(), filter.filterOnRuleKey(), filter.filterOnCharacteristic(), null);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      MeasureKey that = (MeasureKey) o;
+      return Objects.equal(metricKey, that.metricKey) && Objects.equal(ruleKey, that.ruleKey)
+        && Objects.equal(characteristic, that.characteristic) && Objects.equal(personId, that.personId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(metricKey, ruleKey, characteristic, personId);
+    }
+  }
 }
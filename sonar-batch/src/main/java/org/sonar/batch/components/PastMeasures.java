@@ -0,0 +1,123 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.components;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Past measures of the resources of a module for a given period. Measures are stored in parallel arrays of
+ * primitives, the measures of a resource being contiguous. Null identifiers are stored as 0 and null values as NaN.
+ *
+ * @since 4.4
+ */
+public class PastMeasures {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final Map<String, int[]> rangesByResourceKey = Maps.newHashMap();
+  private int[] metricIds = new int[INITIAL_CAPACITY];
+  private int[] characteristicIds = new int[INITIAL_CAPACITY];
+  private int[] personIds = new int[INITIAL_CAPACITY];
+  private int[] ruleIds = new int[INITIAL_CAPACITY];
+  private double[] values = new double[INITIAL_CAPACITY];
+  private int size = 0;
+
+  private String lastResourceKey;
+  private int lastResourceStart;
+
+  /**
+   * Measures of a same resource must be added consecutively.
+   */
+  void add(String resourceKey, int metricId, @Nullable Integer characteristicId, @Nullable Integer personId, @Nullable Integer ruleId, @Nullable Double value) {
+    if (!resourceKey.equals(lastResourceKey)) {
+      endResource();
+      lastResourceKey = resourceKey;
+      lastResourceStart = size;
+    }
+    ensureCapacity(size + 1);
+    metricIds[size] = metricId;
+    characteristicIds[size] = idOrZero(characteristicId);
+    personIds[size] = idOrZero(personId);
+    ruleIds[size] = idOrZero(ruleId);
+    values[size] = value != null ? value : Double.NaN;
+    size++;
+  }
+
+  /**
+   * Must be called once all measures are added.
+   */
+  PastMeasures seal() {
+    endResource();
+    lastResourceKey = null;
+    return this;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Measures of the resource, in the format of {@link PastMeasuresLoader#getPastMeasures(String, org.sonar.api.database.model.Snapshot)}.
+   */
+  public List<Object[]> get(String resourceKey) {
+    int[] range = rangesByResourceKey.get(resourceKey);
+    if (range == null) {
+      return Collections.emptyList();
+    }
+    List<Object[]> rows = Lists.newArrayListWithCapacity(range[1] - range[0]);
+    for (int i = range[0]; i < range[1]; i++) {
+      rows.add(new Object[] {metricIds[i], nullIfZero(characteristicIds[i]), nullIfZero(personIds[i]), nullIfZero(ruleIds[i]), Double.isNaN(values[i]) ? null : values[i]});
+    }
+    return rows;
+  }
+
+  private void endResource() {
+    if (lastResourceKey != null) {
+      rangesByResourceKey.put(lastResourceKey, new int[] {lastResourceStart, size});
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > metricIds.length) {
+      int newCapacity = Math.max(capacity, metricIds.length * 2);
+      metricIds = Arrays.copyOf(metricIds, newCapacity);
+      characteristicIds = Arrays.copyOf(characteristicIds, newCapacity);
+      personIds = Arrays.copyOf(personIds, newCapacity);
+      ruleIds = Arrays.copyOf(ruleIds, newCapacity);
+      values = Arrays.copyOf(values, newCapacity);
+    }
+  }
+
+  private static int idOrZero(@Nullable Integer id) {
+    return id != null ? id : 0;
+  }
+
+  private static Integer nullIfZero(int id) {
+    return id != 0 ? id : null;
+  }
+}
@@ -29,10 +29,12 @@ import org.sonar.api.measures.Metric;
 import org.sonar.api.measures.MetricFinder;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.resources.Scopes;
 
 import javax.annotation.Nullable;
 import javax.persistence.Query;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -91,6 +93,42 @@ public class PastMeasuresLoader implements BatchExtension {
     return q.getResultList();
   }
 
+  /**
+   * Loads in a single query the past measures of the module and of its directories and sub-modules.
+   *
+   * @since 4.4
+   */
+  public PastMeasures getModulePastMeasures(PastSnapshot modulePastSnapshot) {
+    PastMeasures pastMeasures = new PastMeasures();
+    Snapshot moduleSnapshot = modulePastSnapshot.getProjectSnapshot();
+    if (moduleSnapshot != null) {
+      String sql = "select p.kee, m.metric_id, m.characteristic_id, m.person_id, m.rule_id, m.value from project_measures m, snapshots s, projects p" +
+        " where m.snapshot_id=s.id and s.project_id=p.id and m.metric_id in (:metricIds) " +
+        "       and (s.id=:moduleSnapshotId or (s.root_snapshot_id=:rootSnapshotId and s.path like :descendantsPath)) " +
+        "       and s.scope in (:scopes) and s.status=:status and p.qualifier<>:lib" +
+        " order by s.id";
+      List<Object[]> rows = session.createNativeQuery(sql)
+        .setParameter("metricIds", metricByIds.keySet())
+        .setParameter("moduleSnapshotId", moduleSnapshot.getId())
+        .setParameter("rootSnapshotId", ObjectUtils.defaultIfNull(moduleSnapshot.getRootId(), moduleSnapshot.getId()))
+        .setParameter("descendantsPath", StringUtils.defaultString(moduleSnapshot.getPath()) + moduleSnapshot.getId() + ".%")
+        .setParameter("scopes", Arrays.asList(Scopes.PROJECT, Scopes.DIRECTORY))
+        .setParameter("lib", Qualifiers.LIBRARY)
+        .setParameter("status", Snapshot.STATUS_PROCESSED)
+        .getResultList();
+      for (Object[] row : rows) {
+        // can be BigDecimal on Oracle
+        pastMeasures.add((String) row[0], ((Number) row[1]).intValue(), toInteger(row[2]), toInteger(row[3]), toInteger(row[4]),
+          row[5] != null ? ((Number) row[5]).doubleValue() : null);
+      }
+    }
+    return pastMeasures.seal();
+  }
+
+  private static Integer toInteger(@Nullable Object number) {
+    return number != null ? ((Number) number).intValue() : null;
+  }
+
   public static int getMetricId(Object[] row) {
     // can be BigDecimal on Oracle
     return ((Number) row[0]).intValue();
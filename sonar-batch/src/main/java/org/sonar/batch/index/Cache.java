@@ -23,6 +23,9 @@ import com.google.common.collect.Sets;
 import com.persistit.Exchange;
 import com.persistit.Key;
 import com.persistit.KeyFilter;
+import com.persistit.Persistit;
+import com.persistit.Value;
+import com.persistit.Volume;
 import com.persistit.exception.PersistitException;
 import org.apache.commons.lang.builder.ToStringBuilder;
 
@@ -32,49 +35,86 @@ import java.io.Serializable;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>
- * This cache is not thread-safe, due to direct usage of {@link com.persistit.Exchange}
+ * This cache is thread-safe. Each operation borrows a {@link com.persistit.Exchange} from the pool
+ * maintained by Persistit for the current thread and releases it when done, so that the same cache
+ * can be read and written concurrently.
+ * </p>
+ * <p>
+ * Iterables returned by {@link #values()}, {@link #entries()} and their variants own a dedicated
+ * exchange and must not be shared between threads.
  * </p>
  */
 public class Cache<V extends Serializable> {
 
   private final String name;
-  private final Exchange exchange;
+  private final Persistit persistit;
+  private final Volume volume;
+
+  // statistics, logged when caches are closed
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong puts = new AtomicLong();
+  private final AtomicLong removals = new AtomicLong();
 
-  Cache(String name, Exchange exchange) {
+  Cache(String name, Persistit persistit, Volume volume) {
     this.name = name;
-    this.exchange = exchange;
+    this.persistit = persistit;
+    this.volume = volume;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  long hits() {
+    return hits.get();
+  }
+
+  long misses() {
+    return misses.get();
+  }
+
+  long puts() {
+    return puts.get();
+  }
+
+  long removals() {
+    return removals.get();
   }
 
   public Cache<V> put(Object key, V value) {
-    resetKey(key);
-    return doPut(value);
+    return doPut(value, key);
   }
 
   public Cache<V> put(Object firstKey, Object secondKey, V value) {
-    resetKey(firstKey, secondKey);
-    return doPut(value);
+    return doPut(value, firstKey, secondKey);
   }
 
   public Cache<V> put(Object firstKey, Object secondKey, Object thirdKey, V value) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doPut(value);
+    return doPut(value, firstKey, secondKey, thirdKey);
   }
 
   public Cache<V> put(Object[] key, V value) {
-    resetKey(key);
-    return doPut(value);
+    return doPut(value, key);
   }
 
-  private Cache<V> doPut(V value) {
+  private Cache<V> doPut(V value, Object... keys) {
+    Exchange exchange = null;
     try {
+      exchange = borrowExchange();
+      resetKey(exchange, keys);
       exchange.getValue().put(value);
       exchange.store();
+      puts.incrementAndGet();
       return this;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to put element in the cache " + name, e);
+    } finally {
+      releaseExchange(exchange);
     }
   }
 
@@ -82,8 +122,7 @@ public class Cache<V extends Serializable> {
    * Returns the value object associated with keys, or null if not found.
    */
   public V get(Object key) {
-    resetKey(key);
-    return doGet();
+    return doGet(key);
   }
 
   /**
@@ -91,8 +130,7 @@ public class Cache<V extends Serializable> {
    */
   @CheckForNull
   public V get(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doGet();
+    return doGet(firstKey, secondKey);
   }
 
   /**
@@ -100,8 +138,7 @@ public class Cache<V extends Serializable> {
    */
   @CheckForNull
   public V get(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doGet();
+    return doGet(firstKey, secondKey, thirdKey);
   }
 
   /**
@@ -109,81 +146,95 @@ public class Cache<V extends Serializable> {
    */
   @CheckForNull
   public V get(Object[] key) {
-    resetKey(key);
-    return doGet();
+    return doGet(key);
   }
 
   @SuppressWarnings("unchecked")
   @CheckForNull
-  private V doGet() {
+  private V doGet(Object... keys) {
+    Exchange exchange = null;
     try {
+      exchange = borrowExchange();
+      resetKey(exchange, keys);
       exchange.fetch();
       if (!exchange.getValue().isDefined()) {
+        misses.incrementAndGet();
         return null;
       }
+      hits.incrementAndGet();
       return (V) exchange.getValue().get();
     } catch (Exception e) {
       // TODO add parameters to message
       throw new IllegalStateException("Fail to get element from cache " + name, e);
+    } finally {
+      releaseExchange(exchange);
     }
   }
 
   public boolean containsKey(Object key) {
-    resetKey(key);
-    return doContainsKey();
+    return doContainsKey(key);
   }
 
   public boolean containsKey(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doContainsKey();
+    return doContainsKey(firstKey, secondKey);
   }
 
   public boolean containsKey(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doContainsKey();
+    return doContainsKey(firstKey, secondKey, thirdKey);
   }
 
   public boolean containsKey(Object[] key) {
-    resetKey(key);
-    return doContainsKey();
+    return doContainsKey(key);
   }
 
-  private boolean doContainsKey() {
+  private boolean doContainsKey(Object... keys) {
+    Exchange exchange = null;
     try {
+      exchange = borrowExchange();
+      resetKey(exchange, keys);
       exchange.fetch();
-      return exchange.isValueDefined();
+      boolean found = exchange.isValueDefined();
+      (found ? hits : misses).incrementAndGet();
+      return found;
     } catch (Exception e) {
       // TODO add parameters to message
       throw new IllegalStateException("Fail to check if element is in cache " + name, e);
+    } finally {
+      releaseExchange(exchange);
     }
   }
 
   public boolean remove(Object key) {
-    resetKey(key);
-    return doRemove();
+    return doRemove(key);
   }
 
   public boolean remove(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doRemove();
+    return doRemove(firstKey, secondKey);
   }
 
   public boolean remove(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doRemove();
+    return doRemove(firstKey, secondKey, thirdKey);
   }
 
   public boolean remove(Object[] key) {
-    resetKey(key);
-    return doRemove();
+    return doRemove(key);
   }
 
-  private boolean doRemove() {
+  private boolean doRemove(Object... keys) {
+    Exchange exchange = null;
     try {
-      return exchange.remove();
+      exchange = borrowExchange();
+      resetKey(exchange, keys);
+      boolean removed = exchange.remove();
+      if (removed) {
+        removals.incrementAndGet();
+      }
+      return removed;
     } catch (Exception e) {
       // TODO add parameters to message
       throw new IllegalStateException("Fail to get element from cache " + name, e);
+    } finally {
+      releaseExchange(exchange);
     }
   }
 
@@ -193,33 +244,34 @@ public class Cache<V extends Serializable> {
    * @param group The group name.
    */
   public Cache<V> clear(Object key) {
-    resetKey(key);
-    return doClear();
+    return doClear(key);
   }
 
   public Cache<V> clear(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doClear();
+    return doClear(firstKey, secondKey);
   }
 
   public Cache<V> clear(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doClear();
+    return doClear(firstKey, secondKey, thirdKey);
   }
 
   public Cache<V> clear(Object[] key) {
-    resetKey(key);
-    return doClear();
+    return doClear(key);
   }
 
-  private Cache<V> doClear() {
+  private Cache<V> doClear(Object... keys) {
+    Exchange exchange = null;
     try {
+      exchange = borrowExchange();
+      resetKey(exchange, keys);
       Key to = new Key(exchange.getKey());
       to.append(Key.AFTER);
       exchange.removeKeyRange(exchange.getKey(), to);
       return this;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to clear values from cache " + name, e);
+    } finally {
+      releaseExchange(exchange);
     }
   }
 
@@ -227,11 +279,15 @@ public class Cache<V extends Serializable> {
    * Clears the default as well as all group caches.
    */
   public void clear() {
+    Exchange exchange = null;
     try {
+      exchange = borrowExchange();
       exchange.clear();
       exchange.removeAll();
     } catch (Exception e) {
       throw new IllegalStateException("Fail to clear cache", e);
+    } finally {
+      releaseExchange(exchange);
     }
   }
 
@@ -244,37 +300,12 @@ public class Cache<V extends Serializable> {
    */
   @SuppressWarnings("rawtypes")
   public Set keySet(Object key) {
-    try {
-      Set<Object> keys = Sets.newLinkedHashSet();
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-      iteratorExchange.append(key);
-      iteratorExchange.append(Key.BEFORE);
-      while (iteratorExchange.next(false)) {
-        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
-      }
-      return keys;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get keys from cache " + name, e);
-    }
+    return doKeySet(key);
   }
 
   @SuppressWarnings("rawtypes")
   public Set keySet(Object firstKey, Object secondKey) {
-    try {
-      Set<Object> keys = Sets.newLinkedHashSet();
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-      iteratorExchange.append(firstKey);
-      iteratorExchange.append(secondKey);
-      iteratorExchange.append(Key.BEFORE);
-      while (iteratorExchange.next(false)) {
-        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
-      }
-      return keys;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get keys from cache " + name, e);
-    }
+    return doKeySet(firstKey, secondKey);
   }
 
   /**
@@ -283,17 +314,25 @@ public class Cache<V extends Serializable> {
    * @return The set containing the keys for this cache.
    */
   public Set<Object> keySet() {
+    return doKeySet();
+  }
+
+  private Set<Object> doKeySet(Object... keys) {
+    Exchange exchange = null;
     try {
-      Set<Object> keys = Sets.newLinkedHashSet();
-      exchange.clear();
+      Set<Object> result = Sets.newLinkedHashSet();
+      exchange = borrowExchange();
+      resetKey(exchange, keys);
       Exchange iteratorExchange = new Exchange(exchange);
       iteratorExchange.append(Key.BEFORE);
       while (iteratorExchange.next(false)) {
-        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
+        result.add(iteratorExchange.getKey().indexTo(-1).decode());
       }
-      return keys;
+      return result;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to get keys from cache " + name, e);
+    } finally {
+      releaseExchange(exchange);
     }
   }
 
@@ -301,74 +340,70 @@ public class Cache<V extends Serializable> {
    * Lazy-loading values for given keys
    */
   public Iterable<V> values(Object firstKey, Object secondKey) {
-    try {
-      exchange.clear();
-      exchange.append(firstKey).append(secondKey).append(Key.BEFORE);
-      Exchange iteratorExchange = new Exchange(exchange);
-      KeyFilter filter = new KeyFilter().append(KeyFilter.simpleTerm(firstKey)).append(KeyFilter.simpleTerm(secondKey));
-      return new ValueIterable<V>(iteratorExchange, filter);
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get values from cache " + name, e);
-    }
+    return new ValueIterable<V>(iteratorExchange(firstKey, secondKey), keyFilter(firstKey, secondKey));
   }
 
   /**
    * Lazy-loading values for a given key
    */
   public Iterable<V> values(Object firstKey) {
-    try {
-      exchange.clear();
-      exchange.append(firstKey).append(Key.BEFORE);
-      Exchange iteratorExchange = new Exchange(exchange);
-      KeyFilter filter = new KeyFilter().append(KeyFilter.simpleTerm(firstKey));
-      return new ValueIterable<V>(iteratorExchange, filter);
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get values from cache " + name, e);
-    }
+    return new ValueIterable<V>(iteratorExchange(firstKey), keyFilter(firstKey));
   }
 
   /**
    * Lazy-loading values
    */
   public Iterable<V> values() {
-    try {
-      exchange.clear().append(Key.BEFORE);
-      Exchange iteratorExchange = new Exchange(exchange);
-      KeyFilter filter = new KeyFilter().append(KeyFilter.ALL);
-      return new ValueIterable<V>(iteratorExchange, filter);
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get values from cache " + name, e);
-    }
+    return new ValueIterable<V>(iteratorExchange(), new KeyFilter().append(KeyFilter.ALL));
   }
 
   public Iterable<Entry<V>> entries() {
-    exchange.clear().to(Key.BEFORE);
-    KeyFilter filter = new KeyFilter().append(KeyFilter.ALL);
-    return new EntryIterable<V>(new Exchange(exchange), filter);
+    return new EntryIterable<V>(iteratorExchange(), new KeyFilter().append(KeyFilter.ALL));
   }
 
   public Iterable<Entry<V>> entries(Object firstKey) {
-    exchange.clear().append(firstKey).append(Key.BEFORE);
-    KeyFilter filter = new KeyFilter().append(KeyFilter.simpleTerm(firstKey));
-    return new EntryIterable<V>(new Exchange(exchange), filter);
+    return new EntryIterable<V>(iteratorExchange(firstKey), keyFilter(firstKey));
   }
 
-  private void resetKey(Object key) {
-    exchange.clear();
-    exchange.append(key);
+  /**
+   * Creates an exchange positioned before the first key of the given group. Unlike the exchanges
+   * borrowed from the pool, it is owned by the caller and is never released.
+   */
+  private Exchange iteratorExchange(Object... keys) {
+    Exchange exchange = null;
+    try {
+      exchange = borrowExchange();
+      resetKey(exchange, keys);
+      exchange.append(Key.BEFORE);
+      return new Exchange(exchange);
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get values from cache " + name, e);
+    } finally {
+      releaseExchange(exchange);
+    }
   }
 
-  private void resetKey(Object first, Object second) {
-    exchange.clear();
-    exchange.append(first).append(second);
+  private static KeyFilter keyFilter(Object... keys) {
+    KeyFilter filter = new KeyFilter();
+    for (Object key : keys) {
+      filter = filter.append(KeyFilter.simpleTerm(key));
+    }
+    return filter;
   }
 
-  private void resetKey(Object first, Object second, Object third) {
-    exchange.clear();
-    exchange.append(first).append(second).append(third);
+  private Exchange borrowExchange() throws PersistitException {
+    Exchange exchange = persistit.getExchange(volume, name, true);
+    exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
+    return exchange;
+  }
+
+  private void releaseExchange(@CheckForNull Exchange exchange) {
+    if (exchange != null) {
+      persistit.releaseExchange(exchange);
+    }
   }
 
-  private void resetKey(Object[] keys) {
+  private static void resetKey(Exchange exchange, Object[] keys) {
     exchange.clear();
     for (Object o : keys) {
       exchange.append(o);
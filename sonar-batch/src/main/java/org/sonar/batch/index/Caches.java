@@ -19,24 +19,29 @@
  */
 package org.sonar.batch.index;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Maps;
+import com.persistit.BufferPool;
 import com.persistit.Exchange;
 import com.persistit.Persistit;
-import com.persistit.Value;
 import com.persistit.Volume;
+import com.persistit.encoding.ValueCoder;
 import com.persistit.exception.PersistitException;
 import com.persistit.logging.Slf4jAdapter;
 import org.apache.commons.io.FileUtils;
 import org.picocontainer.Startable;
+import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchComponent;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.config.Settings;
 import org.sonar.api.utils.TempFolder;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
 
 /**
  * Factory of caches
@@ -45,30 +50,61 @@ import java.util.Set;
  */
 public class Caches implements BatchComponent, Startable {
 
-  private final Set<String> cacheNames = Sets.newHashSet();
+  private static final Logger LOG = LoggerFactory.getLogger(Caches.class);
+
+  /**
+   * Memory allocated to the buffer pool, in megabytes. By default it is computed from the maximum heap size.
+   * @since 4.4
+   */
+  public static final String BUFFER_MEMORY_PROPERTY = "sonar.batch.cache.bufferMemory";
+
+  /**
+   * Maximum number of pages of the cache volume. Pages are {@link #PAGE_SIZE} bytes long.
+   * @since 4.4
+   */
+  public static final String MAXIMUM_PAGES_PROPERTY = "sonar.batch.cache.maximumPages";
+  public static final long MAXIMUM_PAGES_DEFAULT_VALUE = 1024L * 1024L;
+
+  static final int PAGE_SIZE = 8192;
+  private static final long MB = 1024L * 1024L;
+  private static final long MIN_BUFFER_MEMORY = MB;
+  private static final long MAX_BUFFER_MEMORY = 256 * MB;
+  // fraction of the heap allocated to buffers when memory is not explicitly set
+  private static final int HEAP_RATIO = 10;
+
+  private final Map<String, Cache<?>> caches = Maps.newLinkedHashMap();
   private File tempDir;
   private Persistit persistit;
   private Volume volume;
   private final TempFolder tempFolder;
+  private final Settings settings;
 
-  public Caches(TempFolder tempFolder) {
+  public Caches(TempFolder tempFolder, Settings settings) {
     this.tempFolder = tempFolder;
+    this.settings = settings;
     initPersistit();
   }
 
+  public Caches(TempFolder tempFolder) {
+    this(tempFolder, new Settings());
+  }
+
   private void initPersistit() {
     try {
       tempDir = tempFolder.newDir("caches");
       persistit = new Persistit();
       persistit.setPersistitLogger(new Slf4jAdapter(LoggerFactory.getLogger("PERSISTIT")));
+      long maximumPages = maximumPages(settings);
       Properties props = new Properties();
       props.setProperty("datapath", tempDir.getAbsolutePath());
       props.setProperty("logpath", "${datapath}/log");
       props.setProperty("logfile", "${logpath}/persistit_${timestamp}.log");
-      props.setProperty("buffer.count.8192", "10");
+      props.setProperty("buffer.count." + PAGE_SIZE, String.valueOf(bufferCount(settings, Runtime.getRuntime().maxMemory())));
       props.setProperty("journalpath", "${datapath}/journal");
       props.setProperty("tmpvoldir", "${datapath}");
-      props.setProperty("volume.1", "${datapath}/persistit,create,pageSize:8192,initialPages:10,extensionPages:100,maximumPages:25000");
+      props.setProperty("tmpvolpagesize", String.valueOf(PAGE_SIZE));
+      props.setProperty("tmpvolmaxsize", String.valueOf(maximumPages * PAGE_SIZE));
+      props.setProperty("volume.1", "${datapath}/persistit,create,pageSize:" + PAGE_SIZE + ",initialPages:10,extensionPages:100,maximumPages:" + maximumPages);
       persistit.setProperties(props);
       persistit.initialize();
       volume = persistit.createTemporaryVolume();
@@ -78,20 +114,58 @@ public class Caches implements BatchComponent, Startable {
     }
   }
 
+  /**
+   * Number of buffers of the pool. Unless set with {@link #BUFFER_MEMORY_PROPERTY}, one tenth of the
+   * heap is allocated to buffers, within the range 1MB - 256MB.
+   */
+  @VisibleForTesting
+  static int bufferCount(Settings settings, long maxHeap) {
+    long memory;
+    if (settings.hasKey(BUFFER_MEMORY_PROPERTY)) {
+      memory = settings.getLong(BUFFER_MEMORY_PROPERTY) * MB;
+      Preconditions.checkArgument(memory > 0, "Property " + BUFFER_MEMORY_PROPERTY + " must be strictly positive");
+    } else {
+      memory = Math.max(MIN_BUFFER_MEMORY, Math.min(MAX_BUFFER_MEMORY, maxHeap / HEAP_RATIO));
+    }
+    return (int) Math.max(1L, memory / PAGE_SIZE);
+  }
+
+  @VisibleForTesting
+  static long maximumPages(Settings settings) {
+    if (settings.hasKey(MAXIMUM_PAGES_PROPERTY)) {
+      long pages = settings.getLong(MAXIMUM_PAGES_PROPERTY);
+      Preconditions.checkArgument(pages > 0, "Property " + MAXIMUM_PAGES_PROPERTY + " must be strictly positive");
+      return pages;
+    }
+    return MAXIMUM_PAGES_DEFAULT_VALUE;
+  }
+
   public <V extends Serializable> Cache<V> createCache(String cacheName) {
     Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
-    Preconditions.checkState(!cacheNames.contains(cacheName), "Cache is already created: " + cacheName);
+    Preconditions.checkState(!caches.containsKey(cacheName), "Cache is already created: " + cacheName);
     try {
+      // create the tree eagerly, exchanges are then borrowed from the Persistit pool on each operation
       Exchange exchange = persistit.getExchange(volume, cacheName, true);
-      exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
-      Cache<V> cache = new Cache<V>(cacheName, exchange);
-      cacheNames.add(cacheName);
+      persistit.releaseExchange(exchange);
+      Cache<V> cache = new Cache<V>(cacheName, persistit, volume);
+      caches.put(cacheName, cache);
       return cache;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to create cache: " + cacheName, e);
     }
   }
 
+  /**
+   * Registers a compact encoder for the values of the given class. Values of classes without
+   * registered coder fall back to Java serialization.
+   *
+   * @since 4.4
+   */
+  public void registerValueCoder(Class<?> clazz, ValueCoder coder) {
+    Preconditions.checkState(persistit != null, "Caches are not initialized");
+    persistit.getCoderManager().registerValueCoder(clazz, coder);
+  }
+
   @Override
   public void start() {
     // already started in constructor
@@ -100,6 +174,7 @@ public class Caches implements BatchComponent, Startable {
   @Override
   public void stop() {
     if (persistit != null) {
+      logStatistics();
       try {
         persistit.close(false);
         persistit = null;
@@ -110,7 +185,29 @@ public class Caches implements BatchComponent, Startable {
     }
     FileUtils.deleteQuietly(tempDir);
     tempDir = null;
-    cacheNames.clear();
+    caches.clear();
+  }
+
+  private void logStatistics() {
+    boolean verbose = settings.getBoolean(CoreProperties.PROFILING_LOG_PROPERTY);
+    if (!verbose && !LOG.isDebugEnabled()) {
+      return;
+    }
+    StringBuilder sb = new StringBuilder("Cache statistics:");
+    BufferPool bufferPool = persistit.getBufferPool(PAGE_SIZE);
+    if (bufferPool != null) {
+      sb.append(String.format("%n  buffer pool: %d buffers of %d bytes, %d hits, %d misses, %d evictions",
+        bufferPool.getBufferCount(), bufferPool.getBufferSize(), bufferPool.getHitCount(), bufferPool.getMissCount(), bufferPool.getEvictCount()));
+    }
+    for (Cache<?> cache : caches.values()) {
+      sb.append(String.format("%n  %s: %d hits, %d misses, %d puts, %d removals",
+        cache.getName(), cache.hits(), cache.misses(), cache.puts(), cache.removals()));
+    }
+    if (verbose) {
+      LOG.info(sb.toString());
+    } else {
+      LOG.debug(sb.toString());
+    }
   }
 
   File tempDir() {
@@ -25,6 +25,7 @@ public class ComponentDataCache implements BatchComponent {
   private final Cache cache;
 
   public ComponentDataCache(Caches caches) {
+    caches.registerValueCoder(StringData.class, new StringDataValueCoder());
     cache = caches.createCache("componentData");
   }
 
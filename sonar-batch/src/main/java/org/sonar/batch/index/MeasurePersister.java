@@ -20,6 +20,8 @@
 package org.sonar.batch.index;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.MeasureMapper;
 import org.sonar.api.database.model.MeasureModel;
 import org.sonar.api.database.model.Snapshot;
@@ -34,39 +36,63 @@ import org.sonar.api.technicaldebt.batch.Characteristic;
 import org.sonar.api.utils.SonarException;
 import org.sonar.batch.index.Cache.Entry;
 import org.sonar.batch.scan.measure.MeasureCache;
+import org.sonar.core.persistence.BatchSession;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 
+import java.util.Map;
+
 public final class MeasurePersister implements ScanPersister {
+
+  /**
+   * Number of measures inserted between two flushes of the JDBC batch
+   * @since 4.4
+   */
+  public static final String FLUSH_SIZE_PROPERTY = "sonar.batch.measures.flushSize";
+
   private final MyBatis mybatis;
   private final RuleFinder ruleFinder;
   private final MeasureCache measureCache;
   private final SnapshotCache snapshotCache;
   private final ResourceCache resourceCache;
+  private final Settings settings;
 
   public MeasurePersister(MyBatis mybatis, RuleFinder ruleFinder,
-    MeasureCache measureCache, SnapshotCache snapshotCache, ResourceCache resourceCache) {
+    MeasureCache measureCache, SnapshotCache snapshotCache, ResourceCache resourceCache, Settings settings) {
     this.mybatis = mybatis;
     this.ruleFinder = ruleFinder;
     this.measureCache = measureCache;
     this.snapshotCache = snapshotCache;
     this.resourceCache = resourceCache;
+    this.settings = settings;
   }
 
   @Override
   public void persist() {
-    DbSession session = mybatis.openSession(true);
+    DbSession session = mybatis.openSession(true, flushSize());
     try {
       MeasureMapper mapper = session.getMapper(MeasureMapper.class);
+      // rule ids are resolved once per rule, not once per measure
+      Map<RuleKey, Integer> ruleIds = Maps.newHashMap();
 
+      // entries are sorted by resource key, so resource and snapshot are looked up once per resource
+      String effectiveKey = null;
+      Resource resource = null;
+      Snapshot snapshot = null;
       for (Entry<Measure> entry : measureCache.entries()) {
-        String effectiveKey = entry.key()[0].toString();
+        String entryKey = entry.key()[0].toString();
+        if (!entryKey.equals(effectiveKey)) {
+          effectiveKey = entryKey;
+          resource = resourceCache.get(effectiveKey);
+          snapshot = null;
+        }
         Measure measure = entry.value();
-        Resource resource = resourceCache.get(effectiveKey);
 
         if (shouldPersistMeasure(resource, measure)) {
-          Snapshot snapshot = snapshotCache.get(effectiveKey);
-          MeasureModel measureModel = model(measure).setSnapshotId(snapshot.getId());
+          if (snapshot == null) {
+            snapshot = snapshotCache.get(effectiveKey);
+          }
+          MeasureModel measureModel = model(measure, ruleIds).setSnapshotId(snapshot.getId());
           mapper.insert(measureModel);
         }
       }
@@ -79,6 +105,13 @@ public final class MeasurePersister implements ScanPersister {
     }
   }
 
+  private int flushSize() {
+    if (settings.hasKey(FLUSH_SIZE_PROPERTY)) {
+      return settings.getInt(FLUSH_SIZE_PROPERTY);
+    }
+    return BatchSession.MAX_BATCH_SIZE;
+  }
+
   @VisibleForTesting
   static boolean shouldPersistMeasure(Resource resource, Measure measure) {
     return measure.getPersistenceMode().useDatabase() &&
@@ -94,7 +127,7 @@ public final class MeasurePersister implements ScanPersister {
       || isNotEmpty;
   }
 
-  private MeasureModel model(Measure measure) {
+  private MeasureModel model(Measure measure, Map<RuleKey, Integer> ruleIds) {
     MeasureModel model = new MeasureModel();
     // we assume that the index has updated the metric
     model.setMetricId(measure.getMetric().getId());
@@ -125,11 +158,18 @@ public final class MeasurePersister implements ScanPersister {
       model.setRulePriority(ruleMeasure.getSeverity());
       RuleKey ruleKey = ruleMeasure.ruleKey();
       if (ruleKey != null) {
-        Rule ruleWithId = ruleFinder.findByKey(ruleKey);
-        if (ruleWithId == null) {
-          throw new SonarException("Can not save a measure with unknown rule " + ruleMeasure);
+        Integer ruleId;
+        if (ruleIds.containsKey(ruleKey)) {
+          ruleId = ruleIds.get(ruleKey);
+        } else {
+          Rule ruleWithId = ruleFinder.findByKey(ruleKey);
+          if (ruleWithId == null) {
+            throw new SonarException("Can not save a measure with unknown rule " + ruleMeasure);
+          }
+          ruleId = ruleWithId.getId();
+          ruleIds.put(ruleKey, ruleId);
         }
-        model.setRuleId(ruleWithId.getId());
+        model.setRuleId(ruleId);
       }
     }
     return model;
@@ -0,0 +1,149 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.issue;
+
+import com.persistit.Value;
+import com.persistit.encoding.CoderContext;
+import com.persistit.encoding.ValueCoder;
+import org.apache.commons.lang.SerializationUtils;
+import org.sonar.api.issue.internal.DefaultIssue;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.Duration;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Compact encoding of {@link DefaultIssue} in the issue cache. Issues holding comments or field changes,
+ * which are rare during an analysis, fall back to Java serialization.
+ *
+ * @since 4.4
+ */
+class DefaultIssueValueCoder implements ValueCoder {
+
+  private static final int FIELDS = 0;
+  private static final int SERIALIZED = 1;
+
+  @Override
+  public void put(Value value, Object object, CoderContext context) {
+    DefaultIssue issue = (DefaultIssue) object;
+    if (!isCompactable(issue)) {
+      value.put(SERIALIZED);
+      value.put(SerializationUtils.serialize(issue));
+      return;
+    }
+    value.put(FIELDS);
+    value.put(issue.key());
+    value.put(issue.componentKey());
+    value.put(issue.componentId());
+    value.put(issue.projectKey());
+    value.put(issue.ruleKey() != null ? issue.ruleKey().toString() : null);
+    value.put(issue.severity());
+    value.put(issue.manualSeverity());
+    value.put(issue.message());
+    value.put(issue.line());
+    value.put(issue.effortToFix());
+    value.put(issue.debtInMinutes());
+    value.put(issue.status());
+    value.put(issue.resolution());
+    value.put(issue.reporter());
+    value.put(issue.assignee());
+    value.put(issue.checksum());
+    Map<String, String> attributes = issue.attributes();
+    value.put(attributes.size());
+    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+      value.put(attribute.getKey());
+      value.put(attribute.getValue());
+    }
+    value.put(issue.authorLogin());
+    value.put(issue.actionPlanKey());
+    value.put(time(issue.creationDate()));
+    value.put(time(issue.updateDate()));
+    value.put(time(issue.closeDate()));
+    value.put(issue.isNew());
+    value.put(issue.isEndOfLife());
+    value.put(issue.isOnDisabledRule());
+    value.put(issue.isChanged());
+    value.put(issue.mustSendNotifications());
+    value.put(time(issue.selectedAt()));
+  }
+
+  @Override
+  public Object get(Value value, Class<?> clazz, CoderContext context) {
+    if (value.getInt() == SERIALIZED) {
+      return SerializationUtils.deserialize((byte[]) value.get());
+    }
+    DefaultIssue issue = new DefaultIssue();
+    issue.setKey((String) value.get());
+    issue.setComponentKey((String) value.get());
+    issue.setComponentId((Long) value.get());
+    issue.setProjectKey((String) value.get());
+    String ruleKey = (String) value.get();
+    issue.setRuleKey(ruleKey != null ? RuleKey.parse(ruleKey) : null);
+    issue.setSeverity((String) value.get());
+    issue.setManualSeverity(value.getBoolean());
+    issue.setMessage((String) value.get());
+    issue.setLine((Integer) value.get());
+    issue.setEffortToFix((Double) value.get());
+    Long debt = (Long) value.get();
+    issue.setDebt(debt != null ? Duration.create(debt) : null);
+    String status = (String) value.get();
+    if (status != null) {
+      issue.setStatus(status);
+    }
+    issue.setResolution((String) value.get());
+    issue.setReporter((String) value.get());
+    issue.setAssignee((String) value.get());
+    issue.setChecksum((String) value.get());
+    int attributes = value.getInt();
+    for (int i = 0; i < attributes; i++) {
+      issue.setAttribute((String) value.get(), (String) value.get());
+    }
+    issue.setAuthorLogin((String) value.get());
+    issue.setActionPlanKey((String) value.get());
+    issue.setCreationDate(date((Long) value.get()));
+    issue.setUpdateDate(date((Long) value.get()));
+    issue.setCloseDate(date((Long) value.get()));
+    issue.setNew(value.getBoolean());
+    issue.setEndOfLife(value.getBoolean());
+    issue.setOnDisabledRule(value.getBoolean());
+    issue.setChanged(value.getBoolean());
+    issue.setSendNotifications(value.getBoolean());
+    issue.setSelectedAt(date((Long) value.get()));
+    return issue;
+  }
+
+  private static boolean isCompactable(DefaultIssue issue) {
+    return issue.getClass() == DefaultIssue.class && issue.currentChange() == null && issue.changes().isEmpty() && issue.comments().isEmpty();
+  }
+
+  @CheckForNull
+  private static Long time(@Nullable Date date) {
+    return date != null ? date.getTime() : null;
+  }
+
+  @CheckForNull
+  private static Date date(@Nullable Long time) {
+    return time != null ? new Date(time) : null;
+  }
+}
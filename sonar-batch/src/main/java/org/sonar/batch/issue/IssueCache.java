@@ -34,6 +34,7 @@ public class IssueCache implements BatchComponent {
   private final Cache<DefaultIssue> cache;
 
   public IssueCache(Caches caches) {
+    caches.registerValueCoder(DefaultIssue.class, new DefaultIssueValueCoder());
     cache = caches.createCache("issues");
   }
 
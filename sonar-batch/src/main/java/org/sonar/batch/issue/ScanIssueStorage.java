@@ -19,6 +19,8 @@
  */
 package org.sonar.batch.issue;
 
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.issue.internal.DefaultIssue;
@@ -31,12 +33,19 @@ import org.sonar.core.resource.ResourceDao;
 import org.sonar.core.resource.ResourceDto;
 import org.sonar.core.resource.ResourceQuery;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
 public class ScanIssueStorage extends IssueStorage implements BatchComponent {
 
   private final SnapshotCache snapshotCache;
   private final ResourceDao resourceDao;
   private final ProjectTree projectTree;
 
+  // ids of the components that are not in snapshot cache (deleted files for example)
+  private final Map<String, Long> componentIdsByKey = Maps.newHashMap();
+
   public ScanIssueStorage(MyBatis mybatis, RuleFinder ruleFinder, SnapshotCache snapshotCache, ResourceDao resourceDao, ProjectTree projectTree) {
     super(mybatis, ruleFinder);
     this.snapshotCache = snapshotCache;
@@ -44,12 +53,30 @@ public class ScanIssueStorage extends IssueStorage implements BatchComponent {
     this.projectTree = projectTree;
   }
 
+  @Override
+  protected void prefetchComponentIds(Collection<DefaultIssue> issues) {
+    Set<String> missingKeys = Sets.newHashSet();
+    for (DefaultIssue issue : issues) {
+      String componentKey = issue.componentKey();
+      if (!componentIdsByKey.containsKey(componentKey) && snapshotCache.get(componentKey) == null) {
+        missingKeys.add(componentKey);
+      }
+    }
+    for (ResourceDto resourceDto : resourceDao.selectResourcesByKeys(missingKeys)) {
+      componentIdsByKey.put(resourceDto.getKey(), resourceDto.getId());
+    }
+  }
+
   @Override
   protected long componentId(DefaultIssue issue) {
     Snapshot snapshot = snapshotCache.get(issue.componentKey());
     if (snapshot != null) {
       return snapshot.getResourceId();
     }
+    Long componentId = componentIdsByKey.get(issue.componentKey());
+    if (componentId != null) {
+      return componentId;
+    }
 
     // Load from db when component does not exist in cache (deleted file for example)
     ResourceDto resourceDto = resourceDao.getResource(ResourceQuery.create().setKey(issue.componentKey()));
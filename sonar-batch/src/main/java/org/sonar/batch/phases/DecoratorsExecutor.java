@@ -19,15 +19,22 @@
  */
 package org.sonar.batch.phases;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.batch.BatchExtensionDictionnary;
 import org.sonar.api.batch.Decorator;
 import org.sonar.api.batch.DecoratorContext;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.batch.ThreadSafeDecorator;
+import org.sonar.api.config.Settings;
 import org.sonar.api.measures.MetricFinder;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.utils.AnnotationUtils;
 import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.SonarException;
 import org.sonar.batch.DecoratorsSelector;
@@ -36,11 +43,26 @@ import org.sonar.batch.events.EventBus;
 import org.sonar.batch.scan.measure.MeasureCache;
 import org.sonar.core.measure.MeasurementFilters;
 
+import javax.annotation.Nullable;
+
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class DecoratorsExecutor implements BatchComponent {
 
+  /**
+   * Number of threads used to decorate independent subtrees of resources. Decoration is serial by default.
+   */
+  static final String THREADS_PROPERTY = "sonar.batch.decorators.threads";
+
+  private static final Logger LOG = LoggerFactory.getLogger(DecoratorsExecutor.class);
+
   private DecoratorsSelector decoratorsSelector;
   private SonarIndex index;
   private EventBus eventBus;
@@ -48,11 +70,14 @@ public class DecoratorsExecutor implements BatchComponent {
   private MeasurementFilters measurementFilters;
   private MeasureCache measureCache;
   private MetricFinder metricFinder;
+  private Settings settings;
 
   public DecoratorsExecutor(BatchExtensionDictionnary batchExtDictionnary,
-    Project project, SonarIndex index, EventBus eventBus, MeasurementFilters measurementFilters, MeasureCache measureCache, MetricFinder metricFinder) {
+    Project project, SonarIndex index, EventBus eventBus, MeasurementFilters measurementFilters, MeasureCache measureCache, MetricFinder metricFinder,
+    Settings settings) {
     this.measureCache = measureCache;
     this.metricFinder = metricFinder;
+    this.settings = settings;
     this.decoratorsSelector = new DecoratorsSelector(batchExtDictionnary);
     this.index = index;
     this.eventBus = eventBus;
@@ -63,7 +88,13 @@ public class DecoratorsExecutor implements BatchComponent {
   public void execute() {
     Collection<Decorator> decorators = decoratorsSelector.select(project);
     eventBus.fireEvent(new DecoratorsPhaseEvent(Lists.newArrayList(decorators), true));
-    ((DefaultDecoratorContext) decorateResource(project, decorators, true)).end();
+    int threads = settings.getInt(THREADS_PROPERTY);
+    if (threads > 1) {
+      LOG.info("Decorate resources with " + threads + " threads");
+      new ParallelDecoration(decorators, threads).execute().end();
+    } else {
+      ((DefaultDecoratorContext) decorateResource(project, decorators, true)).end();
+    }
     eventBus.fireEvent(new DecoratorsPhaseEvent(Lists.newArrayList(decorators), false));
   }
 
@@ -100,4 +131,155 @@ public class DecoratorsExecutor implements BatchComponent {
     }
   }
 
+  /**
+   * Decorates the resource tree bottom-up on a pool of threads. A resource is submitted as soon as all its children
+   * are decorated, so sibling subtrees are decorated concurrently and no thread ever waits for another task.
+   * <p/>
+   * Index, caches and event listeners are not thread-safe, so all calls to them are serialized on a single lock.
+   * Only the decorators annotated with {@link ThreadSafeDecorator} are executed outside of this lock. Decorators
+   * are still executed in the same order on a given resource.
+   */
+  private class ParallelDecoration {
+    private final Collection<Decorator> decorators;
+    private final int threads;
+    private final Set<Decorator> threadSafeDecorators = Sets.newIdentityHashSet();
+    private final Object lock = new Object();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private ExecutorService executorService;
+    private DefaultDecoratorContext rootContext;
+
+    ParallelDecoration(Collection<Decorator> decorators, int threads) {
+      this.decorators = decorators;
+      this.threads = threads;
+      for (Decorator decorator : decorators) {
+        if (AnnotationUtils.getAnnotation(decorator, ThreadSafeDecorator.class) != null) {
+          threadSafeDecorators.add(decorator);
+        }
+      }
+    }
+
+    DefaultDecoratorContext execute() {
+      List<Node> leaves = Lists.newArrayList();
+      Node root = new Node(project, null, true);
+      loadChildren(root, leaves);
+
+      executorService = Executors.newFixedThreadPool(threads);
+      try {
+        for (Node leaf : leaves) {
+          submit(leaf);
+        }
+        done.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SonarException("Decoration of resources has been interrupted", e);
+      } finally {
+        executorService.shutdownNow();
+      }
+      if (failure.get() != null) {
+        throw Throwables.propagate(failure.get());
+      }
+      return rootContext;
+    }
+
+    private void loadChildren(Node node, List<Node> leaves) {
+      for (Resource child : index.getChildren(node.resource)) {
+        Node childNode = new Node(child, node, !(child instanceof Project));
+        node.children.add(childNode);
+        loadChildren(childNode, leaves);
+      }
+      node.pendingChildren.set(node.children.size());
+      if (node.children.isEmpty()) {
+        leaves.add(node);
+      }
+    }
+
+    private void submit(final Node node) {
+      executorService.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            decorate(node);
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          } finally {
+            // the latch is released on failure too, else the main thread would wait forever
+            if (failure.get() != null) {
+              done.countDown();
+            }
+          }
+        }
+      });
+    }
+
+    private void decorate(Node node) {
+      if (failure.get() != null) {
+        return;
+      }
+      List<DecoratorContext> childrenContexts = Lists.newArrayList();
+      for (Node child : node.children) {
+        childrenContexts.add(child.context);
+      }
+      DefaultDecoratorContext context = new DefaultDecoratorContext(node.resource, index, childrenContexts, measurementFilters, measureCache, metricFinder);
+      synchronized (lock) {
+        context.init();
+      }
+      if (node.executeDecorators) {
+        DecoratorContext synchronizedContext = new SynchronizedDecoratorContext(context, lock);
+        for (Decorator decorator : decorators) {
+          if (threadSafeDecorators.contains(decorator)) {
+            executeThreadSafeDecorator(decorator, synchronizedContext, node.resource);
+          } else {
+            synchronized (lock) {
+              executeDecorator(decorator, context, node.resource);
+            }
+          }
+        }
+      }
+
+      if (node.parent == null) {
+        rootContext = context;
+        done.countDown();
+      } else {
+        synchronized (lock) {
+          node.context = context.end();
+        }
+        if (node.parent.pendingChildren.decrementAndGet() == 0) {
+          submit(node.parent);
+        }
+      }
+    }
+
+    /**
+     * Execution events are not fired, as profilers expect decorators to be executed sequentially.
+     */
+    private void executeThreadSafeDecorator(Decorator decorator, DecoratorContext context, Resource resource) {
+      try {
+        decorator.decorate(resource, context);
+
+      } catch (MessageException e) {
+        throw e;
+
+      } catch (Exception e) {
+        // SONAR-2278 the resource should not be lost in exception stacktrace.
+        throw new SonarException("Fail to decorate '" + resource + "'", e);
+      }
+    }
+  }
+
+  private static class Node {
+    private final Resource resource;
+    private final Node parent;
+    private final boolean executeDecorators;
+    private final List<Node> children = Lists.newArrayList();
+    private final AtomicInteger pendingChildren = new AtomicInteger();
+    // set when the resource is decorated, read by the thread decorating the parent
+    private volatile DefaultDecoratorContext context;
+
+    Node(Resource resource, @Nullable Node parent, boolean executeDecorators) {
+      this.resource = resource;
+      this.parent = parent;
+      this.executeDecorators = executeDecorators;
+    }
+  }
 }
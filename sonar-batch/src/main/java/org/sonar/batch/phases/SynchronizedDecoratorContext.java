@@ -0,0 +1,202 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.phases;
+
+import com.google.common.collect.Lists;
+import org.sonar.api.batch.DecoratorContext;
+import org.sonar.api.batch.Event;
+import org.sonar.api.design.Dependency;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.MeasuresFilter;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.rules.Violation;
+import org.sonar.api.violations.ViolationQuery;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Serializes the calls to a {@link DecoratorContext} used by decorators executed concurrently, as
+ * the index and the caches behind it are not thread-safe.
+ *
+ * @since 4.4
+ */
+class SynchronizedDecoratorContext implements DecoratorContext {
+
+  private final DecoratorContext context;
+  private final Object lock;
+
+  SynchronizedDecoratorContext(DecoratorContext context, Object lock) {
+    this.context = context;
+    this.lock = lock;
+  }
+
+  @Override
+  public Project getProject() {
+    synchronized (lock) {
+      return context.getProject();
+    }
+  }
+
+  @Override
+  public Resource getResource() {
+    synchronized (lock) {
+      return context.getResource();
+    }
+  }
+
+  @Override
+  public List<DecoratorContext> getChildren() {
+    synchronized (lock) {
+      List<DecoratorContext> children = Lists.newArrayList();
+      for (DecoratorContext child : context.getChildren()) {
+        children.add(new SynchronizedDecoratorContext(child, lock));
+      }
+      return children;
+    }
+  }
+
+  @Override
+  public Measure getMeasure(Metric metric) {
+    synchronized (lock) {
+      return context.getMeasure(metric);
+    }
+  }
+
+  @Override
+  public <M> M getMeasures(MeasuresFilter<M> filter) {
+    synchronized (lock) {
+      return context.getMeasures(filter);
+    }
+  }
+
+  @Override
+  public Collection<Measure> getChildrenMeasures(MeasuresFilter filter) {
+    synchronized (lock) {
+      return context.getChildrenMeasures(filter);
+    }
+  }
+
+  @Override
+  public Collection<Measure> getChildrenMeasures(Metric metric) {
+    synchronized (lock) {
+      return context.getChildrenMeasures(metric);
+    }
+  }
+
+  @Override
+  public DecoratorContext saveMeasure(Measure measure) {
+    synchronized (lock) {
+      context.saveMeasure(measure);
+      return this;
+    }
+  }
+
+  @Override
+  public DecoratorContext saveMeasure(Metric metric, Double value) {
+    synchronized (lock) {
+      context.saveMeasure(metric, value);
+      return this;
+    }
+  }
+
+  @Override
+  public Dependency saveDependency(Dependency dependency) {
+    synchronized (lock) {
+      return context.saveDependency(dependency);
+    }
+  }
+
+  @Override
+  public Set<Dependency> getDependencies() {
+    synchronized (lock) {
+      return context.getDependencies();
+    }
+  }
+
+  @Override
+  public Collection<Dependency> getIncomingDependencies() {
+    synchronized (lock) {
+      return context.getIncomingDependencies();
+    }
+  }
+
+  @Override
+  public Collection<Dependency> getOutgoingDependencies() {
+    synchronized (lock) {
+      return context.getOutgoingDependencies();
+    }
+  }
+
+  @Override
+  public List<Violation> getViolations(ViolationQuery violationQuery) {
+    synchronized (lock) {
+      return context.getViolations(violationQuery);
+    }
+  }
+
+  @Override
+  public List<Violation> getViolations() {
+    synchronized (lock) {
+      return context.getViolations();
+    }
+  }
+
+  @Override
+  public DecoratorContext saveViolation(Violation violation, boolean force) {
+    synchronized (lock) {
+      context.saveViolation(violation, force);
+      return this;
+    }
+  }
+
+  @Override
+  public DecoratorContext saveViolation(Violation violation) {
+    synchronized (lock) {
+      context.saveViolation(violation);
+      return this;
+    }
+  }
+
+  @Override
+  public List<Event> getEvents() {
+    synchronized (lock) {
+      return context.getEvents();
+    }
+  }
+
+  @Override
+  public Event createEvent(String name, String description, String category, Date date) {
+    synchronized (lock) {
+      return context.createEvent(name, description, category, date);
+    }
+  }
+
+  @Override
+  public void deleteEvent(Event event) {
+    synchronized (lock) {
+      context.deleteEvent(event);
+    }
+  }
+}
@@ -25,44 +25,45 @@ import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.PathPattern;
+import org.sonar.api.batch.fs.internal.PathPatternSet;
 import org.sonar.api.scan.filesystem.FileExclusions;
 
 public class ExclusionFilters implements BatchComponent {
   private final FileExclusions exclusionSettings;
 
-  private PathPattern[] mainInclusions;
-  private PathPattern[] mainExclusions;
-  private PathPattern[] testInclusions;
-  private PathPattern[] testExclusions;
+  private PathPatternSet mainInclusions;
+  private PathPatternSet mainExclusions;
+  private PathPatternSet testInclusions;
+  private PathPatternSet testExclusions;
 
   public ExclusionFilters(FileExclusions exclusions) {
     this.exclusionSettings = exclusions;
   }
 
   public void prepare() {
-    mainInclusions = prepareMainInclusions();
-    mainExclusions = prepareMainExclusions();
-    testInclusions = prepareTestInclusions();
-    testExclusions = prepareTestExclusions();
+    mainInclusions = new PathPatternSet(prepareMainInclusions());
+    mainExclusions = new PathPatternSet(prepareMainExclusions());
+    testInclusions = new PathPatternSet(prepareTestInclusions());
+    testExclusions = new PathPatternSet(prepareTestExclusions());
     log("Included sources: ", mainInclusions);
     log("Excluded sources: ", mainExclusions);
     log("Included tests: ", testInclusions);
     log("Excluded tests: ", testExclusions);
   }
 
-  private void log(String title, PathPattern[] patterns) {
-    if (patterns.length > 0) {
+  private void log(String title, PathPatternSet patterns) {
+    if (!patterns.isEmpty()) {
       Logger log = LoggerFactory.getLogger(ExclusionFilters.class);
       log.info(title);
-      for (PathPattern pattern : patterns) {
+      for (PathPattern pattern : patterns.patterns()) {
         log.info("  " + pattern);
       }
     }
   }
 
   public boolean accept(InputFile inputFile, InputFile.Type type) {
-    PathPattern[] inclusionPatterns;
-    PathPattern[] exclusionPatterns;
+    PathPatternSet inclusionPatterns;
+    PathPatternSet exclusionPatterns;
     if (InputFile.Type.MAIN == type) {
       inclusionPatterns = mainInclusions;
       exclusionPatterns = mainExclusions;
@@ -73,23 +74,10 @@ public class ExclusionFilters implements BatchComponent {
       throw new IllegalArgumentException("Unknown file type: " + type);
     }
 
-    if (inclusionPatterns.length > 0) {
-      boolean matchInclusion = false;
-      for (PathPattern pattern : inclusionPatterns) {
-        matchInclusion |= pattern.match(inputFile);
-      }
-      if (!matchInclusion) {
-        return false;
-      }
-    }
-    if (exclusionPatterns.length > 0) {
-      for (PathPattern pattern : exclusionPatterns) {
-        if (pattern.match(inputFile)) {
-          return false;
-        }
-      }
+    if (!inclusionPatterns.isEmpty() && !inclusionPatterns.matchAny(inputFile)) {
+      return false;
     }
-    return true;
+    return exclusionPatterns.isEmpty() || !exclusionPatterns.matchAny(inputFile);
   }
 
   PathPattern[] prepareMainInclusions() {
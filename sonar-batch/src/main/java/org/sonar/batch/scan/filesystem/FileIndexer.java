@@ -19,7 +19,10 @@
  */
 package org.sonar.batch.scan.filesystem;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.HiddenFileFilter;
@@ -30,6 +33,7 @@ import org.sonar.api.BatchComponent;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.InputFileFilter;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
 import org.sonar.api.utils.SonarException;
 
@@ -38,12 +42,26 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Index input files into {@link InputFileCache}.
+ * <p/>
+ * Files are listed and filtered by exclusions sequentially, then their metadata (hash, lines, language) are computed
+ * concurrently. Completed files are registered in listing order, so the result does not depend on the number of threads.
  */
 public class FileIndexer implements BatchComponent {
 
+  /**
+   * Number of threads used to compute metadata of files. Default is the number of available processors.
+   * @since 4.4
+   */
+  public static final String THREADS_PROPERTY = "sonar.batch.fileIndexer.threads";
+
   private static final IOFileFilter DIR_FILTER = FileFilterUtils.and(HiddenFileFilter.VISIBLE, FileFilterUtils.notFileFilter(FileFilterUtils.prefixFileFilter(".")));
   private static final IOFileFilter FILE_FILTER = HiddenFileFilter.VISIBLE;
 
@@ -52,14 +70,16 @@ public class FileIndexer implements BatchComponent {
   private final Project module;
   private final ExclusionFilters exclusionFilters;
   private final InputFileBuilderFactory inputFileBuilderFactory;
+  private final Settings settings;
 
   public FileIndexer(List<InputFileFilter> filters, ExclusionFilters exclusionFilters, InputFileBuilderFactory inputFileBuilderFactory,
-                     InputFileCache cache, Project module) {
+                     InputFileCache cache, Project module, Settings settings) {
     this.filters = filters;
     this.exclusionFilters = exclusionFilters;
     this.inputFileBuilderFactory = inputFileBuilderFactory;
     this.fileCache = cache;
     this.module = module;
+    this.settings = settings;
   }
 
   void index(DefaultModuleFileSystem fileSystem) {
@@ -74,19 +94,20 @@ public class FileIndexer implements BatchComponent {
     Progress progress = new Progress(fileCache.byModule(fileSystem.moduleKey()));
 
     InputFileBuilder inputFileBuilder = inputFileBuilderFactory.create(fileSystem);
+    List<Candidate> candidates = Lists.newArrayList();
     if (!fileSystem.sourceFiles().isEmpty() || !fileSystem.testFiles().isEmpty()) {
       // Index only provided files
-      indexFiles(inputFileBuilder, fileSystem, progress, fileSystem.sourceFiles(), InputFile.Type.MAIN);
-      indexFiles(inputFileBuilder, fileSystem, progress, fileSystem.testFiles(), InputFile.Type.TEST);
+      listFiles(inputFileBuilder, candidates, fileSystem.sourceFiles(), InputFile.Type.MAIN);
+      listFiles(inputFileBuilder, candidates, fileSystem.testFiles(), InputFile.Type.TEST);
     } else {
       for (File mainDir : fileSystem.sourceDirs()) {
-        indexDirectory(inputFileBuilder, fileSystem, progress, mainDir, InputFile.Type.MAIN);
+        listDirectory(inputFileBuilder, candidates, mainDir, InputFile.Type.MAIN);
       }
       for (File testDir : fileSystem.testDirs()) {
-        indexDirectory(inputFileBuilder, fileSystem, progress, testDir, InputFile.Type.TEST);
+        listDirectory(inputFileBuilder, candidates, testDir, InputFile.Type.TEST);
       }
-
     }
+    indexFiles(fileSystem, progress, candidates);
 
     // Remove files that have been removed since previous indexation
     for (InputFile removed : progress.removed) {
@@ -97,34 +118,82 @@ public class FileIndexer implements BatchComponent {
 
   }
 
-  private void indexFiles(InputFileBuilder inputFileBuilder, DefaultModuleFileSystem fileSystem, Progress progress, List<File> sourceFiles, InputFile.Type type) {
+  private void listFiles(InputFileBuilder inputFileBuilder, List<Candidate> candidates, List<File> sourceFiles, InputFile.Type type) {
     for (File sourceFile : sourceFiles) {
-      DefaultInputFile inputFile = inputFileBuilder.create(sourceFile);
-      if (inputFile != null && exclusionFilters.accept(inputFile, type)) {
-        indexFile(inputFileBuilder, fileSystem, progress, inputFile, type);
-      }
+      addCandidate(inputFileBuilder, candidates, sourceFile, type);
     }
   }
 
-  private void indexDirectory(InputFileBuilder inputFileBuilder, DefaultModuleFileSystem fileSystem, Progress status, File dirToIndex, InputFile.Type type) {
+  private void listDirectory(InputFileBuilder inputFileBuilder, List<Candidate> candidates, File dirToIndex, InputFile.Type type) {
     Collection<File> files = FileUtils.listFiles(dirToIndex, FILE_FILTER, DIR_FILTER);
     for (File file : files) {
-      DefaultInputFile inputFile = inputFileBuilder.create(file);
-      if (inputFile != null && exclusionFilters.accept(inputFile, type)) {
-        indexFile(inputFileBuilder, fileSystem, status, inputFile, type);
+      addCandidate(inputFileBuilder, candidates, file, type);
+    }
+  }
+
+  private void addCandidate(InputFileBuilder inputFileBuilder, List<Candidate> candidates, File file, InputFile.Type type) {
+    DefaultInputFile inputFile = inputFileBuilder.create(file);
+    if (inputFile != null && exclusionFilters.accept(inputFile, type)) {
+      candidates.add(new Candidate(inputFileBuilder, inputFile, type));
+    }
+  }
+
+  private void indexFiles(DefaultModuleFileSystem fs, Progress status, List<Candidate> candidates) {
+    int threads = Math.min(threads(settings), candidates.size());
+    if (threads <= 1) {
+      for (Candidate candidate : candidates) {
+        indexFile(fs, status, candidate.call());
+      }
+      return;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(threads,
+      new ThreadFactoryBuilder().setNameFormat("file-indexer-%d").setDaemon(true).build());
+    try {
+      List<Future<DefaultInputFile>> completedFiles = Lists.newArrayListWithCapacity(candidates.size());
+      for (Candidate candidate : candidates) {
+        completedFiles.add(executor.submit(candidate));
+      }
+      for (Future<DefaultInputFile> completedFile : completedFiles) {
+        indexFile(fs, status, waitFor(completedFile));
       }
+    } finally {
+      executor.shutdownNow();
     }
   }
 
-  private void indexFile(InputFileBuilder inputFileBuilder, DefaultModuleFileSystem fs,
-                         Progress status, DefaultInputFile inputFile, InputFile.Type type) {
-    InputFile completedFile = inputFileBuilder.complete(inputFile, type);
+  private void indexFile(DefaultModuleFileSystem fs, Progress status, InputFile completedFile) {
     if (completedFile != null && accept(completedFile)) {
       fs.add(completedFile);
       status.markAsIndexed(completedFile);
     }
   }
 
+  private static DefaultInputFile waitFor(Future<DefaultInputFile> completedFile) {
+    try {
+      return completedFile.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while indexing files", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException("Fail to index files", cause);
+    }
+  }
+
+  @VisibleForTesting
+  static int threads(Settings settings) {
+    if (settings.hasKey(THREADS_PROPERTY)) {
+      return Math.max(1, settings.getInt(THREADS_PROPERTY));
+    }
+    return Runtime.getRuntime().availableProcessors();
+  }
+
   private boolean accept(InputFile inputFile) {
     // InputFileFilter extensions
     for (InputFileFilter filter : filters) {
@@ -135,6 +204,26 @@ public class FileIndexer implements BatchComponent {
     return true;
   }
 
+  /**
+   * File accepted by exclusion filters. Computing its metadata is the expensive part of indexing.
+   */
+  private static class Candidate implements Callable<DefaultInputFile> {
+    private final InputFileBuilder inputFileBuilder;
+    private final DefaultInputFile inputFile;
+    private final InputFile.Type type;
+
+    Candidate(InputFileBuilder inputFileBuilder, DefaultInputFile inputFile, InputFile.Type type) {
+      this.inputFileBuilder = inputFileBuilder;
+      this.inputFile = inputFile;
+      this.type = type;
+    }
+
+    @Override
+    public DefaultInputFile call() {
+      return inputFileBuilder.complete(inputFile, type);
+    }
+  }
+
   private static class Progress {
     private final Set<InputFile> removed;
     private final Set<InputFile> indexed;
@@ -35,6 +35,7 @@ class FileMetadata {
 
   private static final char LINE_FEED = '\n';
   private static final char CARRIAGE_RETURN = '\r';
+  private static final int BUFFER_SIZE = 8192;
 
   // This singleton aims only to increase the coverage by allowing
   // to test the private method !
@@ -45,39 +46,49 @@ class FileMetadata {
 
   /**
    * Compute hash of a file ignoring line ends differences.
-   * Maximum performance is needed.
+   * Maximum performance is needed: characters are decoded and digested by chunks, each character
+   * being fed to MD5 as its two UTF-16 bytes.
    */
   Metadata read(File file, Charset encoding) {
     Reader reader = null;
     int lines = 0;
-    char c = (char)-1;
+    char last = (char) -1;
     try {
       MessageDigest md5Digest = DigestUtils.getMd5Digest();
       md5Digest.reset();
-      reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding));
-      int i = reader.read();
+      reader = new InputStreamReader(new FileInputStream(file), encoding);
+      char[] chars = new char[BUFFER_SIZE];
+      byte[] bytes = new byte[BUFFER_SIZE << 1];
       boolean afterCR = true;
-      while (i != -1) {
-        c = (char) i;
-        if (afterCR) {
-          afterCR = false;
+      int read = reader.read(chars, 0, BUFFER_SIZE);
+      while (read != -1) {
+        int length = 0;
+        for (int i = 0; i < read; i++) {
+          char c = chars[i];
+          if (afterCR) {
+            afterCR = false;
+            if (c == LINE_FEED) {
+              // Ignore
+              continue;
+            }
+          }
+          if (c == CARRIAGE_RETURN) {
+            afterCR = true;
+            c = LINE_FEED;
+          }
           if (c == LINE_FEED) {
-            // Ignore
-            i = reader.read();
-            continue;
+            lines++;
           }
+          bytes[length++] = (byte) (c >> 8);
+          bytes[length++] = (byte) c;
         }
-        if (c == CARRIAGE_RETURN) {
-          afterCR = true;
-          c = LINE_FEED;
-        }
-        if (c == LINE_FEED) {
-          lines++;
+        md5Digest.update(bytes, 0, length);
+        if (read > 0) {
+          last = chars[read - 1];
         }
-        md5Digest.update(charToBytesUTF(c));
-        i = reader.read();
+        read = reader.read(chars, 0, BUFFER_SIZE);
       }
-      if (c != (char)-1) {
+      if (last != (char) -1) {
         lines++;
       }
       String hash = Hex.encodeHexString(md5Digest.digest());
@@ -90,17 +101,6 @@ class FileMetadata {
     }
   }
 
-  private byte[] charToBytesUTF(char c) {
-    char[] buffer = new char[]{c};
-    byte[] b = new byte[buffer.length << 1];
-    for (int i = 0; i < buffer.length; i++) {
-      int bpos = i << 1;
-      b[bpos] = (byte) ((buffer[i] & 0xFF00) >> 8);
-      b[bpos + 1] = (byte) (buffer[i] & 0x00FF);
-    }
-    return b;
-  }
-
   static class Metadata {
     int lines;
     String hash;
@@ -19,6 +19,14 @@
  */
 package org.sonar.batch.scan.filesystem;
 
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.FileIndex;
@@ -27,6 +35,12 @@ import org.sonar.batch.index.Cache;
 import org.sonar.batch.index.Caches;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedSet;
 
 /**
  * Cache of all files. This cache is shared amongst all project modules. Inclusion and
@@ -34,14 +48,19 @@ import javax.annotation.CheckForNull;
  */
 public class InputFileCache implements BatchComponent {
 
-  // [path type | module key | path] -> InputFile
+  // [module key | path] -> InputFile
   // For example:
-  // [rel | struts-core | src/main/java/Action.java] -> InputFile
-  // [rel | struts-core | src/main/java/Filter.java] -> InputFile
-  // [abs | struts-core | /absolute/path/to/src/main/java/Action.java] -> InputFile
-  // [abs | struts-core | /absolute/path/to/src/main/java/Filter.java] -> InputFile
+  // [struts-core | src/main/java/Action.java] -> InputFile
+  // [struts-core | src/main/java/Filter.java] -> InputFile
   private final Cache<InputFile> cache;
 
+  // Secondary indexes are kept in memory and reference files by relative path, as the
+  // Persistit cache can't traverse a sub-tree [index id | module key | index value].
+  // For example:
+  // struts-core -> abs -> /absolute/path/to/src/main/java/Action.java -> [src/main/java/Action.java]
+  // struts-core -> lang -> java -> [src/main/java/Action.java, src/main/java/Filter.java]
+  private final Map<String, Map<String, SetMultimap<Object, String>>> indexesByModule = Maps.newHashMap();
+
   public InputFileCache(Caches caches) {
     cache = caches.createCache("inputFiles");
   }
@@ -56,36 +75,104 @@ public class InputFileCache implements BatchComponent {
 
   public InputFileCache removeModule(String moduleKey) {
     cache.clear(moduleKey);
+    indexesByModule.remove(moduleKey);
     return this;
   }
 
   public InputFileCache remove(String moduleKey, InputFile inputFile) {
+    unindex(moduleKey, inputFile);
     cache.remove(moduleKey, inputFile.relativePath());
     return this;
   }
 
   public InputFileCache put(String moduleKey, InputFile inputFile) {
+    InputFile previous = cache.get(moduleKey, inputFile.relativePath());
+    if (previous != null) {
+      unindex(moduleKey, previous);
+    }
     cache.put(moduleKey, inputFile.relativePath(), inputFile);
     return this;
   }
 
-
-  public void index(String moduleKey, String indexId, Object indexValue, InputFile inputFile) {
-    // already indexed by relative path is already used
-    if (!indexId.equals(RelativePathIndex.ID)) {
-      // See limitation of org.sonar.batch.index.Cache -> fail
-      // to traverse a sub-tree, for example in order to
-      // have the following structure in InputFileCache :
-      // [index id|module key|index value]
-      throw new UnsupportedOperationException("Only relative path index is supported yet");
+  public void index(String moduleKey, String indexId, @Nullable Object indexValue, InputFile inputFile) {
+    // relative path is the key of the cache
+    if (!indexId.equals(RelativePathIndex.ID) && indexValue != null) {
+      index(moduleKey, indexId).put(indexValue, inputFile.relativePath());
     }
   }
 
   @CheckForNull
   public InputFile get(String moduleKey, String indexId, Object indexValue) {
-    if (!indexId.equals(RelativePathIndex.ID)) {
-      throw new UnsupportedOperationException("Only relative path index is supported yet");
+    if (indexId.equals(RelativePathIndex.ID)) {
+      return cache.get(moduleKey, indexValue);
+    }
+    Iterator<String> relativePaths = index(moduleKey, indexId).get(indexValue).iterator();
+    return relativePaths.hasNext() ? cache.get(moduleKey, relativePaths.next()) : null;
+  }
+
+  /**
+   * Files of the module with the given value of a secondary index, sorted by relative path.
+   */
+  public Collection<InputFile> byIndex(final String moduleKey, String indexId, Object indexValue) {
+    if (indexId.equals(RelativePathIndex.ID)) {
+      InputFile inputFile = cache.get(moduleKey, indexValue);
+      return inputFile == null ? ImmutableList.<InputFile>of() : ImmutableList.of(inputFile);
+    }
+    // copy paths so that the returned view is not impacted by further indexation
+    Collection<String> relativePaths = ImmutableList.copyOf(index(moduleKey, indexId).get(indexValue));
+    return Collections2.transform(relativePaths, new Function<String, InputFile>() {
+      @Override
+      public InputFile apply(@Nullable String relativePath) {
+        return cache.get(moduleKey, relativePath);
+      }
+    });
+  }
+
+  private void unindex(String moduleKey, InputFile inputFile) {
+    Map<String, SetMultimap<Object, String>> indexes = indexesByModule.get(moduleKey);
+    if (indexes != null) {
+      for (FileIndex fileIndex : FileIndex.ALL) {
+        SetMultimap<Object, String> index = indexes.get(fileIndex.id());
+        Object value = fileIndex.valueOf(inputFile);
+        if (index != null && value != null) {
+          index.remove(value, inputFile.relativePath());
+        }
+      }
+    }
+  }
+
+  private SetMultimap<Object, String> index(String moduleKey, String indexId) {
+    if (!isSupported(indexId)) {
+      throw new UnsupportedOperationException("Unsupported index: " + indexId);
+    }
+    Map<String, SetMultimap<Object, String>> indexes = indexesByModule.get(moduleKey);
+    if (indexes == null) {
+      indexes = Maps.newHashMap();
+      indexesByModule.put(moduleKey, indexes);
+    }
+    SetMultimap<Object, String> index = indexes.get(indexId);
+    if (index == null) {
+      index = Multimaps.newSortedSetMultimap(Maps.<Object, Collection<String>>newHashMap(), SortedPathsSupplier.INSTANCE);
+      indexes.put(indexId, index);
+    }
+    return index;
+  }
+
+  private static boolean isSupported(String indexId) {
+    for (FileIndex fileIndex : FileIndex.ALL) {
+      if (fileIndex.id().equals(indexId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private enum SortedPathsSupplier implements Supplier<SortedSet<String>> {
+    INSTANCE;
+
+    @Override
+    public SortedSet<String> get() {
+      return Sets.newTreeSet();
     }
-    return cache.get(moduleKey, indexValue);
   }
 }
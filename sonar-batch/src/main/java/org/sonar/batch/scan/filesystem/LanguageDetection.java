@@ -28,6 +28,7 @@ import org.slf4j.LoggerFactory;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.PathPattern;
+import org.sonar.api.batch.fs.internal.PathPatternSet;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Language;
 import org.sonar.api.resources.Languages;
@@ -37,6 +38,7 @@ import javax.annotation.CheckForNull;
 
 import java.text.MessageFormat;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 
@@ -54,6 +56,13 @@ class LanguageDetection {
   private final List<String> languagesToConsider = Lists.newArrayList();
   private final String forcedLanguage;
 
+  /**
+   * Patterns of the languages to consider, compiled together. The language of the pattern
+   * at index i is languageOfPatterns[i].
+   */
+  private final PathPatternSet patterns;
+  private final String[] languageOfPatterns;
+
   LanguageDetection(Settings settings, Languages languages) {
     for (Language language : languages.all()) {
       String[] filePatterns = settings.getStringArray(getFileLangPatternPropKey(language.getKey()));
@@ -84,6 +93,17 @@ class LanguageDetection {
     } else {
       languagesToConsider.addAll(patternsByLanguage.keySet());
     }
+
+    List<PathPattern> patternsToConsider = Lists.newArrayList();
+    List<String> languageOfPatternsToConsider = Lists.newArrayList();
+    for (String languageKey : languagesToConsider) {
+      for (PathPattern pathPattern : patternsByLanguage.get(languageKey)) {
+        patternsToConsider.add(pathPattern);
+        languageOfPatternsToConsider.add(languageKey);
+      }
+    }
+    patterns = new PathPatternSet(patternsToConsider.toArray(new PathPattern[patternsToConsider.size()]));
+    languageOfPatterns = languageOfPatternsToConsider.toArray(new String[languageOfPatternsToConsider.size()]);
   }
 
   Map<String, PathPattern[]> patternsByLanguage() {
@@ -93,15 +113,15 @@ class LanguageDetection {
   @CheckForNull
   String language(InputFile inputFile) {
     String detectedLanguage = null;
-    for (String languageKey : languagesToConsider) {
-      if (isCandidateForLanguage(inputFile, languageKey)) {
-        if (detectedLanguage == null) {
-          detectedLanguage = languageKey;
-        } else {
-          // Language was already forced by another pattern
-          throw MessageException.of(MessageFormat.format("Language of file ''{0}'' can not be decided as the file matches patterns of both {1} and {2}",
-            inputFile.relativePath(), getDetails(detectedLanguage), getDetails(languageKey)));
-        }
+    BitSet matches = patterns.matches(inputFile, false);
+    for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+      String languageKey = languageOfPatterns[i];
+      if (detectedLanguage == null) {
+        detectedLanguage = languageKey;
+      } else if (!detectedLanguage.equals(languageKey)) {
+        // Language was already forced by another pattern
+        throw MessageException.of(MessageFormat.format("Language of file ''{0}'' can not be decided as the file matches patterns of both {1} and {2}",
+          inputFile.relativePath(), getDetails(detectedLanguage), getDetails(languageKey)));
       }
     }
     if (detectedLanguage != null) {
@@ -117,18 +137,6 @@ class LanguageDetection {
     return null;
   }
 
-  private boolean isCandidateForLanguage(InputFile inputFile, String languageKey) {
-    PathPattern[] patterns = patternsByLanguage.get(languageKey);
-    if (patterns != null) {
-      for (PathPattern pathPattern : patterns) {
-        if (pathPattern.match(inputFile, false)) {
-          return true;
-        }
-      }
-    }
-    return false;
-  }
-
   private String getFileLangPatternPropKey(String languageKey) {
     return "sonar.lang.patterns." + languageKey;
   }
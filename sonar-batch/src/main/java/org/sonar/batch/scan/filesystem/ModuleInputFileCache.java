@@ -25,6 +25,8 @@ import org.sonar.api.batch.fs.internal.UniqueIndexPredicate;
 import org.sonar.api.batch.fs.internal.DefaultFileSystem;
 import org.sonar.api.resources.Project;
 
+import java.util.Collection;
+
 public class ModuleInputFileCache extends DefaultFileSystem.Cache implements BatchComponent {
 
   private final String moduleKey;
@@ -45,6 +47,11 @@ public class ModuleInputFileCache extends DefaultFileSystem.Cache implements Bat
     return projectCache.get(moduleKey, predicate.indexId(), predicate.value());
   }
 
+  @Override
+  protected Collection<InputFile> inputFiles(String indexId, Object value) {
+    return projectCache.byIndex(moduleKey, indexId, value);
+  }
+
   @Override
   protected void doAdd(InputFile inputFile) {
     projectCache.put(moduleKey, inputFile);
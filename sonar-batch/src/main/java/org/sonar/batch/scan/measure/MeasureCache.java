@@ -37,6 +37,9 @@ public class MeasureCache implements BatchComponent {
   private final Cache<String> dataCache;
 
   public MeasureCache(Caches caches) {
+    MeasureValueCoder coder = new MeasureValueCoder();
+    caches.registerValueCoder(Measure.class, coder);
+    caches.registerValueCoder(RuleMeasure.class, coder);
     cache = caches.createCache("measures");
     dataCache = caches.createCache("measuresData");
   }
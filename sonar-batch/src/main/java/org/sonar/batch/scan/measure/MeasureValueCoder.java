@@ -0,0 +1,168 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.measure;
+
+import com.google.common.collect.Maps;
+import com.persistit.Value;
+import com.persistit.encoding.CoderContext;
+import com.persistit.encoding.ValueCoder;
+import org.apache.commons.lang.SerializationUtils;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.PersistenceMode;
+import org.sonar.api.measures.RuleMeasure;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rules.RulePriority;
+import org.sonar.api.technicaldebt.batch.Characteristic;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.util.Date;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compact encoding of {@link Measure} and {@link RuleMeasure} in the measure cache. Metrics and characteristics
+ * are written as keys and resolved against the instances seen during encoding, as the cache only lives
+ * during the analysis. Subclasses and measures that can't be represented by keys fall back to Java serialization.
+ *
+ * @since 4.4
+ */
+class MeasureValueCoder implements ValueCoder {
+
+  private static final int MEASURE = 0;
+  private static final int RULE_MEASURE = 1;
+  private static final int SERIALIZED = 2;
+
+  private final ConcurrentMap<String, Metric> metricsByKey = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, Characteristic> characteristicsByKey = Maps.newConcurrentMap();
+
+  @Override
+  public void put(Value value, Object object, CoderContext context) {
+    Measure m = (Measure) object;
+    if (!isCompactable(m)) {
+      value.put(SERIALIZED);
+      value.put(SerializationUtils.serialize(m));
+      return;
+    }
+    value.put(m instanceof RuleMeasure ? RULE_MEASURE : MEASURE);
+    value.put(m.getMetricKey());
+    value.put(register(metricsByKey, m.getMetricKey(), m.getMetric()));
+    value.put(m.getValue());
+    value.put(m.getData());
+    value.put(m.getDescription());
+    value.put(m.getAlertStatus() != null ? m.getAlertStatus().name() : null);
+    value.put(m.getAlertText());
+    value.put(m.getTendency());
+    value.put(m.getDate() != null ? m.getDate().getTime() : null);
+    value.put(m.getVariation1());
+    value.put(m.getVariation2());
+    value.put(m.getVariation3());
+    value.put(m.getVariation4());
+    value.put(m.getVariation5());
+    value.put(m.getUrl());
+    Characteristic characteristic = m.getCharacteristic();
+    value.put(characteristic != null ? register(characteristicsByKey, characteristic.key(), characteristic) : null);
+    value.put(m.getPersonId());
+    value.put(m.getPersistenceMode() != null ? m.getPersistenceMode().name() : null);
+    if (m instanceof RuleMeasure) {
+      RuleMeasure ruleMeasure = (RuleMeasure) m;
+      value.put(ruleMeasure.ruleKey() != null ? ruleMeasure.ruleKey().toString() : null);
+      value.put(ruleMeasure.getSeverity() != null ? ruleMeasure.getSeverity().name() : null);
+    }
+  }
+
+  @Override
+  public Object get(Value value, Class<?> clazz, CoderContext context) {
+    int type = value.getInt();
+    if (type == SERIALIZED) {
+      return SerializationUtils.deserialize((byte[]) value.get());
+    }
+    String metricKey = (String) value.get();
+    Metric metric = metricsByKey.get(metricKey);
+    String metricRef = (String) value.get();
+    Measure m;
+    if (type == RULE_MEASURE) {
+      m = new RuleMeasure(metric, (RuleKey) null, null, null);
+    } else {
+      m = new Measure(metricKey);
+      if (metricRef != null) {
+        m.setMetric(metric);
+      }
+    }
+    m.setRawValue((Double) value.get());
+    m.setData((String) value.get());
+    m.setDescription((String) value.get());
+    String alertStatus = (String) value.get();
+    m.setAlertStatus(alertStatus != null ? Metric.Level.valueOf(alertStatus) : null);
+    m.setAlertText((String) value.get());
+    m.setTendency((Integer) value.get());
+    Long date = (Long) value.get();
+    m.setDate(date != null ? new Date(date) : null);
+    m.setVariation1((Double) value.get());
+    m.setVariation2((Double) value.get());
+    m.setVariation3((Double) value.get());
+    m.setVariation4((Double) value.get());
+    m.setVariation5((Double) value.get());
+    m.setUrl((String) value.get());
+    String characteristicKey = (String) value.get();
+    m.setCharacteristic(characteristicKey != null ? characteristicsByKey.get(characteristicKey) : null);
+    m.setPersonId((Integer) value.get());
+    String persistenceMode = (String) value.get();
+    m.setPersistenceMode(persistenceMode != null ? PersistenceMode.valueOf(persistenceMode) : null);
+    if (type == RULE_MEASURE) {
+      RuleMeasure ruleMeasure = (RuleMeasure) m;
+      String ruleKey = (String) value.get();
+      ruleMeasure.setRuleKey(ruleKey != null ? RuleKey.parse(ruleKey) : null);
+      String severity = (String) value.get();
+      ruleMeasure.setSeverity(severity != null ? RulePriority.valueOf(severity) : null);
+    }
+    return m;
+  }
+
+  private static boolean isCompactable(Measure m) {
+    if (m.getClass() != Measure.class && m.getClass() != RuleMeasure.class) {
+      return false;
+    }
+    Metric metric = m.getMetric();
+    if (metric == null) {
+      // a rule measure can't be created without metric
+      return m.getClass() == Measure.class;
+    }
+    if (metric.getKey() == null || !metric.getKey().equals(m.getMetricKey())) {
+      return false;
+    }
+    Characteristic characteristic = m.getCharacteristic();
+    return (characteristic == null || characteristic.key() != null) && m.getRequirement() == null;
+  }
+
+  /**
+   * Remembers the reference object so that it can be restored from its key. Returns the key, or null
+   * if the reference is null.
+   */
+  @CheckForNull
+  private static <T> String register(ConcurrentMap<String, T> references, String key, @Nullable T reference) {
+    if (reference == null) {
+      return null;
+    }
+    references.putIfAbsent(key, reference);
+    return key;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.batch.DecoratorContext;
+import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.MeasuresFilters;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.MetricFinder;
+import org.sonar.api.measures.RuleMeasure;
+import org.sonar.api.resources.Directory;
+import org.sonar.api.resources.File;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.technicaldebt.batch.internal.DefaultCharacteristic;
+import org.sonar.api.utils.SonarException;
+import org.sonar.batch.scan.measure.MeasureCache;
+import org.sonar.core.measure.MeasurementFilters;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultDecoratorContextTest {
+
+  static final RuleKey RULE_1 = RuleKey.of("squid", "S1");
+  static final RuleKey RULE_2 = RuleKey.of("squid", "S2");
+
+  MeasureCache measureCache = mock(MeasureCache.class);
+  MetricFinder metricFinder = mock(MetricFinder.class);
+
+  @Before
+  public void setUp() {
+    when(measureCache.byResource(any(Resource.class))).thenReturn(Collections.<Measure>emptyList());
+    for (Metric metric : CoreMetrics.getMetrics()) {
+      when(metricFinder.findByKey(metric.getKey())).thenReturn(metric);
+    }
+  }
+
+  @Test
+  public void get_measures_by_metric_rule_and_characteristic() {
+    DefaultDecoratorContext context = newContext(new File("Foo.java"), Collections.<DecoratorContext>emptyList());
+    DefaultCharacteristic characteristic = new DefaultCharacteristic().setKey("MEMORY_EFFICIENCY");
+    context.saveMeasure(CoreMetrics.VIOLATIONS, 3.0);
+    context.saveMeasure(RuleMeasure.createForRule(CoreMetrics.VIOLATIONS, RULE_1, 1.0));
+    context.saveMeasure(RuleMeasure.createForRule(CoreMetrics.VIOLATIONS, RULE_2, 2.0));
+    context.saveMeasure(new Measure(CoreMetrics.VIOLATIONS, 4.0).setPersonId(1));
+    context.saveMeasure(new Measure(CoreMetrics.TECHNICAL_DEBT, 5.0).setCharacteristic(characteristic));
+
+    assertThat(context.getMeasure(CoreMetrics.VIOLATIONS).getValue()).isEqualTo(3.0);
+    assertThat(context.getMeasures(MeasuresFilters.rule(CoreMetrics.VIOLATIONS, org.sonar.api.rules.Rule.create("squid", "S2"))).getValue()).isEqualTo(2.0);
+    assertThat(context.getMeasures(MeasuresFilters.rules(CoreMetrics.VIOLATIONS))).hasSize(2);
+    assertThat(context.getMeasures(MeasuresFilters.characteristic(CoreMetrics.TECHNICAL_DEBT, characteristic)).getValue()).isEqualTo(5.0);
+    assertThat(context.getMeasure(CoreMetrics.TECHNICAL_DEBT)).isNull();
+    assertThat(context.getMeasures(MeasuresFilters.all())).hasSize(5);
+  }
+
+  @Test
+  public void fail_to_save_twice_the_same_measure() {
+    DefaultDecoratorContext context = newContext(new File("Foo.java"), Collections.<DecoratorContext>emptyList());
+    Measure measure = RuleMeasure.createForRule(CoreMetrics.VIOLATIONS, RULE_1, 1.0);
+    context.saveMeasure(measure);
+    // same instance is ignored
+    context.saveMeasure(measure);
+    context.saveMeasure(RuleMeasure.createForRule(CoreMetrics.VIOLATIONS, RULE_2, 1.0));
+
+    try {
+      context.saveMeasure(RuleMeasure.createForRule(CoreMetrics.VIOLATIONS, RULE_1, 2.0));
+      fail();
+    } catch (SonarException e) {
+      assertThat(e.getMessage()).startsWith("Can not add twice the same measure");
+    }
+    assertThat(context.getMeasures(MeasuresFilters.rules(CoreMetrics.VIOLATIONS))).hasSize(2);
+  }
+
+  @Test
+  public void replace_tests_measure() {
+    DefaultDecoratorContext context = newContext(new File("FooTest.java"), Collections.<DecoratorContext>emptyList());
+    context.saveMeasure(CoreMetrics.TESTS, 1.0);
+    context.saveMeasure(CoreMetrics.TESTS, 2.0);
+
+    assertThat(context.getMeasure(CoreMetrics.TESTS).getValue()).isEqualTo(2.0);
+    assertThat(context.getMeasures(MeasuresFilters.all())).hasSize(1);
+  }
+
+  @Test
+  public void aggregate_children_measures_once_per_filter() {
+    DecoratorContext child1 = mock(DecoratorContext.class);
+    DecoratorContext child2 = mock(DecoratorContext.class);
+    when(child1.getMeasures(any(MeasuresFilters.MetricFilter.class))).thenReturn(new Measure(CoreMetrics.VIOLATIONS, 1.0));
+    when(child2.getMeasures(any(MeasuresFilters.MetricFilter.class))).thenReturn(new Measure(CoreMetrics.VIOLATIONS, 2.0));
+    DefaultDecoratorContext context = newContext(new Directory("src"), Arrays.asList(child1, child2));
+
+    assertThat(context.getChildrenMeasures(CoreMetrics.VIOLATIONS)).hasSize(2);
+    Collection<Measure> measures = context.getChildrenMeasures(MeasuresFilters.metric(CoreMetrics.VIOLATIONS));
+    assertThat(measures).hasSize(2);
+    // returned collection can be modified by caller
+    measures.clear();
+    assertThat(context.getChildrenMeasures(CoreMetrics.VIOLATIONS)).hasSize(2);
+    verify(child1, times(1)).getMeasures(any(MeasuresFilters.MetricFilter.class));
+
+    // other filters are not cached
+    context.getChildrenMeasures(MeasuresFilters.rules(CoreMetrics.VIOLATIONS));
+    context.getChildrenMeasures(MeasuresFilters.rules(CoreMetrics.VIOLATIONS));
+    verify(child1, times(3)).getMeasures(any(MeasuresFilters.MetricFilter.class));
+  }
+
+  private DefaultDecoratorContext newContext(Resource resource, List<DecoratorContext> children) {
+    DefaultDecoratorContext context = new DefaultDecoratorContext(resource, mock(SonarIndex.class), children, new MeasurementFilters(), measureCache, metricFinder);
+    context.init();
+    return context;
+  }
+}
@@ -36,6 +36,7 @@ public class PastMeasuresLoaderTest extends AbstractDbUnitTestCase {
 
   private static final int PROJECT_SNAPSHOT_ID = 1000;
   private static final String PROJECT_KEY = "project";
+  private static final String PACKAGE_KEY = "project:org.foo";
   private static final String FILE_KEY = "project:org.foo.Bar";
 
   @Test
@@ -86,6 +87,44 @@ public class PastMeasuresLoaderTest extends AbstractDbUnitTestCase {
     assertThat(PastMeasuresLoader.getValue(pastMeasure), is(80.0));
   }
 
+  @Test
+  public void shouldGetPastMeasuresOfModuleAndDirectories() {
+    setupData("shared");
+
+    List<Metric> metrics = selectMetrics();
+    Snapshot projectSnapshot = getSession().getSingleResult(Snapshot.class, "id", PROJECT_SNAPSHOT_ID);
+
+    PastMeasuresLoader loader = new PastMeasuresLoader(getSession(), metrics);
+    PastMeasures measures = loader.getModulePastMeasures(new PastSnapshot("days", null, projectSnapshot));
+    assertThat(measures.size(), is(4));
+
+    List<Object[]> projectMeasures = measures.get(PROJECT_KEY);
+    assertThat(projectMeasures.size(), is(2));
+    assertThat(PastMeasuresLoader.getMetricId(projectMeasures.get(0)), is(1));
+    assertThat(PastMeasuresLoader.getValue(projectMeasures.get(0)), is(60.0));
+    assertThat(PastMeasuresLoader.getMetricId(projectMeasures.get(1)), is(2));
+    assertThat(PastMeasuresLoader.getValue(projectMeasures.get(1)), is(80.0));
+
+    List<Object[]> packageMeasures = measures.get(PACKAGE_KEY);
+    assertThat(packageMeasures.size(), is(2));
+    assertThat(PastMeasuresLoader.getMetricId(packageMeasures.get(0)), is(1));
+    assertThat(PastMeasuresLoader.getCharacteristicId(packageMeasures.get(0)), nullValue());
+    assertThat(PastMeasuresLoader.getPersonId(packageMeasures.get(0)), nullValue());
+    assertThat(PastMeasuresLoader.getRuleId(packageMeasures.get(0)), nullValue());
+    assertThat(PastMeasuresLoader.getValue(packageMeasures.get(0)), is(20.0));
+
+    // measures on files are not loaded
+    assertThat(measures.get(FILE_KEY).isEmpty(), is(true));
+  }
+
+  @Test
+  public void shouldNotGetPastMeasuresOfModuleWithoutSnapshot() {
+    PastMeasuresLoader loader = new PastMeasuresLoader(getSession(), selectMetrics());
+    PastMeasures measures = loader.getModulePastMeasures(new PastSnapshot("days"));
+    assertThat(measures.size(), is(0));
+    assertThat(measures.get(PROJECT_KEY).isEmpty(), is(true));
+  }
+
   @Test
   public void shouldKeepOnlyNumericalMetrics() {
     Metric ncloc = new Metric("ncloc", Metric.ValueType.INT);
@@ -0,0 +1,60 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.components;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PastMeasuresTest {
+
+  @Test
+  public void should_get_measures_by_resource() {
+    PastMeasures measures = new PastMeasures();
+    measures.add("project", 1, null, null, null, 60.0);
+    measures.add("project", 2, 3, 4, 5, null);
+    measures.add("project:dir", 1, null, null, null, 20.0);
+    measures.seal();
+
+    assertThat(measures.size()).isEqualTo(3);
+    List<Object[]> projectMeasures = measures.get("project");
+    assertThat(projectMeasures).hasSize(2);
+    assertThat(projectMeasures.get(0)).isEqualTo(new Object[] {1, null, null, null, 60.0});
+    assertThat(projectMeasures.get(1)).isEqualTo(new Object[] {2, 3, 4, 5, null});
+    assertThat(measures.get("project:dir")).hasSize(1);
+    assertThat(measures.get("unknown")).isEmpty();
+  }
+
+  @Test
+  public void should_grow_beyond_initial_capacity() {
+    PastMeasures measures = new PastMeasures();
+    for (int i = 0; i < 5000; i++) {
+      measures.add("resource" + (i / 10), i, null, null, null, (double) i);
+    }
+    measures.seal();
+
+    assertThat(measures.size()).isEqualTo(5000);
+    List<Object[]> lastMeasures = measures.get("resource499");
+    assertThat(lastMeasures).hasSize(10);
+    assertThat(lastMeasures.get(9)).isEqualTo(new Object[] {4999, null, null, null, 4999.0});
+  }
+}
@@ -20,12 +20,19 @@
 package org.sonar.batch.index;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.fest.assertions.Assertions.assertThat;
 
 public class CacheTest {
@@ -254,4 +261,35 @@ public class CacheTest {
     cache.clear("foo", "bar", "baz");
     cache.clear();
   }
+
+  @Test
+  public void should_support_concurrent_access() throws Exception {
+    final Cache<String> cache = caches.createCache("concurrent");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Boolean>> futures = Lists.newArrayList();
+    for (int thread = 0; thread < 4; thread++) {
+      final String group = "group" + thread;
+      futures.add(executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          for (int i = 0; i < 1000; i++) {
+            cache.put(group, i, "value" + i);
+          }
+          for (int i = 0; i < 1000; i++) {
+            if (!("value" + i).equals(cache.get(group, i))) {
+              return false;
+            }
+          }
+          return true;
+        }
+      }));
+    }
+    for (Future<Boolean> future : futures) {
+      assertThat(future.get()).isTrue();
+    }
+    executor.shutdown();
+
+    assertThat(cache.keySet()).hasSize(4);
+    assertThat(cache.values("group0")).hasSize(1000);
+  }
 }
@@ -26,6 +26,7 @@ import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.CoreProperties;
+import org.sonar.api.config.Settings;
 import org.sonar.batch.bootstrap.BootstrapProperties;
 import org.sonar.batch.bootstrap.BootstrapSettings;
 import org.sonar.batch.bootstrap.TempFolderProvider;
@@ -99,6 +100,39 @@ public class CachesTest {
     }
   }
 
+  @Test
+  public void should_compute_buffer_count_from_heap() throws Exception {
+    Settings settings = new Settings();
+    // 1/10 of the heap
+    assertThat(Caches.bufferCount(settings, 512L * 1024 * 1024)).isEqualTo(6553);
+    // min 1MB
+    assertThat(Caches.bufferCount(settings, 1024L * 1024)).isEqualTo(128);
+    // max 256MB
+    assertThat(Caches.bufferCount(settings, 16L * 1024 * 1024 * 1024)).isEqualTo(32768);
+  }
+
+  @Test
+  public void should_override_buffer_memory() throws Exception {
+    Settings settings = new Settings().setProperty(Caches.BUFFER_MEMORY_PROPERTY, "16");
+    assertThat(Caches.bufferCount(settings, 512L * 1024 * 1024)).isEqualTo(2048);
+  }
+
+  @Test
+  public void should_override_maximum_pages() throws Exception {
+    assertThat(Caches.maximumPages(new Settings())).isEqualTo(Caches.MAXIMUM_PAGES_DEFAULT_VALUE);
+    assertThat(Caches.maximumPages(new Settings().setProperty(Caches.MAXIMUM_PAGES_PROPERTY, "50000"))).isEqualTo(50000L);
+  }
+
+  @Test
+  public void should_fail_if_negative_buffer_memory() throws Exception {
+    try {
+      Caches.bufferCount(new Settings().setProperty(Caches.BUFFER_MEMORY_PROPERTY, "-1"), 512L * 1024 * 1024);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Property sonar.batch.cache.bufferMemory must be strictly positive");
+    }
+  }
+
   static class Element implements Serializable {
 
   }
@@ -23,6 +23,7 @@ import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
@@ -38,11 +39,17 @@ import org.sonar.api.rules.RulePriority;
 import org.sonar.api.utils.SonarException;
 import org.sonar.batch.scan.measure.MeasureCache;
 import org.sonar.core.persistence.AbstractDaoTestCase;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.core.persistence.MyBatis;
 
 import java.util.Arrays;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class MeasurePersisterTest extends AbstractDaoTestCase {
@@ -80,7 +87,7 @@ public class MeasurePersisterTest extends AbstractDaoTestCase {
     when(resourceCache.get("foo:org/foo/Bar.java")).thenReturn(aFile);
     when(resourceCache.get("foo:org/foo")).thenReturn(aDirectory);
 
-    measurePersister = new MeasurePersister(getMyBatis(), ruleFinder, measureCache, snapshotCache, resourceCache);
+    measurePersister = new MeasurePersister(getMyBatis(), ruleFinder, measureCache, snapshotCache, resourceCache, new Settings());
   }
 
   @Test
@@ -122,6 +129,51 @@ public class MeasurePersisterTest extends AbstractDaoTestCase {
     checkTables("shouldInsertRuleMeasure", "project_measures");
   }
 
+  @Test
+  public void should_find_rule_once_per_rule() {
+    setupData("empty");
+
+    Rule rule = Rule.create("pmd", "key");
+    when(ruleFinder.findByKey(rule.ruleKey())).thenReturn(rule);
+
+    Measure measure1 = new RuleMeasure(ncloc(), rule, RulePriority.MAJOR, 1).setValue(1234.0);
+    Measure measure2 = new RuleMeasure(ncloc(), rule, RulePriority.MAJOR, 1).setValue(10.0);
+    when(measureCache.entries()).thenReturn(Arrays.asList(
+      new Cache.Entry<Measure>(new String[] {"foo", "ncloc"}, measure1),
+      new Cache.Entry<Measure>(new String[] {"foo:org/foo", "ncloc"}, measure2)));
+
+    measurePersister.persist();
+
+    verify(ruleFinder, times(1)).findByKey(rule.ruleKey());
+    checkTables("shouldInsertRuleMeasures", "project_measures");
+  }
+
+  @Test
+  public void should_flush_with_configured_size() {
+    setupData("empty");
+
+    Settings settings = new Settings().setProperty(MeasurePersister.FLUSH_SIZE_PROPERTY, 1);
+    ResourceCache resourceCache = mock(ResourceCache.class);
+    when(resourceCache.get("foo")).thenReturn(project);
+    when(resourceCache.get("foo:org/foo")).thenReturn(aDirectory);
+    MyBatis mybatis = spy(getMyBatis());
+    DbSession session = spy(getMyBatis().openSession(true, 1));
+    doReturn(session).when(mybatis).openSession(true, 1);
+    measurePersister = new MeasurePersister(mybatis, ruleFinder, measureCache, snapshotCache, resourceCache, settings);
+
+    Measure measure1 = new Measure(ncloc()).setValue(200.0);
+    Measure measure2 = new Measure(ncloc()).setValue(300.0);
+    when(measureCache.entries()).thenReturn(Arrays.asList(
+      new Cache.Entry<Measure>(new String[] {"foo", "ncloc"}, measure1),
+      new Cache.Entry<Measure>(new String[] {"foo:org/foo", "ncloc"}, measure2)));
+
+    measurePersister.persist();
+
+    // one commit per inserted measure, then the final commit
+    verify(session, times(3)).commit();
+    checkTables("shouldAlwaysPersistNonFileMeasures", "project_measures");
+  }
+
   @Test
   public void should_insert_measure_with_text_data() {
     setupData("empty");
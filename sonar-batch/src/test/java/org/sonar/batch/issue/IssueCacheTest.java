@@ -29,13 +29,19 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.issue.Issue;
 import org.sonar.api.issue.internal.DefaultIssue;
+import org.sonar.api.issue.internal.DefaultIssueComment;
+import org.sonar.api.issue.internal.IssueChangeContext;
+import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rule.Severity;
+import org.sonar.api.utils.DateUtils;
+import org.sonar.api.utils.Duration;
 import org.sonar.batch.index.Caches;
 import org.sonar.batch.index.CachesTest;
 
 import javax.annotation.Nullable;
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 import static org.fest.assertions.Assertions.assertThat;
@@ -97,6 +103,65 @@ public class IssueCacheTest {
     assertThat(issues).containsOnly(issue1, issue2);
   }
 
+  @Test
+  public void should_restore_all_fields() throws Exception {
+    IssueCache cache = new IssueCache(caches);
+    Date date = DateUtils.parseDateTime("2014-05-01T10:00:00+0200");
+    DefaultIssue issue = new DefaultIssue().setKey("111").setComponentKey("org.struts.Action").setComponentId(10L).setProjectKey("struts")
+      .setRuleKey(RuleKey.of("squid", "AvoidCycle")).setSeverity(Severity.MAJOR).setManualSeverity(true).setMessage("the message")
+      .setLine(42).setEffortToFix(2.5).setDebt(Duration.create(30L)).setStatus(Issue.STATUS_CONFIRMED).setResolution(Issue.RESOLUTION_FIXED)
+      .setReporter("emmerik").setAssignee("simon").setChecksum("c7b5db46591806455cf082bb348631e8").setAttribute("JIRA", "FOO-123")
+      .setAuthorLogin("julien").setActionPlanKey("ABCD").setCreationDate(date).setUpdateDate(date).setCloseDate(date)
+      .setNew(false).setEndOfLife(true).setOnDisabledRule(true).setChanged(true).setSendNotifications(true).setSelectedAt(date);
+    cache.put(issue);
+
+    DefaultIssue reloaded = cache.byComponent("org.struts.Action").iterator().next();
+    assertThat(reloaded).isNotSameAs(issue);
+    assertThat(reloaded.key()).isEqualTo("111");
+    assertThat(reloaded.componentKey()).isEqualTo("org.struts.Action");
+    assertThat(reloaded.componentId()).isEqualTo(10L);
+    assertThat(reloaded.projectKey()).isEqualTo("struts");
+    assertThat(reloaded.ruleKey()).isEqualTo(RuleKey.of("squid", "AvoidCycle"));
+    assertThat(reloaded.severity()).isEqualTo(Severity.MAJOR);
+    assertThat(reloaded.manualSeverity()).isTrue();
+    assertThat(reloaded.message()).isEqualTo("the message");
+    assertThat(reloaded.line()).isEqualTo(42);
+    assertThat(reloaded.effortToFix()).isEqualTo(2.5);
+    assertThat(reloaded.debt()).isEqualTo(Duration.create(30L));
+    assertThat(reloaded.status()).isEqualTo(Issue.STATUS_CONFIRMED);
+    assertThat(reloaded.resolution()).isEqualTo(Issue.RESOLUTION_FIXED);
+    assertThat(reloaded.reporter()).isEqualTo("emmerik");
+    assertThat(reloaded.assignee()).isEqualTo("simon");
+    assertThat(reloaded.checksum()).isEqualTo("c7b5db46591806455cf082bb348631e8");
+    assertThat(reloaded.attributes()).hasSize(1);
+    assertThat(reloaded.attribute("JIRA")).isEqualTo("FOO-123");
+    assertThat(reloaded.authorLogin()).isEqualTo("julien");
+    assertThat(reloaded.actionPlanKey()).isEqualTo("ABCD");
+    assertThat(reloaded.creationDate()).isEqualTo(date);
+    assertThat(reloaded.updateDate()).isEqualTo(date);
+    assertThat(reloaded.closeDate()).isEqualTo(date);
+    assertThat(reloaded.isNew()).isFalse();
+    assertThat(reloaded.isEndOfLife()).isTrue();
+    assertThat(reloaded.isOnDisabledRule()).isTrue();
+    assertThat(reloaded.isChanged()).isTrue();
+    assertThat(reloaded.mustSendNotifications()).isTrue();
+    assertThat(reloaded.selectedAt()).isEqualTo(date);
+  }
+
+  @Test
+  public void should_keep_changes_and_comments() throws Exception {
+    IssueCache cache = new IssueCache(caches);
+    DefaultIssue issue = new DefaultIssue().setKey("111").setComponentKey("org.struts.Action").setSeverity(Severity.MINOR);
+    issue.setFieldChange(IssueChangeContext.createUser(new Date(), "emmerik"), "severity", Severity.BLOCKER, Severity.MINOR);
+    issue.addComment(DefaultIssueComment.create("111", "emmerik", "the comment"));
+    cache.put(issue);
+
+    DefaultIssue reloaded = cache.byComponent("org.struts.Action").iterator().next();
+    assertThat(reloaded.currentChange().get("severity").newValue()).isEqualTo(Severity.MINOR);
+    assertThat(reloaded.changes()).hasSize(1);
+    assertThat(reloaded.comments()).hasSize(1);
+  }
+
   private Collection<String> issueKeys(Iterable<DefaultIssue> issues) {
     return Collections2.transform(ImmutableList.copyOf(issues), new Function<DefaultIssue, String>() {
       @Override
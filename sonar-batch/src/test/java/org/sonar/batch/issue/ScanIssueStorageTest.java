@@ -35,11 +35,20 @@ import org.sonar.batch.ProjectTree;
 import org.sonar.batch.index.SnapshotCache;
 import org.sonar.core.persistence.AbstractDaoTestCase;
 import org.sonar.core.resource.ResourceDao;
+import org.sonar.core.resource.ResourceDto;
+import org.sonar.core.resource.ResourceQuery;
 
+import java.util.Arrays;
 import java.util.Collection;
 
+import static com.google.common.collect.Sets.newHashSet;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.fest.assertions.Fail.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -77,6 +86,22 @@ public class ScanIssueStorageTest extends AbstractDaoTestCase {
     assertThat(componentId).isEqualTo(123);
   }
 
+  @Test
+  public void should_prefetch_component_ids_from_db() throws Exception {
+    ResourceDao resourceDao = mock(ResourceDao.class);
+    when(resourceDao.selectResourcesByKeys(anyCollectionOf(String.class))).thenReturn(Arrays.asList(new ResourceDto().setId(123L).setKey("struts:Action.java")));
+    storage = new ScanIssueStorage(getMyBatis(), new FakeRuleFinder(), snapshotCache, resourceDao, projectTree);
+    when(snapshotCache.get("struts:Action.java")).thenReturn(null);
+    DefaultIssue issue = new DefaultIssue().setComponentKey("struts:Action.java");
+
+    storage.prefetchComponentIds(Arrays.asList(issue));
+    long componentId = storage.componentId(issue);
+
+    assertThat(componentId).isEqualTo(123);
+    verify(resourceDao).selectResourcesByKeys(newHashSet("struts:Action.java"));
+    verify(resourceDao, never()).getResource(any(ResourceQuery.class));
+  }
+
   @Test
   public void should_fail_to_load_component_id_if_unknown_component() throws Exception {
     setupData("should_fail_to_load_component_id_if_unknown_component");
@@ -19,12 +19,20 @@
  */
 package org.sonar.batch.phases;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.batch.BatchExtensionDictionnary;
 import org.sonar.api.batch.Decorator;
 import org.sonar.api.batch.DecoratorContext;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.batch.ThreadSafeDecorator;
+import org.sonar.api.config.Settings;
+import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.MetricFinder;
+import org.sonar.api.resources.Directory;
 import org.sonar.api.resources.File;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
@@ -34,11 +42,23 @@ import org.sonar.batch.events.EventBus;
 import org.sonar.batch.scan.measure.MeasureCache;
 import org.sonar.core.measure.MeasurementFilters;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static org.fest.assertions.Assertions.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class DecoratorsExecutorTest {
 
@@ -66,7 +86,7 @@ public class DecoratorsExecutorTest {
     doThrow(new SonarException()).when(decorator).decorate(any(Resource.class), any(DecoratorContext.class));
 
     DecoratorsExecutor executor = new DecoratorsExecutor(mock(BatchExtensionDictionnary.class), new Project("key"), mock(SonarIndex.class),
-      mock(EventBus.class), mock(MeasurementFilters.class), mock(MeasureCache.class), mock(MetricFinder.class));
+      mock(EventBus.class), mock(MeasurementFilters.class), mock(MeasureCache.class), mock(MetricFinder.class), new Settings());
     try {
       executor.executeDecorator(decorator, mock(DefaultDecoratorContext.class), File.create("src/org/foo/Bar.java", "org/foo/Bar.java", null, false));
       fail("Exception has not been thrown");
@@ -76,6 +96,114 @@ public class DecoratorsExecutorTest {
     }
   }
 
+  @Test
+  public void decorate_sibling_subtrees_concurrently() {
+    Settings settings = new Settings().setProperty("sonar.batch.decorators.threads", 4);
+    Project project = new Project("key");
+    SonarIndex index = mock(SonarIndex.class);
+    List<Resource> directories = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      Directory directory = Directory.create("src/dir" + i, "dir" + i);
+      directories.add(directory);
+      List<Resource> files = Lists.newArrayList();
+      for (int j = 0; j < 10; j++) {
+        files.add(File.create("src/dir" + i + "/File" + j + ".java", "dir" + i + "/File" + j + ".java", null, false));
+      }
+      when(index.getChildren(directory)).thenReturn(files);
+    }
+    when(index.getChildren(project)).thenReturn(directories);
+    MeasureCache measureCache = mock(MeasureCache.class);
+    when(measureCache.byResource(any(Resource.class))).thenReturn(Collections.<Measure>emptyList());
+    BatchExtensionDictionnary dictionnary = mock(BatchExtensionDictionnary.class);
+    CountChildrenDecorator threadSafeDecorator = new CountChildrenDecorator();
+    Decorator1 decorator = spy(new Decorator1());
+    when(dictionnary.select(Decorator.class, project, false)).thenReturn(Arrays.<Decorator>asList(threadSafeDecorator, decorator));
+    when(dictionnary.sort(anyCollection())).thenAnswer(RETURNS_FIRST_ARGUMENT);
+
+    new DecoratorsExecutor(dictionnary, project, index, mock(EventBus.class), mock(MeasurementFilters.class), measureCache, mock(MetricFinder.class), settings)
+      .execute();
+
+    // 1 project + 10 directories + 100 files
+    assertThat(threadSafeDecorator.resources).hasSize(111);
+    assertThat(threadSafeDecorator.childrenByResource.get(project)).isEqualTo(10);
+    assertThat(threadSafeDecorator.childrenByResource.get(directories.get(3))).isEqualTo(10);
+    verify(decorator, times(111)).decorate(any(Resource.class), any(DecoratorContext.class));
+  }
+
+  @Test
+  public void fail_parallel_decoration_if_a_decorator_fails() {
+    Settings settings = new Settings().setProperty("sonar.batch.decorators.threads", 2);
+    Project project = new Project("key");
+    SonarIndex index = mock(SonarIndex.class);
+    Resource file = File.create("src/org/foo/Bar.java", "org/foo/Bar.java", null, false);
+    when(index.getChildren(project)).thenReturn(Arrays.asList(file));
+    MeasureCache measureCache = mock(MeasureCache.class);
+    when(measureCache.byResource(any(Resource.class))).thenReturn(Collections.<Measure>emptyList());
+    Decorator decorator = mock(Decorator.class);
+    doThrow(new IllegalStateException()).when(decorator).decorate(any(Resource.class), any(DecoratorContext.class));
+    BatchExtensionDictionnary dictionnary = mock(BatchExtensionDictionnary.class);
+    when(dictionnary.select(Decorator.class, project, false)).thenReturn(Arrays.asList(decorator));
+    when(dictionnary.sort(anyCollection())).thenAnswer(RETURNS_FIRST_ARGUMENT);
+
+    DecoratorsExecutor executor = new DecoratorsExecutor(dictionnary, project, index, mock(EventBus.class), mock(MeasurementFilters.class), measureCache,
+      mock(MetricFinder.class), settings);
+    try {
+      executor.execute();
+      fail("Exception has not been thrown");
+
+    } catch (SonarException e) {
+      assertThat(e.getMessage()).contains("src/org/foo/Bar.java");
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void fail_parallel_decoration_if_a_decorator_throws_an_error() {
+    Settings settings = new Settings().setProperty("sonar.batch.decorators.threads", 2);
+    Project project = new Project("key");
+    SonarIndex index = mock(SonarIndex.class);
+    Resource file = File.create("src/org/foo/Bar.java", "org/foo/Bar.java", null, false);
+    when(index.getChildren(project)).thenReturn(Arrays.asList(file));
+    MeasureCache measureCache = mock(MeasureCache.class);
+    when(measureCache.byResource(any(Resource.class))).thenReturn(Collections.<Measure>emptyList());
+    Decorator decorator = mock(Decorator.class);
+    doThrow(new NoClassDefFoundError("org/foo/Missing")).when(decorator).decorate(any(Resource.class), any(DecoratorContext.class));
+    BatchExtensionDictionnary dictionnary = mock(BatchExtensionDictionnary.class);
+    when(dictionnary.select(Decorator.class, project, false)).thenReturn(Arrays.asList(decorator));
+    when(dictionnary.sort(anyCollection())).thenAnswer(RETURNS_FIRST_ARGUMENT);
+
+    DecoratorsExecutor executor = new DecoratorsExecutor(dictionnary, project, index, mock(EventBus.class), mock(MeasurementFilters.class), measureCache,
+      mock(MetricFinder.class), settings);
+    try {
+      executor.execute();
+      fail("Error has not been thrown");
+
+    } catch (NoClassDefFoundError e) {
+      assertThat(e.getMessage()).isEqualTo("org/foo/Missing");
+    }
+  }
+
+  private static final Answer<Object> RETURNS_FIRST_ARGUMENT = new Answer<Object>() {
+    @Override
+    public Object answer(InvocationOnMock invocation) throws Throwable {
+      return invocation.getArguments()[0];
+    }
+  };
+
+  @ThreadSafeDecorator
+  static class CountChildrenDecorator implements Decorator {
+    final Set<Resource> resources = Collections.synchronizedSet(Sets.<Resource>newHashSet());
+    final Map<Resource, Integer> childrenByResource = new ConcurrentHashMap<Resource, Integer>();
+
+    public void decorate(Resource resource, DecoratorContext context) {
+      assertThat(resources.add(resource)).isTrue();
+      childrenByResource.put(resource, context.getChildren().size());
+    }
+
+    public boolean shouldExecuteOnProject(Project project) {
+      return true;
+    }
+  }
+
   static class Decorator1 implements Decorator {
     public void decorate(Resource resource, DecoratorContext context) {
     }
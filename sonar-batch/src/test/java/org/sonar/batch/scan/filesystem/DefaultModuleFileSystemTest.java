@@ -28,6 +28,7 @@ import org.mockito.Mockito;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.fs.internal.TypeIndex;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
 
@@ -163,6 +164,7 @@ public class DefaultModuleFileSystemTest {
     InputFile mainInput = new DefaultInputFile("Main.java").setFile(mainFile).setType(InputFile.Type.MAIN);
     InputFile testInput = new DefaultInputFile("Test.java").setFile(temp.newFile()).setType(InputFile.Type.TEST);
     when(moduleInputFileCache.inputFiles()).thenReturn(Lists.newArrayList(mainInput, testInput));
+    when(moduleInputFileCache.inputFiles(TypeIndex.ID, InputFile.Type.MAIN)).thenReturn(Lists.newArrayList(mainInput));
 
     fs.index();
     Iterable<InputFile> inputFiles = fs.inputFiles(fs.predicates().hasType(InputFile.Type.MAIN));
@@ -0,0 +1,156 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.filesystem;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.InputFileFilter;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+import org.sonar.api.scan.filesystem.PathResolver;
+import org.sonar.api.utils.SonarException;
+import org.sonar.batch.bootstrap.AnalysisMode;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FileIndexerTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  File basedir;
+  File srcDir;
+  ExclusionFilters exclusionFilters = mock(ExclusionFilters.class);
+  InputFileCache fileCache = mock(InputFileCache.class);
+  Settings settings = new Settings();
+
+  @Before
+  public void prepare() throws Exception {
+    basedir = temp.newFolder();
+    srcDir = new File(basedir, "src");
+    for (int i = 0; i < 50; i++) {
+      FileUtils.write(new File(srcDir, "dir" + (i % 5) + "/File" + i + ".java"), "line " + i + "\nsecond line");
+    }
+    when(fileCache.byModule("struts")).thenReturn(Collections.<InputFile>emptyList());
+    when(exclusionFilters.accept(any(InputFile.class), any(InputFile.Type.class))).thenReturn(true);
+  }
+
+  @Test
+  public void index_files_in_the_same_order_whatever_the_number_of_threads() {
+    settings.setProperty(FileIndexer.THREADS_PROPERTY, 1);
+    List<InputFile> sequential = index(newFileSystem(), Collections.<InputFileFilter>emptyList());
+
+    settings.setProperty(FileIndexer.THREADS_PROPERTY, 4);
+    List<InputFile> parallel = index(newFileSystem(), Collections.<InputFileFilter>emptyList());
+
+    assertThat(sequential).hasSize(50);
+    assertThat(parallel).isEqualTo(sequential);
+    for (int i = 0; i < parallel.size(); i++) {
+      assertThat(((DefaultInputFile) parallel.get(i)).hash()).isEqualTo(((DefaultInputFile) sequential.get(i)).hash());
+      assertThat(parallel.get(i).lines()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void apply_input_file_filters() {
+    settings.setProperty(FileIndexer.THREADS_PROPERTY, 4);
+    InputFileFilter filter = new InputFileFilter() {
+      @Override
+      public boolean accept(InputFile inputFile) {
+        return !inputFile.relativePath().endsWith("/File7.java");
+      }
+    };
+
+    assertThat(index(newFileSystem(), Lists.newArrayList(filter))).hasSize(49);
+  }
+
+  @Test
+  public void fail_if_file_is_indexed_twice() {
+    settings.setProperty(FileIndexer.THREADS_PROPERTY, 4);
+    DefaultModuleFileSystem fs = newFileSystem();
+    when(fs.testDirs()).thenReturn(Lists.newArrayList(srcDir));
+
+    thrown.expect(SonarException.class);
+    thrown.expectMessage("can't be indexed twice");
+
+    index(fs, Collections.<InputFileFilter>emptyList());
+  }
+
+  @Test
+  public void number_of_threads() {
+    assertThat(FileIndexer.threads(settings)).isEqualTo(Runtime.getRuntime().availableProcessors());
+
+    settings.setProperty(FileIndexer.THREADS_PROPERTY, 3);
+    assertThat(FileIndexer.threads(settings)).isEqualTo(3);
+
+    settings.setProperty(FileIndexer.THREADS_PROPERTY, 0);
+    assertThat(FileIndexer.threads(settings)).isEqualTo(1);
+  }
+
+  private DefaultModuleFileSystem newFileSystem() {
+    DefaultModuleFileSystem fs = mock(DefaultModuleFileSystem.class);
+    when(fs.moduleKey()).thenReturn("struts");
+    when(fs.baseDir()).thenReturn(basedir);
+    when(fs.encoding()).thenReturn(Charsets.UTF_8);
+    when(fs.sourceDirs()).thenReturn(Lists.newArrayList(srcDir));
+    when(fs.testDirs()).thenReturn(Collections.<File>emptyList());
+    when(fs.sourceFiles()).thenReturn(Collections.<File>emptyList());
+    when(fs.testFiles()).thenReturn(Collections.<File>emptyList());
+    return fs;
+  }
+
+  private List<InputFile> index(DefaultModuleFileSystem fs, List<InputFileFilter> filters) {
+    LanguageDetection langDetection = mock(LanguageDetection.class);
+    when(langDetection.language(any(InputFile.class))).thenReturn("java");
+    StatusDetection statusDetection = mock(StatusDetection.class);
+    when(statusDetection.status(anyString(), anyString())).thenReturn(InputFile.Status.ADDED);
+    InputFileBuilderFactory builderFactory = mock(InputFileBuilderFactory.class);
+    when(builderFactory.create(fs)).thenReturn(new InputFileBuilder("struts", new PathResolver(), langDetection, statusDetection, fs, mock(AnalysisMode.class)));
+
+    FileIndexer indexer = new FileIndexer(filters, exclusionFilters, builderFactory, fileCache, new Project("struts"), settings);
+    indexer.index(fs);
+
+    ArgumentCaptor<InputFile> added = ArgumentCaptor.forClass(InputFile.class);
+    verify(fs, atLeastOnce()).add(added.capture());
+    return added.getAllValues();
+  }
+}
@@ -20,13 +20,18 @@
 package org.sonar.batch.scan.filesystem;
 
 import com.google.common.base.Charsets;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.security.MessageDigest;
+import java.util.Random;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -140,4 +145,79 @@ public class FileMetadataTest {
     assertThat(hash1).isEqualTo(hash1a);
     assertThat(hash1).isNotEqualTo(hash2);
   }
+
+  @Test
+  public void line_end_split_across_chunks() throws Exception {
+    String prefix = StringUtils.repeat("a", 8191);
+    File crlf = temp.newFile();
+    FileUtils.write(crlf, prefix + "\r\nbar", Charsets.UTF_8, true);
+    File lf = temp.newFile();
+    FileUtils.write(lf, prefix + "\nbar", Charsets.UTF_8, true);
+
+    FileMetadata.Metadata metadata = FileMetadata.INSTANCE.read(crlf, Charsets.UTF_8);
+    assertThat(metadata.lines).isEqualTo(2);
+    assertThat(metadata.hash).isEqualTo(FileMetadata.INSTANCE.read(lf, Charsets.UTF_8).hash);
+  }
+
+  @Test
+  public void same_metadata_as_char_by_char_computation() throws Exception {
+    Random random = new Random(42L);
+    char[] alphabet = {'a', 'Z', ' ', '\t', '\n', '\r', '\u00e9', '\u20ac', '\ufeff'};
+    for (int size : new int[] {1, 2, 100, 8191, 8192, 8193, 50000}) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < size; i++) {
+        sb.append(alphabet[random.nextInt(alphabet.length)]);
+      }
+      File file = temp.newFile();
+      FileUtils.write(file, sb.toString(), Charsets.UTF_8);
+
+      FileMetadata.Metadata metadata = FileMetadata.INSTANCE.read(file, Charsets.UTF_8);
+      assertThat(metadata.lines).as("lines of " + size + " chars").isEqualTo(countLines(sb));
+      assertThat(metadata.hash).as("hash of " + size + " chars").isEqualTo(hash(sb));
+    }
+  }
+
+  /**
+   * Reference implementation: one digest update per character.
+   */
+  private static String hash(CharSequence content) {
+    MessageDigest md5Digest = DigestUtils.getMd5Digest();
+    boolean afterCR = true;
+    for (int i = 0; i < content.length(); i++) {
+      char c = content.charAt(i);
+      if (afterCR) {
+        afterCR = false;
+        if (c == '\n') {
+          continue;
+        }
+      }
+      if (c == '\r') {
+        afterCR = true;
+        c = '\n';
+      }
+      md5Digest.update(new byte[] {(byte) ((c & 0xFF00) >> 8), (byte) (c & 0x00FF)});
+    }
+    return Hex.encodeHexString(md5Digest.digest());
+  }
+
+  private static int countLines(CharSequence content) {
+    int lines = 0;
+    boolean afterCR = true;
+    for (int i = 0; i < content.length(); i++) {
+      char c = content.charAt(i);
+      if (afterCR) {
+        afterCR = false;
+        if (c == '\n') {
+          continue;
+        }
+      }
+      if (c == '\r') {
+        afterCR = true;
+        lines++;
+      } else if (c == '\n') {
+        lines++;
+      }
+    }
+    return content.length() > 0 ? lines + 1 : lines;
+  }
 }
@@ -19,17 +19,22 @@
  */
 package org.sonar.batch.scan.filesystem;
 
+import com.google.common.collect.Lists;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.AbsolutePathIndex;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.fs.internal.LanguageIndex;
 import org.sonar.api.batch.fs.internal.RelativePathIndex;
 import org.sonar.batch.index.Caches;
 import org.sonar.batch.index.CachesTest;
 
+import java.util.Arrays;
+
 import static org.fest.assertions.Assertions.assertThat;
 import static org.fest.assertions.Fail.fail;
 
@@ -79,7 +84,36 @@ public class InputFileCacheTest {
   }
 
   @Test
-  public void only_relative_path_index_is_supported() throws Exception {
+  public void should_index_by_secondary_attributes() throws Exception {
+    InputFileCache cache = new InputFileCache(caches);
+    DefaultInputFile fooFile = new DefaultInputFile("src/main/java/Foo.java").setLanguage("java").setFile(temp.newFile("Foo.java"));
+    DefaultInputFile barFile = new DefaultInputFile("src/main/java/Bar.java").setLanguage("java").setFile(temp.newFile("Bar.java"));
+    for (DefaultInputFile inputFile : Arrays.asList(fooFile, barFile)) {
+      cache.put("struts", inputFile);
+      cache.index("struts", LanguageIndex.ID, "java", inputFile);
+      cache.index("struts", AbsolutePathIndex.ID, inputFile.absolutePath(), inputFile);
+    }
+
+    assertThat(cache.get("struts", AbsolutePathIndex.ID, fooFile.absolutePath())).isEqualTo(fooFile);
+    assertThat(cache.get("struts-core", AbsolutePathIndex.ID, fooFile.absolutePath())).isNull();
+    // sorted by relative path
+    assertThat(Lists.newArrayList(cache.byIndex("struts", LanguageIndex.ID, "java"))).containsExactly(barFile, fooFile);
+    assertThat(cache.byIndex("struts", LanguageIndex.ID, "php")).isEmpty();
+
+    cache.remove("struts", fooFile);
+    assertThat(cache.get("struts", AbsolutePathIndex.ID, fooFile.absolutePath())).isNull();
+    assertThat(Lists.newArrayList(cache.byIndex("struts", LanguageIndex.ID, "java"))).containsExactly(barFile);
+
+    // re-indexation of a file replaces its previous index values
+    cache.put("struts", new DefaultInputFile("src/main/java/Bar.java").setLanguage("groovy").setFile(barFile.file()));
+    assertThat(cache.byIndex("struts", LanguageIndex.ID, "java")).isEmpty();
+
+    cache.removeModule("struts");
+    assertThat(cache.byIndex("struts", LanguageIndex.ID, "java")).isEmpty();
+  }
+
+  @Test
+  public void fail_if_unknown_index() throws Exception {
     InputFileCache cache = new InputFileCache(caches);
     DefaultInputFile input = new DefaultInputFile("src/main/java/Foo.java").setFile(temp.newFile("Foo.java"));
 
@@ -87,14 +121,14 @@ public class InputFileCacheTest {
       cache.index("struts", "unsupported-index", "index-value", input);
       fail();
     } catch (UnsupportedOperationException e) {
-      assertThat(e).hasMessage("Only relative path index is supported yet");
+      assertThat(e).hasMessage("Unsupported index: unsupported-index");
     }
 
     try {
       cache.get("struts", "unsupported-index", "index-value");
       fail();
     } catch (UnsupportedOperationException e) {
-      assertThat(e).hasMessage("Only relative path index is supported yet");
+      assertThat(e).hasMessage("Unsupported index: unsupported-index");
     }
   }
 }
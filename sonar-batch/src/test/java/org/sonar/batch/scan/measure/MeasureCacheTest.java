@@ -27,6 +27,8 @@ import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.PersistenceMode;
 import org.sonar.api.measures.RuleMeasure;
 import org.sonar.api.resources.Directory;
 import org.sonar.api.resources.File;
@@ -260,4 +262,62 @@ public class MeasureCacheTest {
     assertThat(cache.byResource(dir)).hasSize(1);
     assertThat(cache.byResource(dir).iterator().next()).isEqualTo(mDir);
   }
+
+  @Test
+  public void should_restore_all_fields() throws Exception {
+    MeasureCache cache = new MeasureCache(caches);
+    Project p = new Project("struts");
+    DefaultCharacteristic characteristic = new DefaultCharacteristic().setKey("charac");
+    Date date = new Date();
+
+    Measure m = new Measure(CoreMetrics.COVERAGE).setRawValue(80.666666).setData("data").setDescription("description")
+      .setAlertStatus(Metric.Level.WARN).setAlertText("alert").setTendency(1).setDate(date).setUrl("http://foo")
+      .setVariation1(1.0).setVariation2(2.0).setVariation3(3.0).setVariation4(4.0).setVariation5(5.0)
+      .setCharacteristic(characteristic).setPersonId(3).setPersistenceMode(PersistenceMode.DATABASE);
+    RuleMeasure mRule = RuleMeasure.createForRule(CoreMetrics.VIOLATIONS, RuleKey.of("repo", "rule"), 2.0);
+    mRule.setSeverity(RulePriority.CRITICAL);
+    cache.put(p, m);
+    cache.put(p, mRule);
+
+    Measure reloaded = cache.byMetric(p, CoreMetrics.COVERAGE_KEY).iterator().next();
+    assertThat(reloaded).isNotSameAs(m);
+    assertThat(reloaded.getClass()).isEqualTo(Measure.class);
+    assertThat(reloaded.getMetric()).isSameAs(CoreMetrics.COVERAGE);
+    assertThat(reloaded.getValue()).isEqualTo(80.666666);
+    assertThat(reloaded.getData()).isEqualTo("data");
+    assertThat(reloaded.getDescription()).isEqualTo("description");
+    assertThat(reloaded.getAlertStatus()).isEqualTo(Metric.Level.WARN);
+    assertThat(reloaded.getAlertText()).isEqualTo("alert");
+    assertThat(reloaded.getTendency()).isEqualTo(1);
+    assertThat(reloaded.getDate()).isEqualTo(date);
+    assertThat(reloaded.getUrl()).isEqualTo("http://foo");
+    assertThat(reloaded.getVariation1()).isEqualTo(1.0);
+    assertThat(reloaded.getVariation5()).isEqualTo(5.0);
+    assertThat(reloaded.getCharacteristic()).isSameAs(characteristic);
+    assertThat(reloaded.getPersonId()).isEqualTo(3);
+    assertThat(reloaded.getPersistenceMode()).isEqualTo(PersistenceMode.DATABASE);
+
+    RuleMeasure reloadedRule = (RuleMeasure) cache.byMetric(p, CoreMetrics.VIOLATIONS_KEY).iterator().next();
+    assertThat(reloadedRule).isEqualTo(mRule);
+    assertThat(reloadedRule.ruleKey()).isEqualTo(RuleKey.of("repo", "rule"));
+    assertThat(reloadedRule.getSeverity()).isEqualTo(RulePriority.CRITICAL);
+    assertThat(reloadedRule.getValue()).isEqualTo(2.0);
+  }
+
+  @Test
+  public void should_serialize_measure_subclasses() throws Exception {
+    MeasureCache cache = new MeasureCache(caches);
+    Project p = new Project("struts");
+    cache.put(p, new CustomMeasure(CoreMetrics.NCLOC).setValue(1.0));
+
+    Measure reloaded = cache.byResource(p).iterator().next();
+    assertThat(reloaded).isInstanceOf(CustomMeasure.class);
+    assertThat(reloaded.getValue()).isEqualTo(1.0);
+  }
+
+  static class CustomMeasure extends Measure {
+    CustomMeasure(Metric metric) {
+      super(metric);
+    }
+  }
 }
@@ -41,7 +41,18 @@ public abstract class QueueAction implements Runnable {
 
   @Override
   public void run(){
-    this.doExecute();
+    try {
+      this.doExecute();
+    } finally {
+      done();
+    }
+  }
+
+  /**
+   * Signals to the enqueuer that the action has been processed, for example when it has been executed with other
+   * actions instead of being run.
+   */
+  public void done() {
     if(latch != null){
       latch.countDown();
     }
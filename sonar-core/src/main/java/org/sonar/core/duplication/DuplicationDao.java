@@ -19,14 +19,19 @@
  */
 package org.sonar.core.duplication;
 
+import com.google.common.collect.Maps;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.ServerComponent;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 
+import javax.annotation.Nullable;
+
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public class DuplicationDao implements BatchComponent, ServerComponent {
 
@@ -46,6 +51,25 @@ public class DuplicationDao implements BatchComponent, ServerComponent {
     }
   }
 
+  /**
+   * Streams the blocks of other projects that have the same hash than at least one block of the given
+   * project snapshot. Contrary to {@link #selectCandidates(int, Integer, String)}, candidates of all the files of
+   * a project are loaded with a single query. Handler receives instances of {@link DuplicationUnitDto}.
+   * @since 4.4
+   */
+  public void selectCandidatesOfProjectSnapshot(int projectSnapshotId, @Nullable Integer lastSnapshotId, String language, ResultHandler handler) {
+    SqlSession session = mybatis.openSession(false);
+    try {
+      Map<String, Object> params = Maps.newHashMap();
+      params.put("project_snapshot_id", projectSnapshotId);
+      params.put("last_project_snapshot_id", lastSnapshotId);
+      params.put("language", language);
+      session.select("org.sonar.core.duplication.DuplicationMapper.selectCandidatesOfProjectSnapshot", params, handler);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   /**
    * Insert rows in the table DUPLICATIONS_INDEX.
    * Note that generated ids are not returned.
@@ -34,6 +34,7 @@ public final class DuplicationUnitDto {
   private int startLine;
   private int endLine;
 
+  private Integer resourceId;
   private String resourceKey;
 
   public DuplicationUnitDto() {
@@ -105,6 +106,14 @@ public final class DuplicationUnitDto {
     this.endLine = endLine;
   }
 
+  public Integer getResourceId() {
+    return resourceId;
+  }
+
+  public void setResourceId(Integer resourceId) {
+    this.resourceId = resourceId;
+  }
+
   public String getResourceKey() {
     return resourceKey;
   }
@@ -70,50 +70,32 @@ public class IssueDao implements BatchComponent, ServerComponent {
     }
   }
 
-  @VisibleForTesting
-  List<IssueDto> selectIssueIds(IssueQuery query, @Nullable Integer userId, Integer maxResult) {
+  public List<IssueDto> selectIssues(IssueQuery query) {
     SqlSession session = mybatis.openSession(false);
     try {
-      return selectIssueIds(query, userId, maxResult, session);
+      return selectIssues(query, null, session);
     } finally {
       MyBatis.closeQuietly(session);
     }
   }
 
-  @VisibleForTesting
-  List<IssueDto> selectIssueIds(IssueQuery query) {
-    SqlSession session = mybatis.openSession(false);
-    try {
-      return selectIssueIds(query, null, Integer.MAX_VALUE, session);
-    } finally {
-      MyBatis.closeQuietly(session);
-    }
+  public List<IssueDto> selectIssues(IssueQuery query, @Nullable Integer userId, SqlSession session){
+    IssueMapper mapper = session.getMapper(IssueMapper.class);
+    return mapper.selectIssues(query, query.componentRoots(), userId, query.requiredRole());
   }
 
   /**
-   * The returned IssueDto list contains only the issue id and the sort column
+   * Streams all the issues of a project, whatever their status.
    */
-  public List<IssueDto> selectIssueIds(IssueQuery query, @Nullable Integer userId, SqlSession session){
-    return selectIssueIds(query, userId, query.maxResults(), session);
-  }
-
-  private List<IssueDto> selectIssueIds(IssueQuery query, @Nullable Integer userId, Integer maxResults, SqlSession session){
-    IssueMapper mapper = session.getMapper(IssueMapper.class);
-    return mapper.selectIssueIds(query, query.componentRoots(), userId, query.requiredRole(), maxResults);
+  public void selectByRootComponent(long rootComponentId, ResultHandler handler, SqlSession session) {
+    session.select("org.sonar.core.issue.db.IssueMapper.selectByRootComponent", rootComponentId, handler);
   }
 
-  public List<IssueDto> selectIssues(IssueQuery query) {
-    SqlSession session = mybatis.openSession(false);
-    try {
-      return selectIssues(query, null, session);
-    } finally {
-      MyBatis.closeQuietly(session);
-    }
-  }
-
-  public List<IssueDto> selectIssues(IssueQuery query, @Nullable Integer userId, SqlSession session){
-    IssueMapper mapper = session.getMapper(IssueMapper.class);
-    return mapper.selectIssues(query, query.componentRoots(), userId, query.requiredRole());
+  /**
+   * Ids of the projects that have issues
+   */
+  public List<Long> selectRootComponentIds(SqlSession session) {
+    return session.selectList("org.sonar.core.issue.db.IssueMapper.selectRootComponentIds");
   }
 
   @VisibleForTesting
@@ -138,4 +120,17 @@ public class IssueDao implements BatchComponent, ServerComponent {
     }
     return dtosList;
   }
+
+  public List<IssueDto> selectByKeys(Collection<String> keys, SqlSession session) {
+    if (keys.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<IssueDto> dtosList = newArrayList();
+    List<List<String>> keysPartitionList = Lists.partition(newArrayList(keys), 1000);
+    for (List<String> keysPartition : keysPartitionList) {
+      List<IssueDto> dtos = session.selectList("org.sonar.core.issue.db.IssueMapper.selectByKeys", newArrayList(keysPartition));
+      dtosList.addAll(dtos);
+    }
+    return dtosList;
+  }
 }
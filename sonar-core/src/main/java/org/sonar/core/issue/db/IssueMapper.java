@@ -31,14 +31,6 @@ public interface IssueMapper {
 
   IssueDto selectByKey(String key);
 
-  /**
-   * Return a paginated list of authorized issue ids for a user.
-   * If the role is null, then the authorisation check is disabled.
-   */
-  List<IssueDto> selectIssueIds(@Param("query") IssueQuery query, @Param("componentRootKeys") Collection<String> componentRootKeys,
-                                @Nullable @Param("userId") Integer userId, @Nullable @Param("role") String role,
-                                @Param("maxResults") Integer maxResult);
-
   /**
    * Return a none paginated list of authorized issues for a user.
    * If the role is null, then the authorisation check is disabled.
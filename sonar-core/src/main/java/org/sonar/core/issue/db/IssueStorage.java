@@ -33,6 +33,7 @@ import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -61,8 +62,6 @@ public abstract class IssueStorage {
   }
 
   public void save(Iterable<DefaultIssue> issues) {
-    // Batch session can not be used for updates. It does not return the number of updated rows,
-    // required for detecting conflicts.
     Date now = new Date();
     List<DefaultIssue> toBeUpdated = batchInsert(issues, now);
     update(toBeUpdated, now);
@@ -70,23 +69,24 @@ public abstract class IssueStorage {
 
   private List<DefaultIssue> batchInsert(Iterable<DefaultIssue> issues, Date now) {
     List<DefaultIssue> toBeUpdated = Lists.newArrayList();
+    List<DefaultIssue> toBeInserted = Lists.newArrayList();
     DbSession batchSession = mybatis.openSession(true);
-    int count = 0;
     IssueMapper issueMapper = batchSession.getMapper(IssueMapper.class);
     IssueChangeMapper issueChangeMapper = batchSession.getMapper(IssueChangeMapper.class);
     try {
       for (DefaultIssue issue : issues) {
         if (issue.isNew()) {
-          insert(issueMapper, now, issue);
-          insertChanges(issueChangeMapper, issue);
-          if (count > BatchSession.MAX_BATCH_SIZE) {
+          toBeInserted.add(issue);
+          if (toBeInserted.size() >= BatchSession.MAX_BATCH_SIZE) {
+            insert(issueMapper, issueChangeMapper, now, toBeInserted);
             batchSession.commit();
+            toBeInserted.clear();
           }
-          count++;
         } else if (issue.isChanged()) {
           toBeUpdated.add(issue);
         }
       }
+      insert(issueMapper, issueChangeMapper, now, toBeInserted);
       batchSession.commit();
     } finally {
       MyBatis.closeQuietly(batchSession);
@@ -94,6 +94,16 @@ public abstract class IssueStorage {
     return toBeUpdated;
   }
 
+  private void insert(IssueMapper issueMapper, IssueChangeMapper issueChangeMapper, Date now, List<DefaultIssue> issues) {
+    if (!issues.isEmpty()) {
+      prefetchComponentIds(issues);
+      for (DefaultIssue issue : issues) {
+        insert(issueMapper, now, issue);
+        insertChanges(issueChangeMapper, issue);
+      }
+    }
+  }
+
   private void insert(IssueMapper issueMapper, Date now, DefaultIssue issue) {
     long componentId = componentId(issue);
     long projectId = projectId(issue);
@@ -104,13 +114,63 @@ public abstract class IssueStorage {
 
   private void update(List<DefaultIssue> toBeUpdated, Date now) {
     if (!toBeUpdated.isEmpty()) {
+      List<DefaultIssue> toBeCheckedForConflicts = batchUpdate(toBeUpdated, now);
+      updateIfNoConflicts(toBeCheckedForConflicts, now);
+    }
+  }
+
+  /**
+   * Issues closed by scan or changed by end-user override the database state, so they are updated in batch mode.
+   * Changes of all the updated issues are inserted at the same time.
+   *
+   * @return the issues that may have been changed concurrently by an end-user
+   */
+  private List<DefaultIssue> batchUpdate(List<DefaultIssue> toBeUpdated, Date now) {
+    List<DefaultIssue> toBeCheckedForConflicts = Lists.newArrayList();
+    DbSession batchSession = mybatis.openSession(true);
+    try {
+      IssueMapper issueMapper = batchSession.getMapper(IssueMapper.class);
+      IssueChangeMapper issueChangeMapper = batchSession.getMapper(IssueChangeMapper.class);
+      int count = 0;
+      for (DefaultIssue issue : toBeUpdated) {
+        if (Issue.STATUS_CLOSED.equals(issue.status()) || issue.selectedAt() == null) {
+          issueMapper.update(IssueDto.toDtoForUpdate(issue, projectId(issue), now));
+        } else {
+          toBeCheckedForConflicts.add(issue);
+        }
+        insertChanges(issueChangeMapper, issue);
+        count++;
+        if (count % BatchSession.MAX_BATCH_SIZE == 0) {
+          batchSession.commit();
+        }
+      }
+      batchSession.commit();
+    } finally {
+      MyBatis.closeQuietly(batchSession);
+    }
+    return toBeCheckedForConflicts;
+  }
+
+  /**
+   * Batch session can not be used here. It does not return the number of updated rows,
+   * required for detecting conflicts. Conflicts are resolved once all the other issues are updated.
+   */
+  private void updateIfNoConflicts(List<DefaultIssue> issues, Date now) {
+    if (!issues.isEmpty()) {
       SqlSession session = mybatis.openSession(false);
       try {
         IssueMapper issueMapper = session.getMapper(IssueMapper.class);
-        IssueChangeMapper issueChangeMapper = session.getMapper(IssueChangeMapper.class);
-        for (DefaultIssue issue : toBeUpdated) {
-          update(issueMapper, now, issue);
-          insertChanges(issueChangeMapper, issue);
+        List<DefaultIssue> conflicts = Lists.newArrayList();
+        for (DefaultIssue issue : issues) {
+          IssueDto dto = IssueDto.toDtoForUpdate(issue, projectId(issue), now);
+          if (issueMapper.updateIfBeforeSelectedDate(dto) == 0) {
+            // End-user and scan changed the issue at the same time.
+            // See https://jira.codehaus.org/browse/SONAR-4309
+            conflicts.add(issue);
+          }
+        }
+        for (DefaultIssue conflict : conflicts) {
+          conflictResolver.resolve(conflict, issueMapper);
         }
         session.commit();
       } finally {
@@ -119,22 +179,6 @@ public abstract class IssueStorage {
     }
   }
 
-  private void update(IssueMapper issueMapper, Date now, DefaultIssue issue) {
-    IssueDto dto = IssueDto.toDtoForUpdate(issue, projectId(issue), now);
-    if (Issue.STATUS_CLOSED.equals(issue.status()) || issue.selectedAt() == null) {
-      // Issue is closed by scan or changed by end-user
-      issueMapper.update(dto);
-
-    } else {
-      int count = issueMapper.updateIfBeforeSelectedDate(dto);
-      if (count == 0) {
-        // End-user and scan changed the issue at the same time.
-        // See https://jira.codehaus.org/browse/SONAR-4309
-        conflictResolver.resolve(issue, issueMapper);
-      }
-    }
-  }
-
   private void insertChanges(IssueChangeMapper mapper, DefaultIssue issue) {
     for (IssueComment comment : issue.comments()) {
       DefaultIssueComment c = (DefaultIssueComment) comment;
@@ -150,6 +194,16 @@ public abstract class IssueStorage {
     }
   }
 
+  /**
+   * Called before inserting a group of new issues, so that the ids returned by {@link #componentId(DefaultIssue)}
+   * can be loaded with a single request. Does nothing by default.
+   *
+   * @since 4.4
+   */
+  protected void prefetchComponentIds(Collection<DefaultIssue> issues) {
+    // nothing to prefetch by default
+  }
+
   protected abstract long componentId(DefaultIssue issue);
 
   protected abstract long projectId(DefaultIssue issue);
@@ -36,6 +36,7 @@ import org.sonar.core.notification.db.NotificationQueueDao;
 import org.sonar.core.notification.db.NotificationQueueDto;
 import org.sonar.core.properties.PropertiesDao;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import java.io.IOException;
@@ -94,21 +95,56 @@ public class DefaultNotificationManager implements NotificationManager {
   /**
    * Give the notification queue so that it can be processed
    */
+  @CheckForNull
   public Notification getFromQueue() {
-    int batchSize = 1;
-    List<NotificationQueueDto> notificationDtos = notificationQueueDao.findOldest(batchSize);
+    List<NotificationQueueDto> notificationDtos = findOldestInQueue(1);
     if (notificationDtos.isEmpty()) {
       return null;
     }
-    notificationQueueDao.delete(notificationDtos);
+    removeFromQueue(notificationDtos);
+    List<Notification> notifications = toNotifications(notificationDtos);
+    return notifications.isEmpty() ? null : notifications.get(0);
+  }
+
+  /**
+   * Reads the oldest notifications of the queue, oldest first, without removing them. They must be removed
+   * with {@link #removeFromQueue(List)} once processed, so that they are not lost if the server stops meanwhile.
+   *
+   * @since 4.4
+   */
+  public List<NotificationQueueDto> findOldestInQueue(int batchSize) {
+    return notificationQueueDao.findOldest(batchSize);
+  }
+
+  /**
+   * Notifications which can not be read anymore are dropped, so the result can contain less elements than the queue.
+   *
+   * @since 4.4
+   */
+  public List<Notification> toNotifications(List<NotificationQueueDto> notificationDtos) {
+    List<Notification> notifications = Lists.newArrayListWithCapacity(notificationDtos.size());
+    for (NotificationQueueDto notificationDto : notificationDtos) {
+      Notification notification = convertToNotification(notificationDto);
+      if (notification != null) {
+        notifications.add(notification);
+      }
+    }
+    return notifications;
+  }
 
-    return convertToNotification(notificationDtos);
+  /**
+   * @since 4.4
+   */
+  public void removeFromQueue(List<NotificationQueueDto> notificationDtos) {
+    if (!notificationDtos.isEmpty()) {
+      notificationQueueDao.delete(notificationDtos);
+    }
   }
 
-  private Notification convertToNotification(List<NotificationQueueDto> notifications) {
+  @CheckForNull
+  private Notification convertToNotification(NotificationQueueDto notification) {
     try {
-      // If batchSize is increased then we should return a list instead of a single element
-      return notifications.get(0).toNotification();
+      return notification.toNotification();
     } catch (InvalidClassException e) {
       // SONAR-4739
       if (!alreadyLoggedDeserializationIssue) {
@@ -67,7 +67,6 @@ public final class DaoUtils {
       GraphDao.class,
       GroupMembershipDao.class,
       IssueDao.class,
-      IssueStatsDao.class,
       IssueChangeDao.class,
       IssueFilterDao.class,
       IssueFilterFavouriteDao.class,
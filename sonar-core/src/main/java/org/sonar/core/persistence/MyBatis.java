@@ -20,6 +20,7 @@
 package org.sonar.core.persistence;
 
 import ch.qos.logback.classic.Level;
+import com.google.common.base.Preconditions;
 import com.google.common.io.Closeables;
 import org.apache.ibatis.builder.xml.XMLMapperBuilder;
 import org.apache.ibatis.logging.LogFactory;
@@ -68,7 +69,6 @@ import org.sonar.core.issue.db.IssueFilterFavouriteDto;
 import org.sonar.core.issue.db.IssueFilterFavouriteMapper;
 import org.sonar.core.issue.db.IssueFilterMapper;
 import org.sonar.core.issue.db.IssueMapper;
-import org.sonar.core.issue.db.IssueStatsMapper;
 import org.sonar.core.measure.db.MeasureDataDto;
 import org.sonar.core.measure.db.MeasureDataMapper;
 import org.sonar.core.measure.db.MeasureFilterDto;
@@ -215,7 +215,7 @@ public class MyBatis implements BatchComponent, ServerComponent {
     loadMapper(conf, "org.sonar.core.permission.PermissionMapper");
     Class<?>[] mappers = {ActiveDashboardMapper.class, AuthorMapper.class, DashboardMapper.class,
       DependencyMapper.class, DuplicationMapper.class, GraphDtoMapper.class,
-      IssueMapper.class, IssueStatsMapper.class, IssueChangeMapper.class, IssueFilterMapper.class, IssueFilterFavouriteMapper.class,
+      IssueMapper.class, IssueChangeMapper.class, IssueFilterMapper.class, IssueFilterFavouriteMapper.class,
       LoadedTemplateMapper.class, MeasureFilterMapper.class, PermissionTemplateMapper.class, PropertiesMapper.class, PurgeMapper.class,
       ResourceKeyUpdaterMapper.class, ResourceIndexerMapper.class, ResourceSnapshotMapper.class, RoleMapper.class, RuleMapper.class,
       SchemaMigrationMapper.class, SemaphoreMapper.class, UserMapper.class, WidgetMapper.class, WidgetPropertyMapper.class,
@@ -256,9 +256,20 @@ public class MyBatis implements BatchComponent, ServerComponent {
    * @since 4.4
    */
   public DbSession openSession(boolean batch) {
+    return openSession(batch, BatchSession.MAX_BATCH_SIZE);
+  }
+
+  /**
+   * Same as {@link #openSession(boolean)}, but a batch session flushes and commits statements every
+   * <code>batchSize</code> updates instead of {@link BatchSession#MAX_BATCH_SIZE}. The size is ignored
+   * by non-batch sessions.
+   * @since 4.4
+   */
+  public DbSession openSession(boolean batch, int batchSize) {
     if (batch) {
+      Preconditions.checkArgument(batchSize > 0, "Batch size must be strictly positive");
       SqlSession session = sessionFactory.openSession(ExecutorType.BATCH);
-      return new BatchSession(queue, session);
+      return new BatchSession(queue, session, batchSize);
     }
     SqlSession session = sessionFactory.openSession(ExecutorType.REUSE);
     return new DbSession(queue, session);
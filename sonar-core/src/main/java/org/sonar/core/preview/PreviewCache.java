@@ -38,8 +38,8 @@ import javax.annotation.Nullable;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -58,8 +58,8 @@ public class PreviewCache implements ServerExtension {
   private PropertiesDao propertiesDao;
   private ResourceDao resourceDao;
 
-  private Map<Long, ReadWriteLock> lockPerProject = new HashMap<Long, ReadWriteLock>();
-  private Map<Long, Long> lastTimestampPerProject = new HashMap<Long, Long>();
+  private final ConcurrentMap<Long, ReadWriteLock> lockPerProject = new ConcurrentHashMap<Long, ReadWriteLock>();
+  private final ConcurrentMap<Long, Long> lastTimestampPerProject = new ConcurrentHashMap<Long, Long>();
 
   private PreviewDatabaseFactory previewDatabaseFactory;
 
@@ -71,30 +71,72 @@ public class PreviewCache implements ServerExtension {
     this.previewDatabaseFactory = previewDatabaseFactory;
   }
 
+  /**
+   * Loads the whole preview database in memory. Prefer {@link #readDatabaseFileForPreview(Long, DatabaseFileReader)} to stream it.
+   */
   public byte[] getDatabaseForPreview(@Nullable Long projectId) {
+    ReadWriteLock rwl = getLock(projectId);
+    File dbFile = lockDatabaseFile(projectId, rwl);
+    try {
+      return fileToByte(dbFile);
+    } finally {
+      rwl.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gives the up-to-date preview database of the project, generated if needed, to the reader. A new file, with a different
+   * name, is created each time the database is generated, so the name of the file identifies its content. The database
+   * can not be re-generated, and the file removed, until the reader returns.
+   *
+   * @since 4.4
+   */
+  public void readDatabaseFileForPreview(@Nullable Long projectId, DatabaseFileReader reader) throws IOException {
+    ReadWriteLock rwl = getLock(projectId);
+    File dbFile = lockDatabaseFile(projectId, rwl);
+    try {
+      reader.read(dbFile);
+    } finally {
+      rwl.readLock().unlock();
+    }
+  }
+
+  /**
+   * @since 4.4
+   */
+  public interface DatabaseFileReader {
+    void read(File dbFile) throws IOException;
+  }
+
+  /**
+   * Returns the up-to-date database file, generated if needed. The read lock is still held on return and must be released by the caller.
+   */
+  private File lockDatabaseFile(@Nullable Long projectId, ReadWriteLock rwl) {
     long notNullProjectId = projectId != null ? projectId.longValue() : 0L;
-    ReadWriteLock rwl = getLock(notNullProjectId);
+    rwl.readLock().lock();
     try {
-      rwl.readLock().lock();
       if (!isCacheValid(projectId)) {
         // upgrade lock manually
         // must unlock first to obtain writelock
         rwl.readLock().unlock();
         rwl.writeLock().lock();
-        // recheck
-        if (!isCacheValid(projectId)) {
-          generateNewDB(projectId);
+        try {
+          // recheck
+          if (!isCacheValid(projectId)) {
+            generateNewDB(projectId);
+          }
+        } finally {
+          // downgrade lock
+          // reacquire read without giving up write lock
+          rwl.readLock().lock();
+          // unlock write, still hold read
+          rwl.writeLock().unlock();
         }
-        // downgrade lock
-        // reacquire read without giving up write lock
-        rwl.readLock().lock();
-        // unlock write, still hold read
-        rwl.writeLock().unlock();
       }
-      File dbFile = new File(getCacheLocation(projectId), lastTimestampPerProject.get(notNullProjectId) + PreviewDatabaseFactory.H2_FILE_SUFFIX);
-      return fileToByte(dbFile);
-    } finally {
+      return new File(getCacheLocation(projectId), lastTimestampPerProject.get(notNullProjectId) + PreviewDatabaseFactory.H2_FILE_SUFFIX);
+    } catch (RuntimeException e) {
       rwl.readLock().unlock();
+      throw e;
     }
   }
 
@@ -136,11 +178,17 @@ public class PreviewCache implements ServerExtension {
     }
   }
 
-  private synchronized ReadWriteLock getLock(long notNullProjectId) {
-    if (!lockPerProject.containsKey(notNullProjectId)) {
-      lockPerProject.put(notNullProjectId, new ReentrantReadWriteLock(true));
+  private ReadWriteLock getLock(@Nullable Long projectId) {
+    long notNullProjectId = projectId != null ? projectId.longValue() : 0L;
+    ReadWriteLock lock = lockPerProject.get(notNullProjectId);
+    if (lock == null) {
+      ReadWriteLock newLock = new ReentrantReadWriteLock(true);
+      lock = lockPerProject.putIfAbsent(notNullProjectId, newLock);
+      if (lock == null) {
+        lock = newLock;
+      }
     }
-    return lockPerProject.get(notNullProjectId);
+    return lock;
   }
 
   private File getRootCacheLocation() {
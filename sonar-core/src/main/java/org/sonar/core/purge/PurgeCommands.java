@@ -30,6 +30,9 @@ class PurgeCommands {
   private static final int MAX_SNAPSHOTS_PER_QUERY = 1000;
   private static final int MAX_RESOURCES_PER_QUERY = 1000;
 
+  // Each partition of ids is committed on its own so that locks and undo logs stay bounded
+  // on large projects. Statements are idempotent, so an interrupted purge is resumed by the next one.
+
   private final SqlSession session;
   private final PurgeMapper purgeMapper;
   private final PurgeProfiler profiler;
@@ -64,92 +67,92 @@ class PurgeCommands {
     profiler.start("deleteResourceLinks (project_links)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceLinks(partResourceIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceProperties (properties)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceProperties(partResourceIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceIndex (resource_index)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceIndex(partResourceIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceGroupRoles (group_roles)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceGroupRoles(partResourceIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceUserRoles (user_roles)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceUserRoles(partResourceIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceManualMeasures (manual_measures)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceManualMeasures(partResourceIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceIssueChanges (issue_changes)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceIssueChanges(partResourceIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceIssues (issues)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceIssues(partResourceIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceActionPlans (action_plans)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceActionPlans(partResourceIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceEvents (events)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceEvents(partResourceIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     profiler.start("deleteResourceGraphs (graphs)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceGraphs(partResourceIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     profiler.start("deleteResource (projects)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResource(partResourceIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     profiler.start("deleteAuthors (authors)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteAuthors(partResourceIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
   }
 
@@ -169,15 +172,15 @@ class PurgeCommands {
     profiler.start("deleteSnapshotEvents (events)");
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotEvents(partSnapshotIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     profiler.start("deleteSnapshotMeasures (project_measures)");
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotMeasures(partSnapshotIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     deleteSnapshotSources(snapshotIdsPartition);
@@ -189,8 +192,8 @@ class PurgeCommands {
     profiler.start("deleteSnapshot (snapshots)");
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshot(partSnapshotIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
   }
 
@@ -217,15 +220,27 @@ class PurgeCommands {
     List<Long> metricIdsWithoutHistoricalData = purgeMapper.selectMetricIdsWithoutHistoricalData();
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotWastedMeasures(partSnapshotIds, metricIdsWithoutHistoricalData);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
 
     profiler.start("updatePurgeStatusToOne (snapshots)");
-    for (Long snapshotId : snapshotIds) {
-      purgeMapper.updatePurgeStatusToOne(snapshotId);
+    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
+      purgeMapper.updatePurgeStatusToOne(partSnapshotIds);
+      session.commit();
+    }
+    profiler.stop();
+  }
+
+  void disableResources(List<Long> resourceIds) {
+    profiler.start("disableResources (projects)");
+    for (List<Long> partResourceIds : Lists.partition(resourceIds, MAX_RESOURCES_PER_QUERY)) {
+      purgeMapper.deleteResourceIndex(partResourceIds);
+      purgeMapper.setSnapshotIsLastToFalse(partResourceIds);
+      purgeMapper.disableResources(partResourceIds);
+      purgeMapper.resolveResourceIssuesNotAlreadyResolved(partResourceIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
   }
 
@@ -233,8 +248,8 @@ class PurgeCommands {
     profiler.start("deleteSnapshotData (snapshot_data)");
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotData(partSnapshotIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
   }
 
@@ -242,8 +257,8 @@ class PurgeCommands {
     profiler.start("deleteSnapshotGraphs (graphs)");
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotGraphs(partSnapshotIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
   }
 
@@ -251,8 +266,8 @@ class PurgeCommands {
     profiler.start("deleteSnapshotSource (snapshot_sources)");
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotSource(partSnapshotIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
   }
 
@@ -260,8 +275,8 @@ class PurgeCommands {
     profiler.start("deleteSnapshotDuplications (duplications_index)");
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotDuplications(partSnapshotIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
   }
 
@@ -274,8 +289,8 @@ class PurgeCommands {
       purgeMapper.deleteSnapshotDependenciesFromSnapshotId(partSnapshotIds);
       purgeMapper.deleteSnapshotDependenciesToSnapshotId(partSnapshotIds);
       purgeMapper.deleteSnapshotDependenciesProjectSnapshotId(partSnapshotIds);
+      session.commit();
     }
-    session.commit();
     profiler.stop();
   }
 
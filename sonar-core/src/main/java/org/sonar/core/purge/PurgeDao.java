@@ -21,8 +21,6 @@ package org.sonar.core.purge;
 
 import com.google.common.collect.Lists;
 import org.apache.commons.lang.ArrayUtils;
-import org.apache.ibatis.session.ResultContext;
-import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,7 +29,6 @@ import org.sonar.core.persistence.MyBatis;
 import org.sonar.core.resource.ResourceDao;
 import org.sonar.core.resource.ResourceDto;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -43,6 +40,7 @@ public class PurgeDao {
   private final MyBatis mybatis;
   private final ResourceDao resourceDao;
   private static final Logger LOG = LoggerFactory.getLogger(PurgeDao.class);
+  private static final int MAX_PROJECT_SNAPSHOTS_PER_PASS = 50;
   private PurgeProfiler profiler;
 
   public PurgeDao(MyBatis mybatis, ResourceDao resourceDao, PurgeProfiler profiler) {
@@ -63,7 +61,7 @@ public class PurgeDao {
         purge(project, conf.scopesWithoutHistoricalData(), commands);
       }
       for (ResourceDto project : projects) {
-        disableOrphanResources(project, session, mapper);
+        disableOrphanResources(project, mapper, commands);
       }
       deleteOldClosedIssues(conf, mapper);
       session.commit();
@@ -75,8 +73,10 @@ public class PurgeDao {
 
   private void deleteOldClosedIssues(PurgeConfiguration conf, PurgeMapper mapper) {
     Date toDate = conf.maxLiveDateOfClosedIssues();
+    profiler.start("deleteOldClosedIssues (issues, issue_changes)");
     mapper.deleteOldClosedIssueChanges(conf.rootProjectId(), toDate);
     mapper.deleteOldClosedIssues(conf.rootProjectId(), toDate);
+    profiler.stop();
   }
 
   private void deleteAbortedBuilds(ResourceDto project, PurgeCommands commands) {
@@ -105,34 +105,26 @@ public class PurgeDao {
         .setIslast(false)
         .setNotPurged(true)
     );
-    for (final Long projectSnapshotId : projectSnapshotIds) {
-      LOG.info("<- Clean snapshot " + projectSnapshotId);
+    for (List<Long> partProjectSnapshotIds : Lists.partition(projectSnapshotIds, MAX_PROJECT_SNAPSHOTS_PER_PASS)) {
+      LOG.info("<- Clean " + partProjectSnapshotIds.size() + " snapshots");
       if (!ArrayUtils.isEmpty(scopesWithoutHistoricalData)) {
         PurgeSnapshotQuery query = PurgeSnapshotQuery.create()
           .setIslast(false)
           .setScopes(scopesWithoutHistoricalData)
-          .setRootSnapshotId(projectSnapshotId);
+          .setRootSnapshotIds(partProjectSnapshotIds);
         purgeCommands.deleteSnapshots(query);
       }
 
-      PurgeSnapshotQuery query = PurgeSnapshotQuery.create().setRootSnapshotId(projectSnapshotId).setNotPurged(true);
+      PurgeSnapshotQuery query = PurgeSnapshotQuery.create().setRootSnapshotIds(partProjectSnapshotIds).setNotPurged(true);
       purgeCommands.purgeSnapshots(query);
 
       // must be executed at the end for reentrance
-      purgeCommands.purgeSnapshots(PurgeSnapshotQuery.create().setId(projectSnapshotId).setNotPurged(true));
+      purgeCommands.purgeSnapshots(partProjectSnapshotIds);
     }
   }
 
-  private void disableOrphanResources(final ResourceDto project, final SqlSession session, final PurgeMapper purgeMapper) {
-    session.select("org.sonar.core.purge.PurgeMapper.selectResourceIdsToDisable", project.getId(), new ResultHandler() {
-      public void handleResult(ResultContext resultContext) {
-        Long resourceId = (Long) resultContext.getResultObject();
-        if (resourceId != null) {
-          disableResource(resourceId, purgeMapper);
-        }
-      }
-    });
-    session.commit();
+  private void disableOrphanResources(ResourceDto project, PurgeMapper mapper, PurgeCommands commands) {
+    commands.disableResources(mapper.selectResourceIdsToDisable(project.getId()));
   }
 
   public List<PurgeableSnapshotDto> selectPurgeableSnapshots(long resourceId) {
@@ -171,13 +163,6 @@ public class PurgeDao {
     commands.deleteResources(resourceIds);
   }
 
-  private void disableResource(long resourceId, PurgeMapper mapper) {
-    mapper.deleteResourceIndex(Arrays.asList(resourceId));
-    mapper.setSnapshotIsLastToFalse(resourceId);
-    mapper.disableResource(resourceId);
-    mapper.resolveResourceIssuesNotAlreadyResolved(resourceId);
-  }
-
   public PurgeDao deleteSnapshots(PurgeSnapshotQuery query) {
     final DbSession session = mybatis.openSession(true);
     try {
@@ -58,17 +58,19 @@ public interface PurgeMapper {
 
   void deleteSnapshotWastedMeasures(@Param("snapshotIds") List<Long> snapshotIds, @Param("mids") List<Long> metricIds);
 
-  void updatePurgeStatusToOne(long snapshotId);
+  void updatePurgeStatusToOne(@Param("snapshotIds") List<Long> snapshotIds);
 
-  void disableResource(long resourceId);
+  List<Long> selectResourceIdsToDisable(long rootProjectId);
 
-  void resolveResourceIssuesNotAlreadyResolved(long resourceId);
+  void disableResources(@Param("resourceIds") List<Long> resourceIds);
+
+  void resolveResourceIssuesNotAlreadyResolved(@Param("resourceIds") List<Long> resourceIds);
 
   void deleteResourceIndex(@Param("resourceIds") List<Long> resourceIds);
 
   void deleteEvent(long eventId);
 
-  void setSnapshotIsLastToFalse(long resourceId);
+  void setSnapshotIsLastToFalse(@Param("resourceIds") List<Long> resourceIds);
 
   void deleteResourceLinks(@Param("resourceIds") List<Long> resourceIds);
 
@@ -51,6 +51,13 @@ public class PurgeProfiler {
     durations.clear();
   }
 
+  /**
+   * Cumulated durations in milliseconds, by purge step, since the last {@link #reset()}.
+   */
+  public Map<String, Long> getDurations() {
+    return Collections.unmodifiableMap(new HashMap<String, Long>(durations));
+  }
+
   void start(String table) {
     this.startTime = clock.now();
     this.currentTable = table;
@@ -79,10 +79,14 @@ public class QualityProfileDao implements ServerComponent {
     }
   }
 
+  public List<QualityProfileDto> selectAll(SqlSession session) {
+    return session.getMapper(QualityProfileMapper.class).selectAll();
+  }
+
   public List<QualityProfileDto> selectAll() {
     SqlSession session = mybatis.openSession(false);
     try {
-      return session.getMapper(QualityProfileMapper.class).selectAll();
+      return selectAll(session);
     } finally {
       MyBatis.closeQuietly(session);
     }
@@ -0,0 +1,405 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.resource;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang.StringUtils;
+
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory suffix array over the names of indexed components. It indexes exactly the suffixes that
+ * {@link ResourceIndexerDao} writes to the table RESOURCE_INDEX, but keeps a single copy of each name : a suffix
+ * is only a reference to a name and a position, packed in a long.
+ * <p/>
+ * Updates are incremental. New suffixes are sorted and merged into the array on the next search, and suffixes of
+ * removed components are dropped at the same time. Bulk replacements merge their suffixes before returning, so that
+ * the thread that loads the index pays for the sort instead of the first search.
+ * <p/>
+ * Instances are thread-safe.
+ *
+ * @since 4.4
+ */
+public class ComponentIndex {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  // components, by slot. A removed component leaves a null slot until the next compaction, so that
+  // the slot numbers referenced by suffixes remain valid.
+  private ResourceIndexDto[] slots = new ResourceIndexDto[INITIAL_CAPACITY];
+  private int slotCount = 0;
+  private int removedCount = 0;
+  private int unflushedRemovals = 0;
+  private final Map<Long, Integer> slotsByResourceId = Maps.newHashMap();
+
+  // sorted suffixes, encoded by suffix(slot, position)
+  private long[] suffixes = new long[0];
+
+  // suffixes of the components added since the last search
+  private long[] pendingSuffixes = new long[INITIAL_CAPACITY];
+  private int pendingCount = 0;
+
+  /**
+   * Adds a component, or replaces it if it's already indexed. Components that are too short to be indexed
+   * are removed.
+   */
+  public synchronized ComponentIndex put(ResourceIndexDto dto) {
+    String key = StringUtils.defaultString(dto.getKey());
+    Integer existingSlot = slotsByResourceId.get(dto.getResourceId());
+    if (existingSlot != null) {
+      ResourceIndexDto existing = slots[existingSlot];
+      if (key.equals(existing.getKey())) {
+        // same suffixes, only the other fields may change
+        slots[existingSlot] = copy(dto);
+        return this;
+      }
+      remove(dto.getResourceId());
+    }
+    if (!isIndexable(key)) {
+      return this;
+    }
+    int slot = addSlot(copy(dto));
+    int maxPosition = maxPosition(key);
+    for (int position = 0; position <= maxPosition; position++) {
+      addPendingSuffix(suffix(slot, position));
+    }
+    return this;
+  }
+
+  public synchronized ComponentIndex remove(long resourceId) {
+    Integer slot = slotsByResourceId.remove(resourceId);
+    if (slot != null) {
+      slots[slot] = null;
+      removedCount++;
+      unflushedRemovals++;
+    }
+    return this;
+  }
+
+  public synchronized ComponentIndex clear() {
+    slots = new ResourceIndexDto[INITIAL_CAPACITY];
+    slotCount = 0;
+    removedCount = 0;
+    unflushedRemovals = 0;
+    slotsByResourceId.clear();
+    suffixes = new long[0];
+    pendingSuffixes = new long[INITIAL_CAPACITY];
+    pendingCount = 0;
+    return this;
+  }
+
+  /**
+   * Replaces all the components by the given ones.
+   */
+  public synchronized ComponentIndex replaceAll(Collection<ResourceIndexDto> dtos) {
+    clear();
+    for (ResourceIndexDto dto : dtos) {
+      put(dto);
+    }
+    flush();
+    return this;
+  }
+
+  /**
+   * Replaces the components of a root project by the given ones. All its components are removed if the collection
+   * is empty, for example when the project has been deleted.
+   */
+  public synchronized ComponentIndex replaceRootProject(long rootProjectId, Collection<ResourceIndexDto> dtos) {
+    for (int slot = 0; slot < slotCount; slot++) {
+      ResourceIndexDto existing = slots[slot];
+      if (existing != null && existing.getRootProjectId() == rootProjectId) {
+        remove(existing.getResourceId());
+      }
+    }
+    for (ResourceIndexDto dto : dtos) {
+      put(dto);
+    }
+    flush();
+    return this;
+  }
+
+  public synchronized int size() {
+    return slotsByResourceId.size();
+  }
+
+  /**
+   * Components having a suffix that starts with the given text, case-insensitive. Results are sorted
+   * by qualifier, in the order of the requested qualifiers, then by name length.
+   *
+   * @param qualifiers the accepted qualifiers. All qualifiers are accepted if null or empty.
+   */
+  public synchronized List<ResourceIndexDto> search(String text, @Nullable List<String> qualifiers) {
+    String key = ResourceIndexerDao.nameToKey(text);
+    if (key.isEmpty()) {
+      return Collections.emptyList();
+    }
+    flush();
+
+    BitSet matchingSlots = new BitSet(slotCount);
+    for (int i = lowerBound(key); i < suffixes.length && startsWith(suffixes[i], key); i++) {
+      matchingSlots.set(slot(suffixes[i]));
+    }
+    List<ResourceIndexDto> result = Lists.newArrayList();
+    for (int slot = matchingSlots.nextSetBit(0); slot >= 0; slot = matchingSlots.nextSetBit(slot + 1)) {
+      ResourceIndexDto dto = slots[slot];
+      if (qualifiers == null || qualifiers.isEmpty() || qualifiers.contains(dto.getQualifier())) {
+        result.add(dto);
+      }
+    }
+    Collections.sort(result, new RankComparator(qualifiers));
+    return result;
+  }
+
+  /**
+   * Merges the pending suffixes into the sorted array and drops the suffixes of removed components.
+   */
+  private void flush() {
+    if (removedCount > slotCount / 2) {
+      compact();
+    }
+    if (unflushedRemovals > 0) {
+      suffixes = liveSuffixes(suffixes);
+      unflushedRemovals = 0;
+    }
+    if (pendingCount == 0) {
+      return;
+    }
+    long[] added = liveSuffixes(pendingSuffixes, pendingCount);
+    pendingSuffixes = new long[INITIAL_CAPACITY];
+    pendingCount = 0;
+    sort(added);
+
+    long[] merged = new long[suffixes.length + added.length];
+    merge(suffixes, 0, suffixes.length, added, 0, added.length, merged, 0);
+    suffixes = merged;
+  }
+
+  private void addPendingSuffix(long suffix) {
+    if (pendingCount == pendingSuffixes.length) {
+      pendingSuffixes = Arrays.copyOf(pendingSuffixes, pendingSuffixes.length * 2);
+    }
+    pendingSuffixes[pendingCount] = suffix;
+    pendingCount++;
+  }
+
+  private long[] liveSuffixes(long[] array) {
+    return liveSuffixes(array, array.length);
+  }
+
+  private long[] liveSuffixes(long[] array, int length) {
+    long[] result = new long[length];
+    int size = 0;
+    for (int i = 0; i < length; i++) {
+      long suffix = array[i];
+      if (slots[slot(suffix)] != null) {
+        result[size] = suffix;
+        size++;
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  /**
+   * Bottom-up merge sort of suffixes, without boxing them
+   */
+  private void sort(long[] array) {
+    long[] source = array;
+    long[] target = new long[array.length];
+    for (int width = 1; width < array.length; width *= 2) {
+      for (int from = 0; from < array.length; from += 2 * width) {
+        int middle = Math.min(from + width, array.length);
+        int to = Math.min(from + 2 * width, array.length);
+        merge(source, from, middle, source, middle, to, target, from);
+      }
+      long[] swap = source;
+      source = target;
+      target = swap;
+    }
+    if (source != array) {
+      System.arraycopy(source, 0, array, 0, array.length);
+    }
+  }
+
+  /**
+   * Merges two sorted ranges into the target array, starting at the given index
+   */
+  private void merge(long[] array1, int from1, int to1, long[] array2, int from2, int to2, long[] target, int targetFrom) {
+    int i = from1;
+    int j = from2;
+    int k = targetFrom;
+    while (i < to1 && j < to2) {
+      if (compareSuffixes(array1[i], array2[j]) <= 0) {
+        target[k] = array1[i];
+        i++;
+      } else {
+        target[k] = array2[j];
+        j++;
+      }
+      k++;
+    }
+    System.arraycopy(array1, i, target, k, to1 - i);
+    System.arraycopy(array2, j, target, k + to1 - i, to2 - j);
+  }
+
+  /**
+   * Renumbers the slots to drop the removed components. All the suffixes are sorted again.
+   */
+  private void compact() {
+    ResourceIndexDto[] components = Arrays.copyOf(slots, slotCount);
+    slots = new ResourceIndexDto[Math.max(INITIAL_CAPACITY, slotsByResourceId.size())];
+    slotCount = 0;
+    removedCount = 0;
+    unflushedRemovals = 0;
+    slotsByResourceId.clear();
+    suffixes = new long[0];
+    pendingSuffixes = new long[INITIAL_CAPACITY];
+    pendingCount = 0;
+    for (ResourceIndexDto component : components) {
+      if (component != null) {
+        int slot = addSlot(component);
+        int maxPosition = maxPosition(component.getKey());
+        for (int position = 0; position <= maxPosition; position++) {
+          addPendingSuffix(suffix(slot, position));
+        }
+      }
+    }
+  }
+
+  private int addSlot(ResourceIndexDto dto) {
+    if (slotCount == slots.length) {
+      slots = Arrays.copyOf(slots, slots.length * 2);
+    }
+    int slot = slotCount;
+    slots[slot] = dto;
+    slotCount++;
+    slotsByResourceId.put(dto.getResourceId(), slot);
+    return slot;
+  }
+
+  /**
+   * Index of the first suffix that is greater than or equal to the given text
+   */
+  private int lowerBound(String text) {
+    int low = 0;
+    int high = suffixes.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (compareSuffix(suffixes[middle], text) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private boolean startsWith(long suffix, String text) {
+    return slots[slot(suffix)].getKey().startsWith(text, position(suffix));
+  }
+
+  private int compareSuffixes(long suffix1, long suffix2) {
+    String key1 = slots[slot(suffix1)].getKey();
+    String key2 = slots[slot(suffix2)].getKey();
+    return compare(key1, position(suffix1), key2, position(suffix2));
+  }
+
+  private int compareSuffix(long suffix, String text) {
+    return compare(slots[slot(suffix)].getKey(), position(suffix), text, 0);
+  }
+
+  private static int compare(String s1, int offset1, String s2, int offset2) {
+    int length1 = s1.length() - offset1;
+    int length2 = s2.length() - offset2;
+    int length = Math.min(length1, length2);
+    for (int i = 0; i < length; i++) {
+      char c1 = s1.charAt(offset1 + i);
+      char c2 = s2.charAt(offset2 + i);
+      if (c1 != c2) {
+        return c1 - c2;
+      }
+    }
+    return length1 - length2;
+  }
+
+  private static boolean isIndexable(String key) {
+    return key.length() >= ResourceIndexerDao.MINIMUM_KEY_SIZE || key.length() == ResourceIndexerDao.SINGLE_INDEX_SIZE;
+  }
+
+  private static int maxPosition(String key) {
+    return key.length() == ResourceIndexerDao.SINGLE_INDEX_SIZE ? 0 : key.length() - ResourceIndexerDao.MINIMUM_KEY_SIZE;
+  }
+
+  private static long suffix(int slot, int position) {
+    return ((long) slot << 32) | position;
+  }
+
+  private static int slot(long suffix) {
+    return (int) (suffix >>> 32);
+  }
+
+  private static int position(long suffix) {
+    return (int) suffix;
+  }
+
+  private static ResourceIndexDto copy(ResourceIndexDto dto) {
+    return new ResourceIndexDto()
+      .setId(dto.getId())
+      .setKey(dto.getKey())
+      .setResourceId(dto.getResourceId())
+      .setRootProjectId(dto.getRootProjectId())
+      .setQualifier(dto.getQualifier())
+      .setNameSize(dto.getNameSize());
+  }
+
+  private static class RankComparator implements Comparator<ResourceIndexDto> {
+    private final List<String> qualifiers;
+
+    RankComparator(@Nullable List<String> qualifiers) {
+      this.qualifiers = qualifiers;
+    }
+
+    @Override
+    public int compare(ResourceIndexDto dto1, ResourceIndexDto dto2) {
+      if (qualifiers != null) {
+        int rank1 = qualifiers.indexOf(dto1.getQualifier());
+        int rank2 = qualifiers.indexOf(dto2.getQualifier());
+        if (rank1 != rank2) {
+          return rank1 < rank2 ? -1 : 1;
+        }
+      }
+      if (dto1.getNameSize() != dto2.getNameSize()) {
+        return dto1.getNameSize() < dto2.getNameSize() ? -1 : 1;
+      }
+      if (dto1.getResourceId() != dto2.getResourceId()) {
+        return dto1.getResourceId() < dto2.getResourceId() ? -1 : 1;
+      }
+      return 0;
+    }
+  }
+}
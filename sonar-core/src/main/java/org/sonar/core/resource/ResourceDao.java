@@ -171,6 +171,28 @@ public class ResourceDao {
     }
   }
 
+  /**
+   * Resources with the given keys, including the disabled ones.
+   *
+   * @since 4.4
+   */
+  public List<ResourceDto> selectResourcesByKeys(Collection<String> keys) {
+    if (keys.isEmpty()) {
+      return Collections.emptyList();
+    }
+    SqlSession session = mybatis.openSession(false);
+    try {
+      List<ResourceDto> resources = newArrayList();
+      List<List<String>> partitionList = Lists.partition(newArrayList(keys), 1000);
+      for (List<String> partition : partitionList) {
+        resources.addAll(session.getMapper(ResourceMapper.class).selectResourcesByKeys(partition));
+      }
+      return resources;
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   @CheckForNull
   public Component findByKey(String key) {
     ResourceDto resourceDto = getResource(ResourceQuery.create().setKey(key));
@@ -19,6 +19,7 @@
  */
 package org.sonar.core.resource;
 
+import com.google.common.collect.Maps;
 import org.apache.commons.lang.StringUtils;
 import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.ResultHandler;
@@ -28,9 +29,15 @@ import org.sonar.api.resources.Scopes;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 
+import javax.annotation.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
 public class ResourceIndexerDao {
 
   private static final String SELECT_RESOURCES = "org.sonar.core.resource.ResourceIndexerMapper.selectResources";
+  private static final String SELECT_MASTER_INDEXES = "org.sonar.core.resource.ResourceIndexerMapper.selectMasterIndexes";
   public static final int MINIMUM_KEY_SIZE = 3;
   public static final int SINGLE_INDEX_SIZE = 2;
 
@@ -42,9 +49,18 @@ public class ResourceIndexerDao {
   private static final String[] NOT_RENAMABLE_SCOPES = {Scopes.FILE};
 
   private final MyBatis mybatis;
+  private final ComponentIndex componentIndex;
 
   public ResourceIndexerDao(MyBatis mybatis) {
+    this(mybatis, null);
+  }
+
+  /**
+   * The in-memory index, when available, is updated along with the table RESOURCE_INDEX and is used to search components.
+   */
+  public ResourceIndexerDao(MyBatis mybatis, @Nullable ComponentIndex componentIndex) {
     this.mybatis = mybatis;
+    this.componentIndex = componentIndex;
   }
 
   /**
@@ -77,6 +93,10 @@ public class ResourceIndexerDao {
           session.commit();
         }
       });
+      if (componentIndex != null) {
+        // drop the components that have been deleted since the index was loaded
+        reloadComponentIndex();
+      }
       return this;
 
     } finally {
@@ -112,6 +132,7 @@ public class ResourceIndexerDao {
         ResourceDto resource = (ResourceDto) context.getResultObject();
 
         mapper.deleteByResourceId(resource.getId());
+        removeFromComponentIndex(resource.getId());
         doIndex(resource, mapper);
       }
     });
@@ -175,6 +196,14 @@ public class ResourceIndexerDao {
       .setQualifier(qualifier)
       .setRootProjectId(rootId)
       .setNameSize(nameLength);
+    if (componentIndex != null) {
+      componentIndex.put(new ResourceIndexDto()
+        .setKey(key)
+        .setResourceId(resourceId)
+        .setQualifier(qualifier)
+        .setRootProjectId(rootId)
+        .setNameSize(nameLength));
+    }
 
     int maxPosition = key.length() == SINGLE_INDEX_SIZE ? 0 : key.length() - MINIMUM_KEY_SIZE;
     for (int position = 0; position <= maxPosition; position++) {
@@ -194,11 +223,71 @@ public class ResourceIndexerDao {
     if (masterIndex != null && !StringUtils.equals(key, masterIndex.getKey())) {
       // resource has been renamed -> drop existing indexes
       mapper.deleteByResourceId(resourceId);
+      removeFromComponentIndex(resourceId);
       masterIndex = null;
     }
     return masterIndex == null;
   }
 
+  /**
+   * Search for the indexed components whose name contains a suffix starting with the given text. The in-memory index
+   * does not see the rows written by other processes, for example by batch analyses, until it's reloaded.
+   *
+   * @param qualifiers the accepted qualifiers, sorted by rank. All qualifiers are accepted if null or empty.
+   * @return the master rows (position 0) of the matching components, sorted by qualifier rank then by name length
+   * @throws IllegalStateException if the in-memory index is not available, for example on batch side
+   * @see #reloadComponentIndex(long)
+   * @since 4.4
+   */
+  public List<ResourceIndexDto> search(String text, @Nullable List<String> qualifiers) {
+    return checkComponentIndex().search(text, qualifiers);
+  }
+
+  /**
+   * Replaces the content of the in-memory index by the table RESOURCE_INDEX.
+   *
+   * @throws IllegalStateException if the in-memory index is not available, for example on batch side
+   * @since 4.4
+   */
+  public synchronized void reloadComponentIndex() {
+    checkComponentIndex().replaceAll(selectMasterIndexes(null));
+  }
+
+  /**
+   * Replaces the components of a root project in the in-memory index by its rows of the table RESOURCE_INDEX.
+   * It must be executed when the project has been indexed or deleted by another process.
+   *
+   * @throws IllegalStateException if the in-memory index is not available, for example on batch side
+   * @since 4.4
+   */
+  public synchronized void reloadComponentIndex(long rootProjectId) {
+    checkComponentIndex().replaceRootProject(rootProjectId, selectMasterIndexes(rootProjectId));
+  }
+
+  private List<ResourceIndexDto> selectMasterIndexes(@Nullable Long rootProjectId) {
+    SqlSession session = mybatis.openSession(false);
+    try {
+      Map<String, Object> params = Maps.newHashMap();
+      params.put("rootProjectId", rootProjectId);
+      return session.selectList(SELECT_MASTER_INDEXES, params);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  private ComponentIndex checkComponentIndex() {
+    if (componentIndex == null) {
+      throw new IllegalStateException("Component index is not available");
+    }
+    return componentIndex;
+  }
+
+  private void removeFromComponentIndex(long resourceId) {
+    if (componentIndex != null) {
+      componentIndex.remove(resourceId);
+    }
+  }
+
   static String nameToKey(String input) {
     return StringUtils.lowerCase(StringUtils.trimToEmpty(input));
   }
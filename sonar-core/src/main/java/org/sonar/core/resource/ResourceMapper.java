@@ -61,6 +61,11 @@ public interface ResourceMapper {
 
   List<ComponentDto> selectComponentsByIds(@Param("ids") List<Long> ids);
 
+  /**
+   * @since 4.4
+   */
+  List<ResourceDto> selectResourcesByKeys(@Param("keys") List<String> keys);
+
   /**
    * @since 3.6
    */
@@ -42,13 +42,17 @@ public class SnapshotDataDao implements BatchComponent, ServerComponent {
   public Collection<SnapshotDataDto> selectSnapshotData(long snapshotId, List<String> dataTypes) {
     SqlSession session = mybatis.openSession(false);
     try {
-      SnapshotDataMapper mapper = session.getMapper(SnapshotDataMapper.class);
-      return mapper.selectSnapshotData(snapshotId, dataTypes);
+      return selectSnapshotData(snapshotId, dataTypes, session);
     } finally {
       MyBatis.closeQuietly(session);
     }
   }
 
+  public Collection<SnapshotDataDto> selectSnapshotData(long snapshotId, List<String> dataTypes, SqlSession session) {
+    SnapshotDataMapper mapper = session.getMapper(SnapshotDataMapper.class);
+    return mapper.selectSnapshotData(snapshotId, dataTypes);
+  }
+
 
   public Collection<SnapshotDataDto> selectSnapshotDataByComponentKey(String componentKey, List<String> dataTypes) {
     SqlSession session = mybatis.openSession(false);
@@ -42,14 +42,30 @@ public class SnapshotSourceDao implements ServerComponent {
     SqlSession session = mybatis.openSession(false);
 
     try {
-      SnapshotSourceMapper mapper = session.getMapper(SnapshotSourceMapper.class);
-      return mapper.selectSnapshotSource(snapshotId);
+      return selectSnapshotSource(snapshotId, session);
 
     } finally {
       MyBatis.closeQuietly(session);
     }
   }
 
+  @CheckForNull
+  public String selectSnapshotSource(long snapshotId, SqlSession session) {
+    SnapshotSourceMapper mapper = session.getMapper(SnapshotSourceMapper.class);
+    return mapper.selectSnapshotSource(snapshotId);
+  }
+
+  /**
+   * Id of the last snapshot of the component, if it has sources
+   *
+   * @since 4.4
+   */
+  @CheckForNull
+  public Long selectSnapshotIdByComponentKey(String componentKey, SqlSession session) {
+    SnapshotSourceMapper mapper = session.getMapper(SnapshotSourceMapper.class);
+    return mapper.selectSnapshotIdByComponentKey(componentKey);
+  }
+
   @CheckForNull
   public String selectSnapshotSourceByComponentKey(String componentKey, SqlSession session) {
     SnapshotSourceMapper mapper = session.getMapper(SnapshotSourceMapper.class);
@@ -94,6 +94,22 @@ public class AuthorizationDao implements ServerComponent {
     return session.selectList(sql, params);
   }
 
+  /**
+   * @since 4.4
+   */
+  public Collection<Long> selectAuthorizedRootProjectsIds(@Nullable Integer userId, String role) {
+    SqlSession session = mybatis.openSession(false);
+    try {
+      Map<String, Object> params = newHashMap();
+      params.put("userId", userId);
+      params.put("role", role);
+      return session.selectList("selectAuthorizedRootProjectsIds", params);
+
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   public List<String> selectGlobalPermissions(@Nullable String userLogin) {
     SqlSession session = mybatis.openSession(false);
     try {
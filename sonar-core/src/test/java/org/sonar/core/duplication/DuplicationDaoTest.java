@@ -19,6 +19,9 @@
  */
 package org.sonar.core.duplication;
 
+import com.google.common.collect.Lists;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.core.persistence.AbstractDaoTestCase;
@@ -47,6 +50,7 @@ public class DuplicationDaoTest extends AbstractDaoTestCase {
 
     DuplicationUnitDto block = blocks.get(0);
     assertThat("block resourceId", block.getResourceKey(), is("bar-last"));
+    assertThat("block resource id", block.getResourceId(), is(2));
     assertThat("block hash", block.getHash(), is("aa"));
     assertThat("block index in file", block.getIndexInFile(), is(0));
     assertThat("block start line", block.getStartLine(), is(1));
@@ -57,6 +61,33 @@ public class DuplicationDaoTest extends AbstractDaoTestCase {
     assertThat(blocks.size(), is(2));
   }
 
+  @Test
+  public void should_stream_candidates_of_project_snapshot() throws Exception {
+    setupData("shouldGetByHash");
+
+    final List<DuplicationUnitDto> blocks = Lists.newArrayList();
+    ResultHandler handler = new ResultHandler() {
+      public void handleResult(ResultContext context) {
+        blocks.add((DuplicationUnitDto) context.getResultObject());
+      }
+    };
+    dao.selectCandidatesOfProjectSnapshot(9, 7, "java", handler);
+    assertThat(blocks.size(), is(1));
+
+    DuplicationUnitDto block = blocks.get(0);
+    assertThat(block.getResourceId(), is(2));
+    assertThat(block.getResourceKey(), is("bar-last"));
+    assertThat(block.getHash(), is("aa"));
+    assertThat(block.getIndexInFile(), is(0));
+    assertThat(block.getStartLine(), is(1));
+    assertThat(block.getEndLine(), is(2));
+
+    // check null for lastSnapshotId
+    blocks.clear();
+    dao.selectCandidatesOfProjectSnapshot(9, null, "java", handler);
+    assertThat(blocks.size(), is(2));
+  }
+
   @Test
   public void shouldInsert() throws Exception {
     setupData("shouldInsert");
@@ -37,6 +37,7 @@ import org.sonar.jpa.test.AbstractDbUnitTestCase;
 import java.io.InvalidClassException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -44,6 +45,7 @@ import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
@@ -109,6 +111,35 @@ public class DefaultNotificationManagerTest extends AbstractDbUnitTestCase {
     inOrder.verify(notificationQueueDao).delete(dtos);
   }
 
+  @Test
+  public void shouldReadBatchFromQueueWithoutDeleting() throws Exception {
+    NotificationQueueDto dto1 = NotificationQueueDto.toNotificationQueueDto(new Notification("first"));
+    NotificationQueueDto dto2 = mock(NotificationQueueDto.class);
+    when(dto2.toNotification()).thenThrow(new InvalidClassException("Pouet"));
+    NotificationQueueDto dto3 = NotificationQueueDto.toNotificationQueueDto(new Notification("third"));
+    List<NotificationQueueDto> dtos = Arrays.asList(dto1, dto2, dto3);
+    when(notificationQueueDao.findOldest(10)).thenReturn(dtos);
+
+    assertThat(manager.findOldestInQueue(10)).isEqualTo(dtos);
+    List<Notification> notifications = manager.toNotifications(dtos);
+
+    assertThat(notifications).hasSize(2);
+    assertThat(notifications.get(0).getType()).isEqualTo("first");
+    assertThat(notifications.get(1).getType()).isEqualTo("third");
+    verify(notificationQueueDao, never()).delete(any(List.class));
+  }
+
+  @Test
+  public void shouldRemoveBatchFromQueue() throws Exception {
+    List<NotificationQueueDto> dtos = Arrays.asList(NotificationQueueDto.toNotificationQueueDto(new Notification("first")));
+
+    manager.removeFromQueue(dtos);
+    manager.removeFromQueue(Collections.<NotificationQueueDto>emptyList());
+
+    verify(notificationQueueDao, times(1)).delete(any(List.class));
+    verify(notificationQueueDao).delete(dtos);
+  }
+
   // SONAR-4739
   @Test
   public void shouldNotFailWhenUnableToDeserialize() throws Exception {
@@ -73,4 +73,27 @@ public class MyBatisTest {
       session.close();
     }
   }
+
+  @Test
+  public void shouldOpenBatchSessionWithCustomSize() {
+    MyBatis myBatis = new MyBatis(database, logback, queue);
+    myBatis.start();
+
+    DbSession session = myBatis.openSession(true, 1000);
+    try {
+      assertThat(session.getConnection(), notNullValue());
+      assertThat(session.getMapper(RuleMapper.class), notNullValue());
+      assertThat(session instanceof BatchSession, Is.is(true));
+    } finally {
+      session.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldFailToOpenBatchSessionWithInvalidSize() {
+    MyBatis myBatis = new MyBatis(database, logback, queue);
+    myBatis.start();
+
+    myBatis.openSession(true, 0);
+  }
 }
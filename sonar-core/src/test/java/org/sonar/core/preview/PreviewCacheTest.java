@@ -124,6 +124,81 @@ public class PreviewCacheTest {
     verify(dryRunDatabaseFactory, times(1)).createNewDatabaseForDryRun(anyLong(), any(File.class), anyString());
   }
 
+  @Test
+  public void get_same_database_file_until_invalidation() throws Exception {
+    mockDefaultDatabaseCreation();
+    File dbFile = readDatabaseFile(null);
+    assertThat(FileUtils.readFileToString(dbFile)).isEqualTo("fake db content");
+    assertThat(readDatabaseFile(null)).isEqualTo(dbFile);
+
+    // Emulate invalidation of cache
+    Thread.sleep(100);
+    invalidateGlobalCache();
+
+    assertThat(readDatabaseFile(null).getName()).isNotEqualTo(dbFile.getName());
+    verify(dryRunDatabaseFactory, times(2)).createNewDatabaseForDryRun(anyLong(), any(File.class), anyString());
+  }
+
+  @Test
+  public void do_not_remove_database_file_while_it_is_read() throws Exception {
+    mockDefaultDatabaseCreation();
+    final Thread[] regeneration = new Thread[1];
+
+    dryRunCache.readDatabaseFileForPreview(null, new PreviewCache.DatabaseFileReader() {
+      @Override
+      public void read(File dbFile) throws IOException {
+        try {
+          Thread.sleep(100);
+          invalidateGlobalCache();
+          regeneration[0] = new Thread() {
+            @Override
+            public void run() {
+              dryRunCache.getDatabaseForPreview(null);
+            }
+          };
+          regeneration[0].start();
+          regeneration[0].join(200);
+
+          // regeneration waits for the end of the read
+          assertThat(regeneration[0].isAlive()).isTrue();
+          assertThat(FileUtils.readFileToString(dbFile)).isEqualTo("fake db content");
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    });
+
+    regeneration[0].join(5000);
+    assertThat(regeneration[0].isAlive()).isFalse();
+    verify(dryRunDatabaseFactory, times(2)).createNewDatabaseForDryRun(anyLong(), any(File.class), anyString());
+  }
+
+  private void mockDefaultDatabaseCreation() {
+    when(dryRunDatabaseFactory.createNewDatabaseForDryRun(isNull(Long.class), any(File.class), anyString())).thenAnswer(new Answer<File>() {
+      public File answer(InvocationOnMock invocation) throws IOException {
+        Object[] args = invocation.getArguments();
+        File dbFile = new File(new File(dryRunCacheLocation, "default"), (String) args[2] + ".h2.db");
+        FileUtils.write(dbFile, "fake db content");
+        return dbFile;
+      }
+    });
+  }
+
+  private void invalidateGlobalCache() {
+    when(propertiesDao.selectGlobalProperty(PreviewCache.SONAR_PREVIEW_CACHE_LAST_UPDATE_KEY)).thenReturn(new PropertyDto().setValue("" + System.currentTimeMillis()));
+  }
+
+  private File readDatabaseFile(Long projectId) throws IOException {
+    final File[] result = new File[1];
+    dryRunCache.readDatabaseFileForPreview(projectId, new PreviewCache.DatabaseFileReader() {
+      @Override
+      public void read(File dbFile) {
+        result[0] = dbFile;
+      }
+    });
+    return result[0];
+  }
+
   @Test
   public void test_getDatabaseForDryRun_global_invalidation() throws Exception {
     when(dryRunDatabaseFactory.createNewDatabaseForDryRun(isNull(Long.class), any(File.class), anyString()))
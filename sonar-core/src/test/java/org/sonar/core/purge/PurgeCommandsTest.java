@@ -140,6 +140,20 @@ public class PurgeCommandsTest extends AbstractDaoTestCase {
     // The goal of this test is only to check that the query do no fail, not to check result
   }
 
+  /**
+   * Test that SQL queries execution do not fail with a huge number of parameter
+   */
+  @Test
+  public void should_not_fail_when_disabling_huge_number_of_resources() {
+    SqlSession session = getMyBatis().openSession();
+    try {
+      new PurgeCommands(session, profiler).disableResources(getHugeNumberOfIds());
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+    // The goal of this test is only to check that the query do no fail, not to check result
+  }
+
   private List<Long> getHugeNumberOfIds() {
     List<Long> hugeNbOfSnapshotIds = newArrayList();
     for (long i = 0; i < 4500; i++) {
@@ -72,6 +72,13 @@ public class PurgeDaoTest extends AbstractDaoTestCase {
     checkTables("shouldDeleteHistoricalDataOfDirectoriesAndFiles", "projects", "snapshots");
   }
 
+  @Test
+  public void should_purge_project_snapshots_by_passes() {
+    setupData("should_purge_project_snapshots_by_passes");
+    dao.purge(new PurgeConfiguration(1L, new String[]{Scopes.FILE}, 30));
+    checkTables("should_purge_project_snapshots_by_passes", "projects", "snapshots");
+  }
+
   @Test
   public void disable_resources_without_last_snapshot() {
     setupData("disable_resources_without_last_snapshot");
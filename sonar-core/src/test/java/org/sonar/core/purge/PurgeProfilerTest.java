@@ -23,6 +23,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
 
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.MapAssert.entry;
 import static org.mockito.Matchers.contains;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -80,6 +82,22 @@ public class PurgeProfilerTest {
     verify(logger).info(contains("bar: 5ms"));
   }
 
+  @Test
+  public void expose_durations_by_step() {
+    profiler.start("foo");
+    clock.sleep(10);
+    profiler.stop();
+
+    profiler.start("foo");
+    clock.sleep(8);
+    profiler.stop();
+
+    assertThat(profiler.getDurations()).hasSize(1).includes(entry("foo", 18L));
+
+    profiler.reset();
+    assertThat(profiler.getDurations()).isEmpty();
+  }
+
   private class MockedClock extends org.sonar.core.purge.PurgeProfiler.Clock {
     private long now = 0;
 
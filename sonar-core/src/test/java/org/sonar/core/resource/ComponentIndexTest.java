@@ -0,0 +1,196 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.resource;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ComponentIndexTest {
+
+  ComponentIndex index = new ComponentIndex();
+
+  @Test
+  public void should_search_prefix_and_infix() {
+    index.put(dto(10, "ziputils", "FIL"));
+
+    assertThat(resourceIds(index.search("zip", null))).containsExactly(10L);
+    assertThat(resourceIds(index.search("UTILS", null))).containsExactly(10L);
+    assertThat(resourceIds(index.search("ils", null))).containsExactly(10L);
+    assertThat(index.search("zap", null)).isEmpty();
+    assertThat(index.search("", null)).isEmpty();
+  }
+
+  @Test
+  public void should_index_same_suffixes_as_resource_index_table() {
+    // the last two characters are not indexed, except on two letters long names
+    index.put(dto(1, "ziputils", "FIL"));
+    index.put(dto(2, "ab", "TRK"));
+    index.put(dto(3, "a", "TRK"));
+
+    assertThat(index.search("ls", null)).isEmpty();
+    assertThat(resourceIds(index.search("ab", null))).containsExactly(2L);
+    assertThat(index.search("b", null)).isEmpty();
+    assertThat(resourceIds(index.search("a", null))).containsExactly(2L);
+    assertThat(index.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_rank_by_qualifier_then_name_length() {
+    index.put(dto(1, "struts core", "BRC"));
+    index.put(dto(2, "struts", "TRK"));
+    index.put(dto(3, "struts.js", "FIL"));
+    index.put(dto(4, "strutsutils.java", "FIL"));
+
+    assertThat(resourceIds(index.search("strut", null))).containsExactly(2L, 3L, 1L, 4L);
+    assertThat(resourceIds(index.search("strut", Arrays.asList("FIL", "TRK")))).containsExactly(3L, 4L, 2L);
+  }
+
+  @Test
+  public void should_replace_renamed_component() {
+    index.put(dto(1, "struts", "TRK"));
+    index.search("struts", null);
+
+    index.put(dto(1, "apache", "TRK"));
+
+    assertThat(index.search("struts", null)).isEmpty();
+    assertThat(resourceIds(index.search("pach", null))).containsExactly(1L);
+    assertThat(index.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_remove_component() {
+    index.put(dto(1, "struts", "TRK"));
+    index.put(dto(2, "struts core", "BRC"));
+    index.search("struts", null);
+
+    index.remove(1L);
+
+    assertThat(resourceIds(index.search("struts", null))).containsExactly(2L);
+    assertThat(index.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_replace_all_components() {
+    index.put(dto(1, "struts", "TRK"));
+    index.put(dto(2, "struts core", "BRC"));
+
+    index.replaceAll(Arrays.asList(dto(3, "struts.js", "FIL")));
+
+    assertThat(resourceIds(index.search("struts", null))).containsExactly(3L);
+    assertThat(index.size()).isEqualTo(1);
+
+    index.clear();
+    assertThat(index.search("struts", null)).isEmpty();
+  }
+
+  @Test
+  public void should_replace_components_of_root_project() {
+    index.put(dto(1, "struts", "TRK"));
+    index.put(dto(2, "struts core", "BRC"));
+    index.put(dto(3, "struts.js", "FIL").setRootProjectId(3L));
+
+    // component 2 has been deleted, component 4 has been added
+    index.replaceRootProject(1L, Arrays.asList(dto(1, "struts", "TRK"), dto(4, "struts.xml", "FIL")));
+    assertThat(resourceIds(index.search("struts", null))).containsOnly(1L, 3L, 4L);
+
+    // project 3 has been deleted
+    index.replaceRootProject(3L, Collections.<ResourceIndexDto>emptyList());
+    assertThat(resourceIds(index.search("struts", null))).containsOnly(1L, 4L);
+    assertThat(index.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_return_same_results_as_full_scan() {
+    Random random = new Random(42L);
+    String[] keys = new String[200];
+    for (int round = 0; round < 2000; round++) {
+      int resourceId = random.nextInt(keys.length);
+      if (random.nextInt(5) == 0) {
+        index.remove(resourceId);
+        keys[resourceId] = null;
+      } else {
+        String key = randomKey(random);
+        index.put(dto(resourceId, key, "FIL"));
+        keys[resourceId] = key.length() >= 3 || key.length() == 2 ? key : null;
+      }
+      if (round % 50 == 0) {
+        String text = randomKey(random);
+        text = text.substring(0, Math.min(text.length(), 1 + random.nextInt(2)));
+        assertThat(resourceIds(index.search(text, null))).isEqualTo(scan(keys, text));
+      }
+    }
+  }
+
+  private static List<Long> scan(String[] keys, String text) {
+    List<Long> result = Lists.newArrayList();
+    for (int i = 0; i < keys.length; i++) {
+      String key = keys[i];
+      if (key != null) {
+        int maxPosition = key.length() == 2 ? 0 : key.length() - 3;
+        for (int position = 0; position <= maxPosition; position++) {
+          if (key.startsWith(text, position)) {
+            result.add((long) i);
+            break;
+          }
+        }
+      }
+    }
+    // by name length, then by id
+    final String[] sortedKeys = keys;
+    Collections.sort(result, new Comparator<Long>() {
+      @Override
+      public int compare(Long id1, Long id2) {
+        int length1 = sortedKeys[id1.intValue()].length();
+        int length2 = sortedKeys[id2.intValue()].length();
+        return length1 != length2 ? length1 - length2 : id1.compareTo(id2);
+      }
+    });
+    return result;
+  }
+
+  private static String randomKey(Random random) {
+    StringBuilder sb = new StringBuilder();
+    int length = 1 + random.nextInt(8);
+    for (int i = 0; i < length; i++) {
+      sb.append((char) ('a' + random.nextInt(3)));
+    }
+    return sb.toString();
+  }
+
+  private static ResourceIndexDto dto(long resourceId, String key, String qualifier) {
+    return new ResourceIndexDto().setResourceId(resourceId).setKey(key).setQualifier(qualifier).setNameSize(key.length()).setRootProjectId(1L);
+  }
+
+  private static List<Long> resourceIds(List<ResourceIndexDto> dtos) {
+    List<Long> ids = Lists.newArrayList();
+    for (ResourceIndexDto dto : dtos) {
+      ids.add(dto.getResourceId());
+    }
+    return ids;
+  }
+}
@@ -134,6 +134,16 @@ public class ResourceDaoTest extends AbstractDaoTestCase {
     assertThat(dao.getResource(query).getKey()).isEqualTo("org.struts:struts-core");
   }
 
+  @Test
+  public void select_resources_by_keys() {
+    setupData("fixture");
+
+    List<ResourceDto> resources = dao.selectResourcesByKeys(newArrayList("org.struts:struts", "org.struts:struts-core", "unknown"));
+    assertThat(resources).onProperty("id").containsOnly(1L, 2L);
+
+    assertThat(dao.selectResourcesByKeys(Collections.<String>emptyList())).isEmpty();
+  }
+
   @Test
   public void getResourceIds_all() {
     setupData("fixture");
@@ -28,9 +28,12 @@ import org.sonar.core.persistence.AbstractDaoTestCase;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
+import static org.fest.assertions.Assertions.assertThat;
 import static org.hamcrest.number.OrderingComparisons.greaterThan;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class ResourceIndexerDaoTest extends AbstractDaoTestCase {
 
@@ -152,4 +155,61 @@ public class ResourceIndexerDaoTest extends AbstractDaoTestCase {
 
     checkTables("shouldNotReindexUnchangedResource", new String[] {"id"}, "resource_index");
   }
+
+  @Test
+  public void should_search_components_indexed_by_other_processes() {
+    setupData("shouldReindexResource");
+    ResourceIndexerDao indexer = new ResourceIndexerDao(getMyBatis(), new ComponentIndex());
+    assertThat(indexer.search("TRU", null)).isEmpty();
+
+    indexer.reloadComponentIndex();
+    List<ResourceIndexDto> result = indexer.search("TRU", null);
+
+    assertThat(result).hasSize(1);
+    assertThat(result.get(0).getResourceId()).isEqualTo(1L);
+    assertThat(result.get(0).getKey()).isEqualTo("struts");
+    assertThat(result.get(0).getQualifier()).isEqualTo("TRK");
+    assertThat(indexer.search("xyz", null)).isEmpty();
+  }
+
+  @Test
+  public void should_update_component_index_when_reindexing_resource() {
+    setupData("shouldReindexResource");
+    ResourceIndexerDao indexer = new ResourceIndexerDao(getMyBatis(), new ComponentIndex());
+    indexer.reloadComponentIndex();
+    assertThat(indexer.search("struts", null)).hasSize(1);
+
+    indexer.indexResource(1, "Apache", Qualifiers.PROJECT, 1);
+
+    assertThat(indexer.search("struts", null)).isEmpty();
+    assertThat(indexer.search("pach", null)).hasSize(1);
+  }
+
+  @Test
+  public void should_reload_components_of_project_deleted_by_other_processes() throws SQLException {
+    setupData("shouldReindexResource");
+    ResourceIndexerDao indexer = new ResourceIndexerDao(getMyBatis(), new ComponentIndex());
+    indexer.reloadComponentIndex();
+
+    Connection connection = getConnection();
+    try {
+      connection.createStatement().execute("delete from resource_index where root_project_id=1");
+    } finally {
+      connection.close();
+    }
+    assertThat(indexer.search("struts", null)).hasSize(1);
+
+    indexer.reloadComponentIndex(1L);
+    assertThat(indexer.search("struts", null)).isEmpty();
+  }
+
+  @Test
+  public void should_fail_to_search_without_component_index() {
+    try {
+      dao.search("struts", null);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Component index is not available");
+    }
+  }
 }
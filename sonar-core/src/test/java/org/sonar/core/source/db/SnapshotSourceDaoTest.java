@@ -20,9 +20,11 @@
 
 package org.sonar.core.source.db;
 
+import org.apache.ibatis.session.SqlSession;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.core.persistence.AbstractDaoTestCase;
+import org.sonar.core.persistence.MyBatis;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -49,4 +51,15 @@ public class SnapshotSourceDaoTest extends AbstractDaoTestCase {
 
     assertThat(snapshotSource).isEqualTo("public class Foo {public Foo(){}}");
   }
+
+  @Test
+  public void select_snapshot_id_by_component_key() throws Exception {
+    SqlSession session = getMyBatis().openSession();
+    try {
+      assertThat(dao.selectSnapshotIdByComponentKey("org.apache.struts:struts:Dispatcher", session)).isEqualTo(11L);
+      assertThat(dao.selectSnapshotIdByComponentKey("unknown", session)).isNull();
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
 }
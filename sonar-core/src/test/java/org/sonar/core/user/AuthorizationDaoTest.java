@@ -123,6 +123,26 @@ public class AuthorizationDaoTest extends AbstractDaoTestCase {
     assertThat(rootProjectIds).isEmpty();
   }
 
+  @Test
+  public void should_return_root_project_ids_for_user() {
+    setupData("should_return_root_project_keys_for_user");
+
+    AuthorizationDao authorization = new AuthorizationDao(getMyBatis());
+    assertThat(authorization.selectAuthorizedRootProjectsIds(USER, "user")).containsOnly(300L);
+
+    // user does not have the role "admin"
+    assertThat(authorization.selectAuthorizedRootProjectsIds(USER, "admin")).isEmpty();
+  }
+
+  @Test
+  public void should_return_root_project_ids_for_anonymous() {
+    setupData("should_return_root_project_keys_for_anonymous");
+
+    AuthorizationDao authorization = new AuthorizationDao(getMyBatis());
+    assertThat(authorization.selectAuthorizedRootProjectsIds(null, "user")).containsOnly(300L);
+    assertThat(authorization.selectAuthorizedRootProjectsIds(null, "admin")).isEmpty();
+  }
+
   @Test
   public void should_return_root_project_keys_for_group() {
     // but user is not in an authorized group
@@ -40,6 +40,9 @@ import java.util.List;
  * <p>
  * Note that this implementation currently does not support deletion, however it's possible to implement.
  * </p>
+ * <p>
+ * Insertions are thread-safe. Queries can be executed concurrently by several threads, as long as no block is inserted meanwhile.
+ * </p>
  */
 public class PackedMemoryCloneIndex extends AbstractCloneIndex {
 
@@ -54,7 +57,7 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
   /**
    * Indicates that index requires sorting to perform queries.
    */
-  private boolean sorted;
+  private volatile boolean sorted;
 
   /**
    * Current number of blocks in index.
@@ -66,8 +69,6 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
 
   private int[] resourceIdsIndex;
 
-  private final Block.Builder blockBuilder = Block.builder();
-
   public PackedMemoryCloneIndex() {
     this(8, DEFAULT_INITIAL_CAPACITY);
   }
@@ -95,17 +96,13 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
   public Collection<Block> getByResourceId(String resourceId) {
     ensureSorted();
 
-    // prepare resourceId for binary search
-    resourceIds[size] = resourceId;
-    resourceIdsIndex[size] = size;
-
-    int index = DataUtils.binarySearch(byResourceId);
+    int index = lowerBoundByResourceId(resourceId);
 
     List<Block> result = Lists.newArrayList();
-    int realIndex = resourceIdsIndex[index];
-    while (index < size && FastStringComparator.INSTANCE.compare(resourceIds[realIndex], resourceId) == 0) {
+    Block.Builder blockBuilder = Block.builder();
+    while (index < size && FastStringComparator.INSTANCE.compare(resourceIds[resourceIdsIndex[index]], resourceId) == 0) {
       // extract block (note that there is no need to extract resourceId)
-      int offset = realIndex * blockInts;
+      int offset = resourceIdsIndex[index] * blockInts;
       int[] hash = new int[hashInts];
       for (int j = 0; j < hashInts; j++) {
         hash[j] = blockData[offset++];
@@ -126,7 +123,6 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
       result.add(block);
 
       index++;
-      realIndex = resourceIdsIndex[index];
     }
     return result;
   }
@@ -137,23 +133,19 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
   public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
     ensureSorted();
 
-    // prepare hash for binary search
     int[] hash = sequenceHash.toIntArray();
     if (hash.length != hashInts) {
       throw new IllegalArgumentException("Expected " + hashInts + " ints in hash, but got " + hash.length);
     }
-    int offset = size * blockInts;
-    for (int i = 0; i < hashInts; i++) {
-      blockData[offset++] = hash[i];
-    }
 
-    int index = DataUtils.binarySearch(byBlockHash);
+    int index = lowerBoundByHash(hash);
 
     List<Block> result = Lists.newArrayList();
-    while (index < size && !isLessByHash(size, index)) {
+    Block.Builder blockBuilder = Block.builder();
+    while (index < size && compareHash(index, hash) == 0) {
       // extract block (note that there is no need to extract hash)
       String resourceId = resourceIds[index];
-      offset = index * blockInts + hashInts;
+      int offset = index * blockInts + hashInts;
       int indexInFile = blockData[offset++];
       int firstLineNumber = blockData[offset++];
       int lastLineNumber = blockData[offset++];
@@ -179,7 +171,7 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
    * <strong>Note that this implementation allows insertion of two blocks with same index for one resource.</strong>
    * </p>
    */
-  public void insert(Block block) {
+  public synchronized void insert(Block block) {
     sorted = false;
     ensureCapacity();
 
@@ -230,16 +222,71 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
     if (sorted) {
       return;
     }
+    synchronized (this) {
+      if (sorted) {
+        return;
+      }
 
-    ensureCapacity();
+      ensureCapacity();
+
+      DataUtils.sort(byBlockHash);
+      for (int i = 0; i < size; i++) {
+        resourceIdsIndex[i] = i;
+      }
+      DataUtils.sort(byResourceId);
+
+      sorted = true;
+    }
+  }
+
+  /**
+   * Search does not use the free slot at the end of arrays as {@link DataUtils#binarySearch(DataUtils.Sortable)} does,
+   * so that concurrent queries don't interfere.
+   *
+   * @return position of the first block whose resourceId is not less than given one
+   */
+  private int lowerBoundByResourceId(String resourceId) {
+    int lower = 0;
+    int upper = size;
+    while (lower < upper) {
+      int mid = (lower + upper) >>> 1;
+      if (FastStringComparator.INSTANCE.compare(resourceIds[resourceIdsIndex[mid]], resourceId) < 0) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
+      }
+    }
+    return lower;
+  }
 
-    DataUtils.sort(byBlockHash);
-    for (int i = 0; i < size; i++) {
-      resourceIdsIndex[i] = i;
+  /**
+   * @return position of the first block whose hash is not less than given one
+   */
+  private int lowerBoundByHash(int[] hash) {
+    int lower = 0;
+    int upper = size;
+    while (lower < upper) {
+      int mid = (lower + upper) >>> 1;
+      if (compareHash(mid, hash) < 0) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
+      }
     }
-    DataUtils.sort(byResourceId);
+    return lower;
+  }
 
-    sorted = true;
+  private int compareHash(int i, int[] hash) {
+    int offset = i * blockInts;
+    for (int k = 0; k < hashInts; k++, offset++) {
+      if (blockData[offset] < hash[k]) {
+        return -1;
+      }
+      if (blockData[offset] > hash[k]) {
+        return 1;
+      }
+    }
+    return 0;
   }
 
   private boolean isLessByHash(int i, int j) {
@@ -19,12 +19,18 @@
  */
 package org.sonar.duplications.index;
 
+import com.google.common.collect.Lists;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.sameInstance;
@@ -109,6 +115,62 @@ public class PackedMemoryCloneIndexTest {
     index.getBySequenceHash(new ByteArray(1L));
   }
 
+  @Test
+  public void should_support_concurrent_insertions() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> results = Lists.newArrayList();
+      for (int t = 0; t < 4; t++) {
+        final String resourceId = "r" + t;
+        results.add(executor.submit(new Runnable() {
+          public void run() {
+            for (int i = 0; i < 1000; i++) {
+              index.insert(newBlock(resourceId, i));
+            }
+          }
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(index.getByResourceId("r2").size(), is(1000));
+    assertThat(index.getBySequenceHash(new ByteArray(999L)).size(), is(4));
+  }
+
+  @Test
+  public void should_support_concurrent_queries() throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      index.insert(newBlock("r" + (i % 100), i % 10));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> results = Lists.newArrayList();
+      for (int t = 0; t < 8; t++) {
+        results.add(executor.submit(new Callable<Boolean>() {
+          public Boolean call() {
+            for (int i = 0; i < 1000; i++) {
+              if (index.getBySequenceHash(new ByteArray((long) (i % 10))).size() != 100
+                || index.getByResourceId("r" + (i % 100)).size() != 10) {
+                return false;
+              }
+            }
+            return true;
+          }
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        assertThat(result.get(), is(true));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   private static Block newBlock(String resourceId, long hash) {
     return Block.builder()
         .setResourceId(resourceId)
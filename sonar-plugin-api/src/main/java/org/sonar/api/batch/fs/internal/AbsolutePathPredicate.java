@@ -26,7 +26,7 @@ import org.sonar.api.batch.fs.InputFile;
 /**
  * @since 4.2
  */
-class AbsolutePathPredicate implements FilePredicate {
+class AbsolutePathPredicate implements FilePredicate, UniqueIndexPredicate {
 
   private final String path;
 
@@ -38,4 +38,14 @@ class AbsolutePathPredicate implements FilePredicate {
   public boolean apply(InputFile f) {
     return path.equals(f.absolutePath());
   }
+
+  @Override
+  public Object value() {
+    return path;
+  }
+
+  @Override
+  public String indexId() {
+    return AbsolutePathIndex.ID;
+  }
 }
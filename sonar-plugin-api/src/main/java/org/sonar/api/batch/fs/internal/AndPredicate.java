@@ -45,4 +45,8 @@ class AndPredicate implements FilePredicate {
     return true;
   }
 
+  Collection<FilePredicate> predicates() {
+    return predicates;
+  }
+
 }
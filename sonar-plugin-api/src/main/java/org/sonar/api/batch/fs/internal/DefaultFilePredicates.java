@@ -55,9 +55,6 @@ public class DefaultFilePredicates implements FilePredicates {
     return FalsePredicate.FALSE;
   }
 
-  /**
-   * Warning - not efficient because absolute path is not indexed yet.
-   */
   public FilePredicate hasAbsolutePath(String s) {
     return new AbsolutePathPredicate(s);
   }
@@ -77,11 +74,7 @@ public class DefaultFilePredicates implements FilePredicates {
     if (inclusionPatterns.length == 0) {
       return TruePredicate.TRUE;
     }
-    FilePredicate[] predicates = new FilePredicate[inclusionPatterns.length];
-    for (int i = 0; i < inclusionPatterns.length; i++) {
-      predicates[i] = new PathPatternPredicate(PathPattern.create(inclusionPatterns[i]));
-    }
-    return or(predicates);
+    return new PathPatternsPredicate(PathPatternSet.create(inclusionPatterns));
   }
 
   public FilePredicate doesNotMatchPathPattern(String exclusionPattern) {
@@ -23,8 +23,10 @@ import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import org.sonar.api.batch.fs.FilePredicate;
 import org.sonar.api.batch.fs.FilePredicates;
@@ -35,10 +37,12 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.nio.charset.Charset;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.SortedSet;
 
 /**
@@ -116,13 +120,61 @@ public class DefaultFileSystem implements FileSystem {
   @Override
   public Iterable<InputFile> inputFiles(FilePredicate predicate) {
     doPreloadFiles();
-    return Iterables.filter(cache.inputFiles(), new GuavaPredicate(predicate));
+    return Iterables.filter(candidates(predicate), new GuavaPredicate(predicate));
   }
 
   @Override
   public boolean hasFiles(FilePredicate predicate) {
     doPreloadFiles();
-    return Iterables.indexOf(cache.inputFiles(), new GuavaPredicate(predicate)) >= 0;
+    return Iterables.indexOf(candidates(predicate), new GuavaPredicate(predicate)) >= 0;
+  }
+
+  /**
+   * Files that may match the predicate. Indexes of the cache are used when the predicate, or at least one
+   * operand of an AND or all the operands of an OR, are on indexed attributes. Otherwise all the files
+   * are scanned.
+   */
+  private Iterable<InputFile> candidates(FilePredicate predicate) {
+    Collection<InputFile> indexed = indexedCandidates(predicate);
+    return indexed == null ? cache.inputFiles() : indexed;
+  }
+
+  @CheckForNull
+  private Collection<InputFile> indexedCandidates(FilePredicate predicate) {
+    if (predicate instanceof UniqueIndexPredicate) {
+      InputFile inputFile = cache.inputFile((UniqueIndexPredicate) predicate);
+      return inputFile == null ? Collections.<InputFile>emptyList() : Collections.singletonList(inputFile);
+    }
+    if (predicate instanceof IndexPredicate) {
+      IndexPredicate indexPredicate = (IndexPredicate) predicate;
+      return cache.inputFiles(indexPredicate.indexId(), indexPredicate.value());
+    }
+    if (predicate instanceof AndPredicate) {
+      // the most selective operand is enough, the other ones are applied as filters
+      Collection<InputFile> smallest = null;
+      for (FilePredicate operand : ((AndPredicate) predicate).predicates()) {
+        Collection<InputFile> candidates = indexedCandidates(operand);
+        if (candidates != null && (smallest == null || candidates.size() < smallest.size())) {
+          smallest = candidates;
+        }
+      }
+      return smallest;
+    }
+    if (predicate instanceof OrPredicate) {
+      Set<InputFile> union = Sets.newLinkedHashSet();
+      for (FilePredicate operand : ((OrPredicate) predicate).predicates()) {
+        Collection<InputFile> candidates = indexedCandidates(operand);
+        if (candidates == null) {
+          return null;
+        }
+        union.addAll(candidates);
+      }
+      return union;
+    }
+    if (predicate == FalsePredicate.FALSE) {
+      return Collections.emptyList();
+    }
+    return null;
   }
 
   @Override
@@ -185,6 +237,16 @@ public class DefaultFileSystem implements FileSystem {
 
     protected abstract void doIndex(String indexId, Object value, InputFile inputFile);
 
+    /**
+     * Files whose indexed attribute is equal to the given value, or {@code null} if the attribute
+     * is not indexed by this cache. In this case files are searched by scanning {@link #inputFiles()}.
+     * @since 4.4
+     */
+    @CheckForNull
+    protected Collection<InputFile> inputFiles(String indexId, Object value) {
+      return null;
+    }
+
     final void add(InputFile inputFile) {
       doAdd(inputFile);
       for (FileIndex index : FileIndex.ALL) {
@@ -198,7 +260,7 @@ public class DefaultFileSystem implements FileSystem {
    */
   private static class MapCache extends Cache {
     private final List<InputFile> files = Lists.newArrayList();
-    private final Map<String, Map<Object, InputFile>> fileMap = Maps.newHashMap();
+    private final Map<String, Multimap<Object, InputFile>> fileMap = Maps.newHashMap();
 
     @Override
     public Iterable<InputFile> inputFiles() {
@@ -207,9 +269,18 @@ public class DefaultFileSystem implements FileSystem {
 
     @Override
     public InputFile inputFile(UniqueIndexPredicate predicate) {
-      Map<Object, InputFile> byAttr = fileMap.get(predicate.indexId());
+      Multimap<Object, InputFile> byAttr = fileMap.get(predicate.indexId());
+      if (byAttr != null) {
+        return Iterables.getFirst(byAttr.get(predicate.value()), null);
+      }
+      return null;
+    }
+
+    @Override
+    protected Collection<InputFile> inputFiles(String indexId, Object value) {
+      Multimap<Object, InputFile> byAttr = fileMap.get(indexId);
       if (byAttr != null) {
-        return byAttr.get(predicate.value());
+        return Lists.newArrayList(byAttr.get(value));
       }
       return null;
     }
@@ -221,9 +292,9 @@ public class DefaultFileSystem implements FileSystem {
 
     @Override
     protected void doIndex(String indexId, Object value, InputFile inputFile) {
-      Map<Object, InputFile> attrValues = fileMap.get(indexId);
+      Multimap<Object, InputFile> attrValues = fileMap.get(indexId);
       if (attrValues == null) {
-        attrValues = Maps.newHashMap();
+        attrValues = LinkedHashMultimap.create();
         fileMap.put(indexId, attrValues);
       }
       attrValues.put(value, inputFile);
@@ -28,8 +28,8 @@ import java.util.List;
 // Accepted to support both InputFile and InputDir as long as indexes are on the same attributes
 public interface FileIndex {
 
-  // Currently only a single index is supported
-  List<FileIndex> ALL = ImmutableList.<FileIndex>of(new RelativePathIndex());
+  List<FileIndex> ALL = ImmutableList.<FileIndex>of(new RelativePathIndex(), new AbsolutePathIndex(),
+    new LanguageIndex(), new TypeIndex(), new StatusIndex());
 
   @CheckForNull
   Object valueOf(InputFile f);
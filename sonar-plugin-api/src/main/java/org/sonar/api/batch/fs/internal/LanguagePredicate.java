@@ -25,7 +25,7 @@ import org.sonar.api.batch.fs.InputFile;
 /**
  * @since 4.2
  */
-class LanguagePredicate implements FilePredicate {
+class LanguagePredicate implements FilePredicate, IndexPredicate {
   private final String language;
 
   LanguagePredicate(String language) {
@@ -36,4 +36,14 @@ class LanguagePredicate implements FilePredicate {
   public boolean apply(InputFile f) {
     return language.equals(f.language());
   }
+
+  @Override
+  public String indexId() {
+    return LanguageIndex.ID;
+  }
+
+  @Override
+  public Object value() {
+    return language;
+  }
 }
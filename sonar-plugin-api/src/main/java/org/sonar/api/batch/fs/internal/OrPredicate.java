@@ -50,4 +50,8 @@ class OrPredicate implements FilePredicate {
     return false;
   }
 
+  Collection<FilePredicate> predicates() {
+    return predicates;
+  }
+
 }
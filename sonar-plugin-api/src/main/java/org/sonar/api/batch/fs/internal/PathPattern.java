@@ -24,6 +24,8 @@ import org.apache.commons.lang.StringUtils;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.utils.WildcardPattern;
 
+import javax.annotation.CheckForNull;
+
 public abstract class PathPattern {
 
   final WildcardPattern pattern;
@@ -36,6 +38,15 @@ public abstract class PathPattern {
 
   public abstract boolean match(InputFile inputFile, boolean caseSensitiveFileExtension);
 
+  abstract boolean isAbsolute();
+
+  /**
+   * The pattern, without the "file:" prefix of absolute patterns
+   */
+  String wildcard() {
+    return pattern.toString();
+  }
+
   public static PathPattern create(String s) {
     String trimmed = StringUtils.trim(s);
     if (StringUtils.startsWithIgnoreCase(trimmed, "file:")) {
@@ -64,15 +75,13 @@ public abstract class PathPattern {
 
     @Override
     public boolean match(InputFile inputFile, boolean caseSensitiveFileExtension) {
-      String path = inputFile.absolutePath();
-      if (!caseSensitiveFileExtension) {
-        String extension = sanitizeExtension(FilenameUtils.getExtension(inputFile.file().getName()));
-        if (StringUtils.isNotBlank(extension)) {
-          path = StringUtils.removeEndIgnoreCase(path, extension);
-          path = path + extension;
-        }
-      }
-      return pattern.match(path);
+      String path = path(inputFile, true, caseSensitiveFileExtension);
+      return path != null && pattern.match(path);
+    }
+
+    @Override
+    boolean isAbsolute() {
+      return true;
     }
 
     @Override
@@ -96,23 +105,37 @@ public abstract class PathPattern {
 
     @Override
     public boolean match(InputFile inputFile, boolean caseSensitiveFileExtension) {
-      String path = inputFile.relativePath();
-      if (!caseSensitiveFileExtension) {
-        String extension = sanitizeExtension(FilenameUtils.getExtension(inputFile.file().getName()));
-        if (StringUtils.isNotBlank(extension)) {
-          path = StringUtils.removeEndIgnoreCase(path, extension);
-          path = path + extension;
-        }
-      }
+      String path = path(inputFile, false, caseSensitiveFileExtension);
       return path != null && pattern.match(path);
     }
 
+    @Override
+    boolean isAbsolute() {
+      return false;
+    }
+
     @Override
     public String toString() {
       return pattern.toString();
     }
   }
 
+  /**
+   * The path to be matched by patterns. Extension is lower-cased if it's not case-sensitive.
+   */
+  @CheckForNull
+  static String path(InputFile inputFile, boolean absolute, boolean caseSensitiveFileExtension) {
+    String path = absolute ? inputFile.absolutePath() : inputFile.relativePath();
+    if (path != null && !caseSensitiveFileExtension) {
+      String extension = sanitizeExtension(FilenameUtils.getExtension(inputFile.file().getName()));
+      if (StringUtils.isNotBlank(extension)) {
+        path = StringUtils.removeEndIgnoreCase(path, extension);
+        path = path + extension;
+      }
+    }
+    return path;
+  }
+
   static String sanitizeExtension(String suffix) {
     return StringUtils.lowerCase(StringUtils.removeStart(suffix, "."));
   }
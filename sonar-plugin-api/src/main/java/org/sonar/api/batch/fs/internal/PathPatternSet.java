@@ -0,0 +1,117 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.api.batch.fs.internal;
+
+import com.google.common.collect.Lists;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.WildcardPatternSet;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * {@link PathPattern}s compiled into {@link WildcardPatternSet}s, one for relative patterns and one for
+ * absolute patterns, in order to match a file against all of them in a single pass.
+ *
+ * @since 4.4
+ */
+public class PathPatternSet {
+
+  private final PathPattern[] patterns;
+  private final Group relativePatterns;
+  private final Group absolutePatterns;
+
+  public PathPatternSet(PathPattern[] patterns) {
+    this.patterns = patterns;
+    List<Integer> relativeIndexes = Lists.newArrayList();
+    List<Integer> absoluteIndexes = Lists.newArrayList();
+    for (int i = 0; i < patterns.length; i++) {
+      if (patterns[i].isAbsolute()) {
+        absoluteIndexes.add(i);
+      } else {
+        relativeIndexes.add(i);
+      }
+    }
+    this.relativePatterns = new Group(patterns, relativeIndexes, false);
+    this.absolutePatterns = new Group(patterns, absoluteIndexes, true);
+  }
+
+  public static PathPatternSet create(String[] patterns) {
+    return new PathPatternSet(PathPattern.create(patterns));
+  }
+
+  public PathPattern[] patterns() {
+    return patterns;
+  }
+
+  public boolean isEmpty() {
+    return patterns.length == 0;
+  }
+
+  public boolean matchAny(InputFile inputFile) {
+    return matchAny(inputFile, true);
+  }
+
+  public boolean matchAny(InputFile inputFile, boolean caseSensitiveFileExtension) {
+    return !matches(inputFile, caseSensitiveFileExtension).isEmpty();
+  }
+
+  /**
+   * Indexes of the patterns that match the file
+   */
+  public BitSet matches(InputFile inputFile, boolean caseSensitiveFileExtension) {
+    BitSet result = new BitSet(patterns.length);
+    relativePatterns.matches(inputFile, caseSensitiveFileExtension, result);
+    absolutePatterns.matches(inputFile, caseSensitiveFileExtension, result);
+    return result;
+  }
+
+  private static class Group {
+    private final boolean absolute;
+    private final int[] indexes;
+    private final WildcardPatternSet wildcards;
+
+    private Group(PathPattern[] patterns, List<Integer> indexes, boolean absolute) {
+      this.absolute = absolute;
+      this.indexes = new int[indexes.size()];
+      String[] wildcards = new String[indexes.size()];
+      for (int i = 0; i < this.indexes.length; i++) {
+        this.indexes[i] = indexes.get(i);
+        wildcards[i] = patterns[this.indexes[i]].wildcard();
+      }
+      this.wildcards = WildcardPatternSet.create(wildcards);
+    }
+
+    private void matches(InputFile inputFile, boolean caseSensitiveFileExtension, BitSet result) {
+      if (indexes.length > 0) {
+        String path = PathPattern.path(inputFile, absolute, caseSensitiveFileExtension);
+        if (path != null) {
+          add(wildcards.matches(path), result);
+        }
+      }
+    }
+
+    private void add(BitSet matches, BitSet result) {
+      for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+        result.set(indexes[i]);
+      }
+    }
+  }
+}
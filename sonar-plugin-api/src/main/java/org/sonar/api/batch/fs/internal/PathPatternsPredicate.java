@@ -17,20 +17,27 @@
  * along with this program; if not, write to the Free Software Foundation,
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
+package org.sonar.api.batch.fs.internal;
 
-package org.sonar.core.issue.db;
+import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.InputFile;
 
-import org.apache.ibatis.annotations.Param;
-import org.sonar.api.issue.IssueQuery;
-
-import javax.annotation.Nullable;
+/**
+ * Matches at least one of the patterns
+ *
+ * @since 4.4
+ */
+class PathPatternsPredicate implements FilePredicate {
 
-import java.util.Collection;
-import java.util.List;
+  private final PathPatternSet patterns;
 
-public interface IssueStatsMapper {
+  PathPatternsPredicate(PathPatternSet patterns) {
+    this.patterns = patterns;
+  }
 
-  List<Object> selectIssuesColumn(@Param("query") IssueQuery query, @Param("column") String column, @Param("componentRootKeys") Collection<String> componentRootKeys,
-                                  @Nullable @Param("userId") Integer userId, @Param("role") String role);
+  @Override
+  public boolean apply(InputFile f) {
+    return patterns.matchAny(f);
+  }
 
 }
@@ -25,7 +25,7 @@ import org.sonar.api.batch.fs.InputFile;
 /**
  * @since 4.2
  */
-class StatusPredicate implements FilePredicate {
+class StatusPredicate implements FilePredicate, IndexPredicate {
 
   private final InputFile.Status status;
 
@@ -38,4 +38,14 @@ class StatusPredicate implements FilePredicate {
     return status == f.status();
   }
 
+  @Override
+  public String indexId() {
+    return StatusIndex.ID;
+  }
+
+  @Override
+  public Object value() {
+    return status;
+  }
+
 }
@@ -25,7 +25,7 @@ import org.sonar.api.batch.fs.InputFile;
 /**
  * @since 4.2
  */
-class TypePredicate implements FilePredicate {
+class TypePredicate implements FilePredicate, IndexPredicate {
 
   private final InputFile.Type type;
 
@@ -38,5 +38,14 @@ class TypePredicate implements FilePredicate {
     return type == f.type();
   }
 
-}
+  @Override
+  public String indexId() {
+    return TypeIndex.ID;
+  }
 
+  @Override
+  public Object value() {
+    return type;
+  }
+
+}
@@ -291,6 +291,17 @@ public class Measure implements Serializable {
     return this;
   }
 
+  /**
+   * Sets the measure value without rounding it. For internal use only, for example when
+   * reloading a measure from the batch cache.
+   *
+   * @since 4.4
+   */
+  public Measure setRawValue(@Nullable Double v) {
+    this.value = v;
+    return this;
+  }
+
   private double scaleValue(double value, int scale) {
     BigDecimal bd = BigDecimal.valueOf(value);
     return bd.setScale(scale, RoundingMode.HALF_UP).doubleValue();
@@ -24,6 +24,9 @@ import org.sonar.api.rules.Rule;
 import org.sonar.api.technicaldebt.batch.Characteristic;
 import org.sonar.api.technicaldebt.batch.Requirement;
 
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -56,7 +59,7 @@ public final class MeasuresFilters {
   }
 
   public static MeasuresFilter<Measure> metric(final String metricKey) {
-    return new MetricFilter<Measure>(metricKey) {
+    return new MeasureKeyFilter<Measure>(metricKey, null, null) {
       @Override
       public Measure filter(Collection<Measure> measures) {
         if (measures == null) {
@@ -76,7 +79,7 @@ public final class MeasuresFilters {
   }
 
   public static MeasuresFilter<Measure> characteristic(final Metric metric, final Characteristic characteristic) {
-    return new MetricFilter<Measure>(metric) {
+    return new MeasureKeyFilter<Measure>(metric.getKey(), null, characteristic) {
 
       @Override
       public Measure filter(Collection<Measure> measures) {
@@ -200,9 +203,35 @@ public final class MeasuresFilters {
     }
   }
 
-  private abstract static class AbstractRuleMeasureFilter<M> extends MetricFilter<M> {
-    protected AbstractRuleMeasureFilter(Metric metric) {
-      super(metric);
+  /**
+   * Filter on the measure of a metric without person, identified by its rule or its characteristic.
+   * Used for internal optimizations : results are cached by filter class and key, so this class
+   * can not be extended outside of this API.
+   */
+  public abstract static class MeasureKeyFilter<M> extends MetricFilter<M> {
+    private final RuleKey ruleKey;
+    private final Characteristic characteristic;
+
+    MeasureKeyFilter(String metricKey, @Nullable RuleKey ruleKey, @Nullable Characteristic characteristic) {
+      super(metricKey);
+      this.ruleKey = ruleKey;
+      this.characteristic = characteristic;
+    }
+
+    @CheckForNull
+    public RuleKey filterOnRuleKey() {
+      return ruleKey;
+    }
+
+    @CheckForNull
+    public Characteristic filterOnCharacteristic() {
+      return characteristic;
+    }
+  }
+
+  private abstract static class AbstractRuleMeasureFilter<M> extends MeasureKeyFilter<M> {
+    protected AbstractRuleMeasureFilter(Metric metric, RuleKey ruleKey) {
+      super(metric.getKey(), ruleKey, null);
     }
 
     private boolean apply(Measure measure) {
@@ -232,7 +261,7 @@ public final class MeasuresFilters {
     private RuleKey ruleKey;
 
     protected RuleFilter(Metric metric, RuleKey ruleKey) {
-      super(metric);
+      super(metric, ruleKey);
       this.ruleKey = ruleKey;
     }
 
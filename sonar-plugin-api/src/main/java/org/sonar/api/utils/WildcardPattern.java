@@ -19,8 +19,8 @@
  */
 package org.sonar.api.utils;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
@@ -28,7 +28,8 @@ import org.apache.commons.lang.StringUtils;
 /**
  * Implementation of Ant-style matching patterns.
  * Contrary to other implementations (like AntPathMatcher from Spring Framework) it is based on {@link Pattern Java Regular Expressions}.
- * To increase performance it holds an internal cache of all processed patterns.
+ * To increase performance it holds an internal cache of all processed patterns. This cache is thread-safe.
+ * To match a value against many patterns, {@link WildcardPatternSet} should be preferred.
  * <p>
  * Following rules are applied:
  * <ul>
@@ -61,7 +62,7 @@ import org.apache.commons.lang.StringUtils;
  */
 public class WildcardPattern {
 
-  private static final Map<String, WildcardPattern> CACHE = new HashMap<String, WildcardPattern>();
+  private static final ConcurrentMap<String, WildcardPattern> CACHE = new ConcurrentHashMap<String, WildcardPattern>();
   private static final String SPECIAL_CHARS = "()[]^$.{}+|";
 
   private Pattern pattern;
@@ -201,7 +202,10 @@ public class WildcardPattern {
     WildcardPattern wildcardPattern = CACHE.get(key);
     if (wildcardPattern == null) {
       wildcardPattern = new WildcardPattern(pattern, directorySeparator);
-      CACHE.put(key, wildcardPattern);
+      WildcardPattern previous = CACHE.putIfAbsent(key, wildcardPattern);
+      if (previous != null) {
+        wildcardPattern = previous;
+      }
     }
     return wildcardPattern;
   }
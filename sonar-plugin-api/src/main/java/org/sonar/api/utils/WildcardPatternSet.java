@@ -0,0 +1,234 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.api.utils;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Set of Ant-style patterns, with the same rules as {@link WildcardPattern} and "/" as directory separator.
+ * Patterns are compiled into a single tree of path segments, so that a value is matched against all the
+ * patterns in a single pass on its segments, without regular expressions.
+ * <p>
+ * Each segment of a pattern is a literal, a wildcard like <code>*.java</code> or <code>**</code>. The rare
+ * patterns that can't be split this way, for example <code>foo**bar</code>, are matched with {@link WildcardPattern}.
+ * </p>
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ * </p>
+ *
+ * @since 4.4
+ */
+public class WildcardPatternSet {
+
+  private static final String DOUBLE_STAR = "**";
+
+  private final String[] patterns;
+  private final Node root = new Node(false);
+  private final Map<Integer, WildcardPattern> fallbacks = Maps.newLinkedHashMap();
+
+  private WildcardPatternSet(String[] patterns) {
+    this.patterns = patterns;
+    for (int i = 0; i < patterns.length; i++) {
+      compile(i, patterns[i]);
+    }
+  }
+
+  public static WildcardPatternSet create(String... patterns) {
+    return new WildcardPatternSet(patterns.clone());
+  }
+
+  public int size() {
+    return patterns.length;
+  }
+
+  public String pattern(int index) {
+    return patterns[index];
+  }
+
+  /**
+   * Returns true if specified value matches at least one of the patterns.
+   */
+  public boolean match(String value) {
+    return !matches(value).isEmpty();
+  }
+
+  /**
+   * Indexes of all the patterns that match the specified value.
+   */
+  public BitSet matches(String value) {
+    BitSet result = new BitSet(patterns.length);
+    String path = StringUtils.removeEnd(StringUtils.removeStart(value, "/"), "/");
+
+    Set<Node> entered = closure(Sets.newHashSet(root));
+    // "**" nodes that consumed at least one segment
+    Set<Node> consumed = Sets.newHashSet();
+    int start = 0;
+    while (!entered.isEmpty() || !consumed.isEmpty()) {
+      int end = path.indexOf('/', start);
+      String segment = end < 0 ? path.substring(start) : path.substring(start, end);
+      Set<Node> nextEntered = Sets.newHashSet();
+      Set<Node> nextConsumed = Sets.newHashSet();
+      for (Node node : entered) {
+        node.advance(segment, nextEntered, nextConsumed);
+      }
+      for (Node node : consumed) {
+        node.advance(segment, nextEntered, nextConsumed);
+      }
+      entered = closure(nextEntered);
+      consumed = nextConsumed;
+      if (end < 0) {
+        break;
+      }
+      start = end + 1;
+    }
+
+    for (Node node : entered) {
+      // trailing "**" must match at least one segment, as ".*" after a directory separator
+      if (!node.doubleStar) {
+        result.or(node.terminals);
+      }
+    }
+    for (Node node : consumed) {
+      result.or(node.terminals);
+    }
+    for (Map.Entry<Integer, WildcardPattern> fallback : fallbacks.entrySet()) {
+      if (fallback.getValue().match(value)) {
+        result.set(fallback.getKey());
+      }
+    }
+    return result;
+  }
+
+  private void compile(int index, String pattern) {
+    int start = pattern.startsWith("/") || pattern.startsWith("\\") ? 1 : 0;
+    String[] segments = StringUtils.splitPreserveAllTokens(pattern.substring(start), "/\\");
+    if (segments.length == 0) {
+      // empty pattern
+      segments = new String[] {""};
+    }
+    for (String segment : segments) {
+      if (!DOUBLE_STAR.equals(segment) && segment.contains(DOUBLE_STAR)) {
+        fallbacks.put(index, WildcardPattern.create(pattern));
+        return;
+      }
+    }
+    Node node = root;
+    for (String segment : segments) {
+      node = node.child(segment);
+    }
+    node.terminals.set(index);
+  }
+
+  private static Set<Node> closure(Set<Node> nodes) {
+    Set<Node> result = Sets.newHashSet();
+    for (Node node : nodes) {
+      Node current = node;
+      while (current != null && result.add(current)) {
+        // "**" can match zero segment
+        current = current.doubleStarChild;
+      }
+    }
+    return result;
+  }
+
+  private static boolean isWildcard(String segment) {
+    return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0;
+  }
+
+  /**
+   * Matches a segment against a wildcard with '*' and '?' only, without directory separator.
+   */
+  static boolean matchSegment(String wildcard, String segment) {
+    int w = 0;
+    int s = 0;
+    int starW = -1;
+    int starS = -1;
+    while (s < segment.length()) {
+      if (w < wildcard.length() && (wildcard.charAt(w) == '?' || wildcard.charAt(w) == segment.charAt(s))) {
+        w++;
+        s++;
+      } else if (w < wildcard.length() && wildcard.charAt(w) == '*') {
+        starW = w;
+        starS = s;
+        w++;
+      } else if (starW >= 0) {
+        // backtrack : the last '*' consumes one more character
+        w = starW + 1;
+        starS++;
+        s = starS;
+      } else {
+        return false;
+      }
+    }
+    while (w < wildcard.length() && wildcard.charAt(w) == '*') {
+      w++;
+    }
+    return w == wildcard.length();
+  }
+
+  private static class Node {
+    private final boolean doubleStar;
+    private final Map<String, Node> literalChildren = Maps.newHashMap();
+    private final Map<String, Node> wildcardChildren = Maps.newLinkedHashMap();
+    private Node doubleStarChild;
+    private final BitSet terminals = new BitSet();
+
+    private Node(boolean doubleStar) {
+      this.doubleStar = doubleStar;
+    }
+
+    private Node child(String segment) {
+      if (DOUBLE_STAR.equals(segment)) {
+        if (doubleStarChild == null) {
+          doubleStarChild = new Node(true);
+        }
+        return doubleStarChild;
+      }
+      Map<String, Node> children = isWildcard(segment) ? wildcardChildren : literalChildren;
+      Node child = children.get(segment);
+      if (child == null) {
+        child = new Node(false);
+        children.put(segment, child);
+      }
+      return child;
+    }
+
+    private void advance(String segment, Set<Node> entered, Set<Node> consumed) {
+      if (doubleStar) {
+        consumed.add(this);
+      }
+      Node literal = literalChildren.get(segment);
+      if (literal != null) {
+        entered.add(literal);
+      }
+      for (Map.Entry<String, Node> wildcard : wildcardChildren.entrySet()) {
+        if (matchSegment(wildcard.getKey(), segment)) {
+          entered.add(wildcard.getValue());
+        }
+      }
+    }
+  }
+}
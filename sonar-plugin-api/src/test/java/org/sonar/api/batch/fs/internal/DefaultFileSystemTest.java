@@ -20,13 +20,20 @@
 package org.sonar.api.batch.fs.internal;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.FilePredicates;
+import org.sonar.api.batch.fs.InputFile;
 
 import java.io.File;
 import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.List;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -134,4 +141,76 @@ public class DefaultFileSystemTest {
     // it would fail if more than one java file
     assertThat(fs.inputFile(fs.predicates().hasLanguage("java"))).isNotNull();
   }
+
+  @Test
+  public void search_files_by_indexed_attributes() throws Exception {
+    DefaultFileSystem fs = new DefaultFileSystem();
+    File barFile = temp.newFile();
+    fs.add(new DefaultInputFile("src/Bar.java").setLanguage("java").setType(InputFile.Type.MAIN).setStatus(InputFile.Status.ADDED).setFile(barFile));
+    fs.add(new DefaultInputFile("src/Baz.java").setLanguage("java").setType(InputFile.Type.MAIN).setStatus(InputFile.Status.SAME).setFile(temp.newFile()));
+    fs.add(new DefaultInputFile("test/BazTest.java").setLanguage("java").setType(InputFile.Type.TEST).setStatus(InputFile.Status.CHANGED).setFile(temp.newFile()));
+    fs.add(new DefaultInputFile("src/Foo.php").setLanguage("php").setType(InputFile.Type.MAIN).setStatus(InputFile.Status.SAME).setFile(temp.newFile()));
+    FilePredicates p = fs.predicates();
+
+    assertThat(fs.inputFile(p.hasAbsolutePath(barFile.getAbsolutePath())).relativePath()).isEqualTo("src/Bar.java");
+    assertThat(fs.inputFiles(p.hasType(InputFile.Type.MAIN))).hasSize(3);
+    assertThat(fs.inputFiles(p.hasStatus(InputFile.Status.SAME))).hasSize(2);
+    assertThat(fs.inputFiles(p.and(p.hasLanguage("java"), p.hasType(InputFile.Type.MAIN)))).hasSize(2);
+    assertThat(fs.inputFiles(p.and(p.hasLanguage("java"), p.hasType(InputFile.Type.TEST), p.hasStatus(InputFile.Status.SAME)))).isEmpty();
+    assertThat(fs.inputFiles(p.or(p.hasStatus(InputFile.Status.ADDED), p.hasStatus(InputFile.Status.CHANGED)))).hasSize(2);
+    assertThat(fs.inputFiles(p.and(p.hasLanguages(Lists.newArrayList("java", "php")), p.hasStatus(InputFile.Status.SAME)))).hasSize(2);
+    assertThat(fs.inputFiles(p.and(p.hasType(InputFile.Type.MAIN), p.matchesPathPattern("**/Ba*")))).hasSize(2);
+    assertThat(fs.inputFiles(p.or(p.hasType(InputFile.Type.TEST), p.matchesPathPattern("**/*.php")))).hasSize(2);
+    assertThat(fs.hasFiles(p.and(p.hasLanguage("php"), p.hasType(InputFile.Type.TEST)))).isFalse();
+  }
+
+  @Test
+  public void use_indexes_instead_of_scanning_all_files() throws Exception {
+    IndexOnlyCache cache = new IndexOnlyCache();
+    DefaultFileSystem fs = new DefaultFileSystem(cache);
+    fs.add(new DefaultInputFile("src/Bar.java").setLanguage("java").setType(InputFile.Type.MAIN).setFile(temp.newFile()));
+    fs.add(new DefaultInputFile("test/BarTest.java").setLanguage("java").setType(InputFile.Type.TEST).setFile(temp.newFile()));
+    FilePredicates p = fs.predicates();
+
+    assertThat(fs.inputFiles(p.and(p.hasLanguage("java"), p.hasType(InputFile.Type.TEST), p.matchesPathPattern("**/*Test.java")))).hasSize(1);
+    assertThat(fs.inputFiles(p.or(p.hasLanguage("php"), p.hasType(InputFile.Type.MAIN)))).hasSize(1);
+    assertThat(fs.inputFiles(p.none())).isEmpty();
+    assertThat(cache.scans).isEqualTo(0);
+
+    // not indexed
+    assertThat(fs.inputFiles(p.matchesPathPattern("**/*Test.java"))).hasSize(1);
+    assertThat(cache.scans).isEqualTo(1);
+  }
+
+  private static class IndexOnlyCache extends DefaultFileSystem.Cache {
+    private final List<InputFile> files = Lists.newArrayList();
+    private final Multimap<String, InputFile> index = LinkedHashMultimap.create();
+    private int scans = 0;
+
+    @Override
+    protected Iterable<InputFile> inputFiles() {
+      scans++;
+      return files;
+    }
+
+    @Override
+    protected InputFile inputFile(UniqueIndexPredicate predicate) {
+      return null;
+    }
+
+    @Override
+    protected Collection<InputFile> inputFiles(String indexId, Object value) {
+      return index.get(indexId + "|" + value);
+    }
+
+    @Override
+    protected void doAdd(InputFile inputFile) {
+      files.add(inputFile);
+    }
+
+    @Override
+    protected void doIndex(String indexId, Object value, InputFile inputFile) {
+      index.put(indexId + "|" + value, inputFile);
+    }
+  }
 }
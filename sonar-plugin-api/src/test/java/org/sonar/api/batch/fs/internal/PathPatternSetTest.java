@@ -0,0 +1,64 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.api.batch.fs.internal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+
+import java.io.File;
+import java.util.BitSet;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PathPatternSetTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void match_relative_and_absolute_patterns() throws Exception {
+    PathPatternSet set = PathPatternSet.create(new String[] {"**/*Foo.java", "file:**/src/main/**/*.java", "**/*.php"});
+    assertThat(set.isEmpty()).isFalse();
+    assertThat(set.patterns()).hasSize(3);
+
+    File file = new File(temp.newFolder(), "src/main/java/org/MyFoo.java");
+    InputFile inputFile = new DefaultInputFile("src/main/java/org/MyFoo.java").setFile(file);
+    assertThat(set.matchAny(inputFile)).isTrue();
+    BitSet matches = set.matches(inputFile, true);
+    assertThat(matches.get(0)).isTrue();
+    assertThat(matches.get(1)).isTrue();
+    assertThat(matches.get(2)).isFalse();
+
+    file = new File(temp.newFolder(), "src/test/Other.PHP");
+    inputFile = new DefaultInputFile("src/test/Other.PHP").setFile(file);
+    assertThat(set.matchAny(inputFile)).isFalse();
+    assertThat(set.matchAny(inputFile, false)).isTrue();
+  }
+
+  @Test
+  public void empty_set() throws Exception {
+    PathPatternSet set = PathPatternSet.create(new String[0]);
+    assertThat(set.isEmpty()).isTrue();
+
+    File file = new File(temp.newFolder(), "src/main/java/org/MyFoo.java");
+    assertThat(set.matchAny(new DefaultInputFile("src/main/java/org/MyFoo.java").setFile(file))).isFalse();
+  }
+}
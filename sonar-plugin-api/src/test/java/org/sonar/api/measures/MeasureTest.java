@@ -50,6 +50,12 @@ public class MeasureTest {
     assertThat(new Measure(CoreMetrics.COVERAGE, 80.666666, 2).getValue()).isEqualTo(80.67);
   }
 
+  @Test
+  public void rawValueIsNotScaled() {
+    assertThat(new Measure(CoreMetrics.COVERAGE).setRawValue(80.666666).getValue()).isEqualTo(80.666666);
+    assertThat(new Measure(CoreMetrics.COVERAGE).setRawValue(null).getValue()).isNull();
+  }
+
   @Test
   public void defaultPersistenceModeIsFull() {
     assertThat(new Measure(CoreMetrics.LINES, 32.0).getPersistenceMode()).isEqualTo(PersistenceMode.FULL);
@@ -0,0 +1,108 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.api.utils;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class WildcardPatternSetTest {
+
+  @Test
+  public void examples() {
+    WildcardPatternSet set = WildcardPatternSet.create("org/T?st.java", "org/*.java", "org/**", "org/**/Test.java", "**/*.jsp");
+
+    assertThat(set.size()).isEqualTo(5);
+    assertThat(set.pattern(1)).isEqualTo("org/*.java");
+    assertThat(set.matches("org/Test.java")).isEqualTo(bits(0, 1, 2, 3));
+    assertThat(set.matches("org/foo/Test.java")).isEqualTo(bits(2, 3));
+    assertThat(set.matches("org/foo/bar.jsp")).isEqualTo(bits(2, 4));
+    assertThat(set.matches("/bar.jsp/")).isEqualTo(bits(4));
+    assertThat(set.match("org")).isFalse();
+    assertThat(set.match("com/Test.java")).isFalse();
+  }
+
+  @Test
+  public void fallback_to_regexp_when_double_star_is_not_a_segment() {
+    WildcardPatternSet set = WildcardPatternSet.create("org/**Test.java", "src/foo**");
+
+    assertThat(set.matches("org/foo/MyTest.java")).isEqualTo(bits(0));
+    assertThat(set.matches("src/foobar/Baz.java")).isEqualTo(bits(1));
+    assertThat(set.match("src/bar/foo")).isFalse();
+  }
+
+  @Test
+  public void match_wildcard_segment() {
+    assertThat(WildcardPatternSet.matchSegment("*", "")).isTrue();
+    assertThat(WildcardPatternSet.matchSegment("*.java", "Foo.java")).isTrue();
+    assertThat(WildcardPatternSet.matchSegment("*.java", "Foo.javax")).isFalse();
+    assertThat(WildcardPatternSet.matchSegment("F*o*.j?va", "Foo.java")).isTrue();
+    assertThat(WildcardPatternSet.matchSegment("?", "")).isFalse();
+    assertThat(WildcardPatternSet.matchSegment("a*b*c", "abxbyc")).isTrue();
+    assertThat(WildcardPatternSet.matchSegment("a*b*c", "abxbyd")).isFalse();
+  }
+
+  /**
+   * Random patterns and paths must give the same results than {@link WildcardPattern}
+   */
+  @Test
+  public void same_results_as_wildcard_pattern() {
+    Random random = new Random(42);
+    String[] patternTokens = {"a", "b", "ab", "*", "?", "**", "/", "/", "\\", ".", "*.a", "**/", "/**"};
+    String[] pathTokens = {"a", "b", "ab", "ba", "/", "/", ".", ".a", "c\\d"};
+    for (int run = 0; run < 200; run++) {
+      String[] patterns = new String[10];
+      for (int i = 0; i < patterns.length; i++) {
+        patterns[i] = randomString(random, patternTokens);
+      }
+      WildcardPatternSet set = WildcardPatternSet.create(patterns);
+      for (int j = 0; j < 50; j++) {
+        String path = randomString(random, pathTokens);
+        BitSet expected = new BitSet();
+        for (int i = 0; i < patterns.length; i++) {
+          if (WildcardPattern.create(patterns[i]).match(path)) {
+            expected.set(i);
+          }
+        }
+        assertThat(set.matches(path)).as(path).isEqualTo(expected);
+      }
+    }
+  }
+
+  private static String randomString(Random random, String[] tokens) {
+    StringBuilder sb = new StringBuilder();
+    int length = random.nextInt(6);
+    for (int i = 0; i < length; i++) {
+      sb.append(tokens[random.nextInt(tokens.length)]);
+    }
+    return sb.toString();
+  }
+
+  private static BitSet bits(int... indexes) {
+    BitSet bits = new BitSet();
+    for (int index : indexes) {
+      bits.set(index);
+    }
+    return bits;
+  }
+}
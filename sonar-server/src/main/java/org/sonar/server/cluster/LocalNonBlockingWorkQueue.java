@@ -19,6 +19,8 @@
  */
 package org.sonar.server.cluster;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.ServerComponent;
 import org.sonar.core.cluster.QueueAction;
 import org.sonar.core.cluster.WorkQueue;
@@ -27,10 +29,22 @@ import java.util.Collection;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Actions are processed by {@link LocalQueueWorker}. Enqueuing blocks until the actions are processed, so that
+ * the changes are visible to the committing request.
+ */
 public class LocalNonBlockingWorkQueue extends LinkedBlockingQueue<Runnable>
   implements ServerComponent, WorkQueue {
 
+  private static final Logger LOG = LoggerFactory.getLogger(LocalNonBlockingWorkQueue.class);
+
+  private static final long MAX_WAIT_MS = 60000L;
+
+  private final AtomicLong enqueues = new AtomicLong();
+  private final AtomicLong totalLatencyMs = new AtomicLong();
+  private final AtomicLong maxLatencyMs = new AtomicLong();
 
   public LocalNonBlockingWorkQueue() {
     super();
@@ -41,8 +55,9 @@ public class LocalNonBlockingWorkQueue extends LinkedBlockingQueue<Runnable>
     CountDownLatch latch = new CountDownLatch(1);
     action.setLatch(latch);
     try {
+      long start = System.currentTimeMillis();
       this.offer(action, 1000, TimeUnit.SECONDS);
-      latch.await(1500, TimeUnit.MILLISECONDS);
+      await(latch, start);
     } catch (InterruptedException e) {
       throw new IllegalStateException("ES update has been interrupted: ");
     }
@@ -50,15 +65,47 @@ public class LocalNonBlockingWorkQueue extends LinkedBlockingQueue<Runnable>
 
   @Override
   public void enqueue(Collection<QueueAction> actions) {
+    if (actions.isEmpty()) {
+      return;
+    }
     CountDownLatch latch = new CountDownLatch(actions.size());
     try {
+      long start = System.currentTimeMillis();
       for (QueueAction action : actions) {
         action.setLatch(latch);
         this.offer(action, 1000, TimeUnit.SECONDS);
       }
-      latch.await(1500, TimeUnit.MILLISECONDS);
+      await(latch, start);
     } catch (InterruptedException e) {
       throw new IllegalStateException("ES update has been interrupted: ");
     }
   }
+
+  private void await(CountDownLatch latch, long start) throws InterruptedException {
+    if (!latch.await(MAX_WAIT_MS, TimeUnit.MILLISECONDS)) {
+      LOG.warn("ES update is not complete after {} ms, {} actions still to be processed", MAX_WAIT_MS, latch.getCount());
+    }
+    long latency = System.currentTimeMillis() - start;
+    enqueues.incrementAndGet();
+    totalLatencyMs.addAndGet(latency);
+    long max = maxLatencyMs.get();
+    while (latency > max && !maxLatencyMs.compareAndSet(max, latency)) {
+      max = maxLatencyMs.get();
+    }
+  }
+
+  /**
+   * Average time, in milliseconds, spent by enqueuers waiting for their actions to be processed
+   */
+  public long getAverageLatencyMs() {
+    long count = enqueues.get();
+    return count == 0 ? 0L : totalLatencyMs.get() / count;
+  }
+
+  /**
+   * Maximum time, in milliseconds, spent by an enqueuer waiting for its actions to be processed
+   */
+  public long getMaxLatencyMs() {
+    return maxLatencyMs.get();
+  }
 }
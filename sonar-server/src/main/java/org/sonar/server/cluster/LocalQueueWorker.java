@@ -19,6 +19,9 @@
  */
 package org.sonar.server.cluster;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.picocontainer.Startable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,19 +30,49 @@ import org.sonar.server.search.Index;
 import org.sonar.server.search.action.IndexAction;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class LocalQueueWorker extends ThreadPoolExecutor
-  implements ServerComponent, Startable {
+/**
+ * Processes the actions of {@link LocalNonBlockingWorkQueue}. Index actions are gathered until the bulk size is
+ * reached or the time window is elapsed. They are then grouped by index type, repeated actions on the same item are
+ * merged into the last one, and each group is sent as a single bulk request.
+ * <p/>
+ * The statistics of the queue are logged periodically in debug mode.
+ */
+public class LocalQueueWorker implements ServerComponent, Startable {
 
   private static final Logger LOG = LoggerFactory.getLogger(LocalQueueWorker.class);
 
+  static final int DEFAULT_BULK_SIZE = 1000;
+  static final long DEFAULT_BULK_WINDOW_MS = 20L;
+  private static final long POLL_TIMEOUT_MS = 500L;
+  private static final long STATS_INTERVAL_MS = 60000L;
+
+  private final BlockingQueue<Runnable> queue;
+  private final int bulkSize;
+  private final long bulkWindowMs;
   private Map<String, Index> indexes;
+  private Thread thread;
+  private volatile boolean stopped = false;
+  private long nextStatsMs;
+
+  private final AtomicLong processedActions = new AtomicLong();
+  private final AtomicLong mergedActions = new AtomicLong();
+  private final AtomicLong bulkRequests = new AtomicLong();
 
   public LocalQueueWorker(LocalNonBlockingWorkQueue queue, Index... allIndexes) {
-    super(10, 10, 500l, TimeUnit.MILLISECONDS, queue);
+    this(queue, DEFAULT_BULK_SIZE, DEFAULT_BULK_WINDOW_MS, allIndexes);
+  }
+
+  @VisibleForTesting
+  LocalQueueWorker(BlockingQueue<Runnable> queue, int bulkSize, long bulkWindowMs, Index... allIndexes) {
+    this.queue = queue;
+    this.bulkSize = bulkSize;
+    this.bulkWindowMs = bulkWindowMs;
 
     /* Save all instances of Index<?> */
     this.indexes = new HashMap<String, Index>();
@@ -48,30 +81,163 @@ public class LocalQueueWorker extends ThreadPoolExecutor
     }
   }
 
-  protected void beforeExecute(Thread t, Runnable r) {
-    LOG.debug("Starting task: {}", r);
-    super.beforeExecute(t, r);
-    if (IndexAction.class.isAssignableFrom(r.getClass())) {
-      IndexAction ia = (IndexAction) r;
-      LOG.debug("Task is an IndexAction for {}", ia.getIndexType());
-      ia.setIndex(indexes.get(ia.getIndexType()));
+  @Override
+  public void start() {
+    stopped = false;
+    nextStatsMs = System.currentTimeMillis() + STATS_INTERVAL_MS;
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (!stopped) {
+          try {
+            List<Runnable> actions = poll();
+            if (!actions.isEmpty()) {
+              process(actions);
+            }
+            logStatsIfDue();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          } catch (Exception e) {
+            LOG.error("Fail to process queued actions", e);
+          }
+        }
+      }
+    }, "local-queue-worker");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public void stop() {
+    stopped = true;
+    if (thread != null) {
+      thread.interrupt();
     }
   }
 
-  protected void afterExecute(Runnable r, Throwable t) {
-    super.afterExecute(r, t);
-    if (t != null) {
-      throw new IllegalStateException(t);
+  /**
+   * Waits for a first action, then gathers the following ones until the bulk is full or the time window is elapsed
+   */
+  @VisibleForTesting
+  List<Runnable> poll() throws InterruptedException {
+    List<Runnable> actions = Lists.newArrayList();
+    Runnable first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    if (first != null) {
+      actions.add(first);
+      long deadline = System.currentTimeMillis() + bulkWindowMs;
+      while (actions.size() < bulkSize) {
+        queue.drainTo(actions, bulkSize - actions.size());
+        long remaining = deadline - System.currentTimeMillis();
+        if (actions.size() >= bulkSize || remaining <= 0) {
+          break;
+        }
+        Runnable next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+        if (next == null) {
+          break;
+        }
+        actions.add(next);
+      }
     }
+    return actions;
   }
 
-  @Override
-  public void start() {
-    this.prestartCoreThread();
+  @VisibleForTesting
+  void process(List<Runnable> actions) {
+    long start = System.currentTimeMillis();
+    Map<String, Map<Object, IndexAction>> actionsByType = Maps.newLinkedHashMap();
+    List<IndexAction> indexActions = Lists.newArrayList();
+    for (Runnable action : actions) {
+      if (action instanceof IndexAction) {
+        IndexAction indexAction = (IndexAction) action;
+        indexActions.add(indexAction);
+        Map<Object, IndexAction> actionsOfType = actionsByType.get(indexAction.getIndexType());
+        if (actionsOfType == null) {
+          actionsOfType = Maps.newLinkedHashMap();
+          actionsByType.put(indexAction.getIndexType(), actionsOfType);
+        }
+        Object mergeKey = indexAction.getMergeKey();
+        if (mergeKey == null) {
+          mergeKey = indexAction;
+        } else if (actionsOfType.remove(mergeKey) != null) {
+          // the last action replaces the previous one, after the actions enqueued in between
+          mergedActions.incrementAndGet();
+        }
+        actionsOfType.put(mergeKey, indexAction);
+      } else {
+        action.run();
+      }
+    }
+
+    // counted before the enqueuers are released
+    processedActions.addAndGet(actions.size());
+    try {
+      for (Map.Entry<String, Map<Object, IndexAction>> entry : actionsByType.entrySet()) {
+        executeBulk(entry.getKey(), Lists.newArrayList(entry.getValue().values()));
+      }
+    } finally {
+      for (IndexAction indexAction : indexActions) {
+        indexAction.done();
+      }
+    }
+    LOG.debug("Processed {} actions in {} ms, {} actions waiting", actions.size(), System.currentTimeMillis() - start, queue.size());
   }
 
-  @Override
-  public void stop() {
-    this.shutdown();
+  private void executeBulk(String indexType, List<IndexAction> actions) {
+    Index index = indexes.get(indexType);
+    if (index == null) {
+      LOG.error("No index for type {}, {} actions are ignored", indexType, actions.size());
+      return;
+    }
+    for (IndexAction action : actions) {
+      action.setIndex(index);
+    }
+    index.executeBulk(actions);
+    bulkRequests.incrementAndGet();
+  }
+
+  private void logStatsIfDue() {
+    long now = System.currentTimeMillis();
+    if (now >= nextStatsMs) {
+      nextStatsMs = now + STATS_INTERVAL_MS;
+      if (LOG.isDebugEnabled()) {
+        LOG.debug(stats());
+      }
+    }
+  }
+
+  @VisibleForTesting
+  String stats() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("Index queue: %d actions waiting, %d processed, %d merged, %d bulk requests",
+      getQueueDepth(), getProcessedActions(), getMergedActions(), getBulkRequests()));
+    if (queue instanceof LocalNonBlockingWorkQueue) {
+      LocalNonBlockingWorkQueue workQueue = (LocalNonBlockingWorkQueue) queue;
+      sb.append(String.format(", enqueuers wait %d ms on average, %d ms at most",
+        workQueue.getAverageLatencyMs(), workQueue.getMaxLatencyMs()));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Number of actions waiting to be processed
+   */
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  public long getProcessedActions() {
+    return processedActions.get();
+  }
+
+  /**
+   * Number of actions that have been replaced by a following action on the same item
+   */
+  public long getMergedActions() {
+    return mergedActions.get();
+  }
+
+  public long getBulkRequests() {
+    return bulkRequests.get();
   }
 }
@@ -0,0 +1,66 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.component;
+
+import org.picocontainer.Startable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.ServerComponent;
+import org.sonar.core.resource.ResourceIndexerDao;
+
+/**
+ * Loads the in-memory index of components in background at startup, so that the server does not wait for it.
+ * Components are then kept up-to-date by {@link ResourceIndexerDao}.
+ *
+ * @since 4.4
+ */
+public class ComponentIndexLoader implements ServerComponent, Startable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ComponentIndexLoader.class);
+
+  private final ResourceIndexerDao resourceIndexerDao;
+
+  public ComponentIndexLoader(ResourceIndexerDao resourceIndexerDao) {
+    this.resourceIndexerDao = resourceIndexerDao;
+  }
+
+  @Override
+  public void start() {
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          long start = System.currentTimeMillis();
+          resourceIndexerDao.reloadComponentIndex();
+          LOG.info("Components loaded in {} ms", System.currentTimeMillis() - start);
+        } catch (Exception e) {
+          LOG.error("Fail to load components", e);
+        }
+      }
+    }, "component-index-loader");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public void stop() {
+    // nothing to do
+  }
+}
@@ -22,7 +22,6 @@ package org.sonar.server.issue;
 import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 import org.apache.ibatis.session.SqlSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +42,7 @@ import org.sonar.core.persistence.MyBatis;
 import org.sonar.core.resource.ResourceDao;
 import org.sonar.core.rule.DefaultRuleFinder;
 import org.sonar.server.issue.actionplan.ActionPlanService;
+import org.sonar.server.issue.index.IssueIndex;
 import org.sonar.server.user.UserSession;
 
 import javax.annotation.CheckForNull;
@@ -66,14 +66,17 @@ public class DefaultIssueFinder implements IssueFinder {
   private final UserFinder userFinder;
   private final ResourceDao resourceDao;
   private final ActionPlanService actionPlanService;
+  private final IssueIndex issueIndex;
 
   public DefaultIssueFinder(MyBatis myBatis,
+                            IssueIndex issueIndex,
                             IssueDao issueDao, IssueChangeDao issueChangeDao,
                             DefaultRuleFinder ruleFinder,
                             UserFinder userFinder,
                             ResourceDao resourceDao,
                             ActionPlanService actionPlanService) {
     this.myBatis = myBatis;
+    this.issueIndex = issueIndex;
     this.issueDao = issueDao;
     this.issueChangeDao = issueChangeDao;
     this.ruleFinder = ruleFinder;
@@ -100,19 +103,13 @@ public class DefaultIssueFinder implements IssueFinder {
     long start = System.currentTimeMillis();
     SqlSession sqlSession = myBatis.openSession(false);
     try {
-      // 1. Select the authorized ids of all the issues that match the query
-      List<IssueDto> authorizedIssues = issueDao.selectIssueIds(query, UserSession.get().userId(), sqlSession);
+      // 1. Select the sorted page of authorized issues that match the query
+      IssueIndex.Hits hits = issueIndex.search(query, UserSession.get().userId());
+      int total = (int) Math.min(hits.total(), query.maxResults());
+      Paging paging = Paging.create(query.pageSize(), query.pageIndex(), total);
 
-      // 2. Sort all authorized issues
-      List<IssueDto> authorizedSortedIssues = sort(authorizedIssues, query, authorizedIssues.size());
-
-      // 3. Apply pagination
-      Paging paging = Paging.create(query.pageSize(), query.pageIndex(), authorizedSortedIssues.size());
-      Set<Long> pagedIssueIds = pagedIssueIds(authorizedSortedIssues, paging);
-
-      // 4. Load issues and their related data (rules, components, projects, comments, action plans, ...) and sort then again
-      List<IssueDto> pagedIssues = issueDao.selectByIds(pagedIssueIds, sqlSession);
-      List<IssueDto> pagedSortedIssues = sort(pagedIssues, query, authorizedIssues.size());
+      // 2. Load issues and their related data (rules, components, projects, comments, action plans, ...)
+      List<IssueDto> pagedSortedIssues = sortByKeys(issueDao.selectByKeys(hits.keys(), sqlSession), hits.keys());
 
       Map<String, DefaultIssue> issuesByKey = newHashMap();
       List<Issue> issues = newArrayList();
@@ -152,7 +149,7 @@ public class DefaultIssueFinder implements IssueFinder {
       allComponents.addAll(rootComponents);
 
       return new DefaultIssueQueryResult(issues)
-        .setMaxResultsReached(authorizedIssues.size() == query.maxResults())
+        .setMaxResultsReached(hits.total() >= query.maxResults())
         .addRules(hideRules(query) ? Collections.<Rule>emptyList() : findRules(ruleIds))
         .addComponents(allComponents)
         .addProjects(rootComponents)
@@ -170,25 +167,23 @@ public class DefaultIssueFinder implements IssueFinder {
     return hideRules != null ? hideRules : false;
   }
 
-  private List<IssueDto> sort(List<IssueDto> issues, IssueQuery query, int allIssuesSize) {
-    if (allIssuesSize < query.maxResults()) {
-      return new IssuesFinderSort(issues, query).sort();
-    }
-    return issues;
-  }
-
-  private Set<Long> pagedIssueIds(Collection<IssueDto> issues, Paging paging) {
-    Set<Long> issueIds = Sets.newLinkedHashSet();
-    int index = 0;
+  /**
+   * Restores the order returned by the index. Issues which have been deleted from database but are not yet
+   * removed from the index are ignored.
+   */
+  private List<IssueDto> sortByKeys(Collection<IssueDto> issues, List<String> sortedKeys) {
+    Map<String, IssueDto> issuesByKey = newHashMap();
     for (IssueDto issue : issues) {
-      if (index >= paging.offset() && issueIds.size() < paging.pageSize()) {
-        issueIds.add(issue.getId());
-      } else if (issueIds.size() >= paging.pageSize()) {
-        break;
+      issuesByKey.put(issue.getKee(), issue);
+    }
+    List<IssueDto> sortedIssues = newArrayList();
+    for (String key : sortedKeys) {
+      IssueDto issue = issuesByKey.get(key);
+      if (issue != null) {
+        sortedIssues.add(issue);
       }
-      index++;
     }
-    return issueIds;
+    return sortedIssues;
   }
 
   private Collection<Rule> findRules(Set<Integer> ruleIds) {
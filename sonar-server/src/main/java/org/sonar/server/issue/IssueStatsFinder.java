@@ -27,14 +27,13 @@ import org.sonar.api.ServerComponent;
 import org.sonar.api.issue.IssueQuery;
 import org.sonar.api.user.User;
 import org.sonar.api.user.UserFinder;
-import org.sonar.core.issue.db.IssueStatsColumn;
-import org.sonar.core.issue.db.IssueStatsDao;
+import org.sonar.server.issue.index.IssueIndex;
 import org.sonar.server.user.UserSession;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 
 import java.util.Collection;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -43,25 +42,25 @@ import java.util.Set;
  */
 public class IssueStatsFinder implements ServerComponent {
 
-  private final IssueStatsDao issuestatsDao;
+  private final IssueIndex issueIndex;
   private final UserFinder userFinder;
 
-  public IssueStatsFinder(IssueStatsDao issuestatsDao, UserFinder userFinder) {
-    this.issuestatsDao = issuestatsDao;
+  public IssueStatsFinder(IssueIndex issueIndex, UserFinder userFinder) {
+    this.issueIndex = issueIndex;
     this.userFinder = userFinder;
   }
 
   public IssueStatsResult findIssueAssignees(IssueQuery query) {
-    List<Object> results = issuestatsDao.selectIssuesColumn(query, IssueStatsColumn.ASSIGNEE, UserSession.get().userId());
+    Map<String, Long> countsByAssignee = issueIndex.countByAssignee(query, UserSession.get().userId());
 
     Set<String> users = Sets.newHashSet();
-    for (Object result : results) {
-      if (result != null) {
-        users.add((String) result);
+    for (String assignee : countsByAssignee.keySet()) {
+      if (assignee != null) {
+        users.add(assignee);
       }
     }
 
-    return new IssueStatsResult(results).addUsers(findUsers(users));
+    return new IssueStatsResult(countsByAssignee).addUsers(findUsers(users));
   }
 
   private Collection<User> findUsers(Set<String> logins) {
@@ -70,10 +69,10 @@ public class IssueStatsFinder implements ServerComponent {
 
   public static class IssueStatsResult {
     private final Map<String, User> usersByLogin = Maps.newHashMap();
-    private List<Object> results;
+    private final Map<String, Long> countsByAssignee;
 
-    public IssueStatsResult(List<Object> results) {
-      this.results = results;
+    public IssueStatsResult(Map<String, Long> countsByAssignee) {
+      this.countsByAssignee = countsByAssignee;
     }
 
     public IssueStatsResult addUsers(Collection<User> users) {
@@ -83,8 +82,16 @@ public class IssueStatsFinder implements ServerComponent {
       return this;
     }
 
-    public List<Object> results() {
-      return results;
+    /**
+     * Number of issues by assignee login. Unassigned issues are counted with the <code>null</code> key.
+     */
+    public Map<String, Long> countsByAssignee() {
+      return countsByAssignee;
+    }
+
+    public long count(@Nullable String assignee) {
+      Long count = countsByAssignee.get(assignee);
+      return count != null ? count : 0L;
     }
 
     @CheckForNull
@@ -19,14 +19,22 @@
  */
 package org.sonar.server.issue;
 
+import com.google.common.collect.Lists;
 import org.sonar.api.ServerComponent;
 import org.sonar.api.issue.internal.DefaultIssue;
 import org.sonar.api.rules.RuleFinder;
+import org.sonar.core.cluster.QueueAction;
+import org.sonar.core.cluster.WorkQueue;
 import org.sonar.core.issue.db.IssueStorage;
 import org.sonar.core.persistence.MyBatis;
 import org.sonar.core.resource.ResourceDao;
 import org.sonar.core.resource.ResourceDto;
 import org.sonar.core.resource.ResourceQuery;
+import org.sonar.server.issue.index.IssueIndexDefinition;
+import org.sonar.server.search.action.IndexAction;
+import org.sonar.server.search.action.KeyIndexAction;
+
+import java.util.List;
 
 /**
  * @since 3.6
@@ -34,10 +42,28 @@ import org.sonar.core.resource.ResourceQuery;
 public class ServerIssueStorage extends IssueStorage implements ServerComponent {
 
   private final ResourceDao resourceDao;
+  private final WorkQueue workQueue;
+  private final String indexType = new IssueIndexDefinition().getIndexType();
 
-  public ServerIssueStorage(MyBatis mybatis, RuleFinder ruleFinder, ResourceDao resourceDao) {
+  public ServerIssueStorage(MyBatis mybatis, RuleFinder ruleFinder, ResourceDao resourceDao, WorkQueue workQueue) {
     super(mybatis, ruleFinder);
     this.resourceDao = resourceDao;
+    this.workQueue = workQueue;
+  }
+
+  /**
+   * Saved issues are reindexed. Enqueuing blocks until they are indexed, so that changes are visible in the next search.
+   */
+  @Override
+  public void save(Iterable<DefaultIssue> issues) {
+    super.save(issues);
+    List<QueueAction> actions = Lists.newArrayList();
+    for (DefaultIssue issue : issues) {
+      if (issue.isNew() || issue.isChanged()) {
+        actions.add(new KeyIndexAction<String>(indexType, IndexAction.Method.UPDATE, issue.key()));
+      }
+    }
+    workQueue.enqueue(actions);
   }
 
   @Override
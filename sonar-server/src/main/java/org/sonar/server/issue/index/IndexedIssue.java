@@ -17,36 +17,40 @@
  * along with this program; if not, write to the Free Software Foundation,
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
+package org.sonar.server.issue.index;
 
-package org.sonar.core.issue.db;
-
-import org.apache.ibatis.session.SqlSession;
-import org.sonar.api.ServerComponent;
-import org.sonar.api.issue.IssueQuery;
-import org.sonar.core.persistence.MyBatis;
+import org.sonar.core.db.Dto;
+import org.sonar.core.issue.db.IssueDto;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
-import java.util.List;
-
 /**
- * @since 3.6
+ * Issue as loaded from database, with the language of its rule, to be normalized into a document of {@link IssueIndex}.
+ *
+ * @since 4.4
  */
-public class IssueStatsDao implements ServerComponent {
+public class IndexedIssue extends Dto<String> {
+
+  private final IssueDto issue;
+  private final String language;
 
-  private final MyBatis mybatis;
+  public IndexedIssue(IssueDto issue, @Nullable String language) {
+    this.issue = issue;
+    this.language = language;
+  }
+
+  @Override
+  public String getKey() {
+    return issue.getKee();
+  }
 
-  public IssueStatsDao(MyBatis mybatis) {
-    this.mybatis = mybatis;
+  public IssueDto issue() {
+    return issue;
   }
 
-  public List<Object> selectIssuesColumn(IssueQuery query, String column, @Nullable Integer userId) {
-    SqlSession session = mybatis.openSession(false);
-    try {
-      IssueStatsMapper mapper = session.getMapper(IssueStatsMapper.class);
-      return mapper.selectIssuesColumn(query, column, query.componentRoots(), userId, query.requiredRole());
-    } finally {
-      MyBatis.closeQuietly(session);
-    }
+  @CheckForNull
+  public String language() {
+    return language;
   }
 }
@@ -0,0 +1,579 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.issue.index;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.BoolFilterBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.facet.FacetBuilders;
+import org.elasticsearch.search.facet.terms.TermsFacet;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.issue.IssueQuery;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.core.cluster.WorkQueue;
+import org.sonar.core.issue.db.IssueDao;
+import org.sonar.core.issue.db.IssueDto;
+import org.sonar.core.persistence.MyBatis;
+import org.sonar.core.resource.ResourceDao;
+import org.sonar.core.resource.ResourceDto;
+import org.sonar.core.rule.RuleDao;
+import org.sonar.core.rule.RuleDto;
+import org.sonar.core.user.AuthorizationDao;
+import org.sonar.server.es.ESNode;
+import org.sonar.server.issue.index.IssueNormalizer.IssueField;
+import org.sonar.server.search.BaseIndex;
+import org.sonar.server.search.action.IndexAction;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * Search engine of issues, hosted by the embedded Elasticsearch node. Filters, authorization, sort,
+ * pagination and counts are computed by the index, which only returns the keys of issues. Projects and
+ * components are filtered by id, so renaming their keys does not require to reindex issues.
+ * <p/>
+ * The index is fed by the writers of issues:
+ * <ul>
+ * <li>issues changed by the server are (re)indexed through the {@link WorkQueue} when saved</li>
+ * <li>projects are reindexed at the end of their analysis, once issues are persisted and purged,
+ * and when they are deleted. See {@link #indexProject(long)}</li>
+ * </ul>
+ * All the projects are reindexed in background at startup.
+ *
+ * @since 4.4
+ */
+public class IssueIndex extends BaseIndex<String, IndexedIssue, String> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IssueIndex.class);
+
+  private static final int BULK_SIZE = 1000;
+  private static final int SCROLL_SIZE = 1000;
+  private static final long SCROLL_TIME_MS = 60000L;
+  private static final String ASSIGNEE_FACET = "assignees";
+  private static final String PROJECT_FACET = "projects";
+  private static final String SORT_SUFFIX = ".sort";
+
+  private final IssueNormalizer issueNormalizer;
+  private final MyBatis myBatis;
+  private final IssueDao issueDao;
+  private final RuleDao ruleDao;
+  private final AuthorizationDao authorizationDao;
+  private final ResourceDao resourceDao;
+  private final Object bulkLock = new Object();
+  private final Object reindexLock = new Object();
+  private final List<Set<String>> changedKeysOfRunningReindexes = new CopyOnWriteArrayList<Set<String>>();
+  private Thread loader;
+  private volatile boolean stopped = false;
+
+  public IssueIndex(IssueNormalizer normalizer, WorkQueue workQueue, ESNode node, MyBatis myBatis, IssueDao issueDao, RuleDao ruleDao,
+                    AuthorizationDao authorizationDao, ResourceDao resourceDao) {
+    super(new IssueIndexDefinition(), normalizer, workQueue, node);
+    this.issueNormalizer = normalizer;
+    this.myBatis = myBatis;
+    this.issueDao = issueDao;
+    this.ruleDao = ruleDao;
+    this.authorizationDao = authorizationDao;
+    this.resourceDao = resourceDao;
+  }
+
+  @Override
+  public void start() {
+    super.start();
+    stopped = false;
+    loader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          indexAll();
+        } catch (Exception e) {
+          LOG.error("Fail to index issues", e);
+        }
+      }
+    }, "issue-index-loader");
+    loader.setDaemon(true);
+    loader.start();
+  }
+
+  @Override
+  public void stop() {
+    stopped = true;
+  }
+
+  @Override
+  protected String getKeyValue(String key) {
+    return key;
+  }
+
+  @Override
+  protected XContentBuilder getIndexSettings() throws IOException {
+    return jsonBuilder().startObject()
+      .startObject("index")
+      .field("number_of_replicas", 0)
+      .field("number_of_shards", 3)
+      .startObject("analysis")
+      .startObject("analyzer")
+      .startObject("sortable")
+      .field("type", "custom")
+      .field("tokenizer", "keyword")
+      .field("filter", "lowercase")
+      .endObject()
+      .endObject()
+      .endObject()
+      .endObject()
+      .endObject();
+  }
+
+  @Override
+  protected XContentBuilder getMapping() throws IOException {
+    XContentBuilder mapping = jsonBuilder().startObject()
+      .startObject(getIndexType())
+      .field("dynamic", false)
+      .startObject("properties");
+    for (IssueField field : new IssueField[] {IssueField.KEY, IssueField.RULE, IssueField.LANGUAGE,
+      IssueField.SEVERITY, IssueField.STATUS, IssueField.RESOLUTION, IssueField.REPORTER, IssueField.ACTION_PLAN}) {
+      addMatchField(mapping, field.key(), "string");
+    }
+    addMatchField(mapping, IssueField.COMPONENT_ID.key(), "long");
+    addMatchField(mapping, IssueField.PROJECT_ID.key(), "long");
+    addMatchField(mapping, IssueField.SEVERITY_RANK.key(), "integer");
+    addMatchField(mapping, IssueField.CREATED_AT.key(), "date");
+    addMatchField(mapping, IssueField.UPDATED_AT.key(), "date");
+    addMatchField(mapping, IssueField.CLOSED_AT.key(), "date");
+    addMatchField(mapping, IssueField.TECHNICAL_UPDATED_AT.key(), "date");
+
+    // assignees are sorted case-insensitively
+    mapping.startObject(IssueField.ASSIGNEE.key())
+      .field("type", "multi_field")
+      .startObject("fields")
+      .startObject(IssueField.ASSIGNEE.key())
+      .field("type", "string")
+      .field("index", "not_analyzed")
+      .endObject()
+      .startObject("sort")
+      .field("type", "string")
+      .field("analyzer", "sortable")
+      .endObject()
+      .endObject()
+      .endObject();
+
+    return mapping.endObject().endObject().endObject();
+  }
+
+  /**
+   * Only the key of issues is returned, issues are loaded from database
+   */
+  @Override
+  @CheckForNull
+  public String toDoc(GetResponse response) {
+    return response.isExists() ? response.getId() : null;
+  }
+
+  /**
+   * Issues which do not exist anymore in database are removed from the index
+   */
+  @Override
+  public ActionRequest<?> prepareRequestByKey(IndexAction.Method method, String key) {
+    for (Set<String> changedKeys : changedKeysOfRunningReindexes) {
+      changedKeys.add(key);
+    }
+    if (method != IndexAction.Method.DELETE) {
+      UpdateRequest request = issueNormalizer.normalize(key);
+      if (request != null) {
+        return prepareUpdate(request, key);
+      }
+    }
+    return prepareDelete(key);
+  }
+
+  /**
+   * Documents changed by the server while a project is reindexed are recorded, then ignored by the reindexing,
+   * so that they are not overridden by the older state it loaded. See {@link #indexProject(long)}.
+   */
+  @Override
+  public void executeBulk(List<IndexAction> actions) {
+    synchronized (bulkLock) {
+      super.executeBulk(actions);
+    }
+  }
+
+  /**
+   * Reindexes all the projects, including the projects which have been deleted from database.
+   */
+  public void indexAll() {
+    long start = System.currentTimeMillis();
+    SqlSession session = myBatis.openSession(false);
+    try {
+      Set<Long> projectIds = Sets.newLinkedHashSet(issueDao.selectRootComponentIds(session));
+      projectIds.addAll(indexedProjectIds());
+      Map<Integer, String> languagesByRuleId = languagesByRuleId(session);
+      for (Long projectId : projectIds) {
+        if (stopped) {
+          return;
+        }
+        indexProject(projectId, languagesByRuleId, session);
+      }
+      LOG.info("Issues of {} projects indexed in {} ms", projectIds.size(), System.currentTimeMillis() - start);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  /**
+   * Replaces the documents of a project by its issues in database. Issues which do not exist anymore,
+   * for example because they have been purged or because the project has been deleted, are removed from the index.
+   */
+  public void indexProject(long projectId) {
+    SqlSession session = myBatis.openSession(false);
+    try {
+      indexProject(projectId, languagesByRuleId(session), session);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  /**
+   * Projects are reindexed one at a time, so that a reindexing does not override a more recent one with older
+   * state. The changes of issues done by the server meanwhile are not blocked.
+   */
+  private void indexProject(long projectId, Map<Integer, String> languagesByRuleId, SqlSession session) {
+    synchronized (reindexLock) {
+      Set<String> changedKeys = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+      changedKeysOfRunningReindexes.add(changedKeys);
+      try {
+        Set<String> obsoleteKeys = indexedKeys(projectId);
+        ProjectFeeder feeder = new ProjectFeeder(languagesByRuleId, obsoleteKeys, changedKeys);
+        issueDao.selectByRootComponent(projectId, feeder, session);
+        feeder.flush();
+
+        List<ActionRequest<?>> deletions = Lists.newArrayList();
+        for (String key : obsoleteKeys) {
+          deletions.add(prepareDelete(key));
+        }
+        execute(deletions, changedKeys);
+        refresh();
+        LOG.debug("{} issues indexed and {} issues removed for project {}", new Object[] {feeder.count, obsoleteKeys.size(), projectId});
+      } finally {
+        changedKeysOfRunningReindexes.remove(changedKeys);
+      }
+    }
+  }
+
+  /**
+   * Requests on documents changed by the server since the beginning of the reindexing are dropped. The check and
+   * the bulk are atomic regarding {@link #executeBulk(List)}.
+   */
+  private void execute(List<ActionRequest<?>> requests, Set<String> changedKeys) {
+    synchronized (bulkLock) {
+      BulkRequest bulk = new BulkRequest();
+      for (ActionRequest<?> request : requests) {
+        String key = request instanceof IndexRequest ? ((IndexRequest) request).id() : ((DeleteRequest) request).id();
+        if (!changedKeys.contains(key)) {
+          bulk.add(request);
+        }
+      }
+      if (bulk.numberOfActions() > 0) {
+        BulkResponse response = getClient().bulk(bulk).actionGet();
+        if (response.hasFailures()) {
+          LOG.error("Could not index some issues: {}", response.buildFailureMessage());
+        }
+      }
+    }
+  }
+
+  private Map<Integer, String> languagesByRuleId(SqlSession session) {
+    Map<Integer, String> languagesByRuleId = Maps.newHashMap();
+    for (RuleDto rule : ruleDao.selectAll(session)) {
+      languagesByRuleId.put(rule.getId(), rule.getLanguage());
+    }
+    return languagesByRuleId;
+  }
+
+  private Set<String> indexedKeys(long projectId) {
+    Set<String> keys = Sets.newHashSet();
+    SearchResponse response = getClient().prepareSearch(getIndexName()).setTypes(getIndexType())
+      .setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), FilterBuilders.termFilter(IssueField.PROJECT_ID.key(), projectId)))
+      .setNoFields()
+      .setSearchType(SearchType.SCAN)
+      .setScroll(new TimeValue(SCROLL_TIME_MS))
+      .setSize(SCROLL_SIZE)
+      .get();
+    while (true) {
+      response = getClient().prepareSearchScroll(response.getScrollId()).setScroll(new TimeValue(SCROLL_TIME_MS)).get();
+      if (response.getHits().getHits().length == 0) {
+        break;
+      }
+      for (SearchHit hit : response.getHits()) {
+        keys.add(hit.getId());
+      }
+    }
+    return keys;
+  }
+
+  private Collection<Long> indexedProjectIds() {
+    SearchResponse response = getClient().prepareSearch(getIndexName()).setTypes(getIndexType())
+      .setQuery(QueryBuilders.matchAllQuery())
+      .setSize(0)
+      .addFacet(FacetBuilders.termsFacet(PROJECT_FACET)
+        .field(IssueField.PROJECT_ID.key())
+        .size(Integer.MAX_VALUE))
+      .get();
+    List<Long> projectIds = Lists.newArrayList();
+    TermsFacet facet = response.getFacets().facet(PROJECT_FACET);
+    for (TermsFacet.Entry entry : facet.getEntries()) {
+      projectIds.add(Long.valueOf(entry.getTerm().string()));
+    }
+    return projectIds;
+  }
+
+  private class ProjectFeeder implements ResultHandler {
+    private final Map<Integer, String> languagesByRuleId;
+    private final Set<String> obsoleteKeys;
+    private final Set<String> changedKeys;
+    private final List<ActionRequest<?>> requests = Lists.newArrayList();
+    private int count = 0;
+
+    ProjectFeeder(Map<Integer, String> languagesByRuleId, Set<String> obsoleteKeys, Set<String> changedKeys) {
+      this.languagesByRuleId = languagesByRuleId;
+      this.obsoleteKeys = obsoleteKeys;
+      this.changedKeys = changedKeys;
+    }
+
+    @Override
+    public void handleResult(ResultContext context) {
+      IssueDto issue = (IssueDto) context.getResultObject();
+      IndexedIssue indexedIssue = new IndexedIssue(issue, languagesByRuleId.get(issue.getRuleId()));
+      requests.add(new IndexRequest(getIndexName(), getIndexType(), indexedIssue.getKey()).source(issueNormalizer.document(indexedIssue)));
+      obsoleteKeys.remove(indexedIssue.getKey());
+      count++;
+      if (requests.size() >= BULK_SIZE) {
+        flush();
+      }
+    }
+
+    void flush() {
+      execute(requests, changedKeys);
+      requests.clear();
+    }
+  }
+
+  /**
+   * Keys of the page of issues matching the query and authorized to the user, sorted as requested
+   * by the query. The number of matching issues is limited to {@link IssueQuery#maxResults()}.
+   */
+  public Hits search(IssueQuery query, @Nullable Integer userId) {
+    int offset = (query.pageIndex() - 1) * query.pageSize();
+    int size = Math.max(0, Math.min(query.pageSize(), query.maxResults() - offset));
+
+    SearchRequestBuilder request = getClient().prepareSearch(getIndexName()).setTypes(getIndexType())
+      .setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), filter(query, userId)))
+      .setFrom(offset)
+      .setSize(size)
+      .setNoFields();
+    addSort(request, query);
+
+    SearchResponse response = request.get();
+    List<String> keys = Lists.newArrayList();
+    for (SearchHit hit : response.getHits()) {
+      keys.add(hit.getId());
+    }
+    return new Hits(keys, response.getHits().getTotalHits());
+  }
+
+  /**
+   * Number of issues matching the query and authorized to the user, by assignee login. Unassigned issues
+   * are counted with the <code>null</code> key.
+   */
+  public Map<String, Long> countByAssignee(IssueQuery query, @Nullable Integer userId) {
+    SearchResponse response = getClient().prepareSearch(getIndexName()).setTypes(getIndexType())
+      .setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), filter(query, userId)))
+      .setSize(0)
+      .addFacet(FacetBuilders.termsFacet(ASSIGNEE_FACET)
+        .field(IssueField.ASSIGNEE.key())
+        .size(Integer.MAX_VALUE))
+      .get();
+
+    TermsFacet facet = response.getFacets().facet(ASSIGNEE_FACET);
+    Map<String, Long> counts = Maps.newLinkedHashMap();
+    for (TermsFacet.Entry entry : facet.getEntries()) {
+      counts.put(entry.getTerm().string(), (long) entry.getCount());
+    }
+    if (facet.getMissingCount() > 0) {
+      counts.put(null, facet.getMissingCount());
+    }
+    return counts;
+  }
+
+  private FilterBuilder filter(IssueQuery query, @Nullable Integer userId) {
+    BoolFilterBuilder filter = FilterBuilders.boolFilter().must(FilterBuilders.matchAllFilter());
+
+    if (!query.componentRoots().isEmpty()) {
+      // authorization is applied when loading the components of the roots
+      List<Integer> componentIds = resourceDao.findAuthorizedChildrenComponentIds(query.componentRoots(), userId, query.requiredRole());
+      filter.must(FilterBuilders.termsFilter(IssueField.COMPONENT_ID.key(), componentIds));
+    } else if (query.requiredRole() != null) {
+      Collection<Long> projectIds = authorizationDao.selectAuthorizedRootProjectsIds(userId, query.requiredRole());
+      filter.must(FilterBuilders.termsFilter(IssueField.PROJECT_ID.key(), projectIds));
+    }
+    if (!query.components().isEmpty()) {
+      List<Long> componentIds = Lists.newArrayList();
+      for (ResourceDto component : resourceDao.selectResourcesByKeys(query.components())) {
+        componentIds.add(component.getId());
+      }
+      filter.must(FilterBuilders.termsFilter(IssueField.COMPONENT_ID.key(), componentIds));
+    }
+
+    addTermsFilter(filter, IssueField.KEY, query.issueKeys());
+    addTermsFilter(filter, IssueField.SEVERITY, query.severities());
+    addTermsFilter(filter, IssueField.STATUS, query.statuses());
+    addTermsFilter(filter, IssueField.RESOLUTION, query.resolutions());
+    addTermsFilter(filter, IssueField.REPORTER, query.reporters());
+    addTermsFilter(filter, IssueField.ASSIGNEE, query.assignees());
+    addTermsFilter(filter, IssueField.ACTION_PLAN, query.actionPlans());
+    addTermsFilter(filter, IssueField.LANGUAGE, query.languages());
+    if (!query.rules().isEmpty()) {
+      List<String> rules = Lists.newArrayList();
+      for (RuleKey rule : query.rules()) {
+        rules.add(rule.toString());
+      }
+      addTermsFilter(filter, IssueField.RULE, rules);
+    }
+
+    addExistsFilter(filter, IssueField.RESOLUTION, query.resolved());
+    addExistsFilter(filter, IssueField.ASSIGNEE, query.assigned());
+    addExistsFilter(filter, IssueField.ACTION_PLAN, query.planned());
+
+    if (query.createdAfter() != null) {
+      filter.must(FilterBuilders.rangeFilter(IssueField.CREATED_AT.key()).gt(query.createdAfter()));
+    }
+    if (query.createdAt() != null) {
+      filter.must(FilterBuilders.rangeFilter(IssueField.CREATED_AT.key()).gte(query.createdAt()).lte(query.createdAt()));
+    }
+    if (query.createdBefore() != null) {
+      filter.must(FilterBuilders.rangeFilter(IssueField.CREATED_AT.key()).lt(query.createdBefore()));
+    }
+    return filter;
+  }
+
+  private void addTermsFilter(BoolFilterBuilder filter, IssueField field, Collection<String> values) {
+    if (!values.isEmpty()) {
+      filter.must(FilterBuilders.termsFilter(field.key(), values));
+    }
+  }
+
+  private void addExistsFilter(BoolFilterBuilder filter, IssueField field, @Nullable Boolean exists) {
+    if (exists != null) {
+      filter.must(exists ? FilterBuilders.existsFilter(field.key()) : FilterBuilders.missingFilter(field.key()));
+    }
+  }
+
+  /**
+   * Same order as the former in-memory sort: missing values are last in ascending order, first in descending order.
+   * Issues are then sorted by key so that pages are stable.
+   */
+  private void addSort(SearchRequestBuilder request, IssueQuery query) {
+    String sort = query.sort();
+    Boolean asc = query.asc();
+    if (sort != null && asc != null) {
+      request.addSort(SortBuilders.fieldSort(sortField(sort))
+        .order(asc ? SortOrder.ASC : SortOrder.DESC)
+        .missing(asc ? "_last" : "_first"));
+    }
+    request.addSort(IssueField.KEY.key(), SortOrder.ASC);
+  }
+
+  private String sortField(String sort) {
+    if (IssueQuery.SORT_BY_ASSIGNEE.equals(sort)) {
+      return IssueField.ASSIGNEE.key() + SORT_SUFFIX;
+    }
+    if (IssueQuery.SORT_BY_SEVERITY.equals(sort)) {
+      return IssueField.SEVERITY_RANK.key();
+    }
+    if (IssueQuery.SORT_BY_STATUS.equals(sort)) {
+      return IssueField.STATUS.key();
+    }
+    if (IssueQuery.SORT_BY_CREATION_DATE.equals(sort)) {
+      return IssueField.CREATED_AT.key();
+    }
+    if (IssueQuery.SORT_BY_UPDATE_DATE.equals(sort)) {
+      return IssueField.UPDATED_AT.key();
+    }
+    if (IssueQuery.SORT_BY_CLOSE_DATE.equals(sort)) {
+      return IssueField.CLOSED_AT.key();
+    }
+    throw new IllegalArgumentException("Cannot sort on field : " + sort);
+  }
+
+  public static class Hits {
+    private final List<String> keys;
+    private final long total;
+
+    public Hits(List<String> keys, long total) {
+      this.keys = keys;
+      this.total = total;
+    }
+
+    /**
+     * Keys of the issues of the requested page, sorted
+     */
+    public List<String> keys() {
+      return keys;
+    }
+
+    /**
+     * Total number of matching issues, regardless of pagination
+     */
+    public long total() {
+      return total;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.issue.index;
+
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.core.issue.db.IssueDao;
+import org.sonar.core.issue.db.IssueDto;
+import org.sonar.core.rule.RuleDao;
+import org.sonar.core.rule.RuleDto;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.search.BaseNormalizer;
+
+import javax.annotation.CheckForNull;
+
+import java.io.IOException;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * Builds the document of an issue. Only the fields used to filter, sort and count issues
+ * are indexed, issues themselves are still loaded from database. Components are referenced by id
+ * only, so that documents are still valid when keys of components are renamed.
+ *
+ * @since 4.4
+ */
+public class IssueNormalizer extends BaseNormalizer<IndexedIssue, String> {
+
+  public static enum IssueField {
+    KEY("key"),
+    COMPONENT_ID("componentId"),
+    PROJECT_ID("projectId"),
+    RULE("rule"),
+    LANGUAGE("lang"),
+    SEVERITY("severity"),
+    SEVERITY_RANK("severityRank"),
+    STATUS("status"),
+    RESOLUTION("resolution"),
+    REPORTER("reporter"),
+    ASSIGNEE("assignee"),
+    ACTION_PLAN("actionPlan"),
+    CREATED_AT("createdAt"),
+    UPDATED_AT("updatedAt"),
+    CLOSED_AT("closedAt"),
+    TECHNICAL_UPDATED_AT("technicalUpdatedAt");
+
+    private final String key;
+
+    private IssueField(final String key) {
+      this.key = key;
+    }
+
+    public String key() {
+      return key;
+    }
+
+    @Override
+    public String toString() {
+      return key;
+    }
+  }
+
+  private final IssueDao issueDao;
+  private final RuleDao ruleDao;
+
+  public IssueNormalizer(DbClient db, IssueDao issueDao, RuleDao ruleDao) {
+    super(db);
+    this.issueDao = issueDao;
+    this.ruleDao = ruleDao;
+  }
+
+  /**
+   * Loads the issue from database. Returns null if the issue does not exist, for example because it has been purged.
+   */
+  @Override
+  @CheckForNull
+  public UpdateRequest normalize(String key) {
+    IssueDto issue = issueDao.selectByKey(key);
+    if (issue == null) {
+      return null;
+    }
+    RuleDto rule = ruleDao.selectById(issue.getRuleId());
+    return normalize(new IndexedIssue(issue, rule != null ? rule.getLanguage() : null));
+  }
+
+  @Override
+  public UpdateRequest normalize(IndexedIssue issue) {
+    UpdateRequest request = new UpdateRequest().doc(document(issue));
+    request.docAsUpsert(true);
+    return request;
+  }
+
+  public XContentBuilder document(IndexedIssue indexedIssue) {
+    IssueDto issue = indexedIssue.issue();
+    try {
+      XContentBuilder document = jsonBuilder().startObject();
+      document.field(IssueField.KEY.key(), issue.getKee());
+      document.field(IssueField.COMPONENT_ID.key(), issue.getComponentId());
+      document.field(IssueField.PROJECT_ID.key(), issue.getRootComponentId());
+      document.field(IssueField.RULE.key(), RuleKey.of(issue.getRuleRepo(), issue.getRule()).toString());
+      document.field(IssueField.LANGUAGE.key(), indexedIssue.language());
+      document.field(IssueField.SEVERITY.key(), issue.getSeverity());
+      document.field(IssueField.SEVERITY_RANK.key(), Severity.ALL.indexOf(issue.getSeverity()));
+      document.field(IssueField.STATUS.key(), issue.getStatus());
+      document.field(IssueField.RESOLUTION.key(), issue.getResolution());
+      document.field(IssueField.REPORTER.key(), issue.getReporter());
+      document.field(IssueField.ASSIGNEE.key(), issue.getAssignee());
+      document.field(IssueField.ACTION_PLAN.key(), issue.getActionPlanKey());
+      document.field(IssueField.CREATED_AT.key(), issue.getIssueCreationDate());
+      document.field(IssueField.UPDATED_AT.key(), issue.getIssueUpdateDate());
+      document.field(IssueField.CLOSED_AT.key(), issue.getIssueCloseDate());
+      document.field(IssueField.TECHNICAL_UPDATED_AT.key(), issue.getUpdatedAt());
+      return document.endObject();
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not normalize issue " + issue.getKee(), e);
+    }
+  }
+}
@@ -18,20 +18,7 @@
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
 
-package org.sonar.core.issue.db;
+@ParametersAreNonnullByDefault
+package org.sonar.server.issue.index;
 
-import com.google.common.collect.ImmutableList;
-
-import java.util.List;
-
-public class IssueStatsColumn {
-
-  private IssueStatsColumn() {
-    // utility
-  }
-
-  public static final String ASSIGNEE = "ASSIGNEE";
-
-  public static final List<String> ALL = ImmutableList.of(ASSIGNEE);
-
-}
+import javax.annotation.ParametersAreNonnullByDefault;
@@ -21,6 +21,7 @@ package org.sonar.server.notifications;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,13 +34,17 @@ import org.sonar.api.notifications.NotificationChannel;
 import org.sonar.api.notifications.NotificationDispatcher;
 import org.sonar.api.utils.TimeProfiler;
 import org.sonar.core.notification.DefaultNotificationManager;
+import org.sonar.core.notification.db.NotificationQueueDto;
 import org.sonar.jpa.session.DatabaseSessionFactory;
 
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -58,6 +63,12 @@ import java.util.concurrent.TimeUnit;
     defaultValue = "600",
     name = "Delay before reporting notification status, in seconds",
     project = false,
+    global = false),
+  @Property(
+    key = NotificationService.PROPERTY_DELIVERY_THREADS,
+    defaultValue = "" + NotificationService.DEFAULT_DELIVERY_THREADS,
+    name = "Number of threads delivering notifications",
+    project = false,
     global = false)
 })
 public class NotificationService implements ServerComponent {
@@ -66,17 +77,26 @@ public class NotificationService implements ServerComponent {
 
   public static final String PROPERTY_DELAY = "sonar.notifications.delay";
   public static final String PROPERTY_DELAY_BEFORE_REPORTING_STATUS = "sonar.notifications.runningDelayBeforeReportingStatus";
+  public static final String PROPERTY_DELIVERY_THREADS = "sonar.notifications.deliveryThreads";
+  static final int DEFAULT_DELIVERY_THREADS = 4;
+
+  /**
+   * Number of notifications read from the queue at once
+   */
+  static final int BATCH_SIZE = 100;
 
   private static final TimeProfiler TIME_PROFILER = new TimeProfiler(LOG).setLevelToDebug();
 
   private final long delayInSeconds;
   private final long delayBeforeReportingStatusInSeconds;
+  private final int deliveryThreads;
   private final DefaultNotificationManager manager;
   private final NotificationDispatcher[] dispatchers;
   private final DatabaseSessionFactory databaseSessionFactory;
 
   private ScheduledExecutorService executorService;
-  private boolean stopping = false;
+  private ExecutorService[] deliveryExecutors;
+  private volatile boolean stopping = false;
 
   /**
    * Constructor for {@link NotificationService}
@@ -85,6 +105,7 @@ public class NotificationService implements ServerComponent {
     this.databaseSessionFactory = databaseSessionFactory;
     delayInSeconds = settings.getLong(PROPERTY_DELAY);
     delayBeforeReportingStatusInSeconds = settings.getLong(PROPERTY_DELAY_BEFORE_REPORTING_STATUS);
+    deliveryThreads = settings.hasKey(PROPERTY_DELIVERY_THREADS) ? Math.max(1, settings.getInt(PROPERTY_DELIVERY_THREADS)) : DEFAULT_DELIVERY_THREADS;
     this.manager = manager;
     this.dispatchers = dispatchers;
   }
@@ -98,6 +119,11 @@ public class NotificationService implements ServerComponent {
   }
 
   public void start() {
+    // each recipient is always served by the same thread, so that its notifications are delivered in order
+    deliveryExecutors = new ExecutorService[deliveryThreads];
+    for (int i = 0; i < deliveryThreads; i++) {
+      deliveryExecutors[i] = Executors.newSingleThreadExecutor();
+    }
     executorService = Executors.newSingleThreadScheduledExecutor();
     executorService.scheduleWithFixedDelay(new Runnable() {
       public void run() {
@@ -111,7 +137,7 @@ public class NotificationService implements ServerComponent {
         }
       }
     }, 0, delayInSeconds, TimeUnit.SECONDS);
-    LOG.info("Notification service started (delay {} sec.)", delayInSeconds);
+    LOG.info("Notification service started (delay {} sec., {} delivery threads)", delayInSeconds, deliveryThreads);
   }
 
   public void stop() {
@@ -119,6 +145,13 @@ public class NotificationService implements ServerComponent {
       stopping = true;
       executorService.shutdown();
       executorService.awaitTermination(5, TimeUnit.SECONDS);
+      for (ExecutorService deliveryExecutor : deliveryExecutors) {
+        deliveryExecutor.shutdown();
+      }
+      // pending deliveries are completed
+      for (ExecutorService deliveryExecutor : deliveryExecutors) {
+        deliveryExecutor.awaitTermination(5, TimeUnit.SECONDS);
+      }
     } catch (InterruptedException e) {
       LOG.error("Error during stop of notification service", e);
     }
@@ -130,12 +163,16 @@ public class NotificationService implements ServerComponent {
     TIME_PROFILER.start("Processing notifications queue");
     long start = now();
     long lastLog = start;
-    long notifSentCount = 0;
+    DeliveryStats stats = new DeliveryStats();
 
-    Notification notifToSend = manager.getFromQueue();
-    while (notifToSend != null) {
-      deliver(notifToSend);
-      notifSentCount++;
+    List<NotificationQueueDto> queued = manager.findOldestInQueue(BATCH_SIZE);
+    while (!queued.isEmpty()) {
+      if (!deliver(manager.toNotifications(queued), stats)) {
+        // interrupted, notifications are kept in queue and delivered again on next start
+        break;
+      }
+      // removed once delivered only, so that they are not lost if the server stops meanwhile
+      manager.removeFromQueue(queued);
       if (stopping) {
         break;
       }
@@ -143,18 +180,19 @@ public class NotificationService implements ServerComponent {
       if (now - lastLog > delayBeforeReportingStatusInSeconds * 1000) {
         long remainingNotifCount = manager.count();
         lastLog = now;
-        long spentTimeInMinutes = (now - start) / (60 * 1000);
-        log(notifSentCount, remainingNotifCount, spentTimeInMinutes);
+        log(stats.notifications, remainingNotifCount, now - start, stats.averageLatency());
       }
-      notifToSend = manager.getFromQueue();
+      queued = manager.findOldestInQueue(BATCH_SIZE);
     }
 
     TIME_PROFILER.stop();
   }
 
   @VisibleForTesting
-  void log(long notifSentCount, long remainingNotifCount, long spentTimeInMinutes) {
-    LOG.info("{} notifications sent during the past {} minutes and {} still waiting to be sent", new Object[] {notifSentCount, spentTimeInMinutes, remainingNotifCount});
+  void log(long notifSentCount, long remainingNotifCount, long spentTimeInMs, long averageLatencyInMs) {
+    long throughput = spentTimeInMs > 0 ? notifSentCount * 1000 / spentTimeInMs : notifSentCount;
+    LOG.info("{} notifications sent during the past {} minutes ({} per second, delivered in {} ms in average) and {} still waiting to be sent",
+      new Object[] {notifSentCount, spentTimeInMs / (60 * 1000), throughput, averageLatencyInMs, remainingNotifCount});
   }
 
   @VisibleForTesting
@@ -162,7 +200,38 @@ public class NotificationService implements ServerComponent {
     return System.currentTimeMillis();
   }
 
-  private void deliver(Notification notification) {
+  /**
+   * Dispatchers are executed in the current thread, then deliveries are spread over the delivery threads by recipient.
+   * Returns when all the notifications of the batch are delivered, or false if the thread is interrupted before.
+   */
+  private boolean deliver(List<Notification> notifications, DeliveryStats stats) {
+    long dequeuedAt = System.currentTimeMillis();
+    List<Future<?>> deliveries = Lists.newArrayList();
+    for (Notification notification : notifications) {
+      SetMultimap<String, NotificationChannel> recipients = findRecipients(notification);
+      for (Map.Entry<String, Collection<NotificationChannel>> entry : recipients.asMap().entrySet()) {
+        deliveries.add(executorFor(entry.getKey()).submit(new Delivery(notification, entry.getKey(), entry.getValue(), dequeuedAt, stats)));
+      }
+      stats.notifications++;
+    }
+    for (Future<?> delivery : deliveries) {
+      try {
+        delivery.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      } catch (ExecutionException e) {
+        LOG.warn("Unable to deliver notification", e.getCause());
+      }
+    }
+    return true;
+  }
+
+  private ExecutorService executorFor(String username) {
+    return deliveryExecutors[(username.hashCode() & Integer.MAX_VALUE) % deliveryExecutors.length];
+  }
+
+  private SetMultimap<String, NotificationChannel> findRecipients(Notification notification) {
     LOG.debug("Delivering notification " + notification);
     final SetMultimap<String, NotificationChannel> recipients = HashMultimap.create();
     for (NotificationDispatcher dispatcher : dispatchers) {
@@ -184,25 +253,59 @@ public class NotificationService implements ServerComponent {
         LOG.warn("Unable to dispatch notification " + notification + " using " + dispatcher, e);
       }
     }
-    dispatch(notification, recipients);
+    return recipients;
   }
 
-  private void dispatch(Notification notification, SetMultimap<String, NotificationChannel> recipients) {
-    for (Map.Entry<String, Collection<NotificationChannel>> entry : recipients.asMap().entrySet()) {
-      String username = entry.getKey();
-      Collection<NotificationChannel> userChannels = entry.getValue();
+  private class Delivery implements Runnable {
+    private final Notification notification;
+    private final String username;
+    private final Collection<NotificationChannel> userChannels;
+    private final long dequeuedAt;
+    private final DeliveryStats stats;
+
+    Delivery(Notification notification, String username, Collection<NotificationChannel> userChannels, long dequeuedAt, DeliveryStats stats) {
+      this.notification = notification;
+      this.username = username;
+      this.userChannels = userChannels;
+      this.dequeuedAt = dequeuedAt;
+      this.stats = stats;
+    }
+
+    @Override
+    public void run() {
       LOG.debug("For user {} via {}", username, userChannels);
-      for (NotificationChannel channel : userChannels) {
-        try {
-          channel.deliver(notification, username);
-        } catch (Exception e) {
-          // catch all exceptions in order to deliver via other channels
-          LOG.warn("Unable to deliver notification " + notification + " for user " + username + " via " + channel, e);
+      try {
+        for (NotificationChannel channel : userChannels) {
+          try {
+            channel.deliver(notification, username);
+          } catch (Exception e) {
+            // catch all exceptions in order to deliver via other channels
+            LOG.warn("Unable to deliver notification " + notification + " for user " + username + " via " + channel, e);
+          }
         }
+      } finally {
+        stats.delivered(System.currentTimeMillis() - dequeuedAt);
+        // Free Hibernate session
+        databaseSessionFactory.clear();
       }
     }
   }
 
+  private static class DeliveryStats {
+    private long notifications = 0L;
+    private long deliveries = 0L;
+    private long totalLatency = 0L;
+
+    synchronized void delivered(long latency) {
+      deliveries++;
+      totalLatency += latency;
+    }
+
+    synchronized long averageLatency() {
+      return deliveries > 0 ? totalLatency / deliveries : 0L;
+    }
+  }
+
   @VisibleForTesting
   protected List<NotificationDispatcher> getDispatchers() {
     return Arrays.asList(dispatchers);
@@ -62,6 +62,7 @@ import org.sonar.core.purge.PurgeProfiler;
 import org.sonar.core.qualitygate.db.ProjectQgateAssociationDao;
 import org.sonar.core.qualitygate.db.QualityGateConditionDao;
 import org.sonar.core.qualitygate.db.QualityGateDao;
+import org.sonar.core.resource.ComponentIndex;
 import org.sonar.core.resource.DefaultResourcePermissions;
 import org.sonar.core.rule.DefaultRuleFinder;
 import org.sonar.core.test.TestPlanPerspectiveLoader;
@@ -80,6 +81,7 @@ import org.sonar.server.authentication.ws.AuthenticationWs;
 import org.sonar.server.charts.ChartFactory;
 import org.sonar.server.cluster.LocalNonBlockingWorkQueue;
 import org.sonar.server.cluster.LocalQueueWorker;
+import org.sonar.server.component.ComponentIndexLoader;
 import org.sonar.server.component.DefaultComponentFinder;
 import org.sonar.server.component.DefaultRubyComponentService;
 import org.sonar.server.component.ws.ComponentsWs;
@@ -98,6 +100,8 @@ import org.sonar.server.issue.actionplan.ActionPlanWs;
 import org.sonar.server.issue.filter.IssueFilterService;
 import org.sonar.server.issue.filter.IssueFilterWriter;
 import org.sonar.server.issue.filter.IssueFilterWs;
+import org.sonar.server.issue.index.IssueIndex;
+import org.sonar.server.issue.index.IssueNormalizer;
 import org.sonar.server.issue.ws.IssueShowAction;
 import org.sonar.server.issue.ws.IssuesWs;
 import org.sonar.server.measure.ws.TimeMachineWs;
@@ -111,6 +115,7 @@ import org.sonar.server.platform.ws.RestartHandler;
 import org.sonar.server.platform.ws.ServerWs;
 import org.sonar.server.platform.ws.SystemWs;
 import org.sonar.server.plugins.*;
+import org.sonar.server.preview.PreviewDatabaseDownload;
 import org.sonar.server.qualitygate.QgateProjectFinder;
 import org.sonar.server.qualitygate.QualityGates;
 import org.sonar.server.qualitygate.RegisterQualityGates;
@@ -124,6 +129,7 @@ import org.sonar.server.qualityprofile.ws.*;
 import org.sonar.server.rule.*;
 import org.sonar.server.rule.ws.*;
 import org.sonar.server.rule2.RegisterRules;
+import org.sonar.server.rule2.ReindexRules;
 import org.sonar.server.rule2.RuleService;
 import org.sonar.server.rule2.index.RuleIndex;
 import org.sonar.server.rule2.index.RuleNormalizer;
@@ -133,6 +139,7 @@ import org.sonar.server.rule2.ws.SearchAction;
 import org.sonar.server.rule2.ws.SetTagsAction;
 import org.sonar.server.rule2.ws.TagsAction;
 import org.sonar.server.source.CodeColorizers;
+import org.sonar.server.source.DecoratedSourceCache;
 import org.sonar.server.source.DeprecatedSourceDecorator;
 import org.sonar.server.source.HtmlSourceDecorator;
 import org.sonar.server.source.SourceService;
@@ -204,6 +211,7 @@ class ServerComponents {
     components.addAll(CorePropertyDefinitions.all());
     components.addAll(DatabaseMigrations.CLASSES);
     components.addAll(DaoUtils.getDaoClasses());
+    components.add(ComponentIndex.class);
     return components;
   }
 
@@ -259,6 +267,8 @@ class ServerComponents {
       ActiveRuleNormalizer.class,
       RuleIndex.class,
       ActiveRuleIndex.class,
+      IssueNormalizer.class,
+      IssueIndex.class,
       LocalQueueWorker.class
     );
     return components;
@@ -276,6 +286,7 @@ class ServerComponents {
     pico.addSingleton(SettingsChangeNotifier.class);
     pico.addSingleton(PageDecorations.class);
     pico.addSingleton(PreviewCache.class);
+    pico.addSingleton(PreviewDatabaseDownload.class);
     pico.addSingleton(DefaultResourcePermissions.class);
     pico.addSingleton(Periods.class);
     pico.addSingleton(ServerWs.class);
@@ -410,6 +421,7 @@ class ServerComponents {
     pico.addSingleton(ComponentDao.class);
     pico.addSingleton(ResourcesWs.class);
     pico.addSingleton(ComponentsWs.class);
+    pico.addSingleton(ComponentIndexLoader.class);
     pico.addSingleton(ProjectsWs.class);
 
     // issues
@@ -463,6 +475,7 @@ class ServerComponents {
     pico.addSingleton(DebtCharacteristicsXMLImporter.class);
 
     // source
+    pico.addSingleton(DecoratedSourceCache.class);
     pico.addSingleton(HtmlSourceDecorator.class);
     pico.addSingleton(DeprecatedSourceDecorator.class);
     pico.addSingleton(SourceService.class);
@@ -535,6 +548,7 @@ class ServerComponents {
     startupContainer.addSingleton(RegisterServletFilters.class);
     startupContainer.addSingleton(CleanPreviewAnalysisCache.class);
     startupContainer.addSingleton(CopyRequirementsFromCharacteristicsToRules.class);
+    startupContainer.addSingleton(ReindexRules.class);
 
     DoPrivileged.execute(new DoPrivileged.Task() {
       @Override
@@ -0,0 +1,101 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.preview;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.ServerComponent;
+import org.sonar.core.preview.PreviewCache;
+
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Sends the preview database of a project to the batch. The file is streamed from the cache
+ * directory without being loaded in memory. Its ETag identifies the generated database, so batches
+ * sending it in the header If-None-Match get a 304 response as long as the database is not re-generated.
+ *
+ * @since 4.4
+ */
+public class PreviewDatabaseDownload implements ServerComponent {
+
+  private static final String ETAG_HEADER = "ETag";
+  private static final String CONTENT_TYPE = "application/octet-stream";
+
+  private final PreviewCache cache;
+
+  public PreviewDatabaseDownload(PreviewCache cache) {
+    this.cache = cache;
+  }
+
+  public void write(@Nullable Long projectId, @Nullable final String ifNoneMatch, final HttpServletResponse response) throws IOException {
+    // the database file is streamed while the cache prevents its re-generation
+    cache.readDatabaseFileForPreview(projectId, new PreviewCache.DatabaseFileReader() {
+      @Override
+      public void read(File dbFile) throws IOException {
+        write(dbFile, ifNoneMatch, response);
+      }
+    });
+  }
+
+  private static void write(File dbFile, @Nullable String ifNoneMatch, HttpServletResponse response) throws IOException {
+    String etag = etag(dbFile);
+    response.setHeader(ETAG_HEADER, etag);
+    if (ifNoneMatch != null && StringUtils.contains(ifNoneMatch, etag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      // commit the response so that the status is not overridden by the caller
+      response.flushBuffer();
+      return;
+    }
+
+    FileInputStream input = new FileInputStream(dbFile);
+    try {
+      FileChannel channel = input.getChannel();
+      long size = channel.size();
+      response.setStatus(HttpServletResponse.SC_OK);
+      response.setContentType(CONTENT_TYPE);
+      if (size <= Integer.MAX_VALUE) {
+        response.setContentLength((int) size);
+      }
+      WritableByteChannel output = Channels.newChannel(response.getOutputStream());
+      long position = 0L;
+      while (position < size) {
+        position += channel.transferTo(position, size - position, output);
+      }
+      response.flushBuffer();
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  /**
+   * Each generation of database is stored in a new file, named after the generation timestamp
+   */
+  static String etag(File dbFile) {
+    return "\"" + dbFile.getParentFile().getName() + "-" + StringUtils.substringBefore(dbFile.getName(), ".") + "\"";
+  }
+}
@@ -44,15 +44,15 @@ import org.sonar.api.rules.ActiveRule;
 import org.sonar.core.cluster.WorkQueue;
 import org.sonar.core.qualityprofile.db.ActiveRuleDto;
 import org.sonar.core.qualityprofile.db.ActiveRuleKey;
+import org.sonar.server.rule2.index.RuleIndex;
 import org.sonar.server.rule2.index.RuleNormalizer;
-import org.sonar.server.search.BaseIndex;
 import org.sonar.server.search.NestedIndex;
 
 import java.io.IOException;
 
 public class ActiveRuleIndex extends NestedIndex<ActiveRule, ActiveRuleDto, ActiveRuleKey> {
 
-  public ActiveRuleIndex(ActiveRuleNormalizer normalizer, WorkQueue workQueue, BaseIndex<?, ?, ?> index) {
+  public ActiveRuleIndex(ActiveRuleNormalizer normalizer, WorkQueue workQueue, RuleIndex index) {
     super(new ActiveRuleIndexDefinition(), normalizer, workQueue, index);
   }
 
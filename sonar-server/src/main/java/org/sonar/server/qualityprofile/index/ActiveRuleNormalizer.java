@@ -29,6 +29,10 @@ import org.sonar.server.db.DbClient;
 import org.sonar.server.rule2.index.RuleNormalizer;
 import org.sonar.server.search.BaseNormalizer;
 
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
 public class ActiveRuleNormalizer extends BaseNormalizer<ActiveRuleDto, ActiveRuleKey> {
@@ -97,9 +101,7 @@ public class ActiveRuleNormalizer extends BaseNormalizer<ActiveRuleDto, ActiveRu
       document.startObject(RuleNormalizer.RuleField.ACTIVE.key());
       document.startObject(key.toString());
       document.startObject(ActiveRuleField.PARAMS.key());
-      document.startObject(param.getKey());
-      indexField(ActiveRuleParamField.VALUE.key(), param.getValue(), document);
-      document.endObject();
+      writeParam(param, document);
       document.endObject();
       document.endObject();
       document.endObject();
@@ -126,23 +128,18 @@ public class ActiveRuleNormalizer extends BaseNormalizer<ActiveRuleDto, ActiveRu
         throw new IllegalStateException("Cannot normalize ActiveRuleDto with null key");
       }
 
-
-
-      document.startObject(RuleNormalizer.RuleField.ACTIVE.key());
-      document.startObject(key.toString());
-      indexField(ActiveRuleField.KEY.key(), rule.getKey(), document);
-      indexField(ActiveRuleField.INHERITANCE.key(), rule.getInheritance(), document);
-      indexField(ActiveRuleField.PROFILE_ID.key(), rule.getProfileId(), document);
-      indexField(ActiveRuleField.SEVERITY.key(), rule.getSeverityString(), document);
-
       //TODO this should be generated by RegisterRule and modified in DTO.
+      ActiveRuleKey parentKey = null;
       if(rule.getParentId() != null){
         DbSession session = db.openSession(false);
         ActiveRuleDto dto = this.db.activeRuleDao().getById(rule.getParentId(), session);
         session.close();
-        indexField(ActiveRuleField.PARENT_KEY.key(), dto.getKey().toString(), document);
+        parentKey = dto.getKey();
       }
 
+      document.startObject(RuleNormalizer.RuleField.ACTIVE.key());
+      document.startObject(key.toString());
+      writeFields(rule, parentKey, document);
 
     /* Done normalizing for Rule */
       document.endObject();
@@ -157,4 +154,27 @@ public class ActiveRuleNormalizer extends BaseNormalizer<ActiveRuleDto, ActiveRu
       throw new IllegalStateException(String.format("Could not normalize Object with key %s", rule.getKey().toString()), e);
     }
   }
+
+  /**
+   * Writes the fields of the active rule, but not its parameters, into the current object of the document.
+   * Used by the set-based reindex of rules, which resolves keys without querying the database.
+   */
+  public void writeFields(ActiveRuleDto rule, @Nullable ActiveRuleKey parentKey, XContentBuilder document) {
+    indexField(ActiveRuleField.KEY.key(), rule.getKey(), document);
+    indexField(ActiveRuleField.INHERITANCE.key(), rule.getInheritance(), document);
+    indexField(ActiveRuleField.PROFILE_ID.key(), rule.getProfileId(), document);
+    indexField(ActiveRuleField.SEVERITY.key(), rule.getSeverityString(), document);
+    if (parentKey != null) {
+      indexField(ActiveRuleField.PARENT_KEY.key(), parentKey.toString(), document);
+    }
+  }
+
+  /**
+   * Writes the parameter into the current <code>params</code> object of the document.
+   */
+  public void writeParam(ActiveRuleParamDto param, XContentBuilder document) throws IOException {
+    document.startObject(param.getKey());
+    indexField(ActiveRuleParamField.VALUE.key(), param.getValue(), document);
+    document.endObject();
+  }
 }
@@ -22,6 +22,7 @@ package org.sonar.server.qualityprofile.persistence;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.api.utils.System2;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.qualityprofile.db.ActiveRuleDto;
@@ -110,6 +111,13 @@ public class ActiveRuleDao extends BaseDao<ActiveRuleMapper, ActiveRuleDto, Acti
    * Finder methods for Rules
    */
 
+  /**
+   * Streams all the active rules to the given handler. Keys are not loaded.
+   */
+  public void findAll(DbSession session, ResultHandler handler) {
+    session.select("org.sonar.core.qualityprofile.db.ActiveRuleMapper.selectAll", handler);
+  }
+
   public List<ActiveRuleDto> findByRule(RuleDto rule, DbSession dbSession) {
     Preconditions.checkArgument(rule.getId() != null, "Rule is not persisted");
     return mapper(dbSession).selectByRuleId(rule.getId());
@@ -177,6 +185,10 @@ public class ActiveRuleDao extends BaseDao<ActiveRuleMapper, ActiveRuleDto, Acti
    * Finder methods for ActiveRuleParams
    */
 
+  public void findAllParams(DbSession session, ResultHandler handler) {
+    session.select("org.sonar.core.qualityprofile.db.ActiveRuleMapper.selectAllParams", handler);
+  }
+
   public List<ActiveRuleParamDto> findParamsByActiveRule(ActiveRuleDto dto, DbSession session) {
     Preconditions.checkArgument(dto.getId() != null, "ActiveRule is not persisted");
     return mapper(session).selectParamsByActiveRuleId(dto.getId());
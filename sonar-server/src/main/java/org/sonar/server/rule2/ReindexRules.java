@@ -0,0 +1,65 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.rule2;
+
+import org.picocontainer.Startable;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.qualityprofile.RegisterQualityProfiles;
+import org.sonar.server.rule2.index.RuleIndex;
+import org.sonar.server.startup.CopyRequirementsFromCharacteristicsToRules;
+
+/**
+ * Rebuilds the documents of rules and active rules at server startup, once rules and
+ * quality profiles are registered.
+ *
+ * @since 4.4
+ */
+public class ReindexRules implements Startable {
+
+  private final DbClient dbClient;
+  private final RuleIndex index;
+
+  /**
+   * @param registerRules used only to be started after registration of rules
+   * @param registerQualityProfiles used only to be started after registration of quality profiles
+   * @param copyRequirements used only to be started after migration of debt requirements
+   */
+  public ReindexRules(DbClient dbClient, RuleIndex index, RegisterRules registerRules, RegisterQualityProfiles registerQualityProfiles,
+                      CopyRequirementsFromCharacteristicsToRules copyRequirements) {
+    this.dbClient = dbClient;
+    this.index = index;
+  }
+
+  @Override
+  public void start() {
+    DbSession session = dbClient.openSession(false);
+    try {
+      index.reindex(session);
+    } finally {
+      session.close();
+    }
+  }
+
+  @Override
+  public void stop() {
+    // nothing to do
+  }
+}
@@ -19,9 +19,13 @@
  */
 package org.sonar.server.rule2.index;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -35,9 +39,12 @@ import org.elasticsearch.search.facet.terms.TermsFacet;
 import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rule.RuleStatus;
 import org.sonar.core.cluster.WorkQueue;
+import org.sonar.core.persistence.DbSession;
 import org.sonar.core.rule.RuleDto;
 import org.sonar.server.es.ESNode;
 import org.sonar.server.rule2.Rule;
@@ -76,8 +83,16 @@ public class RuleIndex extends BaseIndex<Rule, RuleDto, RuleKey> {
     RuleNormalizer.RuleField.SUB_CHARACTERISTIC.key());
 
 
+  private static final Logger LOG = LoggerFactory.getLogger(RuleIndex.class);
+
+  @VisibleForTesting
+  static final int REINDEX_BULK_SIZE = 500;
+
+  private final RuleNormalizer ruleNormalizer;
+
   public RuleIndex(RuleNormalizer normalizer, WorkQueue workQueue, ESNode node) {
     super(new RuleIndexDefinition(), normalizer, workQueue, node);
+    this.ruleNormalizer = normalizer;
   }
 
   protected String getKeyValue(RuleKey key) {
@@ -313,6 +328,53 @@ public class RuleIndex extends BaseIndex<Rule, RuleDto, RuleKey> {
     return new RuleDoc(response.getSource());
   }
 
+  /**
+   * Replaces the documents of all the rules, including their parameters and active rules, with
+   * documents built from a few streaming queries. Documents are sent by bulks of {@link #REINDEX_BULK_SIZE}.
+   */
+  public void reindex(DbSession session) {
+    LOG.info("Reindex rules");
+    ReindexFeeder feeder = new ReindexFeeder();
+    ruleNormalizer.normalizeAll(session, feeder);
+    feeder.flush();
+    refresh();
+    LOG.info("{} rules reindexed in {} ms ({} docs/s)", new Object[] {feeder.count, feeder.elapsedMs(), feeder.throughput()});
+  }
+
+  private class ReindexFeeder implements RuleNormalizer.DocumentHandler {
+    private final long startedAt = System.currentTimeMillis();
+    private BulkRequest bulk = new BulkRequest();
+    private int count = 0;
+
+    @Override
+    public void handle(RuleKey key, XContentBuilder document) {
+      bulk.add(new IndexRequest(getIndexName(), getIndexType(), getKeyValue(key)).source(document));
+      count++;
+      if (bulk.numberOfActions() >= REINDEX_BULK_SIZE) {
+        flush();
+        LOG.info("{} rules reindexed ({} docs/s)", count, throughput());
+      }
+    }
+
+    void flush() {
+      if (bulk.numberOfActions() > 0) {
+        BulkResponse response = getClient().bulk(bulk).actionGet();
+        if (response.hasFailures()) {
+          LOG.error("Could not reindex some rules: {}", response.buildFailureMessage());
+        }
+        bulk = new BulkRequest();
+      }
+    }
+
+    long elapsedMs() {
+      return System.currentTimeMillis() - startedAt;
+    }
+
+    long throughput() {
+      return count * 1000L / Math.max(1L, elapsedMs());
+    }
+  }
+
   public Set<String> terms(String... fields) {
     Set<String> tags = new HashSet<String>();
 
@@ -19,16 +19,32 @@
  */
 package org.sonar.server.rule2.index;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.check.Cardinality;
 import org.sonar.core.persistence.DbSession;
+import org.sonar.core.qualityprofile.db.ActiveRuleDto;
+import org.sonar.core.qualityprofile.db.ActiveRuleKey;
+import org.sonar.core.qualityprofile.db.ActiveRuleParamDto;
+import org.sonar.core.qualityprofile.db.QualityProfileDto;
+import org.sonar.core.qualityprofile.db.QualityProfileKey;
 import org.sonar.core.rule.RuleDto;
 import org.sonar.core.rule.RuleParamDto;
 import org.sonar.server.db.DbClient;
+import org.sonar.server.qualityprofile.index.ActiveRuleNormalizer;
 import org.sonar.server.search.BaseNormalizer;
 
+import javax.annotation.CheckForNull;
+
+import java.io.IOException;
+import java.util.Map;
+
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
 public class RuleNormalizer extends BaseNormalizer<RuleDto, RuleKey> {
@@ -92,8 +108,18 @@ public class RuleNormalizer extends BaseNormalizer<RuleDto, RuleKey> {
     }
   }
 
-  public RuleNormalizer(DbClient db) {
+  /**
+   * Receives the complete documents built by {@link #normalizeAll(DbSession, DocumentHandler)}
+   */
+  public interface DocumentHandler {
+    void handle(RuleKey key, XContentBuilder document);
+  }
+
+  private final ActiveRuleNormalizer activeRuleNormalizer;
+
+  public RuleNormalizer(DbClient db, ActiveRuleNormalizer activeRuleNormalizer) {
     super(db);
+    this.activeRuleNormalizer = activeRuleNormalizer;
   }
 
   @Override
@@ -110,48 +136,7 @@ public class RuleNormalizer extends BaseNormalizer<RuleDto, RuleKey> {
   public UpdateRequest normalize(RuleDto rule) {
     try {
       XContentBuilder document = jsonBuilder().startObject();
-      indexField(RuleField.KEY.key(), rule.getRuleKey(), document);
-      indexField(RuleField.REPOSITORY.key(), rule.getRepositoryKey(), document);
-      indexField(RuleField.NAME.key(), rule.getName(), document);
-      indexField(RuleField.CREATED_AT.key(), rule.getCreatedAt(), document);
-      indexField(RuleField.UPDATED_AT.key(), rule.getUpdatedAt(), document);
-      indexField(RuleField.HTML_DESCRIPTION.key(), rule.getDescription(), document);
-      indexField(RuleField.SEVERITY.key(), rule.getSeverityString(), document);
-      indexField(RuleField.STATUS.key(), rule.getStatus(), document);
-      indexField(RuleField.LANGUAGE.key(), rule.getLanguage(), document);
-      indexField(RuleField.INTERNAL_KEY.key(), rule.getConfigKey(), document);
-      indexField(RuleField.TEMPLATE.key(), rule.getCardinality() == Cardinality.MULTIPLE, document);
-
-      //TODO Change on key when available
-      String subChar = null;
-      if(rule.getDefaultSubCharacteristicId() != null){
-        subChar = rule.getDefaultSubCharacteristicId().toString();
-      }
-      if(rule.getSubCharacteristicId() != null){
-        subChar = rule.getSubCharacteristicId().toString();
-      }
-      indexField(RuleField.SUB_CHARACTERISTIC.key(),subChar,document);
-
-      String dType = null, dCoefficient = null, dOffset = null;
-      if(rule.getDefaultRemediationFunction() != null){
-        dType = rule.getDefaultRemediationFunction();
-        dCoefficient = rule.getDefaultRemediationCoefficient();
-        dOffset= rule.getDefaultRemediationOffset();
-      }
-      if(rule.getRemediationFunction() != null){
-        dType = rule.getRemediationFunction();
-        dCoefficient = rule.getRemediationCoefficient();
-        dOffset= rule.getRemediationOffset();
-      }
-      indexField(RuleField.DEBT_FUNCTION_TYPE.key(), dType, document);
-      indexField(RuleField.DEBT_FUNCTION_COEFFICIENT.key(), dCoefficient, document);
-      indexField(RuleField.DEBT_FUNCTION_OFFSET.key(), dOffset, document);
-
-
-
-
-      document.array(RuleField.TAGS.key(), rule.getTags().toArray(new String[rule.getTags().size()]));
-      document.array(RuleField.SYSTEM_TAGS.key(), rule.getSystemTags().toArray(new String[rule.getSystemTags().size()]));
+      writeFields(rule, document);
       document.startObject(RuleField.PARAMS.key()).endObject();
       document.startObject(RuleField.ACTIVE.key()).endObject();
 
@@ -167,17 +152,175 @@ public class RuleNormalizer extends BaseNormalizer<RuleDto, RuleKey> {
     }
   }
 
+  /**
+   * Set-based normalization of all the rules. Parameters, profiles, active rules and their parameters are
+   * loaded with one query each, then rules are streamed and the complete document of each rule, including
+   * its parameters and active rules, is passed to the handler. The number of queries does not depend
+   * on the number of rules.
+   */
+  public void normalizeAll(DbSession session, DocumentHandler handler) {
+    RuleDocumentLoader loader = new RuleDocumentLoader(handler);
+    loader.load(session);
+    db().ruleDao().findAll(session, loader);
+  }
+
+  private void writeFields(RuleDto rule, XContentBuilder document) throws IOException {
+    indexField(RuleField.KEY.key(), rule.getRuleKey(), document);
+    indexField(RuleField.REPOSITORY.key(), rule.getRepositoryKey(), document);
+    indexField(RuleField.NAME.key(), rule.getName(), document);
+    indexField(RuleField.CREATED_AT.key(), rule.getCreatedAt(), document);
+    indexField(RuleField.UPDATED_AT.key(), rule.getUpdatedAt(), document);
+    indexField(RuleField.HTML_DESCRIPTION.key(), rule.getDescription(), document);
+    indexField(RuleField.SEVERITY.key(), rule.getSeverityString(), document);
+    indexField(RuleField.STATUS.key(), rule.getStatus(), document);
+    indexField(RuleField.LANGUAGE.key(), rule.getLanguage(), document);
+    indexField(RuleField.INTERNAL_KEY.key(), rule.getConfigKey(), document);
+    indexField(RuleField.TEMPLATE.key(), rule.getCardinality() == Cardinality.MULTIPLE, document);
+
+    //TODO Change on key when available
+    String subChar = null;
+    if(rule.getDefaultSubCharacteristicId() != null){
+      subChar = rule.getDefaultSubCharacteristicId().toString();
+    }
+    if(rule.getSubCharacteristicId() != null){
+      subChar = rule.getSubCharacteristicId().toString();
+    }
+    indexField(RuleField.SUB_CHARACTERISTIC.key(),subChar,document);
+
+    String dType = null, dCoefficient = null, dOffset = null;
+    if(rule.getDefaultRemediationFunction() != null){
+      dType = rule.getDefaultRemediationFunction();
+      dCoefficient = rule.getDefaultRemediationCoefficient();
+      dOffset= rule.getDefaultRemediationOffset();
+    }
+    if(rule.getRemediationFunction() != null){
+      dType = rule.getRemediationFunction();
+      dCoefficient = rule.getRemediationCoefficient();
+      dOffset= rule.getRemediationOffset();
+    }
+    indexField(RuleField.DEBT_FUNCTION_TYPE.key(), dType, document);
+    indexField(RuleField.DEBT_FUNCTION_COEFFICIENT.key(), dCoefficient, document);
+    indexField(RuleField.DEBT_FUNCTION_OFFSET.key(), dOffset, document);
+
+    document.array(RuleField.TAGS.key(), rule.getTags().toArray(new String[rule.getTags().size()]));
+    document.array(RuleField.SYSTEM_TAGS.key(), rule.getSystemTags().toArray(new String[rule.getSystemTags().size()]));
+  }
+
+  private void writeParam(RuleParamDto param, XContentBuilder document) throws IOException {
+    document.startObject(param.getName());
+    indexField(RuleParamField.NAME.key(), param.getName(), document);
+    indexField(RuleParamField.TYPE.key(), param.getType(), document);
+    indexField(RuleParamField.DESCRIPTION.key(), param.getDescription(), document);
+    indexField(RuleParamField.DEFAULT_VALUE.key(), param.getDefaultValue(), document);
+    document.endObject();
+  }
+
+  /**
+   * Holds everything but the rules themselves, indexed by rule id, and builds the document
+   * of each streamed rule.
+   */
+  private class RuleDocumentLoader implements ResultHandler {
+    private final DocumentHandler handler;
+    private final Multimap<Integer, RuleParamDto> paramsByRuleId = ArrayListMultimap.create();
+    private final Map<Integer, QualityProfileKey> profileKeysById = Maps.newHashMap();
+    private final Multimap<Integer, ActiveRuleDto> activeRulesByRuleId = ArrayListMultimap.create();
+    private final Map<Integer, Integer> profileIdsByActiveRuleId = Maps.newHashMap();
+    private final Multimap<Integer, ActiveRuleParamDto> activeRuleParamsByActiveRuleId = ArrayListMultimap.create();
+
+    RuleDocumentLoader(DocumentHandler handler) {
+      this.handler = handler;
+    }
+
+    void load(DbSession session) {
+      db().ruleDao().findAllRuleParams(session, new ResultHandler() {
+        @Override
+        public void handleResult(ResultContext context) {
+          RuleParamDto param = (RuleParamDto) context.getResultObject();
+          paramsByRuleId.put(param.getRuleId(), param);
+        }
+      });
+      for (QualityProfileDto profile : db().qualityProfileDao().selectAll(session)) {
+        profileKeysById.put(profile.getId(), profile.getKey());
+      }
+      db().activeRuleDao().findAll(session, new ResultHandler() {
+        @Override
+        public void handleResult(ResultContext context) {
+          ActiveRuleDto activeRule = (ActiveRuleDto) context.getResultObject();
+          activeRulesByRuleId.put(activeRule.getRulId(), activeRule);
+          profileIdsByActiveRuleId.put(activeRule.getId(), activeRule.getProfileId());
+        }
+      });
+      db().activeRuleDao().findAllParams(session, new ResultHandler() {
+        @Override
+        public void handleResult(ResultContext context) {
+          ActiveRuleParamDto param = (ActiveRuleParamDto) context.getResultObject();
+          activeRuleParamsByActiveRuleId.put(param.getActiveRuleId(), param);
+        }
+      });
+    }
+
+    @Override
+    public void handleResult(ResultContext context) {
+      RuleDto rule = (RuleDto) context.getResultObject();
+      try {
+        handler.handle(rule.getKey(), document(rule));
+      } catch (IOException e) {
+        throw new IllegalStateException(String.format("Could not normalize RuleDto with key %s", rule.getKey().toString()), e);
+      }
+    }
+
+    private XContentBuilder document(RuleDto rule) throws IOException {
+      XContentBuilder document = jsonBuilder().startObject();
+      writeFields(rule, document);
+
+      document.startObject(RuleField.PARAMS.key());
+      for (RuleParamDto param : paramsByRuleId.get(rule.getId())) {
+        writeParam(param, document);
+      }
+      document.endObject();
+
+      document.startObject(RuleField.ACTIVE.key());
+      for (ActiveRuleDto activeRule : activeRulesByRuleId.get(rule.getId())) {
+        QualityProfileKey profileKey = profileKeysById.get(activeRule.getProfileId());
+        if (profileKey != null) {
+          ActiveRuleKey key = ActiveRuleKey.of(profileKey, rule.getKey());
+          activeRule.setKey(key);
+          document.startObject(key.toString());
+          activeRuleNormalizer.writeFields(activeRule, parentKey(activeRule, rule), document);
+          document.startObject(ActiveRuleNormalizer.ActiveRuleField.PARAMS.key());
+          for (ActiveRuleParamDto param : activeRuleParamsByActiveRuleId.get(activeRule.getId())) {
+            activeRuleNormalizer.writeParam(param, document);
+          }
+          document.endObject();
+          document.endObject();
+        }
+      }
+      document.endObject();
+
+      return document.endObject();
+    }
+
+    /**
+     * The parent of an active rule activates the same rule in the parent profile
+     */
+    @CheckForNull
+    private ActiveRuleKey parentKey(ActiveRuleDto activeRule, RuleDto rule) {
+      if (activeRule.getParentId() != null) {
+        QualityProfileKey parentProfileKey = profileKeysById.get(profileIdsByActiveRuleId.get(activeRule.getParentId()));
+        if (parentProfileKey != null) {
+          return ActiveRuleKey.of(parentProfileKey, rule.getKey());
+        }
+      }
+      return null;
+    }
+  }
+
   public UpdateRequest normalize(RuleParamDto param, RuleKey key) {
     try {
      /* Normalize the params */
       XContentBuilder document = jsonBuilder().startObject();
       document.startObject(RuleField.PARAMS.key());
-      document.startObject(param.getName());
-      indexField(RuleParamField.NAME.key(), param.getName(), document);
-      indexField(RuleParamField.TYPE.key(), param.getType(), document);
-      indexField(RuleParamField.DESCRIPTION.key(), param.getDescription(), document);
-      indexField(RuleParamField.DEFAULT_VALUE.key(), param.getDefaultValue(), document);
-      document.endObject();
+      writeParam(param, document);
       document.endObject();
 
     /* Creating updateRequest */
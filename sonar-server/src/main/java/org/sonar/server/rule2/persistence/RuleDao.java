@@ -115,6 +115,13 @@ public class RuleDao extends BaseDao<RuleMapper, RuleDto, RuleKey> {
     return mapper(session).selectAll();
   }
 
+  /**
+   * Streams all the rules to the given handler, without loading them in memory.
+   */
+  public void findAll(DbSession session, ResultHandler handler) {
+    session.select("org.sonar.core.rule.RuleMapper.selectAll", handler);
+  }
+
   public List<RuleDto> findByEnabledAndNotManual(DbSession session) {
     return mapper(session).selectEnablesAndNonManual();
   }
@@ -153,6 +160,10 @@ public class RuleDao extends BaseDao<RuleMapper, RuleDto, RuleKey> {
     return mapper(session).selectAllParams();
   }
 
+  public void findAllRuleParams(DbSession session, ResultHandler handler) {
+    session.select("org.sonar.core.rule.RuleMapper.selectAllParams", handler);
+  }
+
   public List<RuleParamDto> findRuleParamsByRuleKey(RuleKey key, DbSession session) {
     return mapper(session).selectParamsByRuleKey(key);
   }
@@ -19,7 +19,11 @@
  */
 package org.sonar.server.search;
 
+import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
@@ -36,11 +40,15 @@ import org.slf4j.LoggerFactory;
 import org.sonar.core.cluster.WorkQueue;
 import org.sonar.core.db.Dto;
 import org.sonar.server.es.ESNode;
+import org.sonar.server.search.action.IndexAction;
+
+import javax.annotation.CheckForNull;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 public abstract class BaseIndex<D, E extends Dto<K>, K extends Serializable>
@@ -192,10 +200,19 @@ public abstract class BaseIndex<D, E extends Dto<K>, K extends Serializable>
 
   protected void updateDocument(UpdateRequest request, K key) throws Exception {
     LOG.debug("UPDATE _id:{} in index {}", key, this.getIndexName());
-    getClient().update(request
+    getClient().update(prepareUpdate(request, key)).get();
+  }
+
+  protected UpdateRequest prepareUpdate(UpdateRequest request, K key) {
+    return request
       .index(this.getIndexName())
       .id(this.getKeyValue(key))
-      .type(this.getIndexType())).get();
+      .type(this.getIndexType());
+  }
+
+  @CheckForNull
+  protected DeleteRequest prepareDelete(K key) {
+    return new DeleteRequest(this.getIndexName(), this.getIndexType(), this.getKeyValue(key));
   }
 
 
@@ -271,6 +288,59 @@ public abstract class BaseIndex<D, E extends Dto<K>, K extends Serializable>
     }
   }
 
+  /* Bulk methods */
+
+  @Override
+  @CheckForNull
+  public ActionRequest<?> prepareRequest(IndexAction.Method method, Object obj, K key) {
+    if (method == IndexAction.Method.DELETE) {
+      // same as delete(Object, K)
+      return null;
+    }
+    if (this.normalizer.canNormalize(obj.getClass(), key.getClass())) {
+      return prepareUpdate(this.normalizer.normalizeOther(obj, key), key);
+    }
+    throw new IllegalStateException("Index " + this.getIndexName() +
+      " cannot execute " + method + " for class: " + obj.getClass());
+  }
+
+  @Override
+  public ActionRequest<?> prepareRequestByKey(IndexAction.Method method, K key) {
+    if (method == IndexAction.Method.DELETE) {
+      return prepareDelete(key);
+    }
+    return prepareUpdate(normalizer.normalize(key), key);
+  }
+
+  @Override
+  public ActionRequest<?> prepareRequestByDto(IndexAction.Method method, E dto) {
+    if (method == IndexAction.Method.DELETE) {
+      return prepareDelete(dto.getKey());
+    }
+    return prepareUpdate(normalizer.normalize(dto), dto.getKey());
+  }
+
+  @Override
+  public void executeBulk(List<IndexAction> actions) {
+    BulkRequest bulk = new BulkRequest().refresh(true);
+    for (IndexAction action : actions) {
+      try {
+        ActionRequest<?> request = action.prepareRequest();
+        if (request != null) {
+          bulk.add(request);
+        }
+      } catch (Exception e) {
+        LOG.error("Could not prepare " + action.getMethod() + " of " + action + " for index " + this.getIndexName(), e);
+      }
+    }
+    if (bulk.numberOfActions() > 0) {
+      BulkResponse response = getClient().bulk(bulk).actionGet();
+      if (response.hasFailures()) {
+        LOG.error("Could not index some documents in index {}: {}", this.getIndexName(), response.buildFailureMessage());
+      }
+    }
+  }
+
   /* Synchronization methods */
 
   Long lastSynch = 0L;
@@ -19,6 +19,7 @@
  */
 package org.sonar.server.search;
 
+import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.index.query.FilterBuilder;
@@ -26,9 +27,12 @@ import org.elasticsearch.index.query.QueryBuilder;
 import org.picocontainer.Startable;
 import org.sonar.api.ServerComponent;
 import org.sonar.core.db.Dto;
+import org.sonar.server.search.action.IndexAction;
 
 import javax.annotation.CheckForNull;
+
 import java.io.Serializable;
+import java.util.List;
 
 public interface Index<D, E extends Dto<K>, K extends Serializable> extends Startable, ServerComponent {
 
@@ -62,6 +66,18 @@ public interface Index<D, E extends Dto<K>, K extends Serializable> extends Star
 
   void deleteByDto(E dto);
 
+  @CheckForNull
+  ActionRequest<?> prepareRequest(IndexAction.Method method, Object obj, K key);
+
+  ActionRequest<?> prepareRequestByKey(IndexAction.Method method, K key);
+
+  ActionRequest<?> prepareRequestByDto(IndexAction.Method method, E dto);
+
+  /**
+   * Sends the requests of the actions in a single bulk request. Changes are visible to searches once this method returns.
+   */
+  void executeBulk(List<IndexAction> actions);
+
   Long getLastSynchronization();
 
   void setLastSynchronization(Long time);
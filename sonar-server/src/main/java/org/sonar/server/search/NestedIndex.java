@@ -19,6 +19,7 @@
  */
 package org.sonar.server.search;
 
+import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.Client;
 import org.slf4j.Logger;
@@ -69,10 +70,21 @@ public abstract class NestedIndex<D, E extends Dto<K>, K extends Serializable>
   @Override
   protected void updateDocument(UpdateRequest request, K key) throws Exception {
     LOG.debug("UPDATE _id:{} in index {}", key, this.getIndexName());
-    getClient().update(request
+    getClient().update(prepareUpdate(request, key)).get();
+  }
+
+  @Override
+  protected UpdateRequest prepareUpdate(UpdateRequest request, K key) {
+    return request
       .index(this.getIndexName())
       .id(this.getKeyValue(key))
-      .type(this.getParentIndexType())).get();
+      .type(this.getParentIndexType());
+  }
+
+  @Override
+  protected DeleteRequest prepareDelete(K key) {
+    // the key designates the parent document, which must not be deleted with the nested one
+    return null;
   }
 
 }
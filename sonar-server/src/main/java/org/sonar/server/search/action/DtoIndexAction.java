@@ -19,8 +19,11 @@
  */
 package org.sonar.server.search.action;
 
+import org.elasticsearch.action.ActionRequest;
 import org.sonar.core.db.Dto;
 
+import java.util.Arrays;
+
 public class DtoIndexAction<E extends Dto> extends IndexAction {
 
   private final E item;
@@ -48,6 +51,16 @@ public class DtoIndexAction<E extends Dto> extends IndexAction {
     }
   }
 
+  @Override
+  public ActionRequest<?> prepareRequest() {
+    return index.prepareRequestByDto(this.getMethod(), this.item);
+  }
+
+  @Override
+  public Object getMergeKey() {
+    return Arrays.asList(getClass(), this.getIndexType(), this.getMethod(), this.item.getKey());
+  }
+
   @Override
   public String toString() {
     return "{DtoIndexItem {key: " + item.getKey() + "}";
@@ -19,6 +19,10 @@
  */
 package org.sonar.server.search.action;
 
+import org.elasticsearch.action.ActionRequest;
+
+import javax.annotation.CheckForNull;
+
 import java.io.Serializable;
 
 public class EmbeddedIndexAction<K extends Serializable> extends IndexAction {
@@ -51,4 +55,17 @@ public class EmbeddedIndexAction<K extends Serializable> extends IndexAction {
         " on key: "+ this.key, e);
     }
   }
+
+  @Override
+  @CheckForNull
+  public ActionRequest<?> prepareRequest() {
+    return index.prepareRequest(this.getMethod(), this.item, this.key);
+  }
+
+  @Override
+  @CheckForNull
+  public Object getMergeKey() {
+    // embedded items of a same document are all indexed
+    return null;
+  }
 }
@@ -19,9 +19,12 @@
  */
 package org.sonar.server.search.action;
 
+import org.elasticsearch.action.ActionRequest;
 import org.sonar.core.cluster.QueueAction;
 import org.sonar.server.search.Index;
 
+import javax.annotation.CheckForNull;
+
 public abstract class IndexAction extends QueueAction {
 
   public enum Method {
@@ -58,6 +61,18 @@ public abstract class IndexAction extends QueueAction {
   @Override
   public abstract void doExecute();
 
+  /**
+   * Request to be sent to Elasticsearch in a bulk, or null if there is nothing to index.
+   */
+  @CheckForNull
+  public abstract ActionRequest<?> prepareRequest();
+
+  /**
+   * Actions with the same merge key can be replaced by the last one of them. Null if the action can not be merged.
+   */
+  @CheckForNull
+  public abstract Object getMergeKey();
+
   public void setIndex(Index index) {
     this.index = index;
   }
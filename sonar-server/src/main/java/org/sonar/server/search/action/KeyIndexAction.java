@@ -19,7 +19,10 @@
  */
 package org.sonar.server.search.action;
 
+import org.elasticsearch.action.ActionRequest;
+
 import java.io.Serializable;
+import java.util.Arrays;
 
 public class KeyIndexAction<K extends Serializable> extends IndexAction {
 
@@ -47,4 +50,14 @@ public class KeyIndexAction<K extends Serializable> extends IndexAction {
         " on key: "+ this.key, e);
     }
   }
+
+  @Override
+  public ActionRequest<?> prepareRequest() {
+    return index.prepareRequestByKey(this.getMethod(), this.key);
+  }
+
+  @Override
+  public Object getMergeKey() {
+    return Arrays.asList(getClass(), this.getIndexType(), this.getMethod(), this.key);
+  }
 }
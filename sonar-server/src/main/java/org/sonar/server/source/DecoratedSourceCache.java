@@ -0,0 +1,115 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.sonar.api.ServerComponent;
+
+import javax.annotation.CheckForNull;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lines of source code decorated with HTML, by snapshot id. A new analysis creates a new snapshot,
+ * so entries never become stale: they are evicted, least recently used first, when the total size
+ * of the cached lines exceeds the limit.
+ *
+ * @since 4.4
+ */
+public class DecoratedSourceCache implements ServerComponent {
+
+  /**
+   * Maximum number of cached characters
+   */
+  static final long DEFAULT_MAX_SIZE = 16L * 1024 * 1024;
+
+  // approximate size of the list entry and of the String instance of each line
+  private static final int LINE_OVERHEAD = 16;
+
+  private final long maxSize;
+  private final LinkedHashMap<Long, List<String>> linesBySnapshotId = new LinkedHashMap<Long, List<String>>(16, 0.75f, true);
+  private long size = 0L;
+
+  public DecoratedSourceCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  @VisibleForTesting
+  DecoratedSourceCache(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  @CheckForNull
+  synchronized List<String> get(long snapshotId) {
+    return linesBySnapshotId.get(snapshotId);
+  }
+
+  /**
+   * Whether the decorated lines of a source of the given length are small enough to be cached. HTML tags
+   * roughly double the size of the source.
+   */
+  boolean accepts(int sourceLength) {
+    return 2L * sourceLength <= maxSize;
+  }
+
+  synchronized List<String> put(long snapshotId, List<String> lines) {
+    List<String> unmodifiableLines = Collections.unmodifiableList(lines);
+    long linesSize = sizeOf(lines);
+    if (linesSize <= maxSize) {
+      List<String> previous = linesBySnapshotId.put(snapshotId, unmodifiableLines);
+      if (previous != null) {
+        size -= sizeOf(previous);
+      }
+      size += linesSize;
+      evict();
+    }
+    return unmodifiableLines;
+  }
+
+  synchronized void clear() {
+    linesBySnapshotId.clear();
+    size = 0L;
+  }
+
+  @VisibleForTesting
+  synchronized long size() {
+    return size;
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<Long, List<String>>> it = linesBySnapshotId.entrySet().iterator();
+    while (size > maxSize && it.hasNext()) {
+      size -= sizeOf(it.next().getValue());
+      it.remove();
+    }
+  }
+
+  private static long sizeOf(List<String> lines) {
+    long result = 0L;
+    for (String line : lines) {
+      result += line.length() + LINE_OVERHEAD;
+    }
+    return result;
+  }
+}
@@ -42,20 +42,24 @@ public class HtmlSourceDecorator implements ServerComponent {
 
   private final SnapshotSourceDao snapshotSourceDao;
   private final SnapshotDataDao snapshotDataDao;
+  private final DecoratedSourceCache cache;
 
-  public HtmlSourceDecorator(MyBatis mybatis, SnapshotSourceDao snapshotSourceDao, SnapshotDataDao snapshotDataDao) {
+  public HtmlSourceDecorator(MyBatis mybatis, SnapshotSourceDao snapshotSourceDao, SnapshotDataDao snapshotDataDao, DecoratedSourceCache cache) {
     this.mybatis = mybatis;
     this.snapshotSourceDao = snapshotSourceDao;
     this.snapshotDataDao = snapshotDataDao;
+    this.cache = cache;
   }
 
   public List<String> getDecoratedSourceAsHtml(String componentKey, @Nullable Integer from, @Nullable Integer to) {
     SqlSession session = mybatis.openSession(false);
     try {
-      Collection<SnapshotDataDto> snapshotDataEntries = snapshotDataDao.selectSnapshotDataByComponentKey(componentKey, highlightingDataTypes(), session);
-      if (!snapshotDataEntries.isEmpty()) {
-        String snapshotSource = snapshotSourceDao.selectSnapshotSourceByComponentKey(componentKey, session);
-        return decorate(snapshotSource, snapshotDataEntries, from, to);
+      Long snapshotId = snapshotSourceDao.selectSnapshotIdByComponentKey(componentKey, session);
+      if (snapshotId != null) {
+        List<String> decoratedSource = getDecoratedSourceAsHtml(snapshotId, from, to, session);
+        if (decoratedSource != null) {
+          return decoratedSource;
+        }
       }
       return Collections.emptyList();
     } finally {
@@ -65,28 +69,48 @@ public class HtmlSourceDecorator implements ServerComponent {
 
   @CheckForNull
   public List<String> getDecoratedSourceAsHtml(long snapshotId) {
-    Collection<SnapshotDataDto> snapshotDataEntries = snapshotDataDao.selectSnapshotData(snapshotId, highlightingDataTypes());
+    SqlSession session = mybatis.openSession(false);
+    try {
+      return getDecoratedSourceAsHtml(snapshotId, null, null, session);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  @CheckForNull
+  private List<String> getDecoratedSourceAsHtml(long snapshotId, @Nullable Integer from, @Nullable Integer to, SqlSession session) {
+    List<String> decoratedSource = cache.get(snapshotId);
+    if (decoratedSource != null) {
+      return subList(decoratedSource, from, to);
+    }
+    Collection<SnapshotDataDto> snapshotDataEntries = snapshotDataDao.selectSnapshotData(snapshotId, highlightingDataTypes(), session);
     if (!snapshotDataEntries.isEmpty()) {
-      String snapshotSource = snapshotSourceDao.selectSnapshotSource(snapshotId);
+      String snapshotSource = snapshotSourceDao.selectSnapshotSource(snapshotId, session);
       if (snapshotSource != null) {
-        return decorate(snapshotSource, snapshotDataEntries, null, null);
+        if (cache.accepts(snapshotSource.length())) {
+          return subList(cache.put(snapshotId, decorate(snapshotSource, snapshotDataEntries, null, null)), from, to);
+        }
+        // too large to be cached, only the requested lines are rendered
+        return decorate(snapshotSource, snapshotDataEntries, from, to);
       }
     }
     return null;
   }
 
-  @CheckForNull
-  private List<String> decorate(@Nullable String snapshotSource, Collection<SnapshotDataDto> snapshotDataEntries, @Nullable Integer from, @Nullable Integer to) {
-    if (snapshotSource != null) {
-      DecorationDataHolder decorationDataHolder = new DecorationDataHolder();
-      for (SnapshotDataDto snapshotDataEntry : snapshotDataEntries) {
-        loadSnapshotData(decorationDataHolder, snapshotDataEntry);
-      }
-
-      HtmlTextDecorator textDecorator = new HtmlTextDecorator();
-      return textDecorator.decorateTextWithHtml(snapshotSource, decorationDataHolder, from, to);
+  private List<String> decorate(String snapshotSource, Collection<SnapshotDataDto> snapshotDataEntries, @Nullable Integer from, @Nullable Integer to) {
+    DecorationDataHolder decorationDataHolder = new DecorationDataHolder();
+    for (SnapshotDataDto snapshotDataEntry : snapshotDataEntries) {
+      loadSnapshotData(decorationDataHolder, snapshotDataEntry);
     }
-    return null;
+
+    HtmlTextDecorator textDecorator = new HtmlTextDecorator();
+    return textDecorator.decorateTextWithHtml(snapshotSource, decorationDataHolder, from, to);
+  }
+
+  private static List<String> subList(List<String> lines, @Nullable Integer from, @Nullable Integer to) {
+    int fromIndex = from == null ? 0 : Math.min(Math.max(from - 1, 0), lines.size());
+    int toIndex = to == null ? lines.size() : Math.max(Math.min(to, lines.size()), fromIndex);
+    return lines.subList(fromIndex, toIndex);
   }
 
   private List<String> highlightingDataTypes() {
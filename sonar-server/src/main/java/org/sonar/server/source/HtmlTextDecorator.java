@@ -74,7 +74,8 @@ class HtmlTextDecorator {
           currentLine++;
           currentHtmlLine = new StringBuilder();
         }
-        addCharToCurrentLine(charsReader, currentHtmlLine, decorationDataHolder);
+        // lines before the requested range are parsed only to track the opened tags
+        addCharToCurrentLine(charsReader, currentHtmlLine, decorationDataHolder, canAddLine(currentLine, from));
       }
 
       closeCurrentSyntaxTags(charsReader, currentHtmlLine);
@@ -98,24 +99,25 @@ class HtmlTextDecorator {
     return decoratedHtmlLines;
   }
 
-  private void addCharToCurrentLine(CharactersReader charsReader, StringBuilder currentHtmlLine, DecorationDataHolder decorationDataHolder) {
-    if (shouldStartNewLine(charsReader)) {
+  private void addCharToCurrentLine(CharactersReader charsReader, StringBuilder currentHtmlLine, DecorationDataHolder decorationDataHolder,
+                                    boolean render) {
+    if (render && shouldStartNewLine(charsReader)) {
       if (shouldReopenPendingTags(charsReader)) {
         reopenCurrentSyntaxTags(charsReader, currentHtmlLine);
       }
     }
 
     int numberOfTagsToClose = getNumberOfTagsToClose(charsReader.getCurrentIndex(), decorationDataHolder);
-    closeCompletedTags(charsReader, numberOfTagsToClose, currentHtmlLine);
+    closeCompletedTags(charsReader, numberOfTagsToClose, currentHtmlLine, render);
 
-    if (shouldClosePendingTags(charsReader)) {
+    if (render && shouldClosePendingTags(charsReader)) {
       closeCurrentSyntaxTags(charsReader, currentHtmlLine);
     }
 
     Collection<String> tagsToOpen = getTagsToOpen(charsReader.getCurrentIndex(), decorationDataHolder);
-    openNewTags(charsReader, tagsToOpen, currentHtmlLine);
+    openNewTags(charsReader, tagsToOpen, currentHtmlLine, render);
 
-    if (shouldAppendCharToHtmlOutput(charsReader)) {
+    if (render && shouldAppendCharToHtmlOutput(charsReader)) {
       char currentChar = (char) charsReader.getCurrentValue();
       currentHtmlLine.append(normalize(currentChar));
     }
@@ -191,17 +193,21 @@ class HtmlTextDecorator {
   }
 
   private void closeCompletedTags(CharactersReader charactersReader, int numberOfTagsToClose,
-                                  StringBuilder decoratedText) {
+                                  StringBuilder decoratedText, boolean render) {
     for (int i = 0; i < numberOfTagsToClose; i++) {
-      injectClosingHtml(decoratedText);
+      if (render) {
+        injectClosingHtml(decoratedText);
+      }
       charactersReader.removeLastOpenTag();
     }
   }
 
   private void openNewTags(CharactersReader charactersReader, Collection<String> tagsToOpen,
-                           StringBuilder decoratedText) {
+                           StringBuilder decoratedText, boolean render) {
     for (String tagToOpen : tagsToOpen) {
-      injectOpeningHtmlForRule(tagToOpen, decoratedText);
+      if (render) {
+        injectOpeningHtmlForRule(tagToOpen, decoratedText);
+      }
       charactersReader.registerOpenTag(tagToOpen);
     }
   }
@@ -40,12 +40,13 @@ import org.sonar.core.component.SnapshotPerspectives;
 import org.sonar.core.measure.MeasureFilterEngine;
 import org.sonar.core.measure.MeasureFilterResult;
 import org.sonar.core.persistence.Database;
-import org.sonar.core.preview.PreviewCache;
 import org.sonar.core.purge.PurgeDao;
+import org.sonar.core.resource.ResourceIndexDto;
 import org.sonar.core.resource.ResourceIndexerDao;
 import org.sonar.core.resource.ResourceKeyUpdaterDao;
 import org.sonar.core.timemachine.Periods;
 import org.sonar.server.db.migrations.DatabaseMigrator;
+import org.sonar.server.issue.index.IssueIndex;
 import org.sonar.server.platform.Platform;
 import org.sonar.server.platform.ServerIdGenerator;
 import org.sonar.server.platform.ServerSettings;
@@ -336,9 +337,16 @@ public final class JRubyFacade {
     get(ResourceIndexerDao.class).indexResource(resourceId);
   }
 
+  public List<ResourceIndexDto> searchResourceIndex(String text, @Nullable List<String> qualifiers) {
+    return get(ResourceIndexerDao.class).search(text, qualifiers);
+  }
+
   public void deleteResourceTree(long rootProjectId) {
     try {
       get(PurgeDao.class).deleteResourceTree(rootProjectId);
+      // removes the components and the issues of the project from the indexes
+      get(ResourceIndexerDao.class).reloadComponentIndex(rootProjectId);
+      get(IssueIndex.class).indexProject(rootProjectId);
     } catch (RuntimeException e) {
       LoggerFactory.getLogger(JRubyFacade.class).error("Fail to delete resource with ID: " + rootProjectId, e);
       throw e;
@@ -399,10 +407,6 @@ public final class JRubyFacade {
     }
   }
 
-  public byte[] createDatabaseForPreview(@Nullable Long projectId) {
-    return get(PreviewCache.class).getDatabaseForPreview(projectId);
-  }
-
   public String getPeriodLabel(int periodIndex) {
     return get(Periods.class).label(periodIndex);
   }
@@ -25,16 +25,33 @@ import org.sonar.api.utils.text.XmlWriter;
 import org.sonar.server.plugins.MimeTypes;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletResponse;
+
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 
+/**
+ * Response of a web service. When created on a {@link HttpServletResponse}, the output is buffered in memory
+ * until the first flush or until {@link #BUFFER_SIZE} bytes are written, then it is streamed to the servlet.
+ * Status and media type can not be changed once the response is committed. Without servlet, the whole output
+ * is kept in memory.
+ */
 public class ServletResponse implements Response {
 
+  static final int BUFFER_SIZE = 64 * 1024;
+
   public static class ServletStream implements Stream {
     private String mediaType;
     private int httpStatus = 200;
-    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final HttpServletResponse target;
+    private final BufferedOutput output = new BufferedOutput();
+
+    private ServletStream(@Nullable HttpServletResponse target) {
+      this.target = target;
+    }
 
     @CheckForNull
     public String mediaType() {
@@ -62,17 +79,109 @@ public class ServletResponse implements Response {
       return output;
     }
 
+    /**
+     * Output which is still buffered in memory. It is empty once the response is committed.
+     */
     public String outputAsString() {
-      return output.toString();
+      return output.buffer.toString();
+    }
+
+    public boolean isCommitted() {
+      return output.delegate != null;
     }
 
+    /**
+     * Discards the buffered output. Fails if bytes have already been sent to the servlet.
+     */
     public ServletStream reset() {
-      output.reset();
+      if (isCommitted()) {
+        throw new IllegalStateException("Response is already committed");
+      }
+      output.buffer.reset();
       return this;
     }
+
+    /**
+     * Commits the response, if it is backed by a servlet, and sends the buffered output.
+     */
+    public void flush() {
+      try {
+        output.flush();
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to send response", e);
+      }
+    }
+
+    private class BufferedOutput extends OutputStream {
+      private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      private OutputStream delegate = null;
+
+      @Override
+      public void write(int b) throws IOException {
+        if (delegate != null) {
+          delegate.write(b);
+        } else {
+          buffer.write(b);
+          commitIfFull();
+        }
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        if (delegate != null) {
+          delegate.write(b, off, len);
+        } else {
+          buffer.write(b, off, len);
+          commitIfFull();
+        }
+      }
+
+      @Override
+      public void flush() throws IOException {
+        if (target != null) {
+          commit();
+          delegate.flush();
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        // the servlet output stream is closed by the container
+        flush();
+      }
+
+      private void commitIfFull() throws IOException {
+        if (target != null && buffer.size() >= BUFFER_SIZE) {
+          commit();
+        }
+      }
+
+      private void commit() throws IOException {
+        if (delegate == null) {
+          target.setStatus(httpStatus);
+          if (mediaType != null) {
+            target.setContentType(mediaType);
+          }
+          delegate = target.getOutputStream();
+          buffer.writeTo(delegate);
+          buffer.reset();
+        }
+      }
+    }
   }
 
-  private final ServletStream stream = new ServletStream();
+  private final ServletStream stream;
+
+  public ServletResponse() {
+    this(null);
+  }
+
+  /**
+   * @since 4.4
+   */
+  public ServletResponse(@Nullable HttpServletResponse target) {
+    this.stream = new ServletStream(target);
+  }
 
   @Override
   public JsonWriter newJsonWriter() {
@@ -36,6 +36,7 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletResponse;
 import java.io.OutputStreamWriter;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
@@ -95,6 +96,7 @@ public class WebServiceEngine implements ServerComponent, Startable {
       LoggerFactory.getLogger(getClass()).error("Fail to process request " + request, e);
       sendError(500, e.getMessage(), response);
     }
+    response.stream().flush();
   }
 
   private WebService.Action getAction(String controllerPath, String actionKey) {
@@ -143,6 +145,11 @@ public class WebServiceEngine implements ServerComponent, Startable {
 
   private void sendErrors(ServletResponse response, int status, String... errors) {
     ServletResponse.ServletStream stream = response.stream();
+    if (stream.isCommitted()) {
+      // status and beginning of response have already been sent
+      LoggerFactory.getLogger(getClass()).error("Fail to send error {} as response is already committed: {}", status, Arrays.toString(errors));
+      return;
+    }
     stream.reset();
     stream.setStatus(status);
     stream.setMediaType(MimeTypes.JSON);
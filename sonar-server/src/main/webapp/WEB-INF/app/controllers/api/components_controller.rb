@@ -27,12 +27,10 @@ class Api::ComponentsController < Api::ApiController
     search = params[:s]
     bad_request("Minimum search is #{ResourceIndex::MIN_SEARCH_SIZE} characters") if search.empty? || search.to_s.size<ResourceIndex::MIN_SEARCH_SIZE
 
-    key = escape_like(search).downcase
-    results = ResourceIndex.all(:select => 'distinct(resource_id),root_project_id,qualifier,name_size', # optimization to not load unused columns like 'kee'
-                                :conditions => ['kee like ?', key + '%'],
-                                :order => 'name_size')
+    # in-memory index, sorted by name_size
+    results = java_facade.searchResourceIndex(search, nil).to_a
 
-    results = select_authorized(:user, results)
+    results = select_authorized(:user, results, :root_project_id)
 
     resource_ids=[]
     resource_indexes_by_qualifier={}
@@ -62,8 +60,8 @@ class Api::ComponentsController < Api::ApiController
       qualifier_results['icon']=resource_type.getIconPath()
       qualifier_results['name']=Api::Utils.message("qualifiers.#{qualifier}")
       resource_indexes=resource_indexes_by_qualifier[qualifier]||[]
-      qualifier_results['items']=resource_indexes.map do |resource_index|
-        resource=resources_by_id[resource_index.resource_id]
+      # the index can reference resources that have been deleted since it was loaded
+      qualifier_results['items']=resource_indexes.map { |resource_index| resources_by_id[resource_index.resource_id] }.compact.map do |resource|
         {
           'id' => resource.id,
           'name' => resource.name(true)
@@ -25,14 +25,12 @@ class Api::JavaWsController < Api::ApiController
 
   def index
     ws_request = Java::OrgSonarServerWs::ServletRequest.new(servlet_request, params.to_java)
-    ws_response = Java::OrgSonarServerWs::ServletResponse.new()
+    ws_response = Java::OrgSonarServerWs::ServletResponse.new(request.env['java.servlet_response'])
     engine = Java::OrgSonarServerPlatform::Platform.component(Java::OrgSonarServerWs::WebServiceEngine.java_class)
     engine.execute(ws_request, ws_response, params[:wspath], params[:wsaction])
 
-    # response is already written to HttpServletResponse
-    render :text => ws_response.stream().output().toByteArray(),
-           :status => ws_response.stream().httpStatus(),
-           :content_type => ws_response.stream().mediaType()
+    # response is already streamed to HttpServletResponse, which is committed. Rails rendering is ignored.
+    render :nothing => true, :status => ws_response.stream().httpStatus()
   end
 
   def redirect_to_ws_listing
@@ -42,19 +42,10 @@ class Api::ResourcesController < Api::ApiController
     bad_request("Page index must be greater than 0") if page<=0
     bad_request("Page size must be greater than 0") if page_size<=0
 
-    key = escape_like(search_text).downcase
-    conditions=['kee like ?']
-    condition_values=[key + '%']
+    # in-memory index, sorted by qualifier then by name_size
+    indexes = java_facade.searchResourceIndex(search_text, qualifiers.empty? ? nil : qualifiers).to_a
 
-    unless qualifiers.empty?
-      conditions<<'qualifier in (?)'
-      condition_values<<qualifiers
-    end
-    indexes = ResourceIndex.all(:select => 'distinct(resource_id),root_project_id,qualifier,name_size', # optimization to not load unused columns like 'kee'
-                                 :conditions => [conditions.join(' and ')].concat(condition_values),
-                                 :order => 'name_size')
-
-    indexes = select_authorized(:user, indexes)
+    indexes = select_authorized(:user, indexes, :root_project_id)
     total = indexes.size
 
     select2_format=(params[:f]=='s2')
@@ -30,9 +30,11 @@ class BatchBootstrapController < Api::ApiController
     return render_unauthorized("You're not authorized to execute a dry run analysis. Please contact your SonarQube administrator.") if !has_dryrun_role
     project = load_project()
     return render_unauthorized("You're not authorized to access to project '" + project.name + "', please contact your SonarQube administrator") if project && !has_role?(:user, project)
-    db_content = java_facade.createDatabaseForPreview(project && project.id)
+    download = Java::OrgSonarServerPlatform::Platform.component(Java::OrgSonarServerPreview::PreviewDatabaseDownload.java_class)
+    download.write(project && project.id, request.headers['If-None-Match'], request.env['java.servlet_response'])
 
-    send_data String.from_java_bytes(db_content)
+    # database (or 304 status) is already written to HttpServletResponse, which is committed. Rails rendering is ignored.
+    render :nothing => true
   end
 
   # PUT /batch_bootstrap/evict?project=<key or id>
@@ -51,6 +53,38 @@ class BatchBootstrapController < Api::ApiController
     end
   end
 
+  # GET /batch_bootstrap/index_components?project=<key or id>
+  # Since 4.4
+  def index_components
+    has_scan_role = has_role?('scan')
+    return render_unauthorized("You're not authorized to execute any SonarQube analysis. Please contact your SonarQube administrator.") if !has_scan_role
+
+    project = load_project()
+    if project
+      indexer = Java::OrgSonarServerPlatform::Platform.component(Java::OrgSonarCoreResource::ResourceIndexerDao.java_class)
+      indexer.reloadComponentIndex(project.root_project.id)
+      render_success('Components indexed')
+    else
+      render_bad_request('missing projectId')
+    end
+  end
+
+  # GET /batch_bootstrap/index_issues?project=<key or id>
+  # Since 4.4
+  def index_issues
+    has_scan_role = has_role?('scan')
+    return render_unauthorized("You're not authorized to execute any SonarQube analysis. Please contact your SonarQube administrator.") if !has_scan_role
+
+    project = load_project()
+    if project
+      issue_index = Java::OrgSonarServerPlatform::Platform.component(Java::OrgSonarServerIssueIndex::IssueIndex.java_class)
+      issue_index.indexProject(project.root_project.id)
+      render_success('Issues indexed')
+    else
+      render_bad_request('missing projectId')
+    end
+  end
+
   # GET /batch_bootstrap/properties?[project=<key or id>][&dryRun=true|false]
   def properties
     dryRun = params[:dryRun].present? && params[:dryRun] == "true"
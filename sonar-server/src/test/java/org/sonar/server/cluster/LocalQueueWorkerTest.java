@@ -0,0 +1,150 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.cluster;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.core.cluster.QueueAction;
+import org.sonar.server.search.Index;
+import org.sonar.server.search.action.IndexAction;
+import org.sonar.server.search.action.KeyIndexAction;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LocalQueueWorkerTest {
+
+  Index rules = mock(Index.class);
+  Index activeRules = mock(Index.class);
+  LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<Runnable>();
+
+  @Before
+  public void setUp() {
+    when(rules.getIndexType()).thenReturn("rules");
+    when(activeRules.getIndexType()).thenReturn("activeRules");
+  }
+
+  @Test
+  public void merge_actions_on_same_item() {
+    IndexAction first = new KeyIndexAction<String>("rules", IndexAction.Method.UPDATE, "key1");
+    IndexAction other = new KeyIndexAction<String>("rules", IndexAction.Method.UPDATE, "key2");
+    IndexAction delete = new KeyIndexAction<String>("rules", IndexAction.Method.DELETE, "key1");
+    IndexAction last = new KeyIndexAction<String>("rules", IndexAction.Method.UPDATE, "key1");
+    CountDownLatch latch = new CountDownLatch(4);
+    for (IndexAction action : Arrays.asList(first, other, delete, last)) {
+      action.setLatch(latch);
+    }
+
+    LocalQueueWorker worker = new LocalQueueWorker(queue, 100, 0L, rules);
+    worker.process(Arrays.<Runnable>asList(first, other, delete, last));
+
+    assertThat(executedActions(rules)).containsExactly(other, delete, last);
+    assertThat(worker.getMergedActions()).isEqualTo(1);
+    assertThat(worker.getProcessedActions()).isEqualTo(4);
+    assertThat(worker.getBulkRequests()).isEqualTo(1);
+    assertThat(worker.stats()).isEqualTo("Index queue: 0 actions waiting, 4 processed, 1 merged, 1 bulk requests");
+    // all the enqueuers are released, including the one of the merged action
+    assertThat(latch.getCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void send_one_bulk_by_index_type() {
+    IndexAction rule = new KeyIndexAction<String>("rules", IndexAction.Method.UPDATE, "key1");
+    IndexAction activeRule = new KeyIndexAction<String>("activeRules", IndexAction.Method.UPDATE, "key1");
+
+    LocalQueueWorker worker = new LocalQueueWorker(queue, 100, 0L, rules, activeRules);
+    worker.process(Arrays.<Runnable>asList(rule, activeRule));
+
+    assertThat(executedActions(rules)).containsExactly(rule);
+    assertThat(executedActions(activeRules)).containsExactly(activeRule);
+    assertThat(worker.getMergedActions()).isEqualTo(0);
+    assertThat(worker.getBulkRequests()).isEqualTo(2);
+  }
+
+  @Test
+  public void ignore_actions_of_unknown_index_type() {
+    IndexAction action = new KeyIndexAction<String>("unknown", IndexAction.Method.UPDATE, "key1");
+    CountDownLatch latch = new CountDownLatch(1);
+    action.setLatch(latch);
+
+    LocalQueueWorker worker = new LocalQueueWorker(queue, 100, 0L, rules);
+    worker.process(Arrays.<Runnable>asList(action));
+
+    verify(rules, never()).executeBulk(anyListOf(IndexAction.class));
+    assertThat(latch.getCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void run_other_actions() {
+    QueueAction action = mock(QueueAction.class);
+
+    LocalQueueWorker worker = new LocalQueueWorker(queue, 100, 0L, rules);
+    worker.process(Arrays.<Runnable>asList(action));
+
+    verify(action).run();
+  }
+
+  @Test
+  public void poll_actions_by_bulk_size() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      queue.add(new KeyIndexAction<String>("rules", IndexAction.Method.UPDATE, "key" + i));
+    }
+
+    LocalQueueWorker worker = new LocalQueueWorker(queue, 3, 1000L, rules);
+    assertThat(worker.poll()).hasSize(3);
+    assertThat(worker.getQueueDepth()).isEqualTo(2);
+    assertThat(worker.poll()).hasSize(2);
+    assertThat(worker.getQueueDepth()).isEqualTo(0);
+  }
+
+  @Test
+  public void enqueuer_waits_for_actions_to_be_indexed() {
+    LocalNonBlockingWorkQueue workQueue = new LocalNonBlockingWorkQueue();
+    LocalQueueWorker worker = new LocalQueueWorker(workQueue, rules);
+    worker.start();
+    try {
+      IndexAction action = new KeyIndexAction<String>("rules", IndexAction.Method.UPDATE, "key1");
+      workQueue.enqueue(Arrays.<QueueAction>asList(action));
+
+      assertThat(executedActions(rules)).containsExactly(action);
+      assertThat(worker.getQueueDepth()).isEqualTo(0);
+      assertThat(workQueue.getMaxLatencyMs()).isGreaterThanOrEqualTo(workQueue.getAverageLatencyMs());
+      assertThat(worker.stats()).contains("1 processed").contains("enqueuers wait");
+    } finally {
+      worker.stop();
+    }
+  }
+
+  private List<IndexAction> executedActions(Index index) {
+    ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+    verify(index).executeBulk(captor.capture());
+    return captor.getValue();
+  }
+}
@@ -17,35 +17,25 @@
  * along with this program; if not, write to the Free Software Foundation,
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
+package org.sonar.server.component;
 
-package org.sonar.core.issue.db;
-
-import org.junit.Before;
 import org.junit.Test;
-import org.sonar.api.issue.IssueQuery;
-import org.sonar.core.persistence.AbstractDaoTestCase;
-
-import java.util.List;
-
-import static org.fest.assertions.Assertions.assertThat;
+import org.sonar.core.resource.ResourceIndexerDao;
 
-public class IssueStatsDaoTest extends AbstractDaoTestCase {
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 
-  IssueStatsDao dao;
-
-  @Before
-  public void createDao() {
-    dao = new IssueStatsDao(getMyBatis());
-  }
+public class ComponentIndexLoaderTest {
 
   @Test
-  public void should_select_assignees(){
-    setupData("should_select_assignees");
+  public void should_load_component_index_in_background() {
+    ResourceIndexerDao resourceIndexerDao = mock(ResourceIndexerDao.class);
+    ComponentIndexLoader loader = new ComponentIndexLoader(resourceIndexerDao);
+
+    loader.start();
 
-    IssueQuery query = IssueQuery.builder().requiredRole("user").build();
-    List<Object> results = dao.selectIssuesColumn(query, IssueStatsColumn.ASSIGNEE, null);
-    assertThat(results).hasSize(3);
-    // 2 perceval, and one null
-    assertThat(results).containsOnly("perceval", null);
+    verify(resourceIndexerDao, timeout(5000)).reloadComponentIndex();
+    loader.stop();
   }
 }
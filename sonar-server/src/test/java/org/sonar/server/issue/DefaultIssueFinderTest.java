@@ -44,12 +44,12 @@ import org.sonar.core.resource.ResourceDao;
 import org.sonar.core.rule.DefaultRuleFinder;
 import org.sonar.core.user.DefaultUser;
 import org.sonar.server.issue.actionplan.ActionPlanService;
+import org.sonar.server.issue.index.IssueIndex;
 
 import java.util.Collections;
 import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
-import static com.google.common.collect.Sets.newHashSet;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyCollection;
@@ -70,34 +70,36 @@ public class
   ResourceDao resourceDao = mock(ResourceDao.class);
   ActionPlanService actionPlanService = mock(ActionPlanService.class);
   UserFinder userFinder = mock(UserFinder.class);
+  IssueIndex issueIndex = mock(IssueIndex.class);
   DefaultIssueFinder finder;
 
   @Before
   public void setUp() throws Exception {
     Settings settings = new Settings();
     settings.setProperty(CoreProperties.HOURS_IN_DAY, HOURS_IN_DAY);
-    finder = new DefaultIssueFinder(mybatis, issueDao, issueChangeDao, ruleFinder, userFinder, resourceDao, actionPlanService);
+    finder = new DefaultIssueFinder(mybatis, issueIndex, issueDao, issueChangeDao, ruleFinder, userFinder, resourceDao, actionPlanService);
   }
 
   @Test
   public void find_issues() {
     IssueQuery query = IssueQuery.builder().build();
 
-    IssueDto issue1 = new IssueDto().setId(1L).setRuleId(50).setComponentId(123l).setRootComponentId(100l)
+    IssueDto issue1 = new IssueDto().setId(1L).setKee("ABC").setRuleId(50).setComponentId(123l).setRootComponentId(100l)
       .setComponentKey_unit_test_only("Action.java")
       .setRootComponentKey_unit_test_only("struts")
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
-    IssueDto issue2 = new IssueDto().setId(2L).setRuleId(50).setComponentId(123l).setRootComponentId(100l)
+    IssueDto issue2 = new IssueDto().setId(2L).setKee("DEF").setRuleId(50).setComponentId(123l).setRootComponentId(100l)
       .setComponentKey_unit_test_only("Action.java")
       .setRootComponentKey_unit_test_only("struts")
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
     List<IssueDto> dtoList = newArrayList(issue1, issue2);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueDao.selectByKeys(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueIndex.search(any(IssueQuery.class), anyInt())).thenReturn(hits(dtoList));
 
     IssueQueryResult results = finder.find(query);
-    verify(issueDao).selectIssueIds(eq(query), anyInt(), any(SqlSession.class));
+    verify(issueIndex).search(eq(query), anyInt());
 
     assertThat(results.issues()).hasSize(2);
     DefaultIssue issue = (DefaultIssue) results.issues().iterator().next();
@@ -110,32 +112,51 @@ public class
   public void find_paginate_result() {
     IssueQuery query = IssueQuery.builder().pageSize(1).pageIndex(1).build();
 
-    IssueDto issue1 = new IssueDto().setId(1L).setRuleId(50).setComponentId(123l).setRootComponentId(100l)
+    IssueDto issue1 = new IssueDto().setId(1L).setKee("ABC").setRuleId(50).setComponentId(123l).setRootComponentId(100l)
       .setComponentKey_unit_test_only("Action.java")
       .setRootComponentKey_unit_test_only("struts")
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
-    IssueDto issue2 = new IssueDto().setId(2L).setRuleId(50).setComponentId(135l).setRootComponentId(100l)
+    IssueDto issue2 = new IssueDto().setId(2L).setKee("DEF").setRuleId(50).setComponentId(135l).setRootComponentId(100l)
       .setComponentKey_unit_test_only("Phases.java")
       .setRootComponentKey_unit_test_only("struts")
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
     List<IssueDto> dtoList = newArrayList(issue1, issue2);
-    when(issueDao.selectIssueIds(eq(query), anyInt(), any(SqlSession.class))).thenReturn(dtoList);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueIndex.search(eq(query), anyInt())).thenReturn(new IssueIndex.Hits(newArrayList("ABC"), 2L));
+    when(issueDao.selectByKeys(anyCollection(), any(SqlSession.class))).thenReturn(newArrayList(issue1));
 
     IssueQueryResult results = finder.find(query);
+    assertThat(results.issues()).hasSize(1);
     assertThat(results.paging().offset()).isEqualTo(0);
     assertThat(results.paging().total()).isEqualTo(2);
     assertThat(results.paging().pages()).isEqualTo(2);
 
     // Only one result is expected because the limit is 1
-    verify(issueDao).selectByIds(eq(newHashSet(1L)), any(SqlSession.class));
+    verify(issueDao).selectByKeys(eq(newArrayList("ABC")), any(SqlSession.class));
+  }
+
+  @Test
+  public void ignore_issues_missing_in_db() {
+    IssueQuery query = IssueQuery.builder().build();
+
+    IssueDto issue = new IssueDto().setId(1L).setKee("ABC").setRuleId(50).setComponentId(123l).setRootComponentId(100l)
+      .setComponentKey_unit_test_only("Action.java")
+      .setRootComponentKey_unit_test_only("struts")
+      .setRuleKey_unit_test_only("squid", "AvoidCycle")
+      .setStatus("OPEN").setResolution("OPEN");
+    when(issueIndex.search(eq(query), anyInt())).thenReturn(new IssueIndex.Hits(newArrayList("DEF", "ABC"), 2L));
+    when(issueDao.selectByKeys(anyCollection(), any(SqlSession.class))).thenReturn(newArrayList(issue));
+
+    IssueQueryResult results = finder.find(query);
+
+    assertThat(results.issues()).hasSize(1);
+    assertThat(results.issues().iterator().next().key()).isEqualTo("ABC");
   }
 
   @Test
   public void find_by_key() {
-    IssueDto issueDto = new IssueDto().setId(1L).setRuleId(1).setComponentId(1l).setRootComponentId(100l)
+    IssueDto issueDto = new IssueDto().setId(1L).setKee("ABC").setRuleId(1).setComponentId(1l).setRootComponentId(100l)
       .setComponentKey_unit_test_only("Action.java")
       .setRootComponentKey_unit_test_only("struts")
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
@@ -155,18 +176,19 @@ public class
 
     IssueQuery query = IssueQuery.builder().build();
 
-    IssueDto issue1 = new IssueDto().setId(1L).setRuleId(50).setComponentId(123l).setRootComponentId(100l)
+    IssueDto issue1 = new IssueDto().setId(1L).setKee("ABC").setRuleId(50).setComponentId(123l).setRootComponentId(100l)
       .setComponentKey_unit_test_only("Action.java")
       .setRootComponentKey_unit_test_only("struts")
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
-    IssueDto issue2 = new IssueDto().setId(2L).setRuleId(50).setComponentId(123l).setRootComponentId(100l)
+    IssueDto issue2 = new IssueDto().setId(2L).setKee("DEF").setRuleId(50).setComponentId(123l).setRootComponentId(100l)
       .setComponentKey_unit_test_only("Action.java")
       .setRootComponentKey_unit_test_only("struts")
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
     List<IssueDto> dtoList = newArrayList(issue1, issue2);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueDao.selectByKeys(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueIndex.search(any(IssueQuery.class), anyInt())).thenReturn(hits(dtoList));
 
     IssueQueryResult results = finder.find(query);
     assertThat(results.issues()).hasSize(2);
@@ -183,12 +205,13 @@ public class
 
     IssueQuery query = IssueQuery.builder().hideRules(true).build();
 
-    IssueDto issue = new IssueDto().setId(1L).setRuleId(50).setComponentId(123l).setRootComponentId(100l)
+    IssueDto issue = new IssueDto().setId(1L).setKee("ABC").setRuleId(50).setComponentId(123l).setRootComponentId(100l)
       .setComponentKey_unit_test_only("Action.java")
       .setRootComponentKey_unit_test_only("struts")
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(newArrayList(issue));
+    when(issueDao.selectByKeys(anyCollection(), any(SqlSession.class))).thenReturn(newArrayList(issue));
+    when(issueIndex.search(any(IssueQuery.class), anyInt())).thenReturn(hits(newArrayList(issue)));
 
     IssueQueryResult results = finder.find(query);
     Issue result = results.issues().iterator().next();
@@ -203,18 +226,19 @@ public class
 
     IssueQuery query = IssueQuery.builder().build();
 
-    IssueDto issue1 = new IssueDto().setId(1L).setRuleId(50).setComponentId(123l).setRootComponentId(100l)
+    IssueDto issue1 = new IssueDto().setId(1L).setKee("ABC").setRuleId(50).setComponentId(123l).setRootComponentId(100l)
       .setComponentKey_unit_test_only("Action.java")
       .setRootComponentKey_unit_test_only("struts")
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
-    IssueDto issue2 = new IssueDto().setId(2L).setRuleId(50).setComponentId(123l).setRootComponentId(100l)
+    IssueDto issue2 = new IssueDto().setId(2L).setKee("DEF").setRuleId(50).setComponentId(123l).setRootComponentId(100l)
       .setComponentKey_unit_test_only("Action.java")
       .setRootComponentKey_unit_test_only("struts")
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
     List<IssueDto> dtoList = newArrayList(issue1, issue2);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueDao.selectByKeys(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueIndex.search(any(IssueQuery.class), anyInt())).thenReturn(hits(dtoList));
 
     IssueQueryResult results = finder.find(query);
     assertThat(results.issues()).hasSize(2);
@@ -230,18 +254,19 @@ public class
 
     IssueQuery query = IssueQuery.builder().build();
 
-    IssueDto issue1 = new IssueDto().setId(1L).setRuleId(50).setComponentId(123l).setRootComponentId(100l)
+    IssueDto issue1 = new IssueDto().setId(1L).setKee("ABC").setRuleId(50).setComponentId(123l).setRootComponentId(100l)
       .setComponentKey_unit_test_only("Action.java")
       .setRootComponentKey_unit_test_only("struts")
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
-    IssueDto issue2 = new IssueDto().setId(2L).setRuleId(50).setComponentId(123l).setRootComponentId(100l)
+    IssueDto issue2 = new IssueDto().setId(2L).setKee("DEF").setRuleId(50).setComponentId(123l).setRootComponentId(100l)
       .setComponentKey_unit_test_only("Action.java")
       .setRootComponentKey_unit_test_only("struts")
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
     List<IssueDto> dtoList = newArrayList(issue1, issue2);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueDao.selectByKeys(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueIndex.search(any(IssueQuery.class), anyInt())).thenReturn(hits(dtoList));
 
     IssueQueryResult results = finder.find(query);
     assertThat(results.issues()).hasSize(2);
@@ -268,7 +293,8 @@ public class
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
     List<IssueDto> dtoList = newArrayList(issue1, issue2);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueDao.selectByKeys(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueIndex.search(any(IssueQuery.class), anyInt())).thenReturn(hits(dtoList));
     when(actionPlanService.findByKeys(anyCollection())).thenReturn(newArrayList(actionPlan1, actionPlan2));
 
     IssueQueryResult results = finder.find(query);
@@ -294,7 +320,8 @@ public class
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN");
     List<IssueDto> dtoList = newArrayList(issue1, issue2);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueDao.selectByKeys(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueIndex.search(any(IssueQuery.class), anyInt())).thenReturn(hits(dtoList));
 
     IssueQueryResult results = finder.find(query);
     assertThat(results.issues()).hasSize(2);
@@ -307,8 +334,8 @@ public class
   @Test
   public void get_empty_result_when_no_issue() {
     IssueQuery query = IssueQuery.builder().build();
-    when(issueDao.selectIssueIds(eq(query), anyInt(), any(SqlSession.class))).thenReturn(Collections.<IssueDto>emptyList());
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(Collections.<IssueDto>emptyList());
+    when(issueIndex.search(eq(query), anyInt())).thenReturn(new IssueIndex.Hits(Collections.<String>emptyList(), 0L));
+    when(issueDao.selectByKeys(anyCollection(), any(SqlSession.class))).thenReturn(Collections.<IssueDto>emptyList());
 
     IssueQueryResult results = finder.find(query);
     assertThat(results.issues()).isEmpty();
@@ -321,21 +348,29 @@ public class
   public void find_issue_with_technical_debt() {
     IssueQuery query = IssueQuery.builder().build();
 
-    IssueDto issue = new IssueDto().setId(1L).setRuleId(50).setComponentId(123l).setRootComponentId(100l)
+    IssueDto issue = new IssueDto().setId(1L).setKee("ABC").setRuleId(50).setComponentId(123l).setRootComponentId(100l)
       .setComponentKey_unit_test_only("Action.java")
       .setRootComponentKey_unit_test_only("struts")
       .setRuleKey_unit_test_only("squid", "AvoidCycle")
       .setStatus("OPEN").setResolution("OPEN")
       .setDebt(10L);
     List<IssueDto> dtoList = newArrayList(issue);
-    when(issueDao.selectByIds(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueDao.selectByKeys(anyCollection(), any(SqlSession.class))).thenReturn(dtoList);
+    when(issueIndex.search(any(IssueQuery.class), anyInt())).thenReturn(hits(dtoList));
 
     IssueQueryResult results = finder.find(query);
-    verify(issueDao).selectIssueIds(eq(query), anyInt(), any(SqlSession.class));
+    verify(issueIndex).search(eq(query), anyInt());
 
     assertThat(results.issues()).hasSize(1);
     DefaultIssue result = (DefaultIssue) results.issues().iterator().next();
     assertThat(result.debt()).isEqualTo(Duration.create(10L));
   }
 
+  private static IssueIndex.Hits hits(List<IssueDto> dtos) {
+    List<String> keys = newArrayList();
+    for (IssueDto dto : dtos) {
+      keys.add(dto.getKee());
+    }
+    return new IssueIndex.Hits(keys, keys.size());
+  }
 }
@@ -21,12 +21,15 @@
 package org.sonar.server.issue;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.junit.Test;
 import org.sonar.api.issue.IssueQuery;
 import org.sonar.api.user.User;
 import org.sonar.api.user.UserFinder;
-import org.sonar.core.issue.db.IssueStatsDao;
 import org.sonar.core.user.DefaultUser;
+import org.sonar.server.issue.index.IssueIndex;
+
+import java.util.Map;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.*;
@@ -35,20 +38,27 @@ import static org.mockito.Mockito.when;
 
 public class IssueStatsFinderTest {
 
-  private IssueStatsDao issuestatsDao = mock(IssueStatsDao.class);
+  private IssueIndex issueIndex = mock(IssueIndex.class);
   private UserFinder userFinder = mock(UserFinder.class);
 
   @Test
   public void should_find_assignees(){
-    when(issuestatsDao.selectIssuesColumn(any(IssueQuery.class), anyString(), anyInt())).thenReturn(Lists.<Object>newArrayList("perceval", "perceval", "arthur", null));
+    Map<String, Long> counts = Maps.newLinkedHashMap();
+    counts.put("perceval", 2L);
+    counts.put("arthur", 1L);
+    counts.put(null, 1L);
+    when(issueIndex.countByAssignee(any(IssueQuery.class), anyInt())).thenReturn(counts);
     when(userFinder.findByLogins(anyListOf(String.class))).thenReturn(Lists.<User>newArrayList(
       new DefaultUser().setLogin("perceval").setName("Perceval"),
       new DefaultUser().setLogin("arthur").setName("Roi Arthur")
     ));
 
-    IssueStatsFinder issueStatsFinder = new IssueStatsFinder(issuestatsDao, userFinder);
+    IssueStatsFinder issueStatsFinder = new IssueStatsFinder(issueIndex, userFinder);
     IssueStatsFinder.IssueStatsResult issueStatsResult = issueStatsFinder.findIssueAssignees(IssueQuery.builder().build());
-    assertThat(issueStatsResult.results()).hasSize(4);
+    assertThat(issueStatsResult.countsByAssignee()).hasSize(3);
+    assertThat(issueStatsResult.count("perceval")).isEqualTo(2L);
+    assertThat(issueStatsResult.count(null)).isEqualTo(1L);
+    assertThat(issueStatsResult.count("unknown")).isEqualTo(0L);
     assertThat(issueStatsResult.user("arthur").name()).isEqualTo("Roi Arthur");
   }
 }
@@ -0,0 +1,244 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.issue.index;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.sonar.api.issue.IssueQuery;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.RuleStatus;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.web.UserRole;
+import org.sonar.check.Cardinality;
+import org.sonar.core.cluster.WorkQueue;
+import org.sonar.core.issue.db.IssueDto;
+import org.sonar.core.issue.db.IssueMapper;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.core.persistence.MyBatis;
+import org.sonar.core.resource.ResourceDao;
+import org.sonar.core.resource.ResourceDto;
+import org.sonar.core.resource.ResourceKeyUpdaterDao;
+import org.sonar.core.rule.RuleDto;
+import org.sonar.core.user.GroupRoleDto;
+import org.sonar.core.user.RoleDao;
+import org.sonar.server.es.ESNode;
+import org.sonar.server.rule2.persistence.RuleDao;
+import org.sonar.server.search.action.IndexAction;
+import org.sonar.server.search.action.KeyIndexAction;
+import org.sonar.server.tester.ServerTester;
+
+import java.sql.Statement;
+import java.util.Date;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.MapAssert.entry;
+
+public class IssueIndexMediumTest {
+
+  @ClassRule
+  public static ServerTester tester = new ServerTester();
+
+  MyBatis myBatis = tester.get(MyBatis.class);
+  IssueIndex index = tester.get(IssueIndex.class);
+  DbSession dbSession;
+  RuleDto rule;
+  ResourceDto project;
+  ResourceDto file;
+
+  @Before
+  public void before() {
+    tester.clearDataStores();
+    tester.get(ESNode.class).client().admin().indices().prepareRefresh(index.getIndexName()).get();
+    dbSession = myBatis.openSession(false);
+
+    rule = new RuleDto()
+      .setRuleKey("S001")
+      .setRepositoryKey("squid")
+      .setName("Rule S001")
+      .setStatus(RuleStatus.READY.toString())
+      .setSeverity(Severity.INFO)
+      .setCardinality(Cardinality.SINGLE)
+      .setLanguage("java");
+    tester.get(RuleDao.class).insert(rule, dbSession);
+
+    project = new ResourceDto().setKey("struts").setName("Struts").setScope("PRJ").setQualifier("TRK").setEnabled(true);
+    ResourceDao resourceDao = tester.get(ResourceDao.class);
+    resourceDao.insertUsingExistingSession(project, dbSession);
+    file = new ResourceDto().setKey("struts:Action.java").setName("Action.java").setScope("FIL").setQualifier("CLA").setEnabled(true)
+      .setRootId(project.getId());
+    resourceDao.insertUsingExistingSession(file, dbSession);
+    dbSession.commit();
+  }
+
+  @After
+  public void after() {
+    dbSession.close();
+  }
+
+  @Test
+  public void index_project_issues() {
+    insertIssue("ABCD", Severity.MAJOR, "simon", new Date(1000L));
+    insertIssue("BCDE", Severity.BLOCKER, null, new Date(2000L));
+    index.indexProject(project.getId());
+
+    assertThat(index.search(query().build(), null).total()).isEqualTo(2);
+
+    insertIssue("CDEF", Severity.MINOR, "julien", new Date(3000L));
+    index.indexProject(project.getId());
+
+    IssueIndex.Hits hits = index.search(query().languages(ImmutableList.of("java")).build(), null);
+    assertThat(hits.total()).isEqualTo(3);
+    assertThat(index.search(query().languages(ImmutableList.of("js")).build(), null).total()).isEqualTo(0);
+  }
+
+  @Test
+  public void remove_issues_deleted_from_db() throws Exception {
+    insertIssue("ABCD", Severity.MAJOR, "simon", new Date(1000L));
+    insertIssue("BCDE", Severity.BLOCKER, null, new Date(2000L));
+    index.indexProject(project.getId());
+
+    // purged issue
+    deleteIssues("kee='ABCD'");
+    index.indexProject(project.getId());
+    assertThat(index.search(query().build(), null).keys()).containsOnly("BCDE");
+
+    // deleted project
+    deleteIssues("root_component_id=" + project.getId());
+    index.indexAll();
+    assertThat(index.search(query().build(), null).total()).isEqualTo(0);
+  }
+
+  @Test
+  public void index_issues_changed_on_server() throws Exception {
+    insertIssue("ABCD", Severity.MAJOR, "simon", new Date(1000L));
+    enqueue("ABCD");
+    assertThat(index.search(query().build(), null).keys()).containsOnly("ABCD");
+
+    deleteIssues("kee='ABCD'");
+    enqueue("ABCD");
+    assertThat(index.search(query().build(), null).total()).isEqualTo(0);
+  }
+
+  @Test
+  public void filter_issues() {
+    insertIssue("ABCD", Severity.MAJOR, "simon", new Date(1000L));
+    insertIssue("BCDE", Severity.BLOCKER, null, new Date(2000L));
+    index.indexProject(project.getId());
+
+    assertThat(index.search(query().severities(ImmutableList.of(Severity.BLOCKER)).build(), null).total()).isEqualTo(1);
+    assertThat(index.search(query().assigned(false).build(), null).total()).isEqualTo(1);
+    assertThat(index.search(query().assignees(ImmutableList.of("simon")).build(), null).total()).isEqualTo(1);
+    assertThat(index.search(query().components(ImmutableList.of("struts:Action.java")).build(), null).total()).isEqualTo(2);
+    assertThat(index.search(query().rules(ImmutableList.of(RuleKey.of("squid", "S001"))).build(), null).total()).isEqualTo(2);
+    assertThat(index.search(query().createdAfter(new Date(1500L)).build(), null).total()).isEqualTo(1);
+  }
+
+  @Test
+  public void sort_and_paginate_issues() {
+    insertIssue("ABCD", Severity.MAJOR, "simon", new Date(1000L));
+    insertIssue("BCDE", Severity.BLOCKER, null, new Date(2000L));
+    insertIssue("CDEF", Severity.MINOR, "Julien", new Date(3000L));
+    index.indexProject(project.getId());
+
+    IssueIndex.Hits hits = index.search(query().sort(IssueQuery.SORT_BY_SEVERITY).asc(false).build(), null);
+    assertThat(hits.keys()).containsExactly("BCDE", "ABCD", "CDEF");
+
+    // case-insensitive, unassigned issues last
+    hits = index.search(query().sort(IssueQuery.SORT_BY_ASSIGNEE).asc(true).build(), null);
+    assertThat(hits.keys()).containsExactly("CDEF", "ABCD", "BCDE");
+
+    hits = index.search(query().sort(IssueQuery.SORT_BY_CREATION_DATE).asc(false).pageSize(2).pageIndex(2).build(), null);
+    assertThat(hits.total()).isEqualTo(3);
+    assertThat(hits.keys()).containsExactly("ABCD");
+  }
+
+  @Test
+  public void return_only_authorized_issues() {
+    insertIssue("ABCD", Severity.MAJOR, "simon", new Date(1000L));
+    index.indexProject(project.getId());
+
+    assertThat(index.search(query().requiredRole(UserRole.USER).build(), null).total()).isEqualTo(0);
+
+    tester.get(RoleDao.class).insertGroupRole(new GroupRoleDto().setRole(UserRole.USER).setResourceId(project.getId()));
+    assertThat(index.search(query().requiredRole(UserRole.USER).build(), null).total()).isEqualTo(1);
+  }
+
+  @Test
+  public void find_issues_of_renamed_project_without_reindexing() {
+    insertIssue("ABCD", Severity.MAJOR, "simon", new Date(1000L));
+    index.indexProject(project.getId());
+    tester.get(RoleDao.class).insertGroupRole(new GroupRoleDto().setRole(UserRole.USER).setResourceId(project.getId()));
+
+    tester.get(ResourceKeyUpdaterDao.class).bulkUpdateKey(project.getId(), "struts", "apache-struts");
+
+    assertThat(index.search(query().requiredRole(UserRole.USER).build(), null).keys()).containsOnly("ABCD");
+    assertThat(index.search(query().components(ImmutableList.of("apache-struts:Action.java")).build(), null).keys()).containsOnly("ABCD");
+    assertThat(index.search(query().components(ImmutableList.of("struts:Action.java")).build(), null).total()).isEqualTo(0);
+  }
+
+  @Test
+  public void count_issues_by_assignee() {
+    insertIssue("ABCD", Severity.MAJOR, "simon", new Date(1000L));
+    insertIssue("BCDE", Severity.BLOCKER, null, new Date(2000L));
+    insertIssue("CDEF", Severity.MINOR, "simon", new Date(3000L));
+    index.indexProject(project.getId());
+
+    Map<String, Long> counts = index.countByAssignee(query().build(), null);
+    assertThat(counts).hasSize(2).includes(entry("simon", 2L), entry(null, 1L));
+  }
+
+  private IssueQuery.Builder query() {
+    return IssueQuery.builder().requiredRole(null);
+  }
+
+  private void insertIssue(String key, String severity, String assignee, Date creationDate) {
+    IssueDto issue = new IssueDto()
+      .setKee(key)
+      .setRuleId(rule.getId())
+      .setComponentId(file.getId())
+      .setRootComponentId(project.getId())
+      .setSeverity(severity)
+      .setStatus("OPEN")
+      .setAssignee(assignee)
+      .setIssueCreationDate(creationDate)
+      .setCreatedAt(new Date())
+      .setUpdatedAt(new Date());
+    dbSession.getMapper(IssueMapper.class).insert(issue);
+    dbSession.commit();
+  }
+
+  private void deleteIssues(String condition) throws Exception {
+    Statement statement = dbSession.getConnection().createStatement();
+    try {
+      statement.execute("delete from issues where " + condition);
+    } finally {
+      statement.close();
+    }
+    dbSession.getConnection().commit();
+  }
+
+  private void enqueue(String issueKey) {
+    tester.get(WorkQueue.class).enqueue(new KeyIndexAction<String>(index.getIndexType(), IndexAction.Method.UPDATE, issueKey));
+  }
+}
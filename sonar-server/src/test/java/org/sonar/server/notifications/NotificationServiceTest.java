@@ -20,6 +20,7 @@
 package org.sonar.server.notifications;
 
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.sonar.api.config.Settings;
@@ -27,13 +28,22 @@ import org.sonar.api.notifications.Notification;
 import org.sonar.api.notifications.NotificationChannel;
 import org.sonar.api.notifications.NotificationDispatcher;
 import org.sonar.core.notification.DefaultNotificationManager;
+import org.sonar.core.notification.db.NotificationQueueDto;
 import org.sonar.jpa.session.DatabaseSessionFactory;
 
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -60,7 +70,8 @@ public class NotificationServiceTest {
     when(gtalkChannel.getKey()).thenReturn("gtalk");
     when(commentOnReviewAssignedToMe.getKey()).thenReturn("comment on review assigned to me");
     when(commentOnReviewCreatedByMe.getKey()).thenReturn("comment on review created by me");
-    when(manager.getFromQueue()).thenReturn(notification).thenReturn(null);
+    List<NotificationQueueDto> batch = queued(notification);
+    when(manager.findOldestInQueue(anyInt())).thenReturn(batch).thenReturn(Collections.<NotificationQueueDto>emptyList());
 
     Settings settings = new Settings().setProperty("sonar.notifications.delay", 1L);
 
@@ -167,7 +178,9 @@ public class NotificationServiceTest {
   @Test
   public void shouldNotStopWhenException() {
     setUpMocks(CREATOR_SIMON, ASSIGNEE_SIMON);
-    when(manager.getFromQueue()).thenThrow(new RuntimeException("Unexpected exception")).thenReturn(notification).thenReturn(null);
+    List<NotificationQueueDto> batch = queued(notification);
+    when(manager.findOldestInQueue(anyInt())).thenThrow(new RuntimeException("Unexpected exception")).thenReturn(batch)
+      .thenReturn(Collections.<NotificationQueueDto>emptyList());
     doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnReviewAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
     doAnswer(addUser(CREATOR_SIMON, emailChannel)).when(commentOnReviewCreatedByMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
 
@@ -178,6 +191,43 @@ public class NotificationServiceTest {
     verify(gtalkChannel, never()).deliver(notification, ASSIGNEE_SIMON);
   }
 
+  @Test
+  public void deliver_notifications_of_a_recipient_in_order() {
+    setUpMocks(CREATOR_EVGENY, ASSIGNEE_SIMON);
+    Notification notification2 = mock(Notification.class);
+    Notification notification3 = mock(Notification.class);
+    List<NotificationQueueDto> batch = queued(notification, notification2, notification3);
+    when(manager.findOldestInQueue(anyInt())).thenReturn(batch).thenReturn(Collections.<NotificationQueueDto>emptyList());
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnReviewAssignedToMe).dispatch(any(Notification.class), any(NotificationDispatcher.Context.class));
+    doAnswer(addUser(CREATOR_EVGENY, gtalkChannel)).when(commentOnReviewCreatedByMe).dispatch(any(Notification.class), any(NotificationDispatcher.Context.class));
+
+    service.start();
+    verify(emailChannel, timeout(2000)).deliver(notification3, ASSIGNEE_SIMON);
+    verify(gtalkChannel, timeout(2000)).deliver(notification3, CREATOR_EVGENY);
+    service.stop();
+
+    InOrder inOrder = inOrder(emailChannel);
+    inOrder.verify(emailChannel).deliver(notification, ASSIGNEE_SIMON);
+    inOrder.verify(emailChannel).deliver(notification2, ASSIGNEE_SIMON);
+    inOrder.verify(emailChannel).deliver(notification3, ASSIGNEE_SIMON);
+  }
+
+  @Test
+  public void remove_notifications_from_queue_once_delivered() {
+    setUpMocks(CREATOR_SIMON, ASSIGNEE_SIMON);
+    List<NotificationQueueDto> batch = queued(notification);
+    when(manager.findOldestInQueue(anyInt())).thenReturn(batch).thenReturn(Collections.<NotificationQueueDto>emptyList());
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnReviewAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
+
+    service.start();
+    verify(manager, timeout(2000)).removeFromQueue(batch);
+    service.stop();
+
+    InOrder inOrder = inOrder(emailChannel, manager);
+    inOrder.verify(emailChannel).deliver(notification, ASSIGNEE_SIMON);
+    inOrder.verify(manager).removeFromQueue(batch);
+  }
+
   @Test
   public void shouldNotAddNullAsUser() {
     setUpMocks(CREATOR_EVGENY, ASSIGNEE_SIMON);
@@ -208,18 +258,26 @@ public class NotificationServiceTest {
   @Test
   public void shouldLogEvery10Minutes() throws InterruptedException {
     setUpMocks(CREATOR_EVGENY, ASSIGNEE_SIMON);
-    // Emulate 2 notifications in DB
-    when(manager.getFromQueue()).thenReturn(notification).thenReturn(notification).thenReturn(null);
+    // Emulate 2 batches of notifications in DB
+    List<NotificationQueueDto> batch1 = queued(notification);
+    List<NotificationQueueDto> batch2 = queued(notification);
+    when(manager.findOldestInQueue(anyInt())).thenReturn(batch1).thenReturn(batch2).thenReturn(Collections.<NotificationQueueDto>emptyList());
     when(manager.count()).thenReturn(1L).thenReturn(0L);
     service = spy(service);
     // Emulate processing of each notification take 10 min to have a log each time
     when(service.now()).thenReturn(0L).thenReturn(10 * 60 * 1000 + 1L).thenReturn(20 * 60 * 1000 + 2L);
     service.start();
-    verify(service, timeout(100)).log(1, 1, 10);
-    verify(service, timeout(100)).log(2, 0, 20);
+    verify(service, timeout(100)).log(eq(1L), eq(1L), eq(10 * 60 * 1000 + 1L), anyLong());
+    verify(service, timeout(100)).log(eq(2L), eq(0L), eq(20 * 60 * 1000 + 2L), anyLong());
     service.stop();
   }
 
+  private List<NotificationQueueDto> queued(Notification... notifications) {
+    List<NotificationQueueDto> dtos = newArrayList(mock(NotificationQueueDto.class));
+    when(manager.toNotifications(same(dtos))).thenReturn(newArrayList(notifications));
+    return dtos;
+  }
+
   private static Answer<Object> addUser(final String user, final NotificationChannel channel) {
     return addUser(user, new NotificationChannel[] {channel});
   }
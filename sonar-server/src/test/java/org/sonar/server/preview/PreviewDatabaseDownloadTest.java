@@ -0,0 +1,105 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.preview;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.core.preview.PreviewCache;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PreviewDatabaseDownloadTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  PreviewCache cache = mock(PreviewCache.class);
+  HttpServletResponse response = mock(HttpServletResponse.class);
+  ByteArrayOutputStream output = new ByteArrayOutputStream();
+  File dbFile;
+  PreviewDatabaseDownload download = new PreviewDatabaseDownload(cache);
+
+  @Before
+  public void setUp() throws Exception {
+    dbFile = new File(temp.newFolder("123"), "1400000000000.h2.db");
+    FileUtils.write(dbFile, "fake db content");
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws IOException {
+        ((PreviewCache.DatabaseFileReader) invocation.getArguments()[1]).read(dbFile);
+        return null;
+      }
+    }).when(cache).readDatabaseFileForPreview(eq(123L), any(PreviewCache.DatabaseFileReader.class));
+    when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        output.write(b);
+      }
+    });
+  }
+
+  @Test
+  public void stream_database() throws Exception {
+    download.write(123L, null, response);
+
+    assertThat(output.toString()).isEqualTo("fake db content");
+    verify(response).setStatus(HttpServletResponse.SC_OK);
+    verify(response).setContentLength(15);
+    verify(response).setHeader("ETag", "\"123-1400000000000\"");
+  }
+
+  @Test
+  public void not_modified_if_batch_has_same_database() throws Exception {
+    download.write(123L, "\"123-1400000000000\"", response);
+
+    assertThat(output.size()).isEqualTo(0);
+    verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    verify(response, never()).setContentLength(anyInt());
+    verify(response).flushBuffer();
+  }
+
+  @Test
+  public void stream_database_if_batch_has_old_database() throws Exception {
+    download.write(123L, "\"123-1300000000000\"", response);
+
+    assertThat(output.toString()).isEqualTo("fake db content");
+    verify(response).setStatus(HttpServletResponse.SC_OK);
+  }
+}
@@ -19,6 +19,7 @@
  */
 package org.sonar.server.qualityprofile.index;
 
+import com.google.common.collect.Iterables;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.ClassRule;
@@ -35,6 +36,8 @@ import org.sonar.core.qualityprofile.db.QualityProfileDao;
 import org.sonar.core.qualityprofile.db.QualityProfileDto;
 import org.sonar.core.rule.RuleDto;
 import org.sonar.core.rule.RuleParamDto;
+import org.sonar.server.es.ESNode;
+import org.sonar.server.qualityprofile.ActiveRule;
 import org.sonar.server.qualityprofile.persistence.ActiveRuleDao;
 import org.sonar.server.rule2.Rule;
 import org.sonar.server.rule2.index.RuleIndex;
@@ -47,6 +50,7 @@ import org.sonar.server.tester.ServerTester;
 import java.util.List;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.MapAssert.entry;
 
 public class ActiveRuleIndexMediumTest {
 
@@ -178,6 +182,67 @@ public class ActiveRuleIndexMediumTest {
 
   }
 
+  @Test
+  public void reindex_rules_with_params_and_active_rules() throws InterruptedException {
+    QualityProfileDto parentProfile = new QualityProfileDto()
+      .setName("parent")
+      .setLanguage("java");
+    qualityProfileDao.insert(parentProfile, dbSession);
+    QualityProfileDto childProfile = new QualityProfileDto()
+      .setName("child")
+      .setLanguage("java")
+      .setParent("parent");
+    qualityProfileDao.insert(childProfile, dbSession);
+
+    RuleKey ruleKey = RuleKey.of("javascript", "S001");
+    RuleDto ruleDto = newRuleDto(ruleKey);
+    dao.insert(ruleDto, dbSession);
+    RuleParamDto minParam = new RuleParamDto()
+      .setName("min")
+      .setType("STRING");
+    dao.addRuleParam(ruleDto, minParam, dbSession);
+    RuleParamDto maxParam = new RuleParamDto()
+      .setName("max")
+      .setType("STRING");
+    dao.addRuleParam(ruleDto, maxParam, dbSession);
+
+    ActiveRuleDto parentActiveRule = ActiveRuleDto.createFor(parentProfile, ruleDto)
+      .setSeverity(Severity.BLOCKER);
+    activeRuleDao.insert(parentActiveRule, dbSession);
+    ActiveRuleDto childActiveRule = ActiveRuleDto.createFor(childProfile, ruleDto)
+      .setInheritance(ActiveRuleDto.OVERRIDES)
+      .setSeverity(Severity.MINOR);
+    activeRuleDao.insert(childActiveRule, dbSession);
+    activeRuleDao.addParam(childActiveRule, ActiveRuleParamDto.createFor(maxParam).setValue("maximum"), dbSession);
+    dbSession.commit();
+
+    // drop the document built by the incremental updates
+    tester.get(ESNode.class).client().prepareDelete(index.getIndexName(), index.getIndexType(), ruleKey.toString()).get();
+    index.refresh();
+    assertThat(index.search(new RuleQuery(), new QueryOptions()).getHits()).isEmpty();
+
+    index.reindex(dbSession);
+
+    RuleResult results = index.search(new RuleQuery(), new QueryOptions());
+    assertThat(results.getHits()).hasSize(1);
+    Rule rule = Iterables.getOnlyElement(results.getHits());
+    assertThat(rule.key()).isEqualTo(ruleKey);
+    assertThat(rule.params()).hasSize(2);
+
+    assertThat(results.getActiveRules()).hasSize(2);
+    for (ActiveRule activeRule : results.getActiveRules()) {
+      if (activeRule.severity().equals(Severity.MINOR)) {
+        // child profile
+        assertThat(activeRule.parentKey()).isNotNull();
+        assertThat(activeRule.params()).hasSize(1).includes(entry("max", "maximum"));
+      } else {
+        assertThat(activeRule.severity()).isEqualTo(Severity.BLOCKER);
+        assertThat(activeRule.parentKey()).isNull();
+        assertThat(activeRule.params()).isEmpty();
+      }
+    }
+  }
+
   //TODO test delete, update, tags, params
 
 
@@ -0,0 +1,97 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DecoratedSourceCacheTest {
+
+  // each line weighs its length plus 16 chars of overhead
+  DecoratedSourceCache cache = new DecoratedSourceCache(100L);
+
+  @Test
+  public void put_and_get() throws Exception {
+    assertThat(cache.get(1L)).isNull();
+
+    List<String> lines = cache.put(1L, Arrays.asList("foo", "bar"));
+
+    assertThat(lines).containsExactly("foo", "bar");
+    assertThat(cache.get(1L)).containsExactly("foo", "bar");
+    assertThat(cache.size()).isEqualTo(38L);
+  }
+
+  @Test
+  public void evict_least_recently_used_lines_when_full() throws Exception {
+    cache.put(1L, Arrays.asList("0123456789"));
+    cache.put(2L, Arrays.asList("0123456789"));
+    cache.put(3L, Arrays.asList("0123456789"));
+    // 1 is now more recently used than 2
+    cache.get(1L);
+
+    cache.put(4L, Arrays.asList("0123456789"));
+
+    assertThat(cache.get(1L)).isNotNull();
+    assertThat(cache.get(2L)).isNull();
+    assertThat(cache.get(3L)).isNotNull();
+    assertThat(cache.get(4L)).isNotNull();
+    assertThat(cache.size()).isEqualTo(78L);
+  }
+
+  @Test
+  public void do_not_cache_lines_larger_than_cache() throws Exception {
+    cache.put(1L, Arrays.asList("foo"));
+
+    List<String> lines = cache.put(2L, Arrays.asList(new String(new char[100])));
+
+    assertThat(lines).hasSize(1);
+    assertThat(cache.get(2L)).isNull();
+    assertThat(cache.get(1L)).isNotNull();
+  }
+
+  @Test
+  public void replace_lines() throws Exception {
+    cache.put(1L, Arrays.asList("foo"));
+    cache.put(1L, Arrays.asList("foo", "bar"));
+
+    assertThat(cache.get(1L)).containsExactly("foo", "bar");
+    assertThat(cache.size()).isEqualTo(38L);
+  }
+
+  @Test
+  public void accept_sources_half_the_size_of_the_cache() throws Exception {
+    assertThat(cache.accepts(50)).isTrue();
+    assertThat(cache.accepts(51)).isFalse();
+  }
+
+  @Test
+  public void clear() throws Exception {
+    cache.put(1L, Arrays.asList("foo"));
+
+    cache.clear();
+
+    assertThat(cache.get(1L)).isNull();
+    assertThat(cache.size()).isEqualTo(0L);
+  }
+}
@@ -45,7 +45,7 @@ public class HtmlSourceDecoratorTest extends AbstractDaoTestCase {
 
     SnapshotSourceDao snapshotSourceDao = new SnapshotSourceDao(getMyBatis());
     SnapshotDataDao snapshotDataDao = new SnapshotDataDao(getMyBatis());
-    sourceDecorator = new HtmlSourceDecorator(getMyBatis(), snapshotSourceDao, snapshotDataDao);
+    sourceDecorator = new HtmlSourceDecorator(getMyBatis(), snapshotSourceDao, snapshotDataDao, new DecoratedSourceCache());
   }
 
   @Test
@@ -154,26 +154,63 @@ public class HtmlSourceDecoratorTest extends AbstractDaoTestCase {
     SnapshotSourceDao snapshotSourceDao = mock(SnapshotSourceDao.class);
     SnapshotDataDao snapshotDataDao = mock(SnapshotDataDao.class);
 
-    HtmlSourceDecorator sourceDecorator = new HtmlSourceDecorator(mock(MyBatis.class), snapshotSourceDao, snapshotDataDao);
+    HtmlSourceDecorator sourceDecorator = new HtmlSourceDecorator(mock(MyBatis.class), snapshotSourceDao, snapshotDataDao, new DecoratedSourceCache());
 
     sourceDecorator.getDecoratedSourceAsHtml(14L);
 
-    verify(snapshotDataDao, times(1)).selectSnapshotData(14L, Lists.newArrayList("highlight_syntax", "symbol"));
-    verify(snapshotSourceDao, times(0)).selectSnapshotSource(14L);
+    verify(snapshotDataDao, times(1)).selectSnapshotData(eq(14L), eq(Lists.newArrayList("highlight_syntax", "symbol")), any(SqlSession.class));
+    verify(snapshotSourceDao, times(0)).selectSnapshotSource(eq(14L), any(SqlSession.class));
   }
 
   @Test
   public void should_not_query_sources_if_no_snapshot_data_from_component() throws Exception {
     SnapshotSourceDao snapshotSourceDao = mock(SnapshotSourceDao.class);
+    when(snapshotSourceDao.selectSnapshotIdByComponentKey(eq("org.apache.struts:struts:DebuggingInterceptor"), any(SqlSession.class))).thenReturn(14L);
     SnapshotDataDao snapshotDataDao = mock(SnapshotDataDao.class);
 
-    HtmlSourceDecorator sourceDecorator = new HtmlSourceDecorator(mock(MyBatis.class), snapshotSourceDao, snapshotDataDao);
+    HtmlSourceDecorator sourceDecorator = new HtmlSourceDecorator(mock(MyBatis.class), snapshotSourceDao, snapshotDataDao, new DecoratedSourceCache());
 
-    sourceDecorator.getDecoratedSourceAsHtml("org.apache.struts:struts:DebuggingInterceptor", null, null);
+    assertThat(sourceDecorator.getDecoratedSourceAsHtml("org.apache.struts:struts:DebuggingInterceptor", null, null)).isEmpty();
 
-    verify(snapshotDataDao, times(1)).selectSnapshotDataByComponentKey(eq("org.apache.struts:struts:DebuggingInterceptor"), eq(Lists.newArrayList("highlight_syntax", "symbol")),
-      any(SqlSession.class));
-    verify(snapshotSourceDao, times(0)).selectSnapshotSourceByComponentKey(eq("org.apache.struts:struts:DebuggingInterceptor"),
-      any(SqlSession.class));
+    verify(snapshotDataDao, times(1)).selectSnapshotData(eq(14L), eq(Lists.newArrayList("highlight_syntax", "symbol")), any(SqlSession.class));
+    verify(snapshotSourceDao, times(0)).selectSnapshotSource(eq(14L), any(SqlSession.class));
+  }
+
+  @Test
+  public void should_not_decorate_source_if_component_has_no_source() throws Exception {
+    assertThat(sourceDecorator.getDecoratedSourceAsHtml("unknown", null, null)).isEmpty();
+  }
+
+  @Test
+  public void should_decorate_source_only_once() throws Exception {
+    SnapshotSourceDao snapshotSourceDao = spy(new SnapshotSourceDao(getMyBatis()));
+    SnapshotDataDao snapshotDataDao = spy(new SnapshotDataDao(getMyBatis()));
+    HtmlSourceDecorator sourceDecorator = new HtmlSourceDecorator(getMyBatis(), snapshotSourceDao, snapshotDataDao, new DecoratedSourceCache());
+
+    assertThat(sourceDecorator.getDecoratedSourceAsHtml("org.apache.struts:struts:DebuggingInterceptor", 5, 6)).containsExactly(
+      "<span class=\"k\">public </span><span class=\"k\">class </span><span class=\"sym-31 sym\">HelloWorld</span> {",
+      "  <span class=\"k\">public</span> <span class=\"k\">void</span> <span class=\"sym-58 sym\">foo</span>() {"
+    );
+    assertThat(sourceDecorator.getDecoratedSourceAsHtml("org.apache.struts:struts:DebuggingInterceptor", 10, null)).containsExactly(
+      "  }",
+      "}"
+    );
+    assertThat(sourceDecorator.getDecoratedSourceAsHtml(13L)).hasSize(11);
+    assertThat(sourceDecorator.getDecoratedSourceAsHtml("org.apache.struts:struts:DebuggingInterceptor", 20, 30)).isEmpty();
+
+    verify(snapshotDataDao, times(1)).selectSnapshotData(eq(13L), anyListOf(String.class), any(SqlSession.class));
+    verify(snapshotSourceDao, times(1)).selectSnapshotSource(eq(13L), any(SqlSession.class));
+  }
+
+  @Test
+  public void should_decorate_only_requested_lines_of_large_sources() throws Exception {
+    DecoratedSourceCache cache = new DecoratedSourceCache(10L);
+    HtmlSourceDecorator sourceDecorator = new HtmlSourceDecorator(getMyBatis(), new SnapshotSourceDao(getMyBatis()), new SnapshotDataDao(getMyBatis()), cache);
+
+    assertThat(sourceDecorator.getDecoratedSourceAsHtml("org.apache.struts:struts:DebuggingInterceptor", 5, 6)).containsExactly(
+      "<span class=\"k\">public </span><span class=\"k\">class </span><span class=\"sym-31 sym\">HelloWorld</span> {",
+      "  <span class=\"k\">public</span> <span class=\"k\">void</span> <span class=\"sym-58 sym\">foo</span>() {"
+    );
+    assertThat(cache.get(13L)).isNull();
   }
 }
@@ -36,6 +36,10 @@ import org.sonar.server.exceptions.ServerException;
 import org.sonar.server.plugins.MimeTypes;
 
 import javax.annotation.Nullable;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.List;
 import java.util.Locale;
@@ -45,6 +49,8 @@ import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class WebServiceEngineTest {
@@ -288,6 +294,72 @@ public class WebServiceEngineTest {
     assertThat(response.stream().mediaType()).isEqualTo(MimeTypes.JSON);
   }
 
+  @Test
+  public void stream_response_to_servlet() throws Exception {
+    InternalRequest request = new SimpleRequest("GET");
+    FakeServletResponse servlet = new FakeServletResponse();
+    ServletResponse response = new ServletResponse(servlet.mock);
+
+    engine.execute(request, response, "api/system", "health");
+
+    assertThat(response.stream().isCommitted()).isTrue();
+    assertThat(servlet.output.toString()).isEqualTo("good");
+    verify(servlet.mock).setStatus(200);
+  }
+
+  @Test
+  public void send_error_to_servlet_if_failure_before_commit() throws Exception {
+    InternalRequest request = new SimpleRequest("GET");
+    FakeServletResponse servlet = new FakeServletResponse();
+    ServletResponse response = new ServletResponse(servlet.mock);
+
+    engine.execute(request, response, "api/system", "fail");
+
+    assertThat(servlet.output.toString()).isEqualTo("{\"errors\":[{\"msg\":\"Unexpected\"}]}");
+    verify(servlet.mock).setStatus(500);
+    verify(servlet.mock).setContentType(MimeTypes.JSON);
+    verify(servlet.mock, never()).setStatus(200);
+  }
+
+  @Test
+  public void large_response_is_sent_before_end_of_request() throws Exception {
+    InternalRequest request = new SimpleRequest("GET");
+    FakeServletResponse servlet = new FakeServletResponse();
+    ServletResponse response = new ServletResponse(servlet.mock);
+
+    engine.execute(request, response, "api/system", "fail_after_large_output");
+
+    // status can not be changed anymore
+    assertThat(servlet.output.size()).isEqualTo(ServletResponse.BUFFER_SIZE);
+    verify(servlet.mock).setStatus(200);
+    verify(servlet.mock, never()).setStatus(500);
+  }
+
+  @Test
+  public void keep_response_in_memory_without_servlet() throws Exception {
+    InternalRequest request = new SimpleRequest("GET");
+    ServletResponse response = new ServletResponse();
+
+    engine.execute(request, response, "api/system", "fail_after_large_output");
+
+    assertThat(response.stream().isCommitted()).isFalse();
+    assertThat(response.stream().httpStatus()).isEqualTo(500);
+  }
+
+  private static class FakeServletResponse {
+    final HttpServletResponse mock = mock(HttpServletResponse.class);
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    FakeServletResponse() throws IOException {
+      when(mock.getOutputStream()).thenReturn(new ServletOutputStream() {
+        @Override
+        public void write(int b) {
+          output.write(b);
+        }
+      });
+    }
+  }
+
   static class SystemWebService implements WebService {
     @Override
     public void define(Context context) {
@@ -322,6 +394,18 @@ public class WebServiceEngineTest {
             throw new IllegalStateException("Unexpected");
           }
         });
+      newController.createAction("fail_after_large_output")
+        .setHandler(new RequestHandler() {
+          @Override
+          public void handle(Request request, Response response) {
+            try {
+              response.stream().output().write(new byte[ServletResponse.BUFFER_SIZE]);
+            } catch (IOException e) {
+              throw new IllegalStateException(e);
+            }
+            throw new IllegalStateException("Unexpected");
+          }
+        });
       newController.createAction("fail_with_i18n_message")
         .setHandler(new RequestHandler() {
           @Override